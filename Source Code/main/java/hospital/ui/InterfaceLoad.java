@@ -1,5 +1,6 @@
 package hospital.ui;
 
+import hospital.ui.vitals.VitalsIngest;
 import javafx.application.Application;
 import javafx.beans.value.ChangeListener;
 import javafx.beans.value.ObservableValue;
@@ -24,10 +25,12 @@ public class InterfaceLoad extends Application {
 
     /**
      * Launches the application. This method is intended to be called to initiate the JavaFX application,
-     * loading the initial database and setting up the primary stage.
+     * loading the initial database, putting admitted patients back in their monitored beds and
+     * setting up the primary stage.
      */
     public static void startApp() {
         Main.database.loadDataBase();
+        VitalsIngest.startup();
         launch();
     }
 
@@ -64,6 +67,7 @@ public class InterfaceLoad extends Application {
     @Override
     public void stop() {
         Main.database.saveDatabase();
+        Main.database.close();
         System.out.println("Application is about to stop.");
     }
 
@@ -9,7 +9,6 @@ import javafx.scene.control.PasswordField;
 import javafx.scene.control.TextField;
 
 import java.io.IOException;
-import java.util.Hashtable;
 
 /**
  * Controller class responsible for handling user login in the application.
@@ -57,10 +56,9 @@ public class LoginController {
         double width = 1920;
         double height = 1080;
         String loginKey = username.getText() + password.getText();
-        Hashtable<String, Staff> loginTable = Main.database.getLoginTable();
+        Staff user = Main.database.getStaff(loginKey);
 
-        if (loginTable.containsKey(loginKey)) {
-            Staff user = loginTable.get(loginKey);
+        if (user != null) {
             loginError.setText("Login Successful!");
             MainViewController.passedPosition = user; // Assuming this static field/method is defined elsewhere for context passing
             InterfaceLoad.changeScene("main-view.fxml", height, width, "C.A.R.E.S Dashboard");
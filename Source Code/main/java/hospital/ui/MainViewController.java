@@ -1,21 +1,38 @@
 package hospital.ui;
-import hospital.ui.diagnose.Condition;
-import hospital.ui.diagnose.Prescription;
+import hospital.ui.database.index.NameSearchIndex;
+import hospital.ui.diagnose.Diagnosis;
+import hospital.ui.diagnose.DiagnosisCatalog;
+import hospital.ui.diagnose.InteractionRules;
 import hospital.ui.labs.Lab;
+import hospital.ui.labs.LabOrder;
+import hospital.ui.labs.LabOrderQueue;
 import hospital.ui.users.Person;
 import hospital.ui.users.patients.Patient;
 import hospital.ui.users.patients.PatientUpdater;
 import hospital.ui.users.staff.*;
+import hospital.ui.vitals.EarlyWarningIndex;
+import hospital.ui.vitals.EarlyWarningScore;
+import hospital.ui.vitals.VitalsIngest;
 import hospital.ui.warnings.WarningListener;
 import hospital.ui.warnings.WarningManager;
+import javafx.application.Platform;
 import javafx.beans.value.ChangeListener;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
+import javafx.geometry.Side;
+import javafx.scene.Node;
 import javafx.scene.control.*;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.VBox;
+import javafx.stage.Modality;
 
+import java.io.File;
 import java.io.IOException;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.Callable;
 import java.util.function.Function;
 
 /**
@@ -33,19 +50,40 @@ public class MainViewController implements WarningListener {
     private final Map<TextInputControl, ChangeListener<Boolean>> listenerMap = new HashMap<>();
     private static MainViewController instance;
 
+    //as-you-type suggestions under the name search field
+    private static final int SEARCH_SUGGESTIONS = 10;
+    private final ContextMenu searchSuggestions = new ContextMenu();
+    private boolean choosingSuggestion = false;
+
+    //the sickest admitted patients, listed under the ward button
+    private static final int WARD_SIZE = 10;
+    private final ContextMenu wardList = new ContextMenu();
+
+    //warnings raised off the JavaFX thread, listed in one window that does not block the dashboard
+    private static final int NOTIFICATIONS_SHOWN = 20;
+    private Alert notifications;
+    private final Set<String> notified = new LinkedHashSet<>();
+
+    //billing files are named after the time they were started
+    private static final DateTimeFormatter BILLING_FILE_TIME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
     @FXML private TitledPane basicInfoPane, medicalInfoPane, labTestPane, labResultsPane, diagnosisPane, dischargePane;
-    @FXML private Button admitButton, dischargeButton;
+    @FXML private Button admitButton, dischargeButton, wardButton, billButton, claimsButton;
     @FXML private Label role, userName;
     @FXML private TextField firstName, lastName, address, cellPhone, birthday, insurance, emergencyCell, height, weight, bp, heartRate, spo2, bodyTemp, bmi, searchName, searchDOB;
     @FXML private TextArea instructionsField, billField;
     @FXML private CheckBox redBloodLab, whiteBloodLab, liverLab, renalLab, electrolyteLab, xrayLab, ctLab, mriLab, urineLab, stoolLab;
     @FXML private Button redBloodResult, whiteBloodResult, liverResult, renalResult, electrolyteResult, xrayResult, ctResult, mriResult, urineResult, stoolResult, patientStatus, search;
-    @FXML private CheckBox highBloodScript1, highBloodScript2, highBloodScript3, highCholesterolScript1, highCholesterolScript2, highCholesterolScript3, kidneyScript1, kidneyScript2, kidneyScript3, liverScript1, liverScript2, liverScript3, boneScript1, boneScript2, boneScript3;
-    @FXML private CheckBox highBloodPressure, highCholesterol, kidneyDisease, liverDisease, brokenHumerus;
+    @FXML private VBox diagnosisList;
+    //the catalog the diagnosis pane was built from, and its check boxes in catalog order
+    private DiagnosisCatalog shownCatalog;
+    private CheckBox[] diagnosisBoxes;
+    private CheckBox[][] scriptBoxes;
 
     MainViewController(){
         //create warning manager
         WarningManager.getInstance().addListener(this);
+        DiagnosisCatalog.addListener(catalog -> Platform.runLater(() -> showCatalog(catalog)));
     }
 
     public static synchronized MainViewController getInstance() {
@@ -60,6 +98,8 @@ public class MainViewController implements WarningListener {
      * It sets up the UI based on the role of the logged-in staff and registers the controller as a listener for warnings.
      */
     public void initialize() {
+        buildDiagnosisPane(DiagnosisCatalog.current());
+
         TitledPane[] panes = {basicInfoPane, medicalInfoPane, labTestPane, labResultsPane, diagnosisPane, dischargePane};
         for (TitledPane pane : panes) {
             pane.setCollapsible(false);
@@ -79,6 +119,7 @@ public class MainViewController implements WarningListener {
             role.setText("Billing Staff");
         }
         userName.setText(passedPosition.getLastName() + ", " + passedPosition.getFirstName());
+        searchName.textProperty().addListener((observable, oldValue, newValue) -> suggestPatients(newValue));
 
         if(currentPatient == null){
             currentPatient = nullPatient;
@@ -118,6 +159,9 @@ public class MainViewController implements WarningListener {
     private void setBillingStaffView() {
         role.setText("Billing Staff");
         admitButton.setVisible(false);
+        wardButton.setVisible(false);
+        billButton.setVisible(true);
+        claimsButton.setVisible(true);
         billField.setEditable(true);
         billField.setVisible(true);
 
@@ -137,6 +181,7 @@ public class MainViewController implements WarningListener {
     private void setDeskStaffView() {
         role.setText("Front Desk Staff");
         admitButton.setText("Check In");
+        wardButton.setVisible(false);
 
         //set permissions
         medicalInfoPane.setVisible(false);
@@ -211,10 +256,12 @@ public class MainViewController implements WarningListener {
             //load patient fields
             loadFields();
 
-            //load patient labs and scripts and bill
+            //load patient labs and scripts, and the bill only for those who can see it
             loadLabs(new ActionEvent());
             loadValidScripts(new ActionEvent());
-            billField.setText(currentPatient.getBill());
+            if (billField.isVisible()) {
+                billField.setText(currentPatient.getBill());
+            }
 
 
 
@@ -316,7 +363,24 @@ public class MainViewController implements WarningListener {
 
             //preform checks (not null valid format)
         unloadPatient();
-        if(name != null && dob != null  ){
+        if(name != null && name.matches("\\d{1,18}")){
+            //a medical record number, typed or scanned from a wristband
+            long mrn = Long.parseLong(name);
+            String key = Main.database.getPatientKey(mrn);
+            Patient result = key == null ? null : passedPosition.searchPatient(mrn);
+            if(result != null){
+                unloadPatient();
+                if(!result.isDischarged() || passedPosition instanceof BillingStaff){
+                    currentPatient = result;
+                    currentKey = key;
+                    loadPatient();
+                }else{
+                    showWarning("Patient has been discharged");
+                }
+            }else{
+                showWarning("No patient found!");
+            }
+        }else if(name != null && dob != null  ){
             if(name.matches("[A-Za-z'-]+, [A-Za-z'-]+") && dob.matches("\\d{2}/\\d{2}/\\d{4}")){
                 String[] names = name.split(",");
 
@@ -340,7 +404,7 @@ public class MainViewController implements WarningListener {
                 }
 
             }else{
-                showWarning("Please enter a valid search (lastname, firstname), (00/00/0000)");
+                showWarning("Please enter a valid search (lastname, firstname), (00/00/0000), or a medical record number");
             }
 
         }
@@ -348,7 +412,136 @@ public class MainViewController implements WarningListener {
         //Otherwise Warning
     }
 
-    /**Takes user input on labs to be run, runs the corresponding labs, then resets run labs view
+    /**
+     * Shows the patients whose name starts with the text typed into the name search field.
+     *
+     * @param text The text in the search field.
+     */
+    private void suggestPatients(String text) {
+        //medical record numbers are looked up with the search button, not suggested
+        if (choosingSuggestion || text == null || text.isBlank() || text.matches("\\d+")) {
+            searchSuggestions.hide();
+            return;
+        }
+
+        List<MenuItem> items = new ArrayList<>();
+        for (NameSearchIndex.Match match : Main.database.searchPatientsByName(text, SEARCH_SUGGESTIONS)) {
+            MenuItem item = new MenuItem(match.toString());
+            item.setOnAction(event -> chooseSuggestion(match));
+            items.add(item);
+        }
+        searchSuggestions.getItems().setAll(items);
+
+        if (items.isEmpty()) {
+            searchSuggestions.hide();
+        } else if (!searchSuggestions.isShowing()) {
+            searchSuggestions.show(searchName, Side.BOTTOM, 0, 0);
+        }
+    }
+
+    /**
+     * Fills in the search fields from a suggestion and searches for that patient.
+     *
+     * @param match The suggested patient that was picked.
+     */
+    private void chooseSuggestion(NameSearchIndex.Match match) {
+        choosingSuggestion = true;
+        searchName.setText(match.getLastName() + ", " + match.getFirstName());
+        searchDOB.setText(match.getDob());
+        choosingSuggestion = false;
+        searchSuggestions.hide();
+        searchPatient(new ActionEvent());
+    }
+
+    /**
+     * Lists the sickest admitted patients by their early warning score, sickest first. Picking
+     * one loads them into the dashboard.
+     *
+     * @param event The event triggering the list, such as clicking the ward button.
+     */
+    public void showWard(ActionEvent event) {
+        List<MenuItem> items = new ArrayList<>();
+        for (Patient patient : EarlyWarningIndex.getInstance().getSickest(WARD_SIZE)) {
+            //a patient discharged since the list was read has no score
+            EarlyWarningScore score = patient.getWarningScore();
+            MenuItem item = new MenuItem(patient.getLastName() + ", " + patient.getFirstName()
+                    + (score == null ? "" : " - " + score));
+            item.setOnAction(e -> chooseWardPatient(patient));
+            items.add(item);
+        }
+        if (items.isEmpty()) {
+            showWarning("No admitted patients are being scored");
+            return;
+        }
+        wardList.getItems().setAll(items);
+        wardList.show(wardButton, Side.BOTTOM, 0, 0);
+    }
+
+    /**
+     * Searches for a patient picked from the ward list by their medical record number.
+     *
+     * @param patient The patient that was picked.
+     */
+    private void chooseWardPatient(Patient patient) {
+        searchName.setText(String.valueOf(patient.getMedicalRecordNumber()));
+        searchDOB.setText("");
+        searchPatient(new ActionEvent());
+    }
+
+    /**
+     * Bills every discharged patient who has not been billed yet, writing the bills to a file in
+     * the working directory named after the time of the run. The run happens in the background
+     * and its result is shown once it is done.
+     *
+     * @param event The event triggering the run, such as clicking the billing button.
+     */
+    public void billDischargedPatients(ActionEvent event) {
+        BillingStaff staff = (BillingStaff) passedPosition;
+        File output = new File("Bills-" + BILLING_FILE_TIME.format(LocalDateTime.now()) + ".txt");
+        runBillingTask(billButton, () -> staff.billDischargedPatients(output) + " Written to " + output.getName() + ".");
+    }
+
+    /**
+     * Writes the insurance claims of every discharged patient to a batch claim file in the working
+     * directory named after the time of the export. The export happens in the background and its
+     * result is shown once it is done.
+     *
+     * @param event The event triggering the export, such as clicking the claims button.
+     */
+    public void exportClaims(ActionEvent event) {
+        BillingStaff staff = (BillingStaff) passedPosition;
+        File output = new File("Claims-" + BILLING_FILE_TIME.format(LocalDateTime.now()) + ".837");
+        runBillingTask(claimsButton, () -> staff.exportClaims(output, null, null) + " Written to " + output.getName() + ".");
+    }
+
+    /**
+     * Runs a billing task on a background thread with its button disabled, then shows what it
+     * reported or why it failed.
+     *
+     * @param button The button that started the task.
+     * @param task   The task, giving the message to show.
+     */
+    private void runBillingTask(Button button, Callable<String> task) {
+        button.setDisable(true);
+        Thread thread = new Thread(() -> {
+            String message;
+            try {
+                message = task.call();
+            } catch (Exception e) {
+                message = "Error: " + e.getMessage();
+            }
+            String result = message;
+            Platform.runLater(() -> {
+                button.setDisable(false);
+                showWarning(result);
+            });
+        }, "billing-task");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**Takes user input on labs to be run, orders the corresponding labs, then resets run labs view.
+     * Results come back from the {@link LabOrderQueue} once each lab's turnaround has passed.
      * @param event, click of the "Run Labs" button
      */
     public void runLabs(ActionEvent event) {
@@ -358,17 +551,14 @@ public class MainViewController implements WarningListener {
 
             for(int i = 0; i < 10; i++){
                 if (labTests[i].isSelected()){
+                    //the result button shows the order as pending until the lab comes back
+                    labResults[i].getStyleClass().clear();
+                    labResults[i].getStyleClass().add("lab-result");
+                    labResults[i].setText("Pending");
 
-                    if(currentPatient.getLabPanel().runLab(i) == Lab.LabResult.Normal){
-                        labResults[i].getStyleClass().clear();
-                        labResults[i].getStyleClass().add("lab-result-p");
-                        labResults[i].setText(Lab.LabResult.Normal.toString());
-
-                    }else {
-                        labResults[i].getStyleClass().clear();
-                        labResults[i].getStyleClass().add("lab-result-n");
-                        labResults[i].setText(Lab.LabResult.Abnormal.toString());
-                    }
+                    Button resultButton = labResults[i];
+                    LabOrderQueue.getInstance().submit(currentKey, currentPatient, i,
+                            order -> showLabResult(order, resultButton));
 
                 }else if(!(Objects.equals(labResults[i].getStyleClass().toString(), "lab-result-p") || Objects.equals(labResults[i].getStyleClass().toString(), "lab-result-n"))) {
 
@@ -383,6 +573,85 @@ public class MainViewController implements WarningListener {
         }
     }
 
+    /**
+     * Shows the result of a lab order on its result button, if the patient it was ordered for
+     * is still the one on screen.
+     *
+     * @param order        The completed lab order.
+     * @param resultButton The button showing the lab's result.
+     */
+    private void showLabResult(LabOrder order, Button resultButton) {
+        if (currentPatient == null || order.getPatient().getMedicalRecordNumber() != currentPatient.getMedicalRecordNumber()) {
+            return;
+        }
+        resultButton.getStyleClass().clear();
+        if (order.getResult() == Lab.LabResult.Normal) {
+            resultButton.getStyleClass().add("lab-result-p");
+            resultButton.setText(Lab.LabResult.Normal.toString());
+        } else {
+            resultButton.getStyleClass().add("lab-result-n");
+            resultButton.setText(Lab.LabResult.Abnormal.toString());
+            checkInteractions(0, 1 << order.getLab());
+        }
+        if (billField.isVisible()) {
+            billField.setText(currentPatient.getBill());
+        }
+    }
+
+    /**
+     * Fills the diagnosis pane from a catalog: for each condition, a check box to diagnose it
+     * followed by a check box for each medication offered for it, in the catalog's order, so the
+     * medication behind a check box is found from its place in the pane.
+     *
+     * @param catalog The catalog to show.
+     */
+    private void buildDiagnosisPane(DiagnosisCatalog catalog) {
+        int conditions = catalog.getConditionCount();
+        CheckBox[] conditionBoxes = new CheckBox[conditions];
+        CheckBox[][] medicationBoxes = new CheckBox[conditions][];
+        List<Node> sections = new ArrayList<>();
+        for (int i = 0; i < conditions; i++) {
+            int condition = catalog.getCondition(i);
+            conditionBoxes[i] = new CheckBox();
+            conditionBoxes[i].setOnAction(this::updateValidScripts);
+            Label name = new Label(catalog.getName(condition));
+            name.getStyleClass().add("diagnosis-name");
+            VBox section = new VBox(new HBox(10, conditionBoxes[i], name), new Label("Prescriptions"));
+            section.getStyleClass().add("diagnosis-section");
+
+            medicationBoxes[i] = new CheckBox[catalog.getTreatmentCount(condition)];
+            for (int j = 0; j < medicationBoxes[i].length; j++) {
+                CheckBox script = new CheckBox();
+                script.setDisable(true);
+                script.setOnAction(this::updateScripts);
+                Button label = new Button(catalog.getName(catalog.getTreatment(condition, j)));
+                label.getStyleClass().add("display-button");
+                section.getChildren().add(new HBox(10, script, label));
+                medicationBoxes[i][j] = script;
+            }
+            sections.add(section);
+        }
+
+        shownCatalog = catalog;
+        diagnosisBoxes = conditionBoxes;
+        scriptBoxes = medicationBoxes;
+        diagnosisList.getChildren().setAll(sections);
+    }
+
+    /**
+     * Rebuilds the diagnosis pane for a new catalog and shows the current patient's diagnosis on
+     * it again. The patient's diagnosis is untouched, as its bits mean the same in the new catalog.
+     *
+     * @param catalog The new catalog.
+     */
+    private void showCatalog(DiagnosisCatalog catalog) {
+        if (diagnosisList == null || catalog == shownCatalog) {
+            return;
+        }
+        buildDiagnosisPane(catalog);
+        loadValidScripts(new ActionEvent());
+    }
+
     /**
      * Loads valid prescription options into the UI based on the current patient's diagnosis.
      *
@@ -390,35 +659,16 @@ public class MainViewController implements WarningListener {
      */
     public void loadValidScripts(ActionEvent event) {
         if(currentPatient != null) {
-            CheckBox[] bloodScripts = {highBloodScript1, highBloodScript2, highBloodScript3};
-            CheckBox[] cholesterolScripts = {highCholesterolScript1, highCholesterolScript2, highCholesterolScript3};
-            CheckBox[] kidneyScripts = {kidneyScript1, kidneyScript2, kidneyScript3};
-            CheckBox[] liverScripts = {liverScript1, liverScript2, liverScript3};
-            CheckBox[] boneScripts = {boneScript1, boneScript2, boneScript3};
-
-            CheckBox[][] scripts = {bloodScripts, cholesterolScripts, kidneyScripts, liverScripts, boneScripts};
-            CheckBox[] diagnoses = { highBloodPressure, highCholesterol, kidneyDisease, liverDisease, brokenHumerus};
-
-            Condition[] conditions = currentPatient.getDiagnosis().getConditions();
-
-            for(int i = 0; i < 5; i++){
-                //get the 5 possible diagnoses
-                Prescription[] prescriptions = conditions[i].getValidPrescriptions();
-
-                //look to see if any of the child scripts are selected, if so select diagnose otherwise do not.
-                if(currentPatient.getDiagnosis().getIsDiagnosed()[i]){
-                    diagnoses[i].setSelected(true);
-                    for(int j = 0; j < 3; j++)
-                    {
-                        scripts[i][j].setSelected(prescriptions[j].isPrescribed());
-                        scripts[i][j].setDisable(false);
-                    }
-                }else {
-                    diagnoses[i].setSelected(false);
-                    for (int j = 0; j < 3; j++) {
-                        scripts[i][j].setSelected(false);
-                        scripts[i][j].setDisable(true);
-                    }
+            Diagnosis diagnosis = currentPatient.getDiagnosis();
+
+            for(int i = 0; i < diagnosisBoxes.length; i++){
+                //scripts are only available for diagnosed conditions
+                boolean diagnosed = diagnosis.isDiagnosed(shownCatalog.getCondition(i));
+                diagnosisBoxes[i].setSelected(diagnosed);
+                for(int j = 0; j < scriptBoxes[i].length; j++)
+                {
+                    scriptBoxes[i][j].setSelected(diagnosed && diagnosis.isPrescribed(getMedication(i, j)));
+                    scriptBoxes[i][j].setDisable(!diagnosed);
                 }
             }
         }
@@ -429,37 +679,42 @@ public class MainViewController implements WarningListener {
      */
     public void updateValidScripts(ActionEvent event) {
         if(currentPatient != null) {
-            CheckBox[] bloodScripts = {highBloodScript1, highBloodScript2, highBloodScript3};
-            CheckBox[] cholesterolScripts = {highCholesterolScript1, highCholesterolScript2, highCholesterolScript3};
-            CheckBox[] kidneyScripts = {kidneyScript1, kidneyScript2, kidneyScript3};
-            CheckBox[] liverScripts = {liverScript1, liverScript2, liverScript3};
-            CheckBox[] boneScripts = {boneScript1, boneScript2, boneScript3};
-
-            CheckBox[][] scripts = {bloodScripts, cholesterolScripts, kidneyScripts, liverScripts, boneScripts};
-            CheckBox[] diagnoses = { highBloodPressure, highCholesterol, kidneyDisease, liverDisease, brokenHumerus};
-
-            Condition[] conditions = currentPatient.getDiagnosis().getConditions();
-
-            //look through all diagnoses and update values and state
-            for(int i = 0; i < 5; i++){
-                Prescription[] prescriptions = conditions[i].getValidPrescriptions();
-                if (diagnoses[i].isSelected()){//make corresponding scripts available
-                    currentPatient.getDiagnosis().setIsDiagnosed(true, i);
-                    for(int j = 0; j < 3; j++)
-                    {
-                        scripts[i][j].setDisable(false);
-                    }
-
-                }else {//make corresponding scripts unavailable
-                    currentPatient.getDiagnosis().setIsDiagnosed(false, i);
-                    for(int j = 0; j < 3; j++)
-                    {
-                        scripts[i][j].setDisable(true);
-                        scripts[i][j].setSelected(false);
-                        prescriptions[j].setPrescribed(false);
-                    }
+            //only the condition that was clicked changes, or every one when not called from a check box
+            long before = currentPatient.getDiagnosis().getBits();
+            Object source = event.getSource();
+            for (int i = 0; i < diagnosisBoxes.length; i++) {
+                if (source == diagnosisBoxes[i] || !(source instanceof CheckBox)) {
+                    updateValidScripts(i);
                 }
             }
+            checkInteractions(before ^ currentPatient.getDiagnosis().getBits(), 0);
+            saveCurrentPatient();
+        }
+    }
+
+    // the medication behind a prescription check box, from the condition's place in the pane and its own
+    private int getMedication(int index, int treatment) {
+        return shownCatalog.getTreatment(shownCatalog.getCondition(index), treatment);
+    }
+
+    /**
+     * Records whether one condition is diagnosed, making its scripts available or clearing them.
+     *
+     * @param index The place of the condition in the diagnosis pane.
+     */
+    private void updateValidScripts(int index) {
+        Diagnosis diagnosis = currentPatient.getDiagnosis();
+        int condition = shownCatalog.getCondition(index);
+        boolean diagnosed = diagnosisBoxes[index].isSelected();
+        diagnosis.setIsDiagnosed(diagnosed, condition);
+        if (!diagnosed) {
+            diagnosis.clearPrescriptions(condition);
+        }
+        for (CheckBox script : scriptBoxes[index]) {
+            script.setDisable(!diagnosed);
+            if (!diagnosed) {
+                script.setSelected(false);
+            }
         }
     }
 
@@ -468,24 +723,38 @@ public class MainViewController implements WarningListener {
      */
     public void updateScripts(ActionEvent event) {
         if(currentPatient != null) {
-            CheckBox[] bloodScripts = {highBloodScript1, highBloodScript2, highBloodScript3};
-            CheckBox[] cholesterolScripts = {highCholesterolScript1, highCholesterolScript2, highCholesterolScript3};
-            CheckBox[] kidneyScripts = {kidneyScript1, kidneyScript2, kidneyScript3};
-            CheckBox[] liverScripts = {liverScript1, liverScript2, liverScript3};
-            CheckBox[] boneScripts = {boneScript1, boneScript2, boneScript3};
-
-            CheckBox[][] scripts = {bloodScripts, cholesterolScripts, kidneyScripts, liverScripts, boneScripts};
-            CheckBox[] diagnoses = { highBloodPressure, highCholesterol, kidneyDisease, liverDisease, brokenHumerus};
-            Condition[] conditions = currentPatient.getDiagnosis().getConditions();
-
-            //look through all prescriptions and update values and state
-            for (int i = 0; i < 5; i++) {
-                Prescription[] prescriptions = conditions[i].getValidPrescriptions();
-                for(int j = 0; j < 3; j++)
-                {
-                    prescriptions[j].setPrescribed(scripts[i][j].isSelected());
+            Diagnosis diagnosis = currentPatient.getDiagnosis();
+            long before = diagnosis.getBits();
+
+            //only the prescription that was clicked changes, or every one when not called from a check box
+            Object source = event.getSource();
+            for (int i = 0; i < scriptBoxes.length; i++) {
+                for (int j = 0; j < scriptBoxes[i].length; j++) {
+                    if (source == scriptBoxes[i][j] || !(source instanceof CheckBox)) {
+                        diagnosis.setPrescribed(getMedication(i, j), scriptBoxes[i][j].isSelected());
+                    }
                 }
             }
+            checkInteractions(before ^ diagnosis.getBits(), 0);
+            saveCurrentPatient();
+        }
+    }
+
+    /**
+     * Warns about any medication conflict that involves something that has just changed on the
+     * current patient's chart.
+     *
+     * @param changedBits The diagnosis bits that have just changed.
+     * @param changedLabs The labs whose result has just changed, one bit per lab.
+     */
+    private void checkInteractions(long changedBits, int changedLabs) {
+        if (changedBits == 0 && changedLabs == 0) {
+            return;
+        }
+        List<String> conflicts = InteractionRules.current().findConflicts(currentPatient.getDiagnosis().getBits(),
+                currentPatient.getLabPanel().getAbnormalLabs(), changedBits, changedLabs);
+        if (!conflicts.isEmpty()) {
+            WarningManager.getInstance().showWarningToAll("Check these prescriptions:\n" + String.join("\n", conflicts));
         }
     }
 
@@ -503,8 +772,14 @@ public class MainViewController implements WarningListener {
                 updater.apply(patient, text.getText());
                 if((text == firstName || text == lastName || text == birthday) && currentPatient != nullPatient){
                     String key = lastName.getText() + firstName.getText() + birthday.getText();
-                    Main.database.updateKey(currentKey, key);
-                    currentKey = key;
+                    if (Main.database.updateKey(currentKey, key)) {
+                        currentKey = key;
+                    }
+                }
+                if (isVitalsField(text)) {
+                    saveCurrentVitals();
+                } else {
+                    saveCurrentPatient();
                 }
                 loadFields();
             }
@@ -513,6 +788,34 @@ public class MainViewController implements WarningListener {
         text.focusedProperty().addListener(listener);
     }
 
+    /**
+     * Records a change to the current patient in the database, unless no patient is loaded.
+     */
+    private void saveCurrentPatient() {
+        if (currentPatient != null && currentPatient != nullPatient) {
+            Main.database.recordChange(currentKey, currentPatient);
+        }
+    }
+
+    /**
+     * Records a change to the current patient's vitals or status in the database, unless no patient is loaded.
+     */
+    private void saveCurrentVitals() {
+        if (currentPatient != null && currentPatient != nullPatient) {
+            Main.database.updateVitals(currentKey, currentPatient);
+        }
+    }
+
+    /**
+     * Checks whether a text input control holds one of the vitals kept in the vitals file.
+     *
+     * @param text The text input control.
+     * @return {@code true} if the control is a vitals field.
+     */
+    private boolean isVitalsField(TextInputControl text) {
+        return text == bp || text == height || text == weight || text == heartRate || text == spo2 || text == bodyTemp;
+    }
+
     /**
      * Removes a previously added focus lost listener from a text input control.
      *
@@ -539,11 +842,15 @@ public class MainViewController implements WarningListener {
                 //set stay of patient;
                 Random rand = new Random();
                 currentPatient.setDischargeDate(LocalDate.now().plusDays(rand.nextInt((10) + 2)));
+                saveCurrentVitals();
+                VitalsIngest.getInstance().discharge(currentPatient);
+                EarlyWarningIndex.getInstance().discharge(currentPatient);
 
                 showWarning("Discharge Complete");
                 unloadPatient();
             }else if (passedPosition instanceof Nurse && !currentPatient.isStartedDischarged()){
                 currentPatient.setStartedDischarged(true);
+                saveCurrentVitals();
                 dischargeButton.setDisable(true);
                 admitButton.setDisable(true);
                 showWarning("Discharge has been started");
@@ -582,11 +889,16 @@ public class MainViewController implements WarningListener {
             //update patient information
             currentPatient.setAdmitted(true);
             currentPatient.setAdmittedDate(LocalDate.now());
+            saveCurrentVitals();
+            //the patient is scored from their charted vitals, and from the bed's monitor readings
+            //once they show on the patient
+            EarlyWarningIndex.getInstance().admit(currentPatient);
+            int bed = VitalsIngest.getInstance().admit(currentPatient);
 
             //update UI
             patientStatus.setText("Patient Status: Admitted");
             admitButton.setDisable(true);
-            showWarning("Patient has been Admitted");
+            showWarning(bed < 0 ? "Patient has been Admitted, no monitored bed is free" : "Patient has been Admitted to bed " + (bed + 1));
             }
     }
 
@@ -597,10 +909,41 @@ public class MainViewController implements WarningListener {
      */
     @Override
     public void showWarning(String message) {
+        //warnings from background threads, such as early warnings from the monitor feeds, are not
+        //answers to anything the user did, so they are listed without blocking the dashboard
+        if (!Platform.isFxApplicationThread()) {
+            Platform.runLater(() -> showNotification(message));
+            return;
+        }
         Alert alert = new Alert(Alert.AlertType.INFORMATION);
         alert.setTitle("Information Dialog");
         alert.setHeaderText("Information Dialog");
         alert.setContentText(message);
         alert.showAndWait();
     }
+
+    /**
+     * Lists a warning in the notifications window, opening it if it is closed. A message already
+     * listed is not repeated, and only the latest messages are kept; closing the window clears it.
+     *
+     * @param message The warning message to be listed.
+     */
+    private void showNotification(String message) {
+        if (notifications == null) {
+            notifications = new Alert(Alert.AlertType.WARNING);
+            notifications.initModality(Modality.NONE);
+            notifications.setTitle("Notifications");
+            notifications.setHeaderText("Notifications");
+            notifications.setOnHidden(event -> notified.clear());
+        }
+        if (notified.add(message)) {
+            if (notified.size() > NOTIFICATIONS_SHOWN) {
+                notified.remove(notified.iterator().next());
+            }
+            notifications.setContentText(String.join("\n", notified));
+        }
+        if (!notifications.isShowing()) {
+            notifications.show();
+        }
+    }
 }
@@ -0,0 +1,211 @@
+package hospital.ui.billing;
+
+import hospital.ui.database.Database;
+import hospital.ui.users.patients.Bill;
+import hospital.ui.users.patients.Patient;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Bills every discharged patient who has not been billed yet, in one batch, and writes the bills
+ * to a file.
+ *
+ * <p>The unbilled patients come from the database's index, so nothing is scanned. Their keys are
+ * split into chunks that are rendered in parallel on a fork-join pool. Each chunk is rendered into
+ * the worker thread's reused {@link StringBuilder} and written to the file as soon as it is done,
+ * so only a few chunks are ever held in memory however many patients are billed. Bills from
+ * different chunks may therefore appear in the file in any order.</p>
+ *
+ * <p>Patients are marked as billed only after the whole file has been written, so a run that
+ * fails part way can simply be repeated.</p>
+ */
+public class BillingRun {
+
+    //a task renders at most this many bills itself and splits larger ranges
+    private static final int BILLS_PER_CHUNK = 256;
+
+    //written between two bills in the output file
+    private static final String SEPARATOR = "\n\f\n";
+
+    /**
+     * What a billing run produced.
+     */
+    public static final class Result {
+        private final int bills;
+        private final long chars;
+        private final long nanos;
+
+        Result(int bills, long chars, long nanos) {
+            this.bills = bills;
+            this.chars = chars;
+            this.nanos = nanos;
+        }
+
+        /**
+         * Gets the number of patients billed.
+         *
+         * @return The bill count.
+         */
+        public int getBills() {
+            return bills;
+        }
+
+        /**
+         * Gets the length of all the bills written.
+         *
+         * @return The number of characters written.
+         */
+        public long getChars() {
+            return chars;
+        }
+
+        /**
+         * Gets how long the run took, including marking the patients as billed.
+         *
+         * @return The time in milliseconds.
+         */
+        public long getMillis() {
+            return nanos / 1000000;
+        }
+
+        /**
+         * Gets how fast bills were produced.
+         *
+         * @return The number of bills per second.
+         */
+        public double getBillsPerSecond() {
+            return nanos == 0 ? 0 : bills * 1e9 / nanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Billed %d patients (%d characters) in %d ms, %.0f bills per second.",
+                    bills, chars, getMillis(), getBillsPerSecond());
+        }
+    }
+
+    private final Database database;
+    private final ForkJoinPool pool;
+    private final Bill formatter = new Bill();
+
+    //each worker thread renders its chunks into the same builder, cleared between chunks
+    private final ThreadLocal<StringBuilder> buffers = ThreadLocal.withInitial(() -> new StringBuilder(BILLS_PER_CHUNK * 1024));
+
+    /**
+     * Creates a billing run over a database.
+     *
+     * @param database The database holding the patients.
+     * @param pool     The pool to render the bills in.
+     */
+    public BillingRun(Database database, ForkJoinPool pool) {
+        this.database = database;
+        this.pool = pool;
+    }
+
+    /**
+     * Bills every discharged patient who has not been billed yet.
+     *
+     * @param output The file to write the bills to; it is replaced if it exists.
+     * @return How many bills were written and how fast.
+     * @throws IOException If the file cannot be written; no patient is marked as billed.
+     */
+    public Result run(File output) throws IOException {
+        long start = System.nanoTime();
+        List<String> keys = database.getUnbilledKeys();
+
+        Chunk billed;
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(output), StandardCharsets.UTF_8), 1 << 16)) {
+            billed = pool.invoke(new RenderBills(keys, 0, keys.size(), out));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        for (String key : billed.keys) {
+            database.markBilled(key);
+        }
+
+        Result result = new Result(billed.keys.size(), billed.chars, System.nanoTime() - start);
+        System.out.println(result);
+        return result;
+    }
+
+    // the patients a task billed and how much it wrote
+    private static final class Chunk {
+        final List<String> keys;
+        long chars;
+
+        Chunk(List<String> keys, long chars) {
+            this.keys = keys;
+            this.chars = chars;
+        }
+
+        Chunk add(Chunk other) {
+            keys.addAll(other.keys);
+            chars += other.chars;
+            return this;
+        }
+    }
+
+    /**
+     * Renders the bills for a range of keys, splitting the range while it is large.
+     */
+    private class RenderBills extends RecursiveTask<Chunk> {
+        private static final long serialVersionUID = 1L;
+
+        private final List<String> keys;
+        private final int from;
+        private final int to;
+        private final Writer out;
+
+        RenderBills(List<String> keys, int from, int to, Writer out) {
+            this.keys = keys;
+            this.from = from;
+            this.to = to;
+            this.out = out;
+        }
+
+        @Override
+        protected Chunk compute() {
+            if (to - from > BILLS_PER_CHUNK) {
+                int middle = (from + to) >>> 1;
+                RenderBills left = new RenderBills(keys, from, middle, out);
+                left.fork();
+                Chunk billed = new RenderBills(keys, middle, to, out).compute();
+                return billed.add(left.join());
+            }
+
+            StringBuilder bills = buffers.get();
+            bills.setLength(0);
+            List<String> billed = new ArrayList<>(to - from);
+            for (int i = from; i < to; i++) {
+                String key = keys.get(i);
+                Patient patient = database.getPatient(key);
+                //skip patients removed or billed since the keys were found
+                if (patient == null || !patient.isDischarged() || patient.isBilled()) {
+                    continue;
+                }
+                formatter.appendBill(bills, patient);
+                bills.append(SEPARATOR);
+                billed.add(key);
+            }
+
+            try {
+                out.append(bills);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return new Chunk(billed, bills.length());
+        }
+    }
+}
@@ -0,0 +1,356 @@
+package hospital.ui.billing;
+
+import hospital.ui.database.Database;
+import hospital.ui.labs.LabCatalog;
+import hospital.ui.labs.LabPanel;
+import hospital.ui.users.patients.Patient;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * Writes a batch insurance claim file for the patients discharged in a range of days, laid out
+ * like an X12 837 professional claim: segments end with {@code ~}, elements are separated by
+ * {@code *}, and each insurance plan gets its own transaction set ({@code ST} to {@code SE})
+ * within one interchange.
+ *
+ * <p>Each claim ({@code CLM}) carries the patient's total and one service line ({@code SV1}) for
+ * the base rate, one for the days of the stay and one for each lab that was run. Labs are billed
+ * under their procedure codes in the {@link LabCatalog}. Every line of every claim in a file is
+ * priced from the one {@link PriceTable} in use when the export starts, so a table reloaded
+ * part way through cannot leave a claim whose lines do not add up to its total.</p>
+ *
+ * <p>The file is written in a single pass: plans are taken one at a time from the insurance
+ * index, their discharged patients are loaded one at a time, and segments go through one reused
+ * {@link StringBuilder} and one buffer into a {@link FileChannel}. Memory use does not grow with
+ * the number of claims.</p>
+ */
+public class ClaimExporter {
+
+    //procedure codes billed for the base rate and for each day of the stay
+    private static final String BASE_CODE = "99223";
+    private static final String DAY_CODE = "99231";
+
+    private static final String SENDER = "CARESER";
+    private static final String VERSION = "005010X222A1";
+
+    //segments are encoded into the buffer once this many characters are waiting
+    private static final int FLUSH_CHARS = 32 * 1024;
+
+    /**
+     * What an export produced.
+     */
+    public static final class Result {
+        private final int claims;
+        private final int plans;
+        private final long bytes;
+        private final long nanos;
+
+        Result(int claims, int plans, long bytes, long nanos) {
+            this.claims = claims;
+            this.plans = plans;
+            this.bytes = bytes;
+            this.nanos = nanos;
+        }
+
+        /**
+         * Gets the number of claims written.
+         *
+         * @return The claim count.
+         */
+        public int getClaims() {
+            return claims;
+        }
+
+        /**
+         * Gets the number of insurance plans with at least one claim.
+         *
+         * @return The plan count.
+         */
+        public int getPlans() {
+            return plans;
+        }
+
+        /**
+         * Gets the size of the claim file.
+         *
+         * @return The number of bytes written.
+         */
+        public long getBytes() {
+            return bytes;
+        }
+
+        /**
+         * Gets how long the export took.
+         *
+         * @return The time in milliseconds.
+         */
+        public long getMillis() {
+            return nanos / 1000000;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Exported %d claims for %d insurance plans (%d bytes) in %d ms.", claims, plans, bytes, getMillis());
+        }
+    }
+
+    private final Database database;
+
+    //the state of the export being written
+    private PriceTable prices;
+    private final int[] labRuns = new int[LabPanel.LAB_COUNT];
+    private final long[] labCosts = new long[LabPanel.LAB_COUNT];
+    private FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+    private final StringBuilder segments = new StringBuilder(FLUSH_CHARS + 4096);
+    private long bytes;
+    private int sets;
+    private int segmentsInSet;
+    private int claimsInSet;
+    private int hierarchy;
+
+    /**
+     * Creates an exporter over a database.
+     *
+     * @param database The database holding the patients.
+     */
+    public ClaimExporter(Database database) {
+        this.database = database;
+    }
+
+    /**
+     * Writes the claims of every patient discharged in a range of days.
+     *
+     * @param output             The file to write; it is replaced if it exists.
+     * @param from               The first discharge day, or {@code null} for no lower bound.
+     * @param to                 The last discharge day, or {@code null} for no upper bound.
+     * @param interchangeControl The number identifying this batch to the receiver.
+     * @return How many claims were written.
+     * @throws IOException If the file cannot be written.
+     */
+    public synchronized Result export(File output, LocalDate from, LocalDate to, int interchangeControl) throws IOException {
+        long start = System.nanoTime();
+        prices = Pricing.current();
+        bytes = 0;
+        sets = 0;
+        segments.setLength(0);
+        buffer.clear();
+
+        int claims = 0;
+        try (FileChannel out = FileChannel.open(output.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel = out;
+            LocalDateTime now = LocalDateTime.now();
+            String control = String.format("%09d", interchangeControl);
+            String date = date(now.toLocalDate());
+            String time = String.format("%02d%02d", now.getHour(), now.getMinute());
+
+            segment().append("ISA*00*          *00*          *ZZ*").append(pad(SENDER, 15)).append("*ZZ*").append(pad("PAYERS", 15))
+                    .append('*').append(date, 2, 8).append('*').append(time).append("*^*00501*").append(control).append("*0*P*:");
+            end();
+            segment().append("GS*HC*").append(SENDER).append("*PAYERS*").append(date).append('*').append(time)
+                    .append('*').append(interchangeControl).append("*X*").append(VERSION);
+            end();
+
+            for (String plan : database.getInsurancePlans()) {
+                claimsInSet = 0;
+                try {
+                    database.forEachDischargedPatient(plan, from, to, (key, patient) -> {
+                        //a plan gets a transaction set only once it has a claim
+                        if (claimsInSet == 0) {
+                            startSet(plan, control, date, time);
+                        }
+                        writeClaim(patient);
+                        claimsInSet++;
+                    });
+                } catch (ExportFailed e) {
+                    throw (IOException) e.getCause();
+                }
+                if (claimsInSet > 0) {
+                    claims += claimsInSet;
+                    //the count includes the SE segment itself
+                    segment().append("SE*").append(segmentsInSet).append('*').append(setControl(sets));
+                    end();
+                }
+            }
+
+            segment().append("GE*").append(sets).append('*').append(interchangeControl);
+            end();
+            segment().append("IEA*1*").append(control);
+            end();
+            flush(true);
+        } finally {
+            channel = null;
+        }
+
+        Result result = new Result(claims, sets, bytes, System.nanoTime() - start);
+        System.out.println(result);
+        return result;
+    }
+
+    private static String setControl(int set) {
+        return String.format("%04d", set);
+    }
+
+    private void startSet(String plan, String control, String date, String time) {
+        int set = ++sets;
+        segmentsInSet = 0;
+        hierarchy = 1;
+        String name = clean(plan);
+        segment().append("ST*837*").append(setControl(set)).append('*').append(VERSION);
+        end();
+        segment().append("BHT*0019*00*").append(control).append(setControl(set)).append('*').append(date).append('*').append(time).append("*CH");
+        end();
+        segment().append("NM1*41*2*CARES EMERGENCY ROOM*****46*").append(SENDER);
+        end();
+        segment().append("NM1*40*2*").append(name).append("*****46*").append(name);
+        end();
+        segment().append("HL*1**20*1");
+        end();
+        segment().append("NM1*85*2*CARES EMERGENCY ROOM*****XX*").append(SENDER);
+        end();
+    }
+
+    private void writeClaim(Patient patient) {
+        hierarchy++;
+        segment().append("HL*").append(hierarchy).append("*1*22*0");
+        end();
+        segment().append("SBR*P*18*******CI");
+        end();
+        segment().append("NM1*IL*1*").append(clean(patient.getLastName())).append('*').append(clean(patient.getFirstName()))
+                .append("****MI*").append(patient.getMedicalRecordNumber());
+        end();
+        String dob = dob(patient.getDob());
+        if (dob != null) {
+            segment().append("DMG*D8*").append(dob);
+            end();
+        }
+
+        String plan = patient.getInsurancePlan();
+        int days = patient.getStayDays();
+        LabPanel labs = patient.getLabPanel();
+        long baseRate = prices.getBaseRate(plan);
+        long stayCost = prices.getStayCost(plan, days);
+        long total = baseRate + stayCost;
+        for (int l = 0; l < LabPanel.LAB_COUNT; l++) {
+            labRuns[l] = labs.getTimesRun(l);
+            labCosts[l] = prices.getLabCost(plan, l, labRuns[l]);
+            total += labCosts[l];
+        }
+
+        segment().append("CLM*").append(patient.getMedicalRecordNumber()).append('*');
+        Money.append(segments, total).append("***23:A:1*Y*A*Y*Y");
+        end();
+        if (patient.getAdmittedDate() != null) {
+            segment().append("DTP*435*D8*").append(date(patient.getAdmittedDate()));
+            end();
+        }
+        segment().append("DTP*096*D8*").append(date(patient.getDischargeDate()));
+        end();
+
+        int line = 0;
+        serviceLine(++line, BASE_CODE, baseRate, 1);
+        if (days > 0) {
+            serviceLine(++line, DAY_CODE, stayCost, days);
+        }
+        for (int l = 0; l < LabPanel.LAB_COUNT; l++) {
+            if (labRuns[l] > 0) {
+                serviceLine(++line, LabCatalog.get(l).getCode(), labCosts[l], labRuns[l]);
+            }
+        }
+
+        if (segments.length() >= FLUSH_CHARS) {
+            try {
+                flush(false);
+            } catch (IOException e) {
+                throw new ExportFailed(e);
+            }
+        }
+    }
+
+    private void serviceLine(int line, String code, long cents, int units) {
+        segment().append("LX*").append(line);
+        end();
+        segment().append("SV1*HC:").append(code).append('*');
+        Money.append(segments, cents).append("*UN*").append(units).append("***1");
+        end();
+    }
+
+    private StringBuilder segment() {
+        segmentsInSet++;
+        return segments;
+    }
+
+    private void end() {
+        segments.append("~\n");
+    }
+
+    // encodes the waiting segments into the buffer, writing the buffer out whenever it fills
+    private void flush(boolean force) throws IOException {
+        for (int i = 0; i < segments.length(); i++) {
+            if (!buffer.hasRemaining()) {
+                drain();
+            }
+            char c = segments.charAt(i);
+            buffer.put(c < 128 ? (byte) c : (byte) '?');
+        }
+        segments.setLength(0);
+        if (force) {
+            drain();
+        }
+    }
+
+    private void drain() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            bytes += channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private static String date(LocalDate date) {
+        return String.format("%04d%02d%02d", date.getYear(), date.getMonthValue(), date.getDayOfMonth());
+    }
+
+    // converts a MM/DD/YYYY date of birth, or returns null if it is not in that form
+    private static String dob(String dob) {
+        if (dob == null || dob.length() != 10 || dob.charAt(2) != '/' || dob.charAt(5) != '/') {
+            return null;
+        }
+        return dob.substring(6) + dob.substring(0, 2) + dob.substring(3, 5);
+    }
+
+    // removes the characters that separate segments and elements, and uppercases the rest
+    private static String clean(String text) {
+        StringBuilder sb = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c != '*' && c != '~' && c != ':' && c != '^' && c != '\n') {
+                sb.append(Character.toUpperCase(c));
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String pad(String text, int length) {
+        StringBuilder sb = new StringBuilder(text);
+        while (sb.length() < length) {
+            sb.append(' ');
+        }
+        return sb.toString();
+    }
+
+    // carries a write failure out of the per-patient callback
+    private static final class ExportFailed extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        ExportFailed(IOException cause) {
+            super(cause);
+        }
+    }
+}
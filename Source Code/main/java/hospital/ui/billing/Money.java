@@ -0,0 +1,64 @@
+package hospital.ui.billing;
+
+/**
+ * Amounts of money held as a whole number of cents in a {@code long}, so costs add up exactly
+ * and sums over millions of charges need no objects. This class only has helpers to create and
+ * print such amounts; the amounts themselves are plain {@code long} values.
+ */
+public final class Money {
+
+    private Money() {}
+
+    /**
+     * Converts a whole number of dollars to cents.
+     *
+     * @param dollars The amount in dollars.
+     * @return The amount in cents.
+     */
+    public static long dollars(long dollars) {
+        return Math.multiplyExact(dollars, 100);
+    }
+
+    /**
+     * Converts an amount in dollars, such as one stored before amounts were kept in cents, to
+     * cents, rounding to the nearest cent.
+     *
+     * @param dollars The amount in dollars.
+     * @return The amount in cents.
+     */
+    public static long fromDouble(double dollars) {
+        return Math.round(dollars * 100);
+    }
+
+    /**
+     * Appends an amount as dollars with two decimals, such as {@code 10900.00} or {@code -0.05}.
+     *
+     * @param sb    The builder to append to.
+     * @param cents The amount in cents.
+     * @return The builder.
+     */
+    public static StringBuilder append(StringBuilder sb, long cents) {
+        long whole = cents / 100;
+        int fraction = (int) (cents % 100);
+        if (cents < 0) {
+            sb.append('-');
+            whole = -whole;
+            fraction = -fraction;
+        }
+        sb.append(whole).append('.');
+        if (fraction < 10) {
+            sb.append('0');
+        }
+        return sb.append(fraction);
+    }
+
+    /**
+     * Formats an amount as dollars with two decimals.
+     *
+     * @param cents The amount in cents.
+     * @return The formatted amount, such as {@code 10900.00}.
+     */
+    public static String format(long cents) {
+        return append(new StringBuilder(24), cents).toString();
+    }
+}
@@ -0,0 +1,303 @@
+package hospital.ui.billing;
+
+import hospital.ui.labs.LabCatalog;
+import hospital.ui.labs.LabType;
+import hospital.ui.labs.LabPanel;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Prices for the base rate, the stay and each lab, by insurance plan, compiled from a rule file.
+ *
+ * <p>The file has one rule per line; blank lines and text after {@code #} are ignored. Amounts
+ * are in dollars, and a plan of {@code *} sets the price for every plan without a rule of its
+ * own:</p>
+ *
+ * <pre>
+ * base    &lt;plan&gt; &lt;amount&gt;                   charged once per bill
+ * stay    &lt;plan&gt; &lt;from&gt;-[to] &lt;amount&gt;       daily rate for stays of from to to days
+ * lab     &lt;plan&gt; &lt;lab&gt; &lt;amount&gt;             price of one run, such as "lab * MRI 1100"
+ * repeat  &lt;plan&gt; &lt;lab|*&gt; &lt;run&gt; &lt;percent&gt;   discount on that run of a lab and every later one
+ * </pre>
+ *
+ * <p>Labs are named by their keys in the {@link LabCatalog} ({@code RED_BLOOD_CELL} to
+ * {@code STOOL_TEST}). Without a rule a lab costs its list price, and the base and daily rates
+ * are $10,900.</p>
+ *
+ * <p>Rules are compiled when the table is loaded into arrays indexed by plan number, lab position
+ * and length of stay, so pricing a patient is a few array reads whatever the number of rules.
+ * A table never changes once compiled; {@link Pricing} swaps in a new one when the file changes.</p>
+ */
+public final class PriceTable {
+
+    private static final long DEFAULT_RATE = Money.dollars(10900);
+
+    //stays longer than this many days all use the rate of the longest bracket
+    private static final int MAX_STAY_DAYS = 366;
+
+    //plan number 0 holds the prices for plans without rules of their own
+    private final Map<String, Integer> planNumbers;
+    private final long[] baseRates;
+    private final long[][] dailyRates;
+    private final long[][] labPrices;
+    private final int[][] repeatFrom;
+    private final long[][] repeatPrices;
+    private final int rules;
+
+    private PriceTable(Map<String, Integer> planNumbers, long[] baseRates, long[][] dailyRates, long[][] labPrices,
+                       int[][] repeatFrom, long[][] repeatPrices, int rules) {
+        this.planNumbers = planNumbers;
+        this.baseRates = baseRates;
+        this.dailyRates = dailyRates;
+        this.labPrices = labPrices;
+        this.repeatFrom = repeatFrom;
+        this.repeatPrices = repeatPrices;
+        this.rules = rules;
+    }
+
+    /**
+     * Gets the table with no rules: list prices for labs and the standard base and daily rates.
+     *
+     * @return The default table.
+     */
+    public static PriceTable defaults() {
+        try {
+            return parse(new StringReader(""), "defaults");
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Loads and compiles a rule file.
+     *
+     * @param file The rule file.
+     * @return The compiled table.
+     * @throws IOException If the file cannot be read or has a malformed rule.
+     */
+    public static PriceTable load(File file) throws IOException {
+        try (Reader in = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+            return parse(in, file.getName());
+        }
+    }
+
+    /**
+     * Compiles rules read from a reader.
+     *
+     * @param in     The rules.
+     * @param source A name for the rules, used in error messages.
+     * @return The compiled table.
+     * @throws IOException If the rules cannot be read or one is malformed.
+     */
+    public static PriceTable parse(Reader in, String source) throws IOException {
+        //rules for every plan are applied before a plan's own rules, so they are read first
+        List<String[]> rules = new ArrayList<>();
+        List<Integer> lines = new ArrayList<>();
+        Map<String, Integer> planNumbers = new HashMap<>();
+        planNumbers.put("*", 0);
+
+        BufferedReader reader = new BufferedReader(in);
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            int comment = line.indexOf('#');
+            if (comment >= 0) {
+                line = line.substring(0, comment);
+            }
+            line = line.trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+            String[] fields = line.split("\\s+");
+            if (fields.length < 3) {
+                throw new IOException(source + " line " + lineNumber + ": expected a rule, a plan and a price");
+            }
+            planNumbers.putIfAbsent(fields[1], planNumbers.size());
+            rules.add(fields);
+            lines.add(lineNumber);
+        }
+
+        int plans = planNumbers.size();
+        long[] baseRates = new long[plans];
+        long[][] dailyRates = new long[plans][];
+        long[][] labPrices = new long[plans][];
+        int[][] repeatFrom = new int[plans][];
+        long[][] repeatPercents = new long[plans][];
+
+        long[] listPrices = new long[LabPanel.LAB_COUNT];
+        for (int l = 0; l < listPrices.length; l++) {
+            listPrices[l] = LabCatalog.get(l).getCost();
+        }
+        baseRates[0] = DEFAULT_RATE;
+        dailyRates[0] = new long[MAX_STAY_DAYS + 1];
+        Arrays.fill(dailyRates[0], DEFAULT_RATE);
+        labPrices[0] = listPrices;
+        repeatFrom[0] = new int[LabPanel.LAB_COUNT];
+        repeatPercents[0] = new long[LabPanel.LAB_COUNT];
+
+        for (int pass = 0; pass < 2; pass++) {
+            //the second pass starts each plan from the compiled prices for every plan
+            if (pass == 1) {
+                for (int p = 1; p < plans; p++) {
+                    baseRates[p] = baseRates[0];
+                    dailyRates[p] = dailyRates[0].clone();
+                    labPrices[p] = labPrices[0].clone();
+                    repeatFrom[p] = repeatFrom[0].clone();
+                    repeatPercents[p] = repeatPercents[0].clone();
+                }
+            }
+            for (int r = 0; r < rules.size(); r++) {
+                String[] rule = rules.get(r);
+                int plan = planNumbers.get(rule[1]);
+                if ((plan == 0) != (pass == 0)) {
+                    continue;
+                }
+                try {
+                    apply(rule, plan, baseRates, dailyRates, labPrices, repeatFrom, repeatPercents);
+                } catch (IllegalArgumentException e) {
+                    throw new IOException(source + " line " + lines.get(r) + ": " + e.getMessage());
+                }
+            }
+        }
+
+        //the discounted price of a repeat run, so pricing does no arithmetic on percentages
+        long[][] repeatPrices = new long[plans][LabPanel.LAB_COUNT];
+        for (int p = 0; p < plans; p++) {
+            for (int l = 0; l < LabPanel.LAB_COUNT; l++) {
+                repeatPrices[p][l] = Math.round(labPrices[p][l] * (100 - repeatPercents[p][l]) / 100.0);
+            }
+        }
+        return new PriceTable(planNumbers, baseRates, dailyRates, labPrices, repeatFrom, repeatPrices, rules.size());
+    }
+
+    private static void apply(String[] rule, int plan, long[] baseRates, long[][] dailyRates, long[][] labPrices,
+                              int[][] repeatFrom, long[][] repeatPercents) {
+        switch (rule[0]) {
+            case "base":
+                baseRates[plan] = amount(rule, 2);
+                break;
+            case "stay": {
+                String[] range = field(rule, 2).split("-", -1);
+                int from = Integer.parseInt(range[0]);
+                int to = range.length < 2 || range[1].isEmpty() ? MAX_STAY_DAYS : Math.min(Integer.parseInt(range[1]), MAX_STAY_DAYS);
+                if (from < 0 || to < from) {
+                    throw new IllegalArgumentException("bad length of stay " + rule[2]);
+                }
+                Arrays.fill(dailyRates[plan], Math.min(from, MAX_STAY_DAYS), to + 1, amount(rule, 3));
+                break;
+            }
+            case "lab":
+                labPrices[plan][lab(field(rule, 2))] = amount(rule, 3);
+                break;
+            case "repeat": {
+                int run = Integer.parseInt(field(rule, 3));
+                int percent = Integer.parseInt(field(rule, 4));
+                if (run < 2 || percent < 0 || percent > 100) {
+                    throw new IllegalArgumentException("repeat discounts start at run 2 or later and are 0 to 100 percent");
+                }
+                for (int l = 0; l < LabPanel.LAB_COUNT; l++) {
+                    if (rule[2].equals("*") || l == lab(rule[2])) {
+                        repeatFrom[plan][l] = run;
+                        repeatPercents[plan][l] = percent;
+                    }
+                }
+                break;
+            }
+            default:
+                throw new IllegalArgumentException("unknown rule " + rule[0]);
+        }
+    }
+
+    private static String field(String[] rule, int index) {
+        if (index >= rule.length) {
+            throw new IllegalArgumentException("missing value for " + rule[0] + " rule");
+        }
+        return rule[index];
+    }
+
+    private static long amount(String[] rule, int index) {
+        String amount = field(rule, index);
+        try {
+            return Money.fromDouble(Double.parseDouble(amount));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("bad amount " + amount);
+        }
+    }
+
+    private static int lab(String name) {
+        LabType lab = LabCatalog.find(name);
+        if (lab == null) {
+            throw new IllegalArgumentException("unknown lab " + name);
+        }
+        return lab.getPosition();
+    }
+
+    // the plan's number, or 0 for the prices of plans without rules of their own
+    private int plan(String insurancePlan) {
+        Integer plan = insurancePlan == null ? null : planNumbers.get(insurancePlan);
+        return plan == null ? 0 : plan;
+    }
+
+    /**
+     * Gets the base rate charged once per bill.
+     *
+     * @param insurancePlan The patient's insurance plan.
+     * @return The base rate, in cents.
+     */
+    public long getBaseRate(String insurancePlan) {
+        return baseRates[plan(insurancePlan)];
+    }
+
+    /**
+     * Gets the cost of a stay: every day is charged the daily rate of the stay's length bracket.
+     *
+     * @param insurancePlan The patient's insurance plan.
+     * @param days          The length of the stay in days.
+     * @return The cost of the stay, in cents.
+     */
+    public long getStayCost(String insurancePlan, int days) {
+        if (days <= 0) {
+            return 0;
+        }
+        return days * dailyRates[plan(insurancePlan)][Math.min(days, MAX_STAY_DAYS)];
+    }
+
+    /**
+     * Gets the cost of every run of a lab, with any repeat discount.
+     *
+     * @param insurancePlan The patient's insurance plan.
+     * @param lab           The position of the lab in the panel.
+     * @param timesRun      How many times the lab was run.
+     * @return The cost of the runs, in cents.
+     */
+    public long getLabCost(String insurancePlan, int lab, int timesRun) {
+        int plan = plan(insurancePlan);
+        int from = repeatFrom[plan][lab];
+        if (from == 0 || timesRun < from) {
+            return labPrices[plan][lab] * timesRun;
+        }
+        return labPrices[plan][lab] * (from - 1) + repeatPrices[plan][lab] * (timesRun - from + 1);
+    }
+
+    /**
+     * Gets the number of rules the table was compiled from.
+     *
+     * @return The rule count.
+     */
+    public int getRuleCount() {
+        return rules;
+    }
+}
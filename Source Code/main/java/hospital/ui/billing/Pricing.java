@@ -0,0 +1,94 @@
+package hospital.ui.billing;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Holds the price table in use and reloads it when its file changes.
+ *
+ * <p>The table is read from {@code PriceTable.txt} (or {@code -Dcares.pricing.file}) the first
+ * time prices are needed; without the file the {@link PriceTable#defaults() default} prices are
+ * used. A background thread then checks the file every few seconds
+ * ({@code -Dcares.pricing.reloadSeconds}, 5 by default) and compiles a new table when it has
+ * changed. A file with a malformed rule is reported and the previous table is kept.</p>
+ *
+ * <p>Bills ask for {@link #current()} each time they are priced, and a new table is swapped in
+ * with a single write, so a bill is always priced from one complete table.</p>
+ */
+public final class Pricing {
+
+    private static String priceTableFile = System.getProperty("cares.pricing.file", "PriceTable.txt");
+    private static long reloadMillis = Long.getLong("cares.pricing.reloadSeconds", 5L) * 1000;
+
+    private static volatile PriceTable current;
+    private static long loadedModified;
+    private static long loadedLength;
+
+    private Pricing() {}
+
+    /**
+     * Gets the price table in use, loading it on first use.
+     *
+     * @return The current price table.
+     */
+    public static PriceTable current() {
+        PriceTable table = current;
+        if (table == null) {
+            synchronized (Pricing.class) {
+                if (current == null) {
+                    current = PriceTable.defaults();
+                    reload();
+                    startWatching();
+                }
+                table = current;
+            }
+        }
+        return table;
+    }
+
+    /**
+     * Loads the price table file now if it has changed since it was last loaded.
+     *
+     * @return {@code true} if a new table is in use.
+     */
+    public static synchronized boolean reload() {
+        File file = new File(priceTableFile);
+        long modified = file.lastModified();
+        long length = file.length();
+        if (modified == loadedModified && length == loadedLength) {
+            return false;
+        }
+        loadedModified = modified;
+        loadedLength = length;
+
+        if (!file.exists()) {
+            current = PriceTable.defaults();
+            System.out.println("No price table found, using default prices.");
+            return true;
+        }
+        try {
+            current = PriceTable.load(file);
+            System.out.println("Loaded " + current.getRuleCount() + " pricing rules from " + file.getName() + ".");
+            return true;
+        } catch (IOException e) {
+            System.out.println("Error loading price table, keeping the previous prices: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private static void startWatching() {
+        if (reloadMillis <= 0) {
+            return;
+        }
+        ScheduledExecutorService watcher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "price-table-watcher");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+        watcher.scheduleWithFixedDelay(Pricing::reload, reloadMillis, reloadMillis, TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,194 @@
+package hospital.ui.billing;
+
+import hospital.ui.database.Database;
+import hospital.ui.labs.LabPanel;
+import hospital.ui.users.patients.Bill;
+import hospital.ui.users.patients.Patient;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Revenue totals by day, by kind of charge and by insurance plan.
+ *
+ * <p>Each charge is one entry in four parallel primitive arrays: the amount in cents, the epoch
+ * day it is dated, its kind (a lab position from {@link LabPanel}, or {@link #STAY}) and the
+ * number of its insurance plan. A total is one pass over the arrays adding {@code long}s into
+ * another array indexed by day, kind or plan, so millions of charges are summed exactly, without
+ * creating an object per charge.</p>
+ */
+public class RevenueReport {
+
+    /**
+     * The kind of the charge for the stay, including the base rate. Kinds below it are labs.
+     */
+    public static final int STAY = LabPanel.LAB_COUNT;
+
+    /**
+     * The number of kinds of charge.
+     */
+    public static final int KINDS = STAY + 1;
+
+    private long[] amounts = new long[1024];
+    private int[] days = new int[1024];
+    private byte[] kinds = new byte[1024];
+    private int[] plans = new int[1024];
+    private int size = 0;
+
+    private final Map<String, Integer> planNumbers = new HashMap<>();
+    private final List<String> planNames = new ArrayList<>();
+    private int firstDay = Integer.MAX_VALUE;
+    private int lastDay = Integer.MIN_VALUE;
+
+    /**
+     * Builds the report from the bills of every discharged patient, each dated on the day the
+     * patient was discharged.
+     *
+     * @param database The database holding the patients.
+     * @return The report.
+     */
+    public static RevenueReport of(Database database) {
+        RevenueReport report = new RevenueReport();
+        Bill bill = new Bill();
+        for (Patient patient : database.findPatientsDischargedBetween(null, null)) {
+            report.addBill(bill, patient);
+        }
+        return report;
+    }
+
+    /**
+     * Adds the charges on a patient's bill: one for the stay and one for each lab that was run.
+     *
+     * @param bill    The bill used to price the charges.
+     * @param patient The patient, whose charges are dated on their discharge day.
+     */
+    public void addBill(Bill bill, Patient patient) {
+        LocalDate day = patient.getDischargeDate();
+        String plan = patient.getInsurancePlan();
+        LabPanel labs = patient.getLabPanel();
+        for (int l = 0; l < LabPanel.LAB_COUNT; l++) {
+            if (labs.getTimesRun(l) > 0) {
+                addCharge(day, l, plan, bill.getLabCost(patient, l));
+            }
+        }
+        addCharge(day, STAY, plan, bill.getBaseRate(patient) + bill.getStayCost(patient));
+    }
+
+    /**
+     * Adds one charge.
+     *
+     * @param day   The day the charge is dated.
+     * @param kind  The position of the lab in the panel, or {@link #STAY}.
+     * @param plan  The insurance plan billed.
+     * @param cents The amount in cents.
+     */
+    public void addCharge(LocalDate day, int kind, String plan, long cents) {
+        if (size == amounts.length) {
+            int capacity = size * 2;
+            amounts = Arrays.copyOf(amounts, capacity);
+            days = Arrays.copyOf(days, capacity);
+            kinds = Arrays.copyOf(kinds, capacity);
+            plans = Arrays.copyOf(plans, capacity);
+        }
+
+        int epochDay = (int) day.toEpochDay();
+        Integer planNumber = planNumbers.get(plan);
+        if (planNumber == null) {
+            planNumber = planNames.size();
+            planNumbers.put(plan, planNumber);
+            planNames.add(plan);
+        }
+        amounts[size] = cents;
+        days[size] = epochDay;
+        kinds[size] = (byte) kind;
+        plans[size] = planNumber;
+        size++;
+        firstDay = Math.min(firstDay, epochDay);
+        lastDay = Math.max(lastDay, epochDay);
+    }
+
+    /**
+     * Gets the number of charges in the report.
+     *
+     * @return The charge count.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Adds up every charge.
+     *
+     * @return The total in cents.
+     */
+    public long getTotal() {
+        long total = 0;
+        for (int i = 0; i < size; i++) {
+            total += amounts[i];
+        }
+        return total;
+    }
+
+    /**
+     * Adds up the charges of each kind.
+     *
+     * @return The totals in cents, indexed by lab position, with the stay at {@link #STAY}.
+     */
+    public long[] getTotalsByKind() {
+        long[] totals = new long[KINDS];
+        for (int i = 0; i < size; i++) {
+            totals[kinds[i]] += amounts[i];
+        }
+        return totals;
+    }
+
+    /**
+     * Adds up the charges dated on each day.
+     *
+     * @return The total in cents of each day that has charges, in date order.
+     */
+    public SortedMap<LocalDate, Long> getTotalsByDay() {
+        SortedMap<LocalDate, Long> byDay = new TreeMap<>();
+        if (size == 0) {
+            return byDay;
+        }
+
+        long[] totals = new long[lastDay - firstDay + 1];
+        boolean[] charged = new boolean[totals.length];
+        for (int i = 0; i < size; i++) {
+            totals[days[i] - firstDay] += amounts[i];
+            charged[days[i] - firstDay] = true;
+        }
+        for (int d = 0; d < totals.length; d++) {
+            if (charged[d]) {
+                byDay.put(LocalDate.ofEpochDay(firstDay + d), totals[d]);
+            }
+        }
+        return byDay;
+    }
+
+    /**
+     * Adds up the charges billed to each insurance plan.
+     *
+     * @return The total in cents of each plan, in the order the plans were first seen.
+     */
+    public Map<String, Long> getTotalsByPlan() {
+        long[] totals = new long[planNames.size()];
+        for (int i = 0; i < size; i++) {
+            totals[plans[i]] += amounts[i];
+        }
+
+        Map<String, Long> byPlan = new LinkedHashMap<>();
+        for (int p = 0; p < totals.length; p++) {
+            byPlan.put(planNames.get(p), totals[p]);
+        }
+        return byPlan;
+    }
+}
@@ -0,0 +1,155 @@
+package hospital.ui.database;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically writes a fresh patient snapshot on a background thread so the write-ahead log
+ * stays short and replay time on startup stays bounded, no matter how long the application has
+ * been running. A checkpoint is taken when the checkpoint interval has passed or the log has grown
+ * past a size threshold, whichever comes first.
+ *
+ * <p>The checkpointer also keeps simple metrics about the checkpoints it has taken.</p>
+ */
+public class Checkpointer implements Closeable {
+
+    private static final long POLL_MILLIS = 1000;
+
+    private final Database database;
+    private final long intervalMillis;
+    private final long logSizeThreshold;
+    private final ScheduledExecutorService executor;
+
+    private volatile long lastCheckpoint = System.currentTimeMillis();
+    private volatile long checkpointCount = 0;
+    private volatile long lastDurationMillis = 0;
+    private volatile long lastBytesWritten = 0;
+    private volatile long totalDurationMillis = 0;
+    private volatile long totalBytesWritten = 0;
+
+    /**
+     * Creates a checkpointer for a database. Nothing runs until {@link #start()} is called.
+     *
+     * @param database         The database to checkpoint.
+     * @param intervalMillis   The longest time between two checkpoints while there are logged changes.
+     * @param logSizeThreshold The log size, in bytes, that triggers a checkpoint early.
+     */
+    public Checkpointer(Database database, long intervalMillis, long logSizeThreshold) {
+        this.database = database;
+        this.intervalMillis = intervalMillis;
+        this.logSizeThreshold = logSizeThreshold;
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "patient-checkpointer");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+    }
+
+    /**
+     * Starts checking the checkpoint thresholds in the background.
+     */
+    public void start() {
+        executor.scheduleWithFixedDelay(this::poll, POLL_MILLIS, POLL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    // checkpointNow reports every failure itself: an exception escaping a scheduled poll would
+    // silently cancel all the polls after it
+    private void poll() {
+        long logSize = database.getLogSize();
+        if (logSize == 0) {
+            return;
+        }
+
+        boolean intervalPassed = System.currentTimeMillis() - lastCheckpoint >= intervalMillis;
+        if (intervalPassed || logSize >= logSizeThreshold) {
+            checkpointNow();
+        }
+    }
+
+    /**
+     * Takes a checkpoint on the calling thread and records its metrics. A checkpoint that fails is
+     * reported, and the log records it would have covered are kept for the next one.
+     */
+    public void checkpointNow() {
+        long start = System.nanoTime();
+        try {
+            long bytes = database.checkpoint();
+            long duration = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            synchronized (this) {
+                checkpointCount++;
+                lastDurationMillis = duration;
+                lastBytesWritten = bytes;
+                totalDurationMillis += duration;
+                totalBytesWritten += bytes;
+            }
+            System.out.println("Checkpoint written: " + bytes + " bytes in " + duration + " ms");
+        } catch (IOException | RuntimeException e) {
+            System.out.println("Error writing checkpoint: " + e.getMessage());
+        } finally {
+            lastCheckpoint = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Gets the number of checkpoints taken so far.
+     *
+     * @return The checkpoint count.
+     */
+    public long getCheckpointCount() {
+        return checkpointCount;
+    }
+
+    /**
+     * Gets how long the most recent checkpoint took.
+     *
+     * @return The duration in milliseconds.
+     */
+    public long getLastDurationMillis() {
+        return lastDurationMillis;
+    }
+
+    /**
+     * Gets the size of the snapshot written by the most recent checkpoint.
+     *
+     * @return The number of bytes written.
+     */
+    public long getLastBytesWritten() {
+        return lastBytesWritten;
+    }
+
+    /**
+     * Gets the total time spent writing checkpoints.
+     *
+     * @return The duration in milliseconds.
+     */
+    public long getTotalDurationMillis() {
+        return totalDurationMillis;
+    }
+
+    /**
+     * Gets the total number of bytes written by all checkpoints.
+     *
+     * @return The number of bytes written.
+     */
+    public long getTotalBytesWritten() {
+        return totalBytesWritten;
+    }
+
+    /**
+     * Stops the background thread, waiting for a checkpoint in progress to finish.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
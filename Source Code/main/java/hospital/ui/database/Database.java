@@ -1,126 +1,1270 @@
 package hospital.ui.database;
 
+import hospital.ui.database.index.CohortIndex;
+import hospital.ui.database.index.DuplicateIndex;
+import hospital.ui.database.index.FieldIndex;
+import hospital.ui.database.index.FieldIndexGroup;
+import hospital.ui.database.index.HashFieldIndex;
+import hospital.ui.database.index.LongIndex;
+import hospital.ui.database.index.NameSearchIndex;
+import hospital.ui.database.index.PatientIndex;
+import hospital.ui.database.index.SortedFieldIndex;
 import hospital.ui.users.patients.Patient;
 import hospital.ui.users.staff.*;
 import hospital.ui.warnings.WarningManager;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 
 /**
  * Represents a database for managing patient and staff information in a medical context.
  * This class provides functionality to load, save, and update patient and staff data using hash tables.
  * It supports serializing the data to files and deserializing it back into the application.
+ *
+ * <p>The patient and login tables are concurrent maps, so lookups do not take a lock and do not
+ * wait for each other. Changes (check-in, rekey, recording a change) are made while holding the
+ * database's lock, which keeps them atomic and keeps the write-ahead log in the same order as the
+ * table.</p>
  */
 public class Database implements Serializable
 {
     private static String patientDataFile = "PatientData";
     private static String loginDataFile = "LoginData";
+    private static String patientLogFile = "PatientData.wal";
+    private static String patientLogArchiveFile = "PatientData.wal.old";
+    private static String vitalsDataFile = "PatientVitals.dat";
+
+    //write-ahead log settings, overridable with -Dcares.wal.sync=always|group_commit|none etc.
+    private static WriteAheadLog.SyncPolicy logSyncPolicy =
+            WriteAheadLog.SyncPolicy.valueOf(System.getProperty("cares.wal.sync", "group_commit").toUpperCase());
+    private static int logGroupSize = Integer.getInteger("cares.wal.groupSize", 32);
+    private static long logGroupMillis = Long.getLong("cares.wal.groupMillis", 200L);
+
+    //checkpoint settings, overridable with -Dcares.checkpoint.intervalSeconds and -Dcares.checkpoint.logBytes
+    private static long checkpointIntervalMillis = Long.getLong("cares.checkpoint.intervalSeconds", 300L) * 1000;
+    private static long checkpointLogBytes = Long.getLong("cares.checkpoint.logBytes", 4L * 1024 * 1024);
+
+    //storage mode, -Dcares.storage=lazy reads only the snapshot index at startup and loads patients on demand
+    private static boolean lazyStorage = "lazy".equalsIgnoreCase(System.getProperty("cares.storage", "eager"));
+    private static int cacheMaxPatients = Integer.getInteger("cares.cache.maxPatients", 5000);
+    private static long cacheMaxBytes = Long.getLong("cares.cache.maxBytes", 16L * 1024 * 1024);
+
+    //medical record numbers are handed out counting up from here
+    private static final long FIRST_MEDICAL_RECORD_NUMBER = 1000000;
 
     //private Objects made for hashtable databases
-    private Hashtable<String, Patient> patientTable = new Hashtable<String, Patient>();
-    private Hashtable<String, Staff> loginTable = new Hashtable<String, Staff>();
+    //in lazy storage the patient table only holds patients with changes that are not in the snapshot yet
+    private ConcurrentHashMap<String, Patient> patientTable = new ConcurrentHashMap<>();
+    private ConcurrentHashMap<String, Staff> loginTable = new ConcurrentHashMap<>();
+
+    //log of patient changes made since the last snapshot
+    private transient WriteAheadLog patientLog;
+    private transient Checkpointer checkpointer;
+    private final transient Object checkpointLock = new Object();
+
+    //lazy storage: the indexed snapshot, the keys whose latest state is in it, and recently used patients
+    private transient SnapshotFile snapshot;
+    private transient Set<String> onDisk = new HashSet<>();
+    private transient PatientCache cache = new PatientCache(cacheMaxPatients, cacheMaxBytes);
+
+    //keys changed or removed since the log was last rotated, used to finish a checkpoint
+    private transient Set<String> changedSinceRotation = new HashSet<>();
+    private transient Set<String> removedSinceRotation = new HashSet<>();
+
+    //fixed-size vitals and status blocks, updated in place; each change is also logged as a compact record
+    private transient VitalsFile vitals;
+
+    //medical record number to patient key, covering patients in memory and on disk
+    private transient LongIndex<String> medicalRecordIndex = new LongIndex<>();
+    private transient long nextMedicalRecordNumber = FIRST_MEDICAL_RECORD_NUMBER;
+
+    //secondary indexes kept up to date with every change: names for typeahead search, and
+    //phonetic blocks for finding duplicate patients
+    private final transient NameSearchIndex nameIndex = new NameSearchIndex();
+    private final transient DuplicateIndex duplicateIndex = new DuplicateIndex();
+
+    //indexes on single patient fields, each defined by the getter it indexes
+    private final transient HashFieldIndex<String> phoneIndex = new HashFieldIndex<>("phone", Patient::getPhoneNum);
+    private final transient HashFieldIndex<String> emergencyContactIndex = new HashFieldIndex<>("emergencyContact", Patient::getEmergencyContact);
+    private final transient HashFieldIndex<String> insuranceIndex = new HashFieldIndex<>("insurance", Patient::getInsurancePlan);
+    private final transient SortedFieldIndex<LocalDate> admittedDateIndex = new SortedFieldIndex<>("admittedDate",
+            patient -> patient.isAdmitted() ? patient.getAdmittedDate() : null);
+    private final transient SortedFieldIndex<LocalDate> dischargeDateIndex = new SortedFieldIndex<>("dischargeDate",
+            patient -> patient.isDischarged() ? patient.getDischargeDate() : null);
+
+    //the census: patients admitted and not yet discharged, by admission date
+    private final transient SortedFieldIndex<LocalDate> censusIndex = new SortedFieldIndex<>("census",
+            patient -> patient.isAdmitted() && !patient.isDischarged() ? patient.getAdmittedDate() : null);
+
+    //patients waiting for the next billing run, by discharge date
+    private final transient SortedFieldIndex<LocalDate> unbilledIndex = new SortedFieldIndex<>("unbilled",
+            patient -> patient.isDischarged() && !patient.isBilled() ? patient.getDischargeDate() : null);
+
+    //the field indexes are updated as one group, which keeps their last seen values in one table
+    private final transient FieldIndexGroup fieldIndexes = new FieldIndexGroup(phoneIndex, emergencyContactIndex,
+            insuranceIndex, admittedDateIndex, dischargeDateIndex, censusIndex, unbilledIndex);
+
+    //bitmaps over lab results, diagnoses and prescriptions for cohort queries
+    private final transient CohortIndex cohortIndex = new CohortIndex();
+
+    private final transient List<PatientIndex> indexes = new CopyOnWriteArrayList<>(List.of(nameIndex, duplicateIndex,
+            fieldIndexes, cohortIndex));
+    //completed once the indexes have been filled after loading
+    private final transient CompletableFuture<Void> indexesBuilt = new CompletableFuture<>();
+    //run on every patient read back from disk
+    private final transient List<Consumer<Patient>> readListeners = new CopyOnWriteArrayList<>();
 
     public Database () {}
 
     /**
-     * Retrieves the hashtable containing staff login data.
+     * Retrieves the table containing staff login data.
      *
-     * @return A hashtable mapping staff IDs to {@link Staff} objects.
+     * @return A map of staff IDs to {@link Staff} objects.
      */
-    public Hashtable<String, Staff> getLoginTable()
+    public Map<String, Staff> getLoginTable()
     {
         return loginTable;
     }
 
     /**
-     * Retrieves the hashtable containing patient data.
+     * Looks up a staff member by login key without taking a lock.
      *
-     * @return A hashtable mapping patient IDs to {@link Patient} objects.
+     * @param loginKey The username followed by the password.
+     * @return The staff member, or {@code null} if the key does not match anyone.
      */
-    public Hashtable<String, Patient> getPatientTable()
+    public Staff getStaff(String loginKey) {
+        return loginTable.get(loginKey);
+    }
+
+    /**
+     * Retrieves a read-only view of the patient data held in memory. With lazy storage this is
+     * only the patients changed since the last checkpoint; use {@link #getPatient(String)} to look
+     * up any patient and {@link #forEachPatient(BiConsumer)} to go through all of them.
+     *
+     * @return A map of patient IDs to {@link Patient} objects.
+     */
+    public Map<String, Patient> getPatientTable()
     {
-        return patientTable;
+        return Collections.unmodifiableMap(patientTable);
+    }
+
+    /**
+     * Looks up a patient by key. Patients held in memory are found without taking a lock. With
+     * lazy storage a patient that is not in memory is read from the snapshot file and kept in the cache.
+     *
+     * @param key The key of the patient.
+     * @return The patient, or {@code null} if there is no patient with this key.
+     */
+    public Patient getPatient(String key) {
+        Patient patient = patientTable.get(key);
+        if (patient != null || !lazyStorage) {
+            return patient;
+        }
+        synchronized (this) {
+            return faultInPatient(key);
+        }
+    }
+
+    // finds a patient that is not in the patient table, in the cache or on disk; called with the lock held
+    private Patient faultInPatient(String key) {
+        Patient patient = patientTable.get(key);
+        if (patient != null) {
+            return patient;
+        }
+
+        patient = cache.get(key);
+        if (patient == null && onDisk.contains(key) && snapshot != null) {
+            try {
+                patient = snapshot.read(key);
+                applyVitals(patient);
+                restore(patient);
+                cache.put(key, patient, snapshot.length(key));
+            } catch (IOException e) {
+                System.out.println("Error reading patient: " + e.getMessage());
+            }
+        }
+        return patient;
+    }
+
+    /**
+     * Looks up a patient by medical record number, for example one scanned from a wristband.
+     * The number is found in a primitive index without building a key string.
+     *
+     * @param medicalRecordNumber The medical record number.
+     * @return The patient, or {@code null} if no patient has this number.
+     */
+    public Patient getPatientByMrn(long medicalRecordNumber) {
+        while (true) {
+            String key = medicalRecordIndex.get(medicalRecordNumber);
+            if (key == null) {
+                return null;
+            }
+            Patient patient = getPatient(key);
+            //a patient rekeyed since its key was read is looked up again under the new key
+            if (patient != null || Objects.equals(key, medicalRecordIndex.get(medicalRecordNumber))) {
+                return patient;
+            }
+        }
+    }
+
+    /**
+     * Gets the key under which the patient with a medical record number is stored.
+     *
+     * @param medicalRecordNumber The medical record number.
+     * @return The patient's key, or {@code null} if no patient has this number.
+     */
+    public String getPatientKey(long medicalRecordNumber) {
+        return medicalRecordIndex.get(medicalRecordNumber);
+    }
+
+    /**
+     * Finds patients whose name starts with what has been typed so far, for as-you-type search.
+     * Either name order works ("smith, jo" or "john sm"), and letter case and punctuation are ignored.
+     *
+     * @param text  The text typed so far.
+     * @param limit The most matches to return.
+     * @return Up to {@code limit} matching patients, in name order.
+     */
+    public List<NameSearchIndex.Match> searchPatientsByName(String text, int limit) {
+        return nameIndex.search(text, limit);
+    }
+
+    /**
+     * Finds patients that are likely to be the same person as the given patient, with a similar
+     * name and the same date of birth. Used at check-in to warn before a second chart is started.
+     *
+     * @param key     The key of the patient, which is left out of the results.
+     * @param patient The patient.
+     * @return The likely duplicates, best match first.
+     */
+    public List<DuplicateIndex.MergeCandidate> findLikelyDuplicates(String key, Patient patient) {
+        return duplicateIndex.findLikelyDuplicates(key, patient);
+    }
+
+    /**
+     * Runs the duplicate detection job over every patient, comparing within each phonetic block
+     * in parallel on the common fork-join pool.
+     *
+     * @return The pairs of patients that are likely to be the same person, best match first.
+     */
+    public List<DuplicateIndex.MergeCandidate> findDuplicatePatients() {
+        return duplicateIndex.findAllDuplicates(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Finds the patients with a phone number.
+     *
+     * @param phoneNum The phone number, as entered.
+     * @return The matching patients.
+     */
+    public List<Patient> findPatientsByPhone(String phoneNum) {
+        return findPatients(phoneIndex, phoneNum);
+    }
+
+    /**
+     * Finds the patients with an emergency contact number.
+     *
+     * @param emergencyContact The emergency contact number, as entered.
+     * @return The matching patients.
+     */
+    public List<Patient> findPatientsByEmergencyContact(String emergencyContact) {
+        return findPatients(emergencyContactIndex, emergencyContact);
+    }
+
+    /**
+     * Finds the patients on an insurance plan.
+     *
+     * @param insurancePlan The insurance plan.
+     * @return The matching patients.
+     */
+    public List<Patient> findPatientsByInsurance(String insurancePlan) {
+        return findPatients(insuranceIndex, insurancePlan);
+    }
+
+    /**
+     * Finds the admitted patients whose admission date is in a range, earliest first.
+     *
+     * @param from The first day, or {@code null} for no lower bound.
+     * @param to   The last day, or {@code null} for no upper bound.
+     * @return The matching patients.
+     */
+    public List<Patient> findPatientsAdmittedBetween(LocalDate from, LocalDate to) {
+        return getPatients(admittedDateIndex.findRange(from, to));
+    }
+
+    /**
+     * Finds the discharged patients whose discharge date is in a range, earliest first.
+     *
+     * @param from The first day, or {@code null} for no lower bound.
+     * @param to   The last day, or {@code null} for no upper bound.
+     * @return The matching patients.
+     */
+    public List<Patient> findPatientsDischargedBetween(LocalDate from, LocalDate to) {
+        return getPatients(dischargeDateIndex.findRange(from, to));
+    }
+
+    /**
+     * Finds the patients discharged on a day, such as today for a billing run.
+     *
+     * @param day The day.
+     * @return The matching patients.
+     */
+    public List<Patient> findPatientsDischargedOn(LocalDate day) {
+        return findPatientsDischargedBetween(day, day);
+    }
+
+    /**
+     * Finds the patients who are currently admitted, that is admitted and not yet discharged,
+     * longest stay first.
+     *
+     * @return The admitted patients.
+     */
+    public List<Patient> findCurrentlyAdmitted() {
+        return getPatients(censusIndex.findRange(null, null));
+    }
+
+    /**
+     * Counts the patients who are currently admitted, without loading any of them.
+     *
+     * @return The census.
+     */
+    public int getCensus() {
+        return censusIndex.size();
+    }
+
+    /**
+     * Counts the currently admitted patients who were admitted in a range of days.
+     *
+     * @param from The first day, or {@code null} for no lower bound.
+     * @param to   The last day, or {@code null} for no upper bound.
+     * @return The number of matching patients.
+     */
+    public int getCensus(LocalDate from, LocalDate to) {
+        return censusIndex.countRange(from, to);
+    }
+
+    /**
+     * Gets the insurance plans of the patients.
+     *
+     * @return The distinct insurance plans.
+     */
+    public Set<String> getInsurancePlans() {
+        return new TreeSet<>(insuranceIndex.values());
+    }
+
+    /**
+     * Visits the patients on an insurance plan who were discharged in a range of days. The
+     * discharge date of each patient on the plan is read from the discharge date index, so only
+     * the matching patients are loaded, one at a time.
+     *
+     * @param insurancePlan The insurance plan.
+     * @param from          The first discharge day, or {@code null} for no lower bound.
+     * @param to            The last discharge day, or {@code null} for no upper bound.
+     * @param action        Called with the key and the patient of each match.
+     */
+    public void forEachDischargedPatient(String insurancePlan, LocalDate from, LocalDate to, BiConsumer<String, Patient> action) {
+        for (String key : insuranceIndex.find(insurancePlan)) {
+            LocalDate discharged = dischargeDateIndex.get(key);
+            if (discharged == null || (from != null && discharged.isBefore(from)) || (to != null && discharged.isAfter(to))) {
+                continue;
+            }
+            Patient patient = getPatient(key);
+            if (patient != null) {
+                action.accept(key, patient);
+            }
+        }
+    }
+
+    /**
+     * Gets the keys of the discharged patients who have not been billed yet, earliest discharge
+     * first. Only keys are returned, so a billing run can load the patients a few at a time.
+     *
+     * @return The keys of the unbilled patients.
+     */
+    public List<String> getUnbilledKeys() {
+        return unbilledIndex.findRange(null, null);
+    }
+
+    /**
+     * Records that a patient's bill has been produced. Like other status changes this writes the
+     * patient's block in the vitals file and logs the block, not the whole patient.
+     *
+     * @param key The key of the billed patient.
+     */
+    public void markBilled(String key) {
+        Patient patient = getPatient(key);
+        if (patient != null) {
+            patient.setBilled(true);
+            updateVitals(key, patient);
+        }
+    }
+
+    /**
+     * Starts a cohort query over the lab results, diagnoses and prescriptions of every patient,
+     * answered from bitmap indexes. See {@link CohortIndex} for an example.
+     *
+     * @return A query matching every patient, to be narrowed down.
+     */
+    public CohortIndex.Query cohort() {
+        return cohortIndex.query();
+    }
+
+    /**
+     * Finds the patients in a cohort.
+     *
+     * @param query The cohort query.
+     * @return The matching patients.
+     */
+    public List<Patient> findPatients(CohortIndex.Query query) {
+        return getPatients(query.keys());
+    }
+
+    /**
+     * Finds the patients whose indexed field has a value, using an index registered with
+     * {@link #addIndex(PatientIndex)} (or one of the built-in ones) instead of looking at every patient.
+     *
+     * @param index The index to use.
+     * @param value The value to look for.
+     * @param <V>   The type of the indexed field.
+     * @return The matching patients.
+     */
+    public <V> List<Patient> findPatients(FieldIndex<V> index, V value) {
+        return getPatients(new ArrayList<>(index.find(value)));
+    }
+
+    // looks up patients by key, skipping any removed since the keys were found
+    private List<Patient> getPatients(List<String> keys) {
+        List<Patient> patients = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            Patient patient = getPatient(key);
+            if (patient != null) {
+                patients.add(patient);
+            }
+        }
+        return patients;
+    }
+
+    /**
+     * Registers a secondary index. It is filled with every patient straight away and then kept up
+     * to date as patients are added, changed and rekeyed.
+     *
+     * @param index The index to register.
+     */
+    public void addIndex(PatientIndex index) {
+        indexes.add(index);
+        fillIndexes(List.of(index), false);
+    }
+
+    // adds every patient to the given indexes, reading and indexing each patient under the lock so
+    // a change made meanwhile is never overwritten with an older state; keys are sorted first
+    // because sorted indexes fill several times faster in order. The built-in indexes only need
+    // the indexed fields, which are read in one pass over the snapshot's index instead of
+    // decoding whole patients. Neither way puts patients in the cache, so filling does not evict
+    // the working set.
+    private void fillIndexes(List<PatientIndex> targets, boolean indexFieldsOnly) {
+        Set<String> filled = indexFieldsOnly ? fillFromIndexFields(targets) : Collections.emptySet();
+        List<String> keys = getPatientKeys();
+        Collections.sort(keys);
+        for (String key : keys) {
+            if (filled.contains(key)) {
+                continue;
+            }
+            synchronized (this) {
+                Patient patient = indexFieldsOnly ? readIndexFields(key) : readPatient(key);
+                if (patient != null) {
+                    for (PatientIndex index : targets) {
+                        index.update(key, patient);
+                    }
+                }
+            }
+        }
+    }
+
+    // indexes the patients that are only on disk from the indexed fields in the snapshot's index,
+    // which is in key order; gives the keys indexed, and the rest are read one at a time
+    private Set<String> fillFromIndexFields(List<PatientIndex> targets) {
+        SnapshotFile source;
+        synchronized (this) {
+            source = snapshot;
+        }
+        Set<String> filled = new HashSet<>();
+        if (source == null || !source.hasIndexFields()) {
+            return filled;
+        }
+        try {
+            source.forEachIndexFields((key, patient) -> {
+                synchronized (this) {
+                    if (snapshot != source) {
+                        //a checkpoint replaced the snapshot, the rest are read from the new one
+                        return false;
+                    }
+                    if (!patientTable.containsKey(key) && onDisk.contains(key)) {
+                        applyVitals(patient);
+                        for (PatientIndex index : targets) {
+                            index.update(key, patient);
+                        }
+                        filled.add(key);
+                    }
+                    return true;
+                }
+            });
+        } catch (IOException e) {
+            synchronized (this) {
+                //reading fails once a checkpoint has closed the snapshot, which is not an error
+                if (snapshot == source) {
+                    System.out.println("Error reading patient index: " + e.getMessage());
+                }
+            }
+        }
+        return filled;
+    }
+
+    /**
+     * Fills the secondary indexes after loading. This runs in the background so a large census
+     * does not hold up startup; searches see patients as they are added, and changes made in the
+     * meantime are indexed straight away as usual.
+     */
+    private void buildIndexes() {
+        Thread thread = new Thread(() -> {
+            long start = System.nanoTime();
+            try {
+                fillIndexes(indexes, true);
+                System.out.println("Indexed " + nameIndex.size() + " patients in " + (System.nanoTime() - start) / 1000000 + " ms.");
+            } finally {
+                indexesBuilt.complete(null);
+            }
+        }, "patient-index-builder");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Runs an action once the secondary indexes have been filled after loading, such as one that
+     * reads the census. The action runs on the thread that filled the indexes, or straight away
+     * on the calling thread if they are already filled.
+     *
+     * @param action The action to run.
+     */
+    public void whenIndexed(Runnable action) {
+        indexesBuilt.thenRun(() -> {
+            try {
+                action.run();
+            } catch (RuntimeException e) {
+                System.out.println("Error after indexing patients: " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Registers an action to run on every patient read back from disk. A patient evicted from the
+     * cache comes back as a new object, so state kept on the patient object rather than in its
+     * record, such as the buffer of a bedside monitor, is handed to the new object here. The
+     * action runs while holding the database lock.
+     *
+     * @param listener The action to run.
+     */
+    public void addReadListener(Consumer<Patient> listener) {
+        readListeners.add(listener);
+    }
+
+    // hands a patient just read from disk to the read listeners
+    private void restore(Patient patient) {
+        if (patient == null) {
+            return;
+        }
+        for (Consumer<Patient> listener : readListeners) {
+            try {
+                listener.accept(patient);
+            } catch (RuntimeException e) {
+                System.out.println("Error restoring patient: " + e.getMessage());
+            }
+        }
+    }
+
+    private void updateIndexes(String key, Patient patient) {
+        for (PatientIndex index : indexes) {
+            index.update(key, patient);
+        }
+    }
+
+    /**
+     * Checks whether a patient with the given key exists.
+     *
+     * @param key The key of the patient.
+     * @return {@code true} if the patient exists, in memory or on disk.
+     */
+    public boolean containsPatient(String key) {
+        if (patientTable.containsKey(key)) {
+            return true;
+        }
+        if (!lazyStorage) {
+            return false;
+        }
+        synchronized (this) {
+            return patientTable.containsKey(key) || onDisk.contains(key);
+        }
+    }
+
+    /**
+     * Adds a new patient if no patient with the same key exists, and logs it.
+     *
+     * @param key     The key of the patient.
+     * @param patient The patient to add.
+     * @return {@code true} if the patient was added, {@code false} if the key is already taken.
+     */
+    public boolean addPatient(String key, Patient patient) {
+        return checkInPatient(key, k -> patient) == patient;
+    }
+
+    /**
+     * Checks a patient in: returns the patient with the given key if there is one, and otherwise
+     * creates a patient with the factory, gives it the next medical record number, adds it and
+     * logs it. The check and the add happen as one step, so two staff members checking in the
+     * same person at once cannot both create a record.
+     *
+     * @param key     The key of the patient.
+     * @param factory Creates the patient if the key is not taken yet.
+     * @return The existing patient, or the newly added one.
+     */
+    public synchronized Patient checkInPatient(String key, Function<String, Patient> factory) {
+        Patient patient = getPatient(key);
+        if (patient != null) {
+            return patient;
+        }
+
+        patient = factory.apply(key);
+        if (patient.getMedicalRecordNumber() == 0) {
+            patient.setMedicalRecordNumber(nextMedicalRecordNumber++);
+        }
+        assignVitalsSlot(patient);
+        recordChange(key, patient);
+        return patient;
+    }
+
+    /**
+     * Calls an action for every patient, in memory or on disk. The set of keys is taken in one
+     * step before the first call, so patients checked in or rekeyed during the walk do not show up
+     * and changes made by the action do not disturb it. With lazy storage, patients that are only
+     * on disk are read for the call without being added to the cache.
+     *
+     * @param action The action to call with each key and patient.
+     */
+    public void forEachPatient(BiConsumer<String, Patient> action) {
+        List<Map.Entry<String, Patient>> entries = new ArrayList<>();
+        List<String> diskKeys = new ArrayList<>();
+        synchronized (this) {
+            for (Map.Entry<String, Patient> entry : patientTable.entrySet()) {
+                entries.add(Map.entry(entry.getKey(), entry.getValue()));
+            }
+            for (String key : onDisk) {
+                if (!patientTable.containsKey(key)) {
+                    diskKeys.add(key);
+                }
+            }
+        }
+
+        for (Map.Entry<String, Patient> entry : entries) {
+            action.accept(entry.getKey(), entry.getValue());
+        }
+        for (String key : diskKeys) {
+            Patient patient = readPatient(key);
+            if (patient != null) {
+                action.accept(key, patient);
+            }
+        }
+    }
+
+    /**
+     * Gets the keys of every patient, in memory or on disk, as they are at the time of the call.
+     *
+     * @return A copy of the keys.
+     */
+    public synchronized List<String> getPatientKeys() {
+        List<String> keys = new ArrayList<>(patientTable.keySet());
+        for (String key : onDisk) {
+            if (!patientTable.containsKey(key)) {
+                keys.add(key);
+            }
+        }
+        return keys;
+    }
+
+    // reads a patient without adding it to the cache
+    private synchronized Patient readPatient(String key) {
+        Patient patient = patientTable.get(key);
+        if (patient != null || !onDisk.contains(key) || snapshot == null) {
+            return patient;
+        }
+        try {
+            patient = snapshot.read(key);
+            applyVitals(patient);
+            restore(patient);
+        } catch (IOException e) {
+            System.out.println("Error reading patient: " + e.getMessage());
+        }
+        return patient;
+    }
+
+    // reads what the built-in indexes need of a patient: the patient itself if it is in memory,
+    // otherwise the indexed fields from the snapshot's index with the status from the vitals file;
+    // only a snapshot written before the fields were indexed has its patients decoded whole
+    private synchronized Patient readIndexFields(String key) {
+        if (patientTable.containsKey(key) || snapshot == null || !snapshot.hasIndexFields() || !onDisk.contains(key)) {
+            return readPatient(key);
+        }
+        Patient patient = null;
+        try {
+            patient = snapshot.readIndexFields(key);
+            applyVitals(patient);
+        } catch (IOException e) {
+            System.out.println("Error reading patient: " + e.getMessage());
+        }
+        return patient;
+    }
+
+    // gives a patient a slot in the vitals file if it does not have one yet
+    private boolean assignVitalsSlot(Patient patient) {
+        if (vitals == null || patient.getVitalsSlot() != 0) {
+            return false;
+        }
+        try {
+            patient.setVitalsSlot(vitals.allocate());
+            return true;
+        } catch (IOException e) {
+            System.out.println("Error growing vitals file: " + e.getMessage());
+            return false;
+        }
+    }
+
+    // copies the latest vitals and status from the vitals file onto a patient read from the snapshot
+    private void applyVitals(Patient patient) {
+        if (vitals == null || patient == null || patient.getVitalsSlot() == 0) {
+            return;
+        }
+        if (patient.getVitalsSlot() > vitals.getSlotCount()) {
+            //the vitals file was replaced or lost, the slot will be handed out again
+            patient.setVitalsSlot(0);
+            return;
+        }
+        vitals.read(patient.getVitalsSlot(), patient);
+    }
+
+    // removes a patient from every place it may be held, reading it from disk if needed
+    private Patient takePatient(String key) {
+        Patient patient = getPatient(key);
+        patientTable.remove(key);
+        cache.remove(key);
+        onDisk.remove(key);
+        //a checkpoint in progress may be writing the patient from its copy of the table, so the
+        //key is kept out of the snapshot's keys even if the patient was only in memory
+        removedSinceRotation.add(key);
+        return patient;
     }
 
     /**
      * Updates the key associated with a specific patient in the patient hashtable.
      * If the new key does not exist in the hashtable, the patient's data is updated to use the new key.
+     * The move is atomic: if the new key is already taken the patient stays under the old key.
+     * The patient is stored under the new key before the old one is removed, so a lookup without
+     * the lock finds it under one key or the other throughout.
      *
      * @param oldKey The current key associated with the patient's data.
      * @param newKey The new key to associate with the patient's data.
+     * @return {@code true} if the patient now has the new key.
      */
-    public void updateKey(String oldKey, String newKey){
-        Patient patient = patientTable.remove(oldKey);
-        if(!patientTable.containsKey(newKey)){
-            patientTable.put(newKey, patient);
-        } else if (!Objects.equals(oldKey, newKey)) {
+    public synchronized boolean updateKey(String oldKey, String newKey){
+        if (Objects.equals(oldKey, newKey)) {
+            return containsPatient(oldKey);
+        }
+        if (containsPatient(newKey)) {
             WarningManager.getInstance().showWarningToAll("There is already a patient with this information in the system ");
+            return false;
         }
 
+        Patient patient = getPatient(oldKey);
+        if (patient == null) {
+            return false;
+        }
+        patientTable.put(newKey, patient);
+        changedSinceRotation.add(newKey);
+        indexMedicalRecordNumber(newKey, patient);
+        takePatient(oldKey);
+        for (PatientIndex index : indexes) {
+            index.remove(oldKey);
+        }
+        updateIndexes(newKey, patient);
+        logRekey(oldKey, newKey);
+        return true;
+    }
+
+    /**
+     * Records that a patient has been created or changed, appending the patient's current state
+     * to the write-ahead log. Only this patient is written, so the cost does not grow with the
+     * size of the patient table. The patient is kept in memory until the next checkpoint has
+     * written it to the snapshot.
+     *
+     * @param key     The key of the patient that changed.
+     * @param patient The patient that changed.
+     */
+    public synchronized void recordChange(String key, Patient patient) {
+        if (patient == null) {
+            return;
+        }
+        patientTable.put(key, patient);
+        cache.remove(key);
+        changedSinceRotation.add(key);
+        indexMedicalRecordNumber(key, patient);
+        updateIndexes(key, patient);
+        if (vitals != null) {
+            vitals.write(patient.getVitalsSlot(), patient);
+        }
+
+        if (patientLog == null) {
+            return;
+        }
+        try {
+            patientLog.appendPut(key, PatientCodec.encode(patient));
+        } catch (IOException e) {
+            System.out.println("Error writing patient log: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Records a change to a patient's vitals or status (blood pressure, height, weight, heart rate,
+     * oxygen level, temperature, BMI, admission and discharge). The patient's 64-byte block is
+     * written in place in the memory-mapped vitals file and appended to the write-ahead log as a
+     * compact record, so the change is as durable as any other logged change while the patient is
+     * not re-encoded. A patient without a slot yet (such as one loaded from an old snapshot) is
+     * given one and recorded in full once.
+     *
+     * @param key     The key of the patient that changed.
+     * @param patient The patient that changed.
+     */
+    public synchronized void updateVitals(String key, Patient patient) {
+        if (patient == null) {
+            return;
+        }
+        if (vitals == null || assignVitalsSlot(patient) || patient.getVitalsSlot() == 0) {
+            recordChange(key, patient);
+            return;
+        }
+
+        //a patient read back from the snapshot later has this block applied over it again
+        vitals.write(patient.getVitalsSlot(), patient);
+        updateIndexes(key, patient);
+
+        if (patientLog == null) {
+            return;
+        }
+        ByteBuffer block = ByteBuffer.allocate(VitalsFile.SLOT_SIZE);
+        patient.writeVitals(block, 0);
+        try {
+            patientLog.appendVitals(key, block.array());
+        } catch (IOException e) {
+            System.out.println("Error writing patient log: " + e.getMessage());
+        }
+    }
+
+    private void indexMedicalRecordNumber(String key, Patient patient) {
+        long mrn = patient.getMedicalRecordNumber();
+        if (mrn != 0) {
+            medicalRecordIndex.put(mrn, key);
+            nextMedicalRecordNumber = Math.max(nextMedicalRecordNumber, mrn + 1);
+        }
+    }
+
+    /**
+     * Builds the medical record number index over every patient. Numbers of patients that are
+     * only on disk come from the snapshot's index, so no patient has to be decoded. Patients from
+     * data written before numbers existed are given one, and the change is logged.
+     */
+    private synchronized void buildMedicalRecordIndex() {
+        medicalRecordIndex = new LongIndex<>(patientTable.size() + onDisk.size());
+        List<String> unnumbered = new ArrayList<>();
+        for (String key : onDisk) {
+            if (patientTable.containsKey(key)) {
+                continue;
+            }
+            long mrn = snapshot == null ? 0 : snapshot.getMedicalRecordNumber(key);
+            if (mrn == 0) {
+                unnumbered.add(key);
+            } else {
+                medicalRecordIndex.put(mrn, key);
+                nextMedicalRecordNumber = Math.max(nextMedicalRecordNumber, mrn + 1);
+            }
+        }
+        for (Map.Entry<String, Patient> entry : patientTable.entrySet()) {
+            if (entry.getValue().getMedicalRecordNumber() == 0) {
+                unnumbered.add(entry.getKey());
+            } else {
+                indexMedicalRecordNumber(entry.getKey(), entry.getValue());
+            }
+        }
+
+        //sorted so older data gets the same numbers whichever order the table is in
+        Collections.sort(unnumbered);
+        for (String key : unnumbered) {
+            Patient patient = getPatient(key);
+            if (patient != null) {
+                patient.setMedicalRecordNumber(nextMedicalRecordNumber++);
+                recordChange(key, patient);
+            }
+        }
+        if (!unnumbered.isEmpty()) {
+            System.out.println("Assigned medical record numbers to " + unnumbered.size() + " patients.");
+        }
+    }
+
+    private void logRekey(String oldKey, String newKey) {
+        if (patientLog == null) {
+            return;
+        }
+
+        try {
+            patientLog.appendRekey(oldKey, newKey);
+        } catch (IOException e) {
+            System.out.println("Error writing patient log: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Gets the current size of the write-ahead log.
+     *
+     * @return The size of the log in bytes, or 0 if no log is open.
+     */
+    public long getLogSize() {
+        WriteAheadLog log = patientLog;
+        return log == null ? 0 : log.size();
+    }
+
+    /**
+     * Gets the background checkpointer, which exposes checkpoint metrics.
+     *
+     * @return The checkpointer, or {@code null} if the database has not been loaded.
+     */
+    public Checkpointer getCheckpointer() {
+        return checkpointer;
+    }
+
+    /**
+     * Gets the cache of patients read from disk, which exposes hit, miss and eviction counts.
+     * The cache is only used with lazy storage.
+     *
+     * @return The patient cache.
+     */
+    public PatientCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Writes a consistent snapshot of the patient table and drops the log records it covers.
+     * The log is rotated and the table copied while holding the database lock, which only takes
+     * as long as copying the table's entries. The snapshot itself is then written without the lock,
+     * so edits can continue while it is being written. Changes made after the rotation go to the
+     * new log and are replayed over the snapshot on startup.
+     *
+     * <p>The patients in the copy are encoded without the lock, while the screen may be changing
+     * one of them, so the snapshot can hold a patient part way through a change. That record is
+     * never the one that counts: a change is complete before its {@link #recordChange} or
+     * {@link #updateVitals} call, so a change logged before the rotation is already in memory when
+     * the copy is encoded, and a change still being made is logged to the new log once done and
+     * replayed over the snapshot's record on startup.</p>
+     *
+     * <p>With lazy storage, patients that are only on disk are copied from the previous snapshot
+     * without being decoded, and patients that have not changed again since the rotation are
+     * moved from the patient table into the cache.</p>
+     *
+     * @return The number of bytes written to the snapshot file.
+     * @throws IOException If the snapshot cannot be written.
+     */
+    public long checkpoint() throws IOException {
+        synchronized (checkpointLock) {
+            File archive = new File(patientLogArchiveFile);
+            Map<String, Patient> copy;
+            List<String> diskKeys;
+            SnapshotFile previous;
+            synchronized (this) {
+                if (patientLog != null) {
+                    patientLog.rotate(archive);
+                }
+                copy = new HashMap<>(patientTable);
+                diskKeys = new ArrayList<>(onDisk);
+                previous = snapshot;
+                changedSinceRotation.clear();
+                removedSinceRotation.clear();
+            }
+
+            if (vitals != null) {
+                vitals.force();
+            }
+
+            File temp = new File(patientDataFile + ".tmp");
+            try (FileOutputStream fos = new FileOutputStream(temp)) {
+                SnapshotFile.write(fos, copy, previous, diskKeys);
+                fos.getFD().sync();
+            }
+            long bytes = temp.length();
+
+            File file = new File(patientDataFile);
+            synchronized (this) {
+                //the previous snapshot is closed before it is replaced, some platforms refuse to replace an open file
+                if (previous != null) {
+                    previous.close();
+                    snapshot = null;
+                }
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                Files.deleteIfExists(archive.toPath());
+
+                if (lazyStorage) {
+                    snapshot = SnapshotFile.open(file);
+                    onDisk = new HashSet<>(snapshot.keys());
+                    onDisk.removeAll(removedSinceRotation);
+                    for (String key : copy.keySet()) {
+                        Patient patient = copy.get(key);
+                        if (!changedSinceRotation.contains(key) && patientTable.get(key) == patient) {
+                            patientTable.remove(key);
+                            cache.put(key, patient, snapshot.length(key));
+                        }
+                    }
+                }
+            }
+            return bytes;
+        }
     }
 
     /**
      * Saves the current state of the database (both patient and staff data) to files.
-     * This method serializes the loginTable and patientTable hashtables to their respective files.
+     * This method serializes the loginTable hashtable to its file and writes a final checkpoint
+     * of the patient table, after which the write-ahead log is empty.
      */
     public void saveDatabase() {
         try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(loginDataFile))) {
-            oos.writeObject(loginTable);
+            //written as a Hashtable so the file stays readable by older versions
+            oos.writeObject(new Hashtable<>(loginTable));
         } catch (IOException e) {
             System.out.println("Error saving hashtable: " + e.getMessage());
         }
 
-        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(patientDataFile))) {
-            oos.writeObject(patientTable);
+        try {
+            checkpoint();
         } catch (IOException e) {
             System.out.println("Error saving hashtable: " + e.getMessage());
         }
     }
 
+    /**
+     * Stops the background checkpointer and closes the write-ahead log, flushing any records that
+     * are still pending.
+     */
+    public void close() {
+        if (checkpointer != null) {
+            checkpointer.close();
+            checkpointer = null;
+        }
+        synchronized (this) {
+            if (snapshot != null) {
+                try {
+                    snapshot.close();
+                } catch (IOException e) {
+                    System.out.println("Error closing patient data: " + e.getMessage());
+                }
+                snapshot = null;
+            }
+        }
+        synchronized (this) {
+            if (vitals != null) {
+                try {
+                    vitals.close();
+                } catch (IOException e) {
+                    System.out.println("Error closing vitals file: " + e.getMessage());
+                }
+                vitals = null;
+            }
+        }
+        if (patientLog != null) {
+            try {
+                patientLog.close();
+            } catch (IOException e) {
+                System.out.println("Error closing patient log: " + e.getMessage());
+            }
+            patientLog = null;
+        }
+    }
+
     /**
      * Loads the database state (both patient and staff data) from files.
-     * This method deserializes the loginTable and patientTable hashtables from their respective files.
+     * This method deserializes the loginTable hashtable and decodes the patient snapshot from their respective files.
      * If the files do not exist, it initializes the tables with default data.
+     * With lazy storage only the snapshot's index is read; patients are loaded when first looked up.
+     * Any changes left in the write-ahead log (for example after a crash) are replayed on top of
+     * the patient snapshot, and the log is then opened for new changes.
      */
     @SuppressWarnings("unchecked")
     public void loadDataBase() {
         File file = new File(loginDataFile);
         if (!file.exists()) {
             // File doesn't exist, create a new hashtable
-            loginTable = new Hashtable<>();
+            loginTable = new ConcurrentHashMap<>();
             loginTable.put("Billing123", new BillingStaff("Doe", "John", "1/14/2000", "Somewhere Drive", "8908742222", "Billing", "123"));
             loginTable.put("Staff123", new EmergencyRoomStaff("Doe", "John", "1/14/2000", "Somewhere Drive", "8908742222", "Staff", "123" ));
             loginTable.put("Nurse123", new Nurse("Doe", "John", "1/14/2000", "Somewhere Drive", "8908742222", "Nurse", "123" ));
             loginTable.put("Doctor123", new Doctor("Doe", "John", "1/14/2000", "Somewhere Drive", "8908742222", "Doctor", "123" ));
-            return;
+        } else {
+            try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(loginDataFile))) {
+                loginTable = new ConcurrentHashMap<>((Map<String, Staff>) ois.readObject());
+            } catch (FileNotFoundException e) {
+                System.out.println("Database file not found, creating a new one.");
+                loginTable = new ConcurrentHashMap<>();
+            } catch (IOException | ClassNotFoundException e) {
+                System.out.println("Error loading hashtable: " + e.getMessage());
+            }
         }
 
-        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(loginDataFile))) {
-            loginTable = (Hashtable<String, Staff>) ois.readObject();
-        } catch (FileNotFoundException e) {
-            System.out.println("Database file not found, creating a new one.");
-            loginTable = new Hashtable<>();
-        } catch (IOException | ClassNotFoundException e) {
-            System.out.println("Error loading hashtable: " + e.getMessage());
+        try {
+            vitals = new VitalsFile(new File(vitalsDataFile));
+        } catch (IOException e) {
+            System.out.println("Error opening vitals file: " + e.getMessage());
         }
 
         file = new File(patientDataFile);
         if (!file.exists()) {
             // File doesn't exist, create a new hashtable
-            patientTable = new Hashtable<>();
+            patientTable = new ConcurrentHashMap<>();
+        } else {
+            try {
+                patientTable = new ConcurrentHashMap<>();
+                if (lazyStorage) {
+                    snapshot = SnapshotFile.open(file);
+                }
+                if (snapshot != null) {
+                    onDisk = new HashSet<>(snapshot.keys());
+                } else {
+                    //older snapshots have no index and are loaded whole, the next checkpoint adds one
+                    SnapshotFile.readAll(file, patientTable);
+                    for (Patient patient : patientTable.values()) {
+                        applyVitals(patient);
+                    }
+                }
+            } catch (FileNotFoundException e) {
+                System.out.println("Database file not found, creating a new one.");
+                patientTable = new ConcurrentHashMap<>();
+            } catch (IOException e) {
+                System.out.println("Error loading hashtable: " + e.getMessage());
+                keepUnreadableSnapshot(file);
+            }
+        }
+
+        replayPatientLog();
+        buildMedicalRecordIndex();
+        buildIndexes();
+    }
+
+    /**
+     * Copies a snapshot that could not be read to the side, so the next checkpoint does not
+     * replace the only copy of the data with an empty table.
+     *
+     * @param file The snapshot that failed to load.
+     */
+    private void keepUnreadableSnapshot(File file) {
+        File kept = new File(file.getPath() + ".unreadable-" + System.currentTimeMillis());
+        try {
+            Files.copy(file.toPath(), kept.toPath());
+            System.out.println("Unreadable patient data kept as " + kept.getName());
+        } catch (IOException e) {
+            System.out.println("Error keeping unreadable patient data: " + e.getMessage());
+        }
+    }
+
+    // writes a replayed patient's vitals into its slot, as the log holds newer state than the vitals file
+    private void restoreVitals(Patient patient) {
+        if (vitals == null || patient.getVitalsSlot() == 0) {
+            return;
+        }
+        if (patient.getVitalsSlot() > vitals.getSlotCount()) {
+            //the vitals file was replaced or lost, the slot will be handed out again
+            patient.setVitalsSlot(0);
             return;
         }
+        vitals.write(patient.getVitalsSlot(), patient);
+    }
+
+    /**
+     * Applies the records in the write-ahead log to the patient table and opens the log for appending.
+     * Every vitals change is logged, so the log is newer than the vitals file for the patients it
+     * mentions: their state comes from the log and is written back into the vitals file.
+     */
+    private void replayPatientLog() {
+        File logFile = new File(patientLogFile);
+        WriteAheadLog.Replayer replayer = new WriteAheadLog.Replayer() {
+            @Override
+            public void put(String key, byte[] payload) {
+                try {
+                    Patient patient = PatientCodec.decode(payload);
+                    restoreVitals(patient);
+                    patientTable.put(key, patient);
+                    cache.remove(key);
+                } catch (IOException e) {
+                    System.out.println("Skipping unreadable patient log record: " + e.getMessage());
+                }
+            }
+
+            @Override
+            public void vitals(String key, byte[] block) {
+                Patient patient = readPatient(key);
+                if (patient == null || block.length < VitalsFile.SLOT_SIZE) {
+                    return;
+                }
+                patient.readVitals(ByteBuffer.wrap(block), 0);
+                restoreVitals(patient);
+                patientTable.put(key, patient);
+                cache.remove(key);
+            }
 
-        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(patientDataFile))) {
-            patientTable = (Hashtable<String, Patient>) ois.readObject();
-        } catch (FileNotFoundException e) {
-            System.out.println("Database file not found, creating a new one.");
-            patientTable = new Hashtable<>();
-        } catch (IOException | ClassNotFoundException e) {
-            System.out.println("Error loading hashtable: " + e.getMessage());
+            @Override
+            public void rekey(String oldKey, String newKey) {
+                Patient patient = takePatient(oldKey);
+                if (patient != null) {
+                    patientTable.put(newKey, patient);
+                }
+            }
+        };
+
+        try {
+            //an archived log is only left behind if a checkpoint did not finish, and its records come first
+            int replayed = WriteAheadLog.replay(new File(patientLogArchiveFile), replayer);
+            replayed += WriteAheadLog.replay(logFile, replayer);
+            if (replayed > 0) {
+                System.out.println("Recovered " + replayed + " patient changes from the log.");
+                if (vitals != null) {
+                    vitals.force();
+                }
+            }
+            patientLog = new WriteAheadLog(logFile, logSyncPolicy, logGroupSize, logGroupMillis);
+            checkpointer = new Checkpointer(this, checkpointIntervalMillis, checkpointLogBytes);
+            checkpointer.start();
+        } catch (IOException e) {
+            System.out.println("Error opening patient log: " + e.getMessage());
         }
     }
 }
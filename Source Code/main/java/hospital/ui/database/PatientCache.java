@@ -0,0 +1,149 @@
+package hospital.ui.database;
+
+import hospital.ui.users.patients.Patient;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded least-recently-used cache of patients read from the snapshot file. Charts that are
+ * looked at often stay in memory, while cold ones (such as discharged patients nobody has opened
+ * for a while) are dropped and read back from disk if they are needed again.
+ *
+ * <p>The cache is bounded both by the number of patients and by their total weight, where the
+ * weight of a patient is the size of its encoded record. Only unchanged patients are kept here;
+ * patients with changes that are not in the snapshot yet are held by the {@link Database} until
+ * the next checkpoint.</p>
+ */
+public class PatientCache {
+
+    private static class Entry {
+        final Patient patient;
+        final int weight;
+
+        Entry(Patient patient, int weight) {
+            this.patient = patient;
+            this.weight = weight;
+        }
+    }
+
+    private final int maxEntries;
+    private final long maxWeight;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private long weight = 0;
+
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    /**
+     * Creates an empty cache.
+     *
+     * @param maxEntries The most patients the cache may hold.
+     * @param maxWeight  The most encoded bytes the cache may hold.
+     */
+    public PatientCache(int maxEntries, long maxWeight) {
+        this.maxEntries = Math.max(1, maxEntries);
+        this.maxWeight = Math.max(1, maxWeight);
+    }
+
+    /**
+     * Looks up a patient and marks it as recently used.
+     *
+     * @param key The key of the patient.
+     * @return The cached patient, or {@code null} on a miss.
+     */
+    public synchronized Patient get(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.patient;
+    }
+
+    /**
+     * Adds a patient, evicting the least recently used patients if the cache is full.
+     *
+     * @param key     The key of the patient.
+     * @param patient The patient.
+     * @param weight  The size of the patient's encoded record.
+     */
+    public synchronized void put(String key, Patient patient, int weight) {
+        Entry old = entries.put(key, new Entry(patient, weight));
+        if (old != null) {
+            this.weight -= old.weight;
+        }
+        this.weight += weight;
+
+        Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+        while ((entries.size() > maxEntries || this.weight > maxWeight) && entries.size() > 1 && eldest.hasNext()) {
+            Entry evicted = eldest.next().getValue();
+            eldest.remove();
+            this.weight -= evicted.weight;
+            evictions++;
+        }
+    }
+
+    /**
+     * Removes a patient from the cache.
+     *
+     * @param key The key of the patient.
+     * @return The removed patient, or {@code null} if it was not cached.
+     */
+    public synchronized Patient remove(String key) {
+        Entry entry = entries.remove(key);
+        if (entry == null) {
+            return null;
+        }
+        weight -= entry.weight;
+        return entry.patient;
+    }
+
+    /**
+     * Gets the number of patients in the cache.
+     *
+     * @return The number of cached patients.
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Gets the total weight of the cached patients.
+     *
+     * @return The total size of their encoded records, in bytes.
+     */
+    public synchronized long getWeight() {
+        return weight;
+    }
+
+    /**
+     * Gets the number of lookups that found their patient in the cache.
+     *
+     * @return The hit count.
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Gets the number of lookups that had to go to disk.
+     *
+     * @return The miss count.
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Gets the number of patients dropped to keep the cache within its bounds.
+     *
+     * @return The eviction count.
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+}
@@ -0,0 +1,124 @@
+package hospital.ui.database;
+
+import hospital.ui.users.patients.Patient;
+
+import java.io.*;
+
+/**
+ * Encodes and decodes patients in a compact, versioned binary format, replacing Java object
+ * serialization for the patient snapshot and the write-ahead log.
+ *
+ * <p>A patient record starts with the format version, followed by the fields written by
+ * {@link Patient#writeTo(RecordOutput)}. New fields are only ever appended to the end of a record,
+ * and each record is stored with its length, so a reader can load records written by an older
+ * version (missing fields get their defaults) and skip fields added by a newer one.</p>
+ *
+ * <p>Records written by the old {@code ObjectOutputStream} code are recognised by their stream
+ * header and still load. See {@link SnapshotFile} for the layout of a whole snapshot.</p>
+ */
+public final class PatientCodec {
+
+    /**
+     * The version of the patient record written by this code.
+     */
+    public static final int VERSION = 4;
+
+    static final int SNAPSHOT_MAGIC = 0x43415245; // "CARE"
+    private static final int JAVA_STREAM_MAGIC = 0xACED;
+
+    private PatientCodec() {}
+
+    /**
+     * Encodes a single patient.
+     *
+     * @param patient The patient to encode.
+     * @return The encoded record.
+     */
+    public static byte[] encode(Patient patient) {
+        RecordOutput out = new RecordOutput();
+        write(out, patient);
+        return out.toByteArray();
+    }
+
+    private static void write(RecordOutput out, Patient patient) {
+        out.writeVarInt(VERSION);
+        patient.writeTo(out);
+    }
+
+    /**
+     * Decodes a single patient. Records written with Java serialization are also accepted.
+     *
+     * @param bytes The encoded record.
+     * @return The decoded patient.
+     * @throws IOException If the record is malformed.
+     */
+    public static Patient decode(byte[] bytes) throws IOException {
+        return decode(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Decodes a single patient from part of an array.
+     *
+     * @param bytes  The array holding the record.
+     * @param offset The first byte of the record.
+     * @param length The length of the record.
+     * @return The decoded patient.
+     * @throws IOException If the record is malformed.
+     */
+    public static Patient decode(byte[] bytes, int offset, int length) throws IOException {
+        if (length >= 2 && ((bytes[offset] & 0xFF) << 8 | (bytes[offset + 1] & 0xFF)) == JAVA_STREAM_MAGIC) {
+            try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes, offset, length))) {
+                return (Patient) ois.readObject();
+            } catch (ClassNotFoundException e) {
+                throw new IOException(e);
+            }
+        }
+        return read(new RecordInput(bytes, offset, length));
+    }
+
+    static Patient read(RecordInput in) throws IOException {
+        int version = in.readVarInt();
+        if (version < 1) {
+            throw new IOException("Unknown patient record version " + version);
+        }
+        return Patient.readFrom(in, version);
+    }
+
+    /**
+     * Writes the fields of a patient that the secondary indexes read, with the format version.
+     *
+     * @param out     The record being written.
+     * @param patient The patient.
+     */
+    static void writeIndexFields(RecordOutput out, Patient patient) {
+        out.writeVarInt(VERSION);
+        patient.writeIndexFieldsTo(out);
+    }
+
+    /**
+     * Reads a partial patient written by {@link #writeIndexFields(RecordOutput, Patient)}.
+     *
+     * @param in The record being read.
+     * @return The partial patient, only fit for filling an index.
+     * @throws IOException If the record is malformed.
+     */
+    static Patient readIndexFields(RecordInput in) throws IOException {
+        int version = in.readVarInt();
+        if (version < 1) {
+            throw new IOException("Unknown patient record version " + version);
+        }
+        return Patient.readIndexFieldsFrom(in, version);
+    }
+
+    /**
+     * Writes a snapshot record: the key of a patient followed by the patient.
+     *
+     * @param out     The record being written.
+     * @param key     The key of the patient.
+     * @param patient The patient.
+     */
+    static void writeRecord(RecordOutput out, String key, Patient patient) {
+        out.writeString(key);
+        write(out, patient);
+    }
+}
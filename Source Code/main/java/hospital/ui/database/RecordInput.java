@@ -0,0 +1,159 @@
+package hospital.ui.database;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+
+/**
+ * Reads records written by {@link RecordOutput} from a byte array.
+ */
+public class RecordInput {
+
+    private final byte[] buffer;
+    private final int limit;
+    private int position;
+
+    /**
+     * Creates an input over a whole array.
+     *
+     * @param buffer The encoded data.
+     */
+    public RecordInput(byte[] buffer) {
+        this(buffer, 0, buffer.length);
+    }
+
+    /**
+     * Creates an input over part of an array.
+     *
+     * @param buffer The encoded data.
+     * @param offset The first byte to read.
+     * @param length The number of bytes that may be read.
+     */
+    public RecordInput(byte[] buffer, int offset, int length) {
+        this.buffer = buffer;
+        this.position = offset;
+        this.limit = offset + length;
+    }
+
+    private void require(int count) throws IOException {
+        //written so a huge count cannot overflow past the check
+        if (count > limit - position) {
+            throw new EOFException("Record ended unexpectedly");
+        }
+    }
+
+    /**
+     * Reads a single unsigned byte.
+     *
+     * @return The byte, from 0 to 255.
+     * @throws IOException If the record has no more data.
+     */
+    public int readByte() throws IOException {
+        require(1);
+        return buffer[position++] & 0xFF;
+    }
+
+    /**
+     * Reads an int written by {@link RecordOutput#writeVarInt(int)}.
+     *
+     * @return The value.
+     * @throws IOException If the record has no more data.
+     */
+    public int readVarInt() throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = readByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed variable-length int");
+    }
+
+    /**
+     * Reads a long written by {@link RecordOutput#writeVarLong(long)}.
+     *
+     * @return The value.
+     * @throws IOException If the record has no more data.
+     */
+    public long readVarLong() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 70; shift += 7) {
+            int b = readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed variable-length long");
+    }
+
+    /**
+     * Reads a long written by {@link RecordOutput#writeSignedVarLong(long)}.
+     *
+     * @return The value.
+     * @throws IOException If the record has no more data.
+     */
+    public long readSignedVarLong() throws IOException {
+        long raw = readVarLong();
+        return (raw >>> 1) ^ -(raw & 1);
+    }
+
+    /**
+     * Reads a double written by {@link RecordOutput#writeDouble(double)}.
+     *
+     * @return The value.
+     * @throws IOException If the record has no more data.
+     */
+    public double readDouble() throws IOException {
+        require(8);
+        long bits = 0;
+        for (int i = 0; i < 8; i++) {
+            bits = (bits << 8) | (buffer[position++] & 0xFF);
+        }
+        return Double.longBitsToDouble(bits);
+    }
+
+    /**
+     * Reads a string written by {@link RecordOutput#writeString(String)}.
+     *
+     * @return The string, never {@code null}.
+     * @throws IOException If the record has no more data or the length is malformed.
+     */
+    public String readString() throws IOException {
+        int length = readVarInt();
+        if (length == 0) {
+            return "";
+        }
+        if (length < 0) {
+            throw new IOException("Negative string length in record");
+        }
+        require(length);
+        String value = new String(buffer, position, length, StandardCharsets.UTF_8);
+        position += length;
+        return value;
+    }
+
+    /**
+     * Reads a date written by {@link RecordOutput#writeDate(LocalDate)}.
+     *
+     * @return The date, or {@code null} if none was written.
+     * @throws IOException If the record has no more data.
+     */
+    public LocalDate readDate() throws IOException {
+        long day = readSignedVarLong();
+        return day == Long.MIN_VALUE ? null : LocalDate.ofEpochDay(day);
+    }
+
+    /**
+     * Checks whether any unread data remains. Newer versions of a record may append fields that
+     * older readers simply leave unread.
+     *
+     * @return {@code true} if more bytes can be read.
+     */
+    public boolean hasRemaining() {
+        return position < limit;
+    }
+}
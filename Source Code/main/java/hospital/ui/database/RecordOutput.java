@@ -0,0 +1,169 @@
+package hospital.ui.database;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+/**
+ * A growable byte buffer used to encode records in the compact binary format read by
+ * {@link RecordInput}. Integers are written as variable-length values (7 bits per byte), so small
+ * numbers such as counters and flags usually take a single byte.
+ */
+public class RecordOutput {
+
+    private byte[] buffer;
+    private int length = 0;
+
+    /**
+     * Creates an empty output with a default initial capacity.
+     */
+    public RecordOutput() {
+        this(256);
+    }
+
+    /**
+     * Creates an empty output.
+     *
+     * @param capacity The initial capacity in bytes.
+     */
+    public RecordOutput(int capacity) {
+        buffer = new byte[Math.max(16, capacity)];
+    }
+
+    private void ensure(int extra) {
+        if (length + extra > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + extra));
+        }
+    }
+
+    /**
+     * Writes a single byte.
+     *
+     * @param value The byte to write.
+     */
+    public void writeByte(int value) {
+        ensure(1);
+        buffer[length++] = (byte) value;
+    }
+
+    /**
+     * Writes a non-negative int using 1 to 5 bytes.
+     *
+     * @param value The value to write.
+     */
+    public void writeVarInt(int value) {
+        ensure(5);
+        while ((value & ~0x7F) != 0) {
+            buffer[length++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[length++] = (byte) value;
+    }
+
+    /**
+     * Writes a non-negative long using 1 to 10 bytes.
+     *
+     * @param value The value to write.
+     */
+    public void writeVarLong(long value) {
+        ensure(10);
+        while ((value & ~0x7FL) != 0) {
+            buffer[length++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[length++] = (byte) value;
+    }
+
+    /**
+     * Writes a long that may be negative, using zig-zag encoding so small magnitudes stay short.
+     *
+     * @param value The value to write.
+     */
+    public void writeSignedVarLong(long value) {
+        writeVarLong((value << 1) ^ (value >> 63));
+    }
+
+    /**
+     * Writes a double as its 8 raw bytes.
+     *
+     * @param value The value to write.
+     */
+    public void writeDouble(double value) {
+        long bits = Double.doubleToLongBits(value);
+        ensure(8);
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            buffer[length++] = (byte) (bits >>> shift);
+        }
+    }
+
+    /**
+     * Writes a string as its UTF-8 length followed by its bytes. {@code null} is written as an empty string.
+     *
+     * @param value The string to write.
+     */
+    public void writeString(String value) {
+        if (value == null || value.isEmpty()) {
+            writeVarInt(0);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(bytes.length);
+        writeBytes(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Writes a date as a signed day count from the epoch. {@code null} is written as {@link Long#MIN_VALUE}.
+     *
+     * @param date The date to write.
+     */
+    public void writeDate(LocalDate date) {
+        writeSignedVarLong(date == null ? Long.MIN_VALUE : date.toEpochDay());
+    }
+
+    /**
+     * Writes raw bytes.
+     *
+     * @param bytes  The source array.
+     * @param offset The first byte to write.
+     * @param count  The number of bytes to write.
+     */
+    public void writeBytes(byte[] bytes, int offset, int count) {
+        ensure(count);
+        System.arraycopy(bytes, offset, buffer, length, count);
+        length += count;
+    }
+
+    /**
+     * Gets the number of bytes written so far.
+     *
+     * @return The length of the encoded data.
+     */
+    public int length() {
+        return length;
+    }
+
+    /**
+     * Gets the internal buffer. Only the first {@link #length()} bytes are valid.
+     *
+     * @return The internal buffer.
+     */
+    public byte[] buffer() {
+        return buffer;
+    }
+
+    /**
+     * Copies the encoded data into a new array.
+     *
+     * @return The encoded bytes.
+     */
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buffer, length);
+    }
+
+    /**
+     * Discards everything written so the buffer can be reused for the next record.
+     */
+    public void reset() {
+        length = 0;
+    }
+}
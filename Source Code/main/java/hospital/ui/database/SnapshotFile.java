@@ -0,0 +1,504 @@
+package hospital.ui.database;
+
+import hospital.ui.users.patients.Patient;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A patient snapshot file with a key index, so single patients can be read without loading the
+ * whole file.
+ *
+ * <p>Layout (version 4): {@code [int magic][int version][int count]}, then {@code count} entries of
+ * {@code [int length][record]}, then the index ({@code [utf key][long offset][int length][long mrn]
+ * [int fieldsLength][fields]} per entry), and finally a footer {@code [long indexOffset][int count]
+ * [int magic]}. A record holds the key followed by the patient as written by {@link PatientCodec}.
+ * The medical record number in the index lets the MRN index be built without decoding any
+ * patient, and the fields are the few the secondary indexes read, so those can be filled at
+ * startup by reading the index from start to end. Index entries are in key order. Versions 2 and 3 have no fields (and version 2 no MRN) in the
+ * index and are still opened. Version 1 files (no index) and files from the old Java
+ * serialization code can still be read with {@link #readAll(File, Map)}.</p>
+ */
+public class SnapshotFile implements Closeable {
+
+    private static final int VERSION = 4;
+    private static final int FIRST_INDEXED_VERSION = 2;
+    private static final int FIRST_INDEX_FIELDS_VERSION = 4;
+    private static final int FOOTER_LENGTH = 16;
+
+    private static class Entry {
+        final long location;
+        final long medicalRecordNumber;
+        //where the indexed fields are, packed like the location, or 0 if the snapshot has none
+        final long fields;
+
+        Entry(long location, long medicalRecordNumber, long fields) {
+            this.location = location;
+            this.medicalRecordNumber = medicalRecordNumber;
+            this.fields = fields;
+        }
+    }
+
+    /**
+     * Receives the indexed fields of the patients in a snapshot, see {@link #forEachIndexFields}.
+     */
+    public interface IndexFieldsVisitor {
+        /**
+         * Receives the indexed fields of one patient.
+         *
+         * @param key     The key of the patient.
+         * @param patient A partial patient only fit for filling an index.
+         * @return {@code true} to go on to the next patient, {@code false} to stop.
+         */
+        boolean visit(String key, Patient patient);
+    }
+
+    private final FileChannel channel;
+    private final Map<String, Entry> index;
+    private final boolean hasIndexFields;
+    private final long indexOffset;
+
+    private SnapshotFile(FileChannel channel, Map<String, Entry> index, boolean hasIndexFields, long indexOffset) {
+        this.channel = channel;
+        this.index = index;
+        this.hasIndexFields = hasIndexFields;
+        this.indexOffset = indexOffset;
+    }
+
+    /**
+     * Opens a snapshot for random access, reading only its index.
+     *
+     * @param file The snapshot file.
+     * @return The opened snapshot, or {@code null} if the file has no index (an older format).
+     * @throws IOException If the file cannot be read.
+     */
+    public static SnapshotFile open(File file) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            ByteBuffer header = ByteBuffer.allocate(8);
+            if (size < 8 + FOOTER_LENGTH || readFully(channel, header, 0) < 8
+                    || header.getInt(0) != PatientCodec.SNAPSHOT_MAGIC || header.getInt(4) < FIRST_INDEXED_VERSION) {
+                channel.close();
+                return null;
+            }
+
+            int version = header.getInt(4);
+            if (version > VERSION) {
+                throw new IOException("Unknown snapshot version " + version);
+            }
+
+            ByteBuffer footer = ByteBuffer.allocate(FOOTER_LENGTH);
+            readFully(channel, footer, size - FOOTER_LENGTH);
+            long indexOffset = footer.getLong(0);
+            int count = footer.getInt(8);
+            if (footer.getInt(12) != PatientCodec.SNAPSHOT_MAGIC) {
+                throw new IOException("Snapshot index is missing or damaged");
+            }
+
+            Map<String, Entry> index = new HashMap<>(Math.max(16, count * 4 / 3 + 1));
+            try (CountingInputStream counter = new CountingInputStream(new BufferedInputStream(
+                    new FileInputStream(file), 1 << 16))) {
+                DataInputStream in = new DataInputStream(counter);
+                in.skipNBytes(indexOffset);
+                for (int i = 0; i < count; i++) {
+                    String key = in.readUTF();
+                    long offset = in.readLong();
+                    int length = in.readInt();
+                    long mrn = version >= 3 ? in.readLong() : 0;
+                    long fields = 0;
+                    if (version >= FIRST_INDEX_FIELDS_VERSION) {
+                        int fieldsLength = in.readInt();
+                        fields = location(counter.count, fieldsLength);
+                        in.skipNBytes(fieldsLength);
+                    }
+                    index.put(key, new Entry(location(offset, length), mrn, fields));
+                }
+            }
+            return new SnapshotFile(channel, index, version >= FIRST_INDEX_FIELDS_VERSION, indexOffset);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    // offset and length of a record packed into one long: 40 bits of offset, 24 bits of length
+    private static long location(long offset, int length) {
+        return (offset << 24) | length;
+    }
+
+    private static int readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        int total = 0;
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + total);
+            if (read < 0) {
+                break;
+            }
+            total += read;
+        }
+        return total;
+    }
+
+    /**
+     * Gets the keys of every patient in the snapshot.
+     *
+     * @return The indexed keys.
+     */
+    public Set<String> keys() {
+        return index.keySet();
+    }
+
+    /**
+     * Checks whether the snapshot holds a patient.
+     *
+     * @param key The key of the patient.
+     * @return {@code true} if the patient is in the snapshot.
+     */
+    public boolean contains(String key) {
+        return index.containsKey(key);
+    }
+
+    /**
+     * Gets the size of a patient's record.
+     *
+     * @param key The key of the patient.
+     * @return The record length in bytes, or 0 if the key is not in the snapshot.
+     */
+    public int length(String key) {
+        Entry entry = index.get(key);
+        return entry == null ? 0 : (int) (entry.location & 0xFFFFFF);
+    }
+
+    /**
+     * Gets a patient's medical record number from the index, without reading the patient.
+     *
+     * @param key The key of the patient.
+     * @return The medical record number, or 0 if the key is not in the snapshot or the snapshot
+     * was written before medical record numbers were indexed.
+     */
+    public long getMedicalRecordNumber(String key) {
+        Entry entry = index.get(key);
+        return entry == null ? 0 : entry.medicalRecordNumber;
+    }
+
+    /**
+     * Reads the raw record of one patient, including its key.
+     *
+     * @param key The key of the patient.
+     * @return The record, or {@code null} if the key is not in the snapshot.
+     * @throws IOException If the record cannot be read.
+     */
+    public byte[] readRecord(String key) throws IOException {
+        Entry entry = index.get(key);
+        if (entry == null) {
+            return null;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate((int) (entry.location & 0xFFFFFF));
+        readFully(channel, buffer, entry.location >>> 24);
+        return buffer.array();
+    }
+
+    /**
+     * Reads and decodes one patient.
+     *
+     * @param key The key of the patient.
+     * @return The patient, or {@code null} if the key is not in the snapshot.
+     * @throws IOException If the record cannot be read.
+     */
+    public Patient read(String key) throws IOException {
+        byte[] record = readRecord(key);
+        if (record == null) {
+            return null;
+        }
+
+        RecordInput in = new RecordInput(record);
+        in.readString();
+        return PatientCodec.read(in);
+    }
+
+    /**
+     * Checks whether the snapshot holds the indexed fields of its patients, which snapshots
+     * written before version 4 do not.
+     *
+     * @return {@code true} if {@link #readIndexFields(String)} can be used.
+     */
+    public boolean hasIndexFields() {
+        return hasIndexFields;
+    }
+
+    /**
+     * Reads the fields of one patient that the secondary indexes read, from the snapshot's index
+     * rather than the patient's record.
+     *
+     * @param key The key of the patient.
+     * @return A partial patient only fit for filling an index, or {@code null} if the key is not
+     * in the snapshot or the snapshot has no indexed fields.
+     * @throws IOException If the fields cannot be read.
+     */
+    public Patient readIndexFields(String key) throws IOException {
+        byte[] fields = readIndexFieldsRecord(key);
+        return fields == null ? null : PatientCodec.readIndexFields(new RecordInput(fields));
+    }
+
+    /**
+     * Reads the indexed fields of every patient in one pass over the snapshot's index, in key
+     * order, without reading any record.
+     *
+     * @param visitor Receives the fields of each patient.
+     * @throws IOException If the index cannot be read, or the snapshot has no indexed fields.
+     */
+    public synchronized void forEachIndexFields(IndexFieldsVisitor visitor) throws IOException {
+        if (!hasIndexFields) {
+            throw new IOException("Snapshot has no indexed fields");
+        }
+        //the stream is not closed, as that would close the channel
+        channel.position(indexOffset);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), 1 << 16));
+        byte[] fields = new byte[256];
+        for (int i = 0; i < index.size(); i++) {
+            String key = in.readUTF();
+            in.skipNBytes(8 + 4 + 8);
+            int length = in.readInt();
+            if (length > fields.length) {
+                fields = new byte[Math.max(length, fields.length * 2)];
+            }
+            in.readFully(fields, 0, length);
+            if (!visitor.visit(key, PatientCodec.readIndexFields(new RecordInput(fields, 0, length)))) {
+                return;
+            }
+        }
+    }
+
+    private byte[] readIndexFieldsRecord(String key) throws IOException {
+        Entry entry = index.get(key);
+        if (entry == null || entry.fields == 0) {
+            return null;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate((int) (entry.fields & 0xFFFFFF));
+        readFully(channel, buffer, entry.fields >>> 24);
+        return buffer.array();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Writes a snapshot. Patients held in memory are encoded; patients that are only on disk are
+     * copied across from the previous snapshot as raw records without being decoded, along with
+     * their indexed fields. Only a previous snapshot written before the fields were indexed has
+     * its patients decoded, once, to write their fields.
+     *
+     * @param output   The stream to write to.
+     * @param patients The patients held in memory, by key.
+     * @param previous The previous snapshot, or {@code null}.
+     * @param onDisk   Keys to copy from the previous snapshot (ignored if also in {@code patients}).
+     * @throws IOException If the snapshot cannot be written.
+     */
+    public static void write(OutputStream output, Map<String, Patient> patients,
+                             SnapshotFile previous, Collection<String> onDisk) throws IOException {
+        CountingOutputStream counter = new CountingOutputStream(new BufferedOutputStream(output, 1 << 16));
+        DataOutputStream out = new DataOutputStream(counter);
+
+        int count = patients.size();
+        if (previous != null) {
+            for (String key : onDisk) {
+                if (!patients.containsKey(key) && previous.contains(key)) {
+                    count++;
+                }
+            }
+        }
+
+        out.writeInt(PatientCodec.SNAPSHOT_MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(count);
+
+        String[] keys = new String[count];
+        long[] offsets = new long[count];
+        int[] lengths = new int[count];
+        long[] mrns = new long[count];
+        int n = 0;
+
+        //the indexed fields of the patients in memory are encoded with their records and kept
+        //until the index is written; those of copied patients are copied again at that point
+        RecordOutput record = new RecordOutput(1024);
+        RecordOutput fields = new RecordOutput(Math.max(64, patients.size() * 64));
+        int[] fieldsEnds = new int[patients.size()];
+        for (Map.Entry<String, Patient> entry : patients.entrySet()) {
+            record.reset();
+            PatientCodec.writeRecord(record, entry.getKey(), entry.getValue());
+            PatientCodec.writeIndexFields(fields, entry.getValue());
+            fieldsEnds[n] = fields.length();
+            out.writeInt(record.length());
+            keys[n] = entry.getKey();
+            offsets[n] = counter.count;
+            mrns[n] = entry.getValue().getMedicalRecordNumber();
+            lengths[n++] = record.length();
+            out.write(record.buffer(), 0, record.length());
+        }
+        int encoded = n;
+
+        if (previous != null) {
+            for (String key : onDisk) {
+                if (patients.containsKey(key) || !previous.contains(key)) {
+                    continue;
+                }
+                byte[] raw = previous.readRecord(key);
+                out.writeInt(raw.length);
+                keys[n] = key;
+                offsets[n] = counter.count;
+                mrns[n] = previous.getMedicalRecordNumber(key);
+                lengths[n++] = raw.length;
+                out.write(raw);
+            }
+        }
+
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> keys[a].compareTo(keys[b]));
+
+        long indexOffset = counter.count;
+        for (int i : order) {
+            out.writeUTF(keys[i]);
+            out.writeLong(offsets[i]);
+            out.writeInt(lengths[i]);
+            out.writeLong(mrns[i]);
+            if (i < encoded) {
+                int start = i == 0 ? 0 : fieldsEnds[i - 1];
+                out.writeInt(fieldsEnds[i] - start);
+                out.write(fields.buffer(), start, fieldsEnds[i] - start);
+            } else {
+                byte[] raw = previous.readIndexFieldsRecord(keys[i]);
+                if (raw == null) {
+                    record.reset();
+                    PatientCodec.writeIndexFields(record, previous.read(keys[i]));
+                    raw = record.toByteArray();
+                }
+                out.writeInt(raw.length);
+                out.write(raw);
+            }
+        }
+        out.writeLong(indexOffset);
+        out.writeInt(n);
+        out.writeInt(PatientCodec.SNAPSHOT_MAGIC);
+        out.flush();
+    }
+
+    /**
+     * Reads every patient in a snapshot into a table. Accepts the current format, version 1
+     * snapshots and snapshots written with Java serialization.
+     *
+     * @param file     The snapshot file.
+     * @param patients The table that receives the patients.
+     * @throws IOException If the snapshot cannot be read.
+     */
+    @SuppressWarnings("unchecked")
+    public static void readAll(File file, Map<String, Patient> patients) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+            in.mark(4);
+            int magic = in.readInt();
+            in.reset();
+
+            if (magic != PatientCodec.SNAPSHOT_MAGIC) {
+                try (ObjectInputStream ois = new ObjectInputStream(in)) {
+                    patients.putAll((Map<String, Patient>) ois.readObject());
+                } catch (ClassNotFoundException e) {
+                    throw new IOException(e);
+                }
+                return;
+            }
+
+            in.readInt();
+            int version = in.readInt();
+            if (version < 1 || version > VERSION) {
+                throw new IOException("Unknown snapshot version " + version);
+            }
+
+            int count = in.readInt();
+            byte[] buffer = new byte[1024];
+            for (int i = 0; i < count; i++) {
+                int length = in.readInt();
+                if (length > buffer.length) {
+                    buffer = new byte[Math.max(length, buffer.length * 2)];
+                }
+                in.readFully(buffer, 0, length);
+
+                RecordInput record = new RecordInput(buffer, 0, length);
+                String key = record.readString();
+                patients.put(key, PatientCodec.read(record));
+            }
+        }
+    }
+
+    /**
+     * Tracks the number of bytes read so the position of indexed fields can be kept.
+     */
+    private static class CountingInputStream extends FilterInputStream {
+        private long count = 0;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = in.read(b, off, len);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = in.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+
+    /**
+     * Tracks the number of bytes written so record offsets can be put in the index.
+     */
+    private static class CountingOutputStream extends FilterOutputStream {
+        private long count = 0;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package hospital.ui.database;
+
+import hospital.ui.users.patients.Patient;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A memory-mapped file of fixed-size vitals and status blocks, one per patient. Each patient owns
+ * a slot at a known position, so updating a vital writes only that patient's 64 bytes in place
+ * instead of logging or rewriting the whole patient.
+ *
+ * <p>Slot 0 holds the header ({@code [int magic][int version][int slotCount]}); patient slots start
+ * at 1. The layout of a patient slot is defined by {@link Patient#writeVitals(java.nio.ByteBuffer, int)}.
+ * Writes land in the operating system's page cache straight away, so they survive the application
+ * crashing; {@link #force()} is called at each checkpoint to push them to disk. The database also
+ * logs each block it writes here, so a change the operating system had not written out before a
+ * crash is restored from the write-ahead log.</p>
+ */
+public class VitalsFile implements Closeable {
+
+    /**
+     * The size of one patient slot in bytes.
+     */
+    public static final int SLOT_SIZE = 64;
+
+    private static final int MAGIC = 0x5649544C; // "VITL"
+    private static final int VERSION = 1;
+    private static final int INITIAL_SLOTS = 1024;
+
+    private final FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int capacity;
+    private int slotCount;
+
+    /**
+     * Opens a vitals file, creating it if it does not exist.
+     *
+     * @param file The file to map.
+     * @throws IOException If the file cannot be opened or is not a vitals file.
+     */
+    public VitalsFile(File file) throws IOException {
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long size = channel.size();
+        map((int) Math.max(INITIAL_SLOTS, size / SLOT_SIZE));
+
+        if (size == 0) {
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            buffer.putInt(8, 0);
+        } else if (buffer.getInt(0) != MAGIC) {
+            channel.close();
+            throw new IOException("Not a vitals file: " + file);
+        }
+        slotCount = buffer.getInt(8);
+    }
+
+    private void map(int slots) throws IOException {
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) slots * SLOT_SIZE);
+        capacity = slots;
+    }
+
+    /**
+     * Reserves a new slot.
+     *
+     * @return The number of the new slot, starting at 1.
+     * @throws IOException If the file cannot be grown.
+     */
+    public synchronized int allocate() throws IOException {
+        int slot = slotCount + 1;
+        if (slot >= capacity) {
+            map(capacity * 2);
+        }
+        slotCount = slot;
+        buffer.putInt(8, slotCount);
+        return slot;
+    }
+
+    /**
+     * Writes a patient's vitals and status into their slot.
+     *
+     * @param slot    The patient's slot.
+     * @param patient The patient.
+     */
+    public synchronized void write(int slot, Patient patient) {
+        if (slot < 1 || slot > slotCount) {
+            return;
+        }
+        patient.writeVitals(buffer, slot * SLOT_SIZE);
+    }
+
+    /**
+     * Copies the vitals and status held in a slot onto a patient.
+     *
+     * @param slot    The patient's slot.
+     * @param patient The patient to update.
+     * @return {@code true} if the slot held data, {@code false} if it was never written.
+     */
+    public synchronized boolean read(int slot, Patient patient) {
+        if (slot < 1 || slot > slotCount) {
+            return false;
+        }
+        return patient.readVitals(buffer, slot * SLOT_SIZE);
+    }
+
+    /**
+     * Forces every written slot to the storage device.
+     */
+    public synchronized void force() {
+        buffer.force();
+    }
+
+    /**
+     * Gets the number of slots handed out.
+     *
+     * @return The slot count.
+     */
+    public synchronized int getSlotCount() {
+        return slotCount;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        buffer.force();
+        channel.close();
+    }
+}
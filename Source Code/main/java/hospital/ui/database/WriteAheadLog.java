@@ -0,0 +1,334 @@
+package hospital.ui.database;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only log of patient mutations. Every change made to a patient is written here as a
+ * small self-describing record, so saving costs the size of the change instead of the size of the
+ * whole patient table. On startup the log is replayed on top of the last full snapshot.
+ *
+ * <p>Each record is laid out as {@code [int length][int crc32][byte type][body]}, where the length
+ * and checksum cover the type byte and body. A record that is cut short or fails its checksum marks
+ * the end of the usable log (for example after a crash in the middle of a write).</p>
+ */
+public class WriteAheadLog implements Closeable {
+
+    /**
+     * Controls when appended records are forced to stable storage.
+     */
+    public enum SyncPolicy {
+        /** Flush and fsync after every record. Safest, slowest. */
+        ALWAYS,
+        /** Flush and fsync once a batch of records has built up or the group interval has passed. */
+        GROUP_COMMIT,
+        /** Flush to the operating system only, leaving fsync to the OS. */
+        NONE
+    }
+
+    /**
+     * Receives records while the log is replayed.
+     */
+    public interface Replayer {
+        /**
+         * Called for a record that stores the full state of a patient.
+         *
+         * @param key     The key of the patient.
+         * @param payload The encoded patient.
+         */
+        void put(String key, byte[] payload);
+
+        /**
+         * Called for a record that moves a patient from one key to another.
+         *
+         * @param oldKey The key the patient was stored under.
+         * @param newKey The key the patient is stored under now.
+         */
+        void rekey(String oldKey, String newKey);
+
+        /**
+         * Called for a record that stores a patient's vitals and status block.
+         *
+         * @param key   The key of the patient.
+         * @param block The block, as written by {@link hospital.ui.users.patients.Patient#writeVitals(java.nio.ByteBuffer, int)}.
+         */
+        void vitals(String key, byte[] block);
+    }
+
+    static final byte PUT = 1;
+    static final byte REKEY = 2;
+    static final byte VITALS = 3;
+
+    private final File file;
+    private final SyncPolicy policy;
+    private final int groupSize;
+    private final long groupMillis;
+
+    private FileOutputStream fileOut;
+    private DataOutputStream out;
+    private final CRC32 crc = new CRC32();
+    private int pending = 0;
+    private long lastSync = System.currentTimeMillis();
+    private ScheduledExecutorService flusher;
+
+    /**
+     * Opens (or creates) a log file for appending.
+     *
+     * @param file        The file backing the log.
+     * @param policy      When appended records are forced to disk.
+     * @param groupSize   For {@link SyncPolicy#GROUP_COMMIT}, how many records may be pending before a sync.
+     * @param groupMillis For {@link SyncPolicy#GROUP_COMMIT}, the longest a record may stay pending.
+     * @throws IOException If the file cannot be opened.
+     */
+    public WriteAheadLog(File file, SyncPolicy policy, int groupSize, long groupMillis) throws IOException {
+        this.file = file;
+        this.policy = policy;
+        this.groupSize = Math.max(1, groupSize);
+        this.groupMillis = Math.max(1, groupMillis);
+        open();
+
+        if (policy == SyncPolicy.GROUP_COMMIT) {
+            flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "wal-group-commit");
+                thread.setDaemon(true);
+                return thread;
+            });
+            flusher.scheduleWithFixedDelay(this::syncIfDue, this.groupMillis, this.groupMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void open() throws IOException {
+        fileOut = new FileOutputStream(file, true);
+        out = new DataOutputStream(new BufferedOutputStream(fileOut));
+    }
+
+    /**
+     * Appends the full state of one patient.
+     *
+     * @param key     The key of the patient.
+     * @param payload The encoded patient.
+     * @throws IOException If the record cannot be written.
+     */
+    public synchronized void appendPut(String key, byte[] payload) throws IOException {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream body = new ByteArrayOutputStream(keyBytes.length + payload.length + 8);
+        DataOutputStream data = new DataOutputStream(body);
+        data.writeByte(PUT);
+        data.writeInt(keyBytes.length);
+        data.write(keyBytes);
+        data.write(payload);
+        append(body.toByteArray());
+    }
+
+    /**
+     * Appends a change of key for a patient.
+     *
+     * @param oldKey The key the patient was stored under.
+     * @param newKey The key the patient is stored under now.
+     * @throws IOException If the record cannot be written.
+     */
+    public synchronized void appendRekey(String oldKey, String newKey) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(body);
+        data.writeByte(REKEY);
+        data.writeUTF(oldKey);
+        data.writeUTF(newKey);
+        append(body.toByteArray());
+    }
+
+    /**
+     * Appends a patient's vitals and status block, without the rest of the patient.
+     *
+     * @param key   The key of the patient.
+     * @param block The block, as written to the vitals file.
+     * @throws IOException If the record cannot be written.
+     */
+    public synchronized void appendVitals(String key, byte[] block) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream(key.length() + block.length + 3);
+        DataOutputStream data = new DataOutputStream(body);
+        data.writeByte(VITALS);
+        data.writeUTF(key);
+        data.write(block);
+        append(body.toByteArray());
+    }
+
+    private void append(byte[] record) throws IOException {
+        crc.reset();
+        crc.update(record, 0, record.length);
+        out.writeInt(record.length);
+        out.writeInt((int) crc.getValue());
+        out.write(record);
+        pending++;
+
+        switch (policy) {
+            case ALWAYS:
+                sync();
+                break;
+            case GROUP_COMMIT:
+                if (pending >= groupSize || System.currentTimeMillis() - lastSync >= groupMillis) {
+                    sync();
+                }
+                break;
+            default:
+                out.flush();
+                break;
+        }
+    }
+
+    /**
+     * Flushes buffered records and forces them to stable storage.
+     *
+     * @throws IOException If the records cannot be flushed.
+     */
+    public synchronized void sync() throws IOException {
+        out.flush();
+        if (pending > 0 && policy != SyncPolicy.NONE) {
+            fileOut.getFD().sync();
+        }
+        pending = 0;
+        lastSync = System.currentTimeMillis();
+    }
+
+    private synchronized void syncIfDue() {
+        if (pending == 0) {
+            return;
+        }
+        try {
+            sync();
+        } catch (IOException e) {
+            System.out.println("Error syncing write-ahead log: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Moves every record written so far into an archive file and starts a new, empty log.
+     * A checkpoint rotates the log before it copies the patient table, so the archive holds only
+     * changes that the snapshot already covers and can be deleted once the snapshot is written.
+     * If an archive is still present from a checkpoint that failed, the records are appended to it
+     * instead so that nothing is lost.
+     *
+     * @param archive The file that receives the current records.
+     * @throws IOException If the log cannot be rotated.
+     */
+    public synchronized void rotate(File archive) throws IOException {
+        sync();
+        out.close();
+
+        if (archive.exists()) {
+            try (FileOutputStream append = new FileOutputStream(archive, true)) {
+                Files.copy(file.toPath(), append);
+                append.getFD().sync();
+            }
+            Files.delete(file.toPath());
+        } else {
+            Files.move(file.toPath(), archive.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        }
+        open();
+    }
+
+    /**
+     * Returns the current size of the log in bytes.
+     *
+     * @return The number of bytes written to the log file.
+     */
+    public synchronized long size() {
+        try {
+            out.flush();
+            return fileOut.getChannel().size();
+        } catch (IOException e) {
+            return file.length();
+        }
+    }
+
+    /**
+     * Flushes any pending records and closes the log.
+     *
+     * @throws IOException If the log cannot be closed cleanly.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (flusher != null) {
+            flusher.shutdownNow();
+        }
+        sync();
+        out.close();
+    }
+
+    /**
+     * Replays every intact record of a log file, in order. If the log ends in a torn or corrupt
+     * record, the file is cut back to the last intact record so new appends follow valid data.
+     *
+     * @param file     The log file to replay.
+     * @param replayer Receives each record.
+     * @return The number of records replayed.
+     * @throws IOException If the file cannot be read.
+     */
+    public static int replay(File file, Replayer replayer) throws IOException {
+        if (!file.exists()) {
+            return 0;
+        }
+
+        int count = 0;
+        long validLength = 0;
+        long fileLength = file.length();
+        CRC32 check = new CRC32();
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            while (true) {
+                byte[] record;
+                int expectedCrc;
+                try {
+                    int length = in.readInt();
+                    expectedCrc = in.readInt();
+                    //a torn or garbage length can claim more than the file holds
+                    if (length <= 0 || length > fileLength - validLength - 8) {
+                        break;
+                    }
+                    record = new byte[length];
+                    in.readFully(record);
+                } catch (EOFException e) {
+                    break;
+                }
+
+                check.reset();
+                check.update(record, 0, record.length);
+                if ((int) check.getValue() != expectedCrc) {
+                    break;
+                }
+
+                DataInputStream body = new DataInputStream(new ByteArrayInputStream(record));
+                byte type = body.readByte();
+                if (type == PUT) {
+                    byte[] keyBytes = new byte[body.readInt()];
+                    body.readFully(keyBytes);
+                    byte[] payload = new byte[body.available()];
+                    body.readFully(payload);
+                    replayer.put(new String(keyBytes, StandardCharsets.UTF_8), payload);
+                } else if (type == REKEY) {
+                    replayer.rekey(body.readUTF(), body.readUTF());
+                } else if (type == VITALS) {
+                    String key = body.readUTF();
+                    byte[] block = new byte[body.available()];
+                    body.readFully(block);
+                    replayer.vitals(key, block);
+                }
+
+                validLength += 8 + record.length;
+                count++;
+            }
+        }
+
+        if (validLength < fileLength) {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(validLength);
+            }
+        }
+        return count;
+    }
+}
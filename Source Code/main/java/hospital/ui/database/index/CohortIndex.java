@@ -0,0 +1,283 @@
+package hospital.ui.database.index;
+
+import hospital.ui.diagnose.DiagnosisCatalog;
+import hospital.ui.labs.Lab;
+import hospital.ui.labs.LabPanel;
+import hospital.ui.users.patients.Patient;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bitmap indexes over the lab results, diagnoses and prescriptions of every patient, for cohort
+ * queries such as "currently admitted patients with an abnormal renal function result, diagnosed
+ * with kidney disease and not on Renvela":
+ *
+ * <pre>{@code
+ * database.cohort().admitted().notDischarged()
+ *         .labResult(LabPanel.RENAL_FUNCTION, Lab.LabResult.Abnormal)
+ *         .diagnosed(Diagnosis.KIDNEY_DISEASE)
+ *         .notPrescribed(DiagnosisCatalog.current().find("RENVELA"))
+ *         .keys();
+ * }</pre>
+ *
+ * <p>Each patient gets a small row number, and each lab result state, status and diagnosis bit
+ * (every condition and medication, at its {@link DiagnosisCatalog} position) has a
+ * {@link CompressedBitmap} of the rows that have it. A query is answered with AND and AND NOT
+ * over those bitmaps, without looking at any patient.</p>
+ */
+public class CohortIndex implements PatientIndex {
+
+    private static final int LABS = LabPanel.LAB_COUNT;
+
+    private final Map<String, Integer> rowByKey = new HashMap<>();
+    private String[] keyByRow = new String[1024];
+    private int rows = 0;
+    private final List<Integer> freeRows = new ArrayList<>();
+
+    private final CompressedBitmap all = new CompressedBitmap();
+    private final CompressedBitmap admitted = new CompressedBitmap();
+    private final CompressedBitmap discharged = new CompressedBitmap();
+    private final CompressedBitmap[][] labResults = new CompressedBitmap[LABS][Lab.LabResult.values().length];
+    private final CompressedBitmap[] diagnosisBits = new CompressedBitmap[DiagnosisCatalog.MAX_ENTRIES];
+    //every diagnosis bit any row has had, so only those bitmaps are visited
+    private long usedDiagnosisBits;
+
+    /**
+     * Creates an empty index.
+     */
+    public CohortIndex() {
+        for (CompressedBitmap[] lab : labResults) {
+            for (int r = 0; r < lab.length; r++) {
+                lab[r] = new CompressedBitmap();
+            }
+        }
+        for (int b = 0; b < diagnosisBits.length; b++) {
+            diagnosisBits[b] = new CompressedBitmap();
+        }
+    }
+
+    @Override
+    public synchronized void update(String key, Patient patient) {
+        Integer row = rowByKey.get(key);
+        if (row == null) {
+            row = freeRows.isEmpty() ? rows++ : freeRows.remove(freeRows.size() - 1);
+            if (row >= keyByRow.length) {
+                keyByRow = Arrays.copyOf(keyByRow, keyByRow.length * 2);
+            }
+            keyByRow[row] = key;
+            rowByKey.put(key, row);
+            all.add(row);
+        }
+
+        admitted.set(row, patient.isAdmitted());
+        discharged.set(row, patient.isDischarged());
+
+        LabPanel labs = patient.getLabPanel();
+        for (int l = 0; l < LABS; l++) {
+            int result = labs.getResult(l).ordinal();
+            for (int r = 0; r < labResults[l].length; r++) {
+                labResults[l][r].set(row, r == result);
+            }
+        }
+
+        long bits = patient.getDiagnosis().getBits();
+        usedDiagnosisBits |= bits;
+        for (long used = usedDiagnosisBits; used != 0; used &= used - 1) {
+            int b = Long.numberOfTrailingZeros(used);
+            diagnosisBits[b].set(row, (bits & 1L << b) != 0);
+        }
+    }
+
+    @Override
+    public synchronized void remove(String key) {
+        Integer row = rowByKey.remove(key);
+        if (row == null) {
+            return;
+        }
+
+        all.remove(row);
+        admitted.remove(row);
+        discharged.remove(row);
+        for (CompressedBitmap[] lab : labResults) {
+            for (CompressedBitmap bitmap : lab) {
+                bitmap.remove(row);
+            }
+        }
+        for (long used = usedDiagnosisBits; used != 0; used &= used - 1) {
+            diagnosisBits[Long.numberOfTrailingZeros(used)].remove(row);
+        }
+        keyByRow[row] = null;
+        freeRows.add(row);
+    }
+
+    /**
+     * Starts a query over every patient in the index.
+     *
+     * @return A query matching every patient, to be narrowed down.
+     */
+    public Query query() {
+        return new Query();
+    }
+
+    /**
+     * Estimates the memory used by all the bitmaps.
+     *
+     * @return The approximate size in bytes.
+     */
+    public synchronized long sizeInBytes() {
+        long bytes = all.sizeInBytes() + admitted.sizeInBytes() + discharged.sizeInBytes();
+        for (CompressedBitmap[] lab : labResults) {
+            for (CompressedBitmap bitmap : lab) {
+                bytes += bitmap.sizeInBytes();
+            }
+        }
+        for (CompressedBitmap bitmap : diagnosisBits) {
+            bytes += bitmap.sizeInBytes();
+        }
+        return bytes;
+    }
+
+    /**
+     * A cohort being narrowed down. Each condition is applied straight away with one bitmap
+     * operation, so conditions can be chained in any order.
+     */
+    public final class Query {
+        //the rows matched so far, null until the first condition (every patient)
+        private CompressedBitmap rows;
+
+        private Query() {}
+
+        private Query and(CompressedBitmap bitmap) {
+            synchronized (CohortIndex.this) {
+                rows = rows == null ? bitmap.copy() : rows.and(bitmap);
+            }
+            return this;
+        }
+
+        private Query andNot(CompressedBitmap bitmap) {
+            synchronized (CohortIndex.this) {
+                rows = (rows == null ? all : rows).andNot(bitmap);
+            }
+            return this;
+        }
+
+        private CompressedBitmap rows() {
+            synchronized (CohortIndex.this) {
+                if (rows == null) {
+                    rows = all.copy();
+                }
+                return rows;
+            }
+        }
+
+        /**
+         * Keeps only patients who have been admitted, including those discharged since; add
+         * {@link #notDischarged()} for the patients currently admitted.
+         *
+         * @return This query.
+         */
+        public Query admitted() {
+            return and(admitted);
+        }
+
+        /**
+         * Keeps only discharged patients.
+         *
+         * @return This query.
+         */
+        public Query discharged() {
+            return and(discharged);
+        }
+
+        /**
+         * Leaves out discharged patients.
+         *
+         * @return This query.
+         */
+        public Query notDischarged() {
+            return andNot(discharged);
+        }
+
+        /**
+         * Keeps only patients whose lab has the given result.
+         *
+         * @param lab    The position of the lab in the panel, such as {@code LabPanel.RENAL_FUNCTION}.
+         * @param result The result.
+         * @return This query.
+         */
+        public Query labResult(int lab, Lab.LabResult result) {
+            return and(labResults[lab][result.ordinal()]);
+        }
+
+        /**
+         * Keeps only patients diagnosed with a condition.
+         *
+         * @param condition The position of the condition, such as {@code Diagnosis.KIDNEY_DISEASE}.
+         * @return This query.
+         */
+        public Query diagnosed(int condition) {
+            return and(diagnosisBits[condition]);
+        }
+
+        /**
+         * Leaves out patients diagnosed with a condition.
+         *
+         * @param condition The position of the condition.
+         * @return This query.
+         */
+        public Query notDiagnosed(int condition) {
+            return andNot(diagnosisBits[condition]);
+        }
+
+        /**
+         * Keeps only patients who have been prescribed a medication.
+         *
+         * @param medication The position of the medication in the {@link DiagnosisCatalog}.
+         * @return This query.
+         */
+        public Query prescribed(int medication) {
+            return and(diagnosisBits[medication]);
+        }
+
+        /**
+         * Leaves out patients who have been prescribed a medication.
+         *
+         * @param medication The position of the medication in the {@link DiagnosisCatalog}.
+         * @return This query.
+         */
+        public Query notPrescribed(int medication) {
+            return andNot(diagnosisBits[medication]);
+        }
+
+        /**
+         * Counts the patients in the cohort.
+         *
+         * @return The number of patients.
+         */
+        public int count() {
+            return rows().cardinality();
+        }
+
+        /**
+         * Gets the keys of the patients in the cohort.
+         *
+         * @return The patient keys.
+         */
+        public List<String> keys() {
+            CompressedBitmap matched = rows();
+            List<String> keys = new ArrayList<>(matched.cardinality());
+            synchronized (CohortIndex.this) {
+                matched.forEach(row -> {
+                    if (keyByRow[row] != null) {
+                        keys.add(keyByRow[row]);
+                    }
+                });
+            }
+            return keys;
+        }
+    }
+}
@@ -0,0 +1,461 @@
+package hospital.ui.database.index;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * A compressed set of non-negative ints, used for bitmap indexes over patients.
+ *
+ * <p>The ints are split into chunks of 65536 by their upper 16 bits. A chunk with few members
+ * stores them as a sorted array of their lower 16 bits (two bytes each); a chunk with more than
+ * 4096 members stores a plain 8 KB bitmap instead, which is smaller from that point on. Empty
+ * chunks are not stored. So a rare condition costs a few bytes per patient that has it, while a
+ * common lab result costs at most one bit per patient, and AND, OR and AND NOT work a chunk at a
+ * time, mostly on whole 64-bit words.</p>
+ *
+ * <p>This class is not thread-safe.</p>
+ */
+public class CompressedBitmap {
+
+    private static final int ARRAY_LIMIT = 4096;
+    private static final int WORDS = 1024;
+
+    private char[] keys = new char[4];
+    private Chunk[] chunks = new Chunk[4];
+    private int size;
+
+    /**
+     * The members of one chunk, as either a sorted array or a bitmap.
+     */
+    private static final class Chunk {
+        char[] values;
+        long[] bits;
+        int cardinality;
+
+        static Chunk ofArray(char[] values, int cardinality) {
+            Chunk chunk = new Chunk();
+            chunk.values = values;
+            chunk.cardinality = cardinality;
+            return chunk;
+        }
+
+        static Chunk ofBits(long[] bits, int cardinality) {
+            Chunk chunk = new Chunk();
+            chunk.bits = bits;
+            chunk.cardinality = cardinality;
+            return chunk.cardinality <= ARRAY_LIMIT ? chunk.toArrayChunk() : chunk;
+        }
+
+        boolean contains(char low) {
+            if (bits != null) {
+                return (bits[low >>> 6] & (1L << low)) != 0;
+            }
+            return Arrays.binarySearch(values, 0, cardinality, low) >= 0;
+        }
+
+        boolean add(char low) {
+            if (bits != null) {
+                long before = bits[low >>> 6];
+                bits[low >>> 6] = before | (1L << low);
+                if (before == bits[low >>> 6]) {
+                    return false;
+                }
+                cardinality++;
+                return true;
+            }
+
+            int i = Arrays.binarySearch(values, 0, cardinality, low);
+            if (i >= 0) {
+                return false;
+            }
+            i = -i - 1;
+            if (cardinality == ARRAY_LIMIT) {
+                toBitChunk();
+                return add(low);
+            }
+            if (cardinality == values.length) {
+                values = Arrays.copyOf(values, Math.min(ARRAY_LIMIT, values.length * 2));
+            }
+            System.arraycopy(values, i, values, i + 1, cardinality - i);
+            values[i] = low;
+            cardinality++;
+            return true;
+        }
+
+        boolean remove(char low) {
+            if (bits != null) {
+                long before = bits[low >>> 6];
+                bits[low >>> 6] = before & ~(1L << low);
+                if (before == bits[low >>> 6]) {
+                    return false;
+                }
+                cardinality--;
+                if (cardinality <= ARRAY_LIMIT / 2) {
+                    Chunk array = toArrayChunk();
+                    values = array.values;
+                    bits = null;
+                }
+                return true;
+            }
+
+            int i = Arrays.binarySearch(values, 0, cardinality, low);
+            if (i < 0) {
+                return false;
+            }
+            System.arraycopy(values, i + 1, values, i, cardinality - i - 1);
+            cardinality--;
+            return true;
+        }
+
+        void toBitChunk() {
+            bits = new long[WORDS];
+            for (int i = 0; i < cardinality; i++) {
+                bits[values[i] >>> 6] |= 1L << values[i];
+            }
+            values = null;
+        }
+
+        Chunk toArrayChunk() {
+            char[] array = new char[Math.max(4, cardinality)];
+            int n = 0;
+            for (int w = 0; w < WORDS; w++) {
+                long word = bits[w];
+                while (word != 0) {
+                    array[n++] = (char) ((w << 6) + Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+            return ofArray(array, n);
+        }
+
+        Chunk copy() {
+            return bits != null ? ofBits(bits.clone(), cardinality) : ofArray(Arrays.copyOf(values, Math.max(4, cardinality)), cardinality);
+        }
+
+        Chunk and(Chunk other) {
+            if (bits != null && other.bits != null) {
+                long[] result = new long[WORDS];
+                int count = 0;
+                for (int w = 0; w < WORDS; w++) {
+                    result[w] = bits[w] & other.bits[w];
+                    count += Long.bitCount(result[w]);
+                }
+                return ofBits(result, count);
+            }
+            if (bits != null) {
+                return other.and(this);
+            }
+
+            char[] result = new char[cardinality];
+            int n = 0;
+            if (other.bits != null) {
+                for (int i = 0; i < cardinality; i++) {
+                    if (other.contains(values[i])) {
+                        result[n++] = values[i];
+                    }
+                }
+            } else {
+                int i = 0;
+                int j = 0;
+                while (i < cardinality && j < other.cardinality) {
+                    if (values[i] < other.values[j]) {
+                        i++;
+                    } else if (values[i] > other.values[j]) {
+                        j++;
+                    } else {
+                        result[n++] = values[i];
+                        i++;
+                        j++;
+                    }
+                }
+            }
+            return ofArray(result, n);
+        }
+
+        Chunk or(Chunk other) {
+            if (bits == null && other.bits == null && cardinality + other.cardinality <= ARRAY_LIMIT) {
+                char[] result = new char[cardinality + other.cardinality];
+                int i = 0;
+                int j = 0;
+                int n = 0;
+                while (i < cardinality || j < other.cardinality) {
+                    if (j == other.cardinality || (i < cardinality && values[i] < other.values[j])) {
+                        result[n++] = values[i++];
+                    } else if (i == cardinality || values[i] > other.values[j]) {
+                        result[n++] = other.values[j++];
+                    } else {
+                        result[n++] = values[i++];
+                        j++;
+                    }
+                }
+                return ofArray(result, n);
+            }
+
+            long[] result = new long[WORDS];
+            orInto(result);
+            other.orInto(result);
+            int count = 0;
+            for (long word : result) {
+                count += Long.bitCount(word);
+            }
+            return ofBits(result, count);
+        }
+
+        private void orInto(long[] result) {
+            if (bits != null) {
+                for (int w = 0; w < WORDS; w++) {
+                    result[w] |= bits[w];
+                }
+            } else {
+                for (int i = 0; i < cardinality; i++) {
+                    result[values[i] >>> 6] |= 1L << values[i];
+                }
+            }
+        }
+
+        Chunk andNot(Chunk other) {
+            if (bits == null) {
+                char[] result = new char[cardinality];
+                int n = 0;
+                for (int i = 0; i < cardinality; i++) {
+                    if (!other.contains(values[i])) {
+                        result[n++] = values[i];
+                    }
+                }
+                return ofArray(result, n);
+            }
+
+            long[] result = bits.clone();
+            if (other.bits != null) {
+                for (int w = 0; w < WORDS; w++) {
+                    result[w] &= ~other.bits[w];
+                }
+            } else {
+                for (int i = 0; i < other.cardinality; i++) {
+                    result[other.values[i] >>> 6] &= ~(1L << other.values[i]);
+                }
+            }
+            int count = 0;
+            for (long word : result) {
+                count += Long.bitCount(word);
+            }
+            return ofBits(result, count);
+        }
+
+        void forEach(int high, IntConsumer action) {
+            if (bits != null) {
+                for (int w = 0; w < WORDS; w++) {
+                    long word = bits[w];
+                    while (word != 0) {
+                        action.accept(high | (w << 6) + Long.numberOfTrailingZeros(word));
+                        word &= word - 1;
+                    }
+                }
+            } else {
+                for (int i = 0; i < cardinality; i++) {
+                    action.accept(high | values[i]);
+                }
+            }
+        }
+    }
+
+    private int find(char key) {
+        return Arrays.binarySearch(keys, 0, size, key);
+    }
+
+    private void append(char key, Chunk chunk) {
+        if (chunk.cardinality == 0) {
+            return;
+        }
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            chunks = Arrays.copyOf(chunks, size * 2);
+        }
+        keys[size] = key;
+        chunks[size++] = chunk;
+    }
+
+    /**
+     * Adds a value.
+     *
+     * @param value The value, not negative.
+     * @return {@code true} if the value was not in the set yet.
+     */
+    public boolean add(int value) {
+        char key = (char) (value >>> 16);
+        int i = find(key);
+        if (i < 0) {
+            i = -i - 1;
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                chunks = Arrays.copyOf(chunks, size * 2);
+            }
+            System.arraycopy(keys, i, keys, i + 1, size - i);
+            System.arraycopy(chunks, i, chunks, i + 1, size - i);
+            keys[i] = key;
+            chunks[i] = Chunk.ofArray(new char[4], 0);
+            size++;
+        }
+        return chunks[i].add((char) value);
+    }
+
+    /**
+     * Removes a value.
+     *
+     * @param value The value.
+     * @return {@code true} if the value was in the set.
+     */
+    public boolean remove(int value) {
+        int i = find((char) (value >>> 16));
+        if (i < 0 || !chunks[i].remove((char) value)) {
+            return false;
+        }
+        if (chunks[i].cardinality == 0) {
+            System.arraycopy(keys, i + 1, keys, i, size - i - 1);
+            System.arraycopy(chunks, i + 1, chunks, i, size - i - 1);
+            chunks[--size] = null;
+        }
+        return true;
+    }
+
+    /**
+     * Adds or removes a value.
+     *
+     * @param value   The value.
+     * @param present {@code true} to add the value, {@code false} to remove it.
+     */
+    public void set(int value, boolean present) {
+        if (present) {
+            add(value);
+        } else {
+            remove(value);
+        }
+    }
+
+    /**
+     * Checks whether a value is in the set.
+     *
+     * @param value The value.
+     * @return {@code true} if the value is in the set.
+     */
+    public boolean contains(int value) {
+        int i = find((char) (value >>> 16));
+        return i >= 0 && chunks[i].contains((char) value);
+    }
+
+    /**
+     * Counts the values in the set.
+     *
+     * @return The number of values.
+     */
+    public int cardinality() {
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            count += chunks[i].cardinality;
+        }
+        return count;
+    }
+
+    /**
+     * Makes an independent copy of the set.
+     *
+     * @return The copy.
+     */
+    public CompressedBitmap copy() {
+        CompressedBitmap copy = new CompressedBitmap();
+        for (int i = 0; i < size; i++) {
+            copy.append(keys[i], chunks[i].copy());
+        }
+        return copy;
+    }
+
+    /**
+     * Computes the values that are in both sets.
+     *
+     * @param other The other set.
+     * @return A new set with the intersection.
+     */
+    public CompressedBitmap and(CompressedBitmap other) {
+        CompressedBitmap result = new CompressedBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < size && j < other.size) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                result.append(keys[i], chunks[i++].and(other.chunks[j++]));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Computes the values that are in either set.
+     *
+     * @param other The other set.
+     * @return A new set with the union.
+     */
+    public CompressedBitmap or(CompressedBitmap other) {
+        CompressedBitmap result = new CompressedBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < size || j < other.size) {
+            if (j == other.size || (i < size && keys[i] < other.keys[j])) {
+                result.append(keys[i], chunks[i++].copy());
+            } else if (i == size || keys[i] > other.keys[j]) {
+                result.append(other.keys[j], other.chunks[j++].copy());
+            } else {
+                result.append(keys[i], chunks[i++].or(other.chunks[j++]));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Computes the values that are in this set but not in the other.
+     *
+     * @param other The set of values to leave out.
+     * @return A new set with the difference.
+     */
+    public CompressedBitmap andNot(CompressedBitmap other) {
+        CompressedBitmap result = new CompressedBitmap();
+        int j = 0;
+        for (int i = 0; i < size; i++) {
+            while (j < other.size && other.keys[j] < keys[i]) {
+                j++;
+            }
+            if (j < other.size && other.keys[j] == keys[i]) {
+                result.append(keys[i], chunks[i].andNot(other.chunks[j]));
+            } else {
+                result.append(keys[i], chunks[i].copy());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Calls an action for every value, in increasing order.
+     *
+     * @param action The action to call.
+     */
+    public void forEach(IntConsumer action) {
+        for (int i = 0; i < size; i++) {
+            chunks[i].forEach(keys[i] << 16, action);
+        }
+    }
+
+    /**
+     * Estimates the memory used by the set's members.
+     *
+     * @return The approximate size in bytes.
+     */
+    public long sizeInBytes() {
+        long bytes = size * 6L;
+        for (int i = 0; i < size; i++) {
+            bytes += chunks[i].bits != null ? WORDS * 8L : chunks[i].values.length * 2L;
+        }
+        return bytes;
+    }
+}
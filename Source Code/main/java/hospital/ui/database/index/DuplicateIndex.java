@@ -0,0 +1,295 @@
+package hospital.ui.database.index;
+
+import hospital.ui.users.patients.Patient;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Finds patients that are likely to be the same person entered twice, such as "Jon Doe" and
+ * "John Doe" with the same date of birth.
+ *
+ * <p>Comparing every patient with every other is far too slow for a large census, so patients are
+ * grouped into blocks first and only compared within a block. Each patient is in two blocks: the
+ * Soundex code of their last name with their date of birth, and the Soundex code of their first
+ * name with their date of birth. A misspelling of either name still leaves the patient sharing a
+ * block with their other record. Within a block, names are scored with
+ * {@link NameMatcher#similarity(String, String)}.</p>
+ *
+ * <p>The same blocks are used at check-in to warn about a likely duplicate, which only looks at
+ * the new patient's two blocks, and by {@link #findAllDuplicates(ForkJoinPool)}, which compares
+ * every block in parallel.</p>
+ */
+public class DuplicateIndex implements PatientIndex {
+
+    /**
+     * The lowest score, from 0 to 1, at which two patients are reported as likely duplicates.
+     */
+    public static final double THRESHOLD = 0.9;
+
+    //the lowest similarity either name may have on its own
+    private static final double NAME_THRESHOLD = 0.85;
+
+    //a task compares at most this many blocks itself and splits larger ranges
+    private static final int BLOCKS_PER_TASK = 256;
+
+    /**
+     * Two patients that are likely to be the same person.
+     */
+    public static final class MergeCandidate {
+        private final Entry first;
+        private final Entry second;
+        private final double score;
+
+        MergeCandidate(Entry first, Entry second, double score) {
+            this.first = first;
+            this.second = second;
+            this.score = score;
+        }
+
+        /**
+         * Gets the key of the first patient.
+         *
+         * @return The first patient's key.
+         */
+        public String getKey() {
+            return first.key;
+        }
+
+        /**
+         * Gets the key of the patient that may be a duplicate of the first.
+         *
+         * @return The second patient's key.
+         */
+        public String getOtherKey() {
+            return second.key;
+        }
+
+        /**
+         * Describes the patient that may be a duplicate of the first.
+         *
+         * @return The second patient's name, date of birth and medical record number.
+         */
+        public String describeOther() {
+            return second.toString();
+        }
+
+        /**
+         * Gets how alike the two patients' names are.
+         *
+         * @return The score, from {@link DuplicateIndex#THRESHOLD} to 1.
+         */
+        public double getScore() {
+            return score;
+        }
+
+        @Override
+        public String toString() {
+            return first + " ~ " + second + String.format(" (%.2f)", score);
+        }
+    }
+
+    // what is kept of each patient: enough to compare and to describe it
+    private static final class Entry {
+        final String key;
+        final String lastName;
+        final String firstName;
+        final String dob;
+        final long medicalRecordNumber;
+        final String[] blocks;
+
+        Entry(String key, Patient patient) {
+            this.key = key;
+            this.lastName = patient.getLastName();
+            this.firstName = patient.getFirstName();
+            this.dob = patient.getDob();
+            this.medicalRecordNumber = patient.getMedicalRecordNumber();
+            this.blocks = blocks(lastName, firstName, dob);
+        }
+
+        @Override
+        public String toString() {
+            return lastName + ", " + firstName + " " + dob + " (MRN " + medicalRecordNumber + ")";
+        }
+    }
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> blocks = new ConcurrentHashMap<>();
+
+    private static String[] blocks(String lastName, String firstName, String dob) {
+        return new String[] { "L" + NameMatcher.soundex(lastName) + dob, "F" + NameMatcher.soundex(firstName) + dob };
+    }
+
+    // the average similarity of the two names, or 0 if either name on its own is too different
+    private static double score(Entry a, Entry b) {
+        double last = NameMatcher.similarity(a.lastName, b.lastName);
+        double first = NameMatcher.similarity(a.firstName, b.firstName);
+        if (last < NAME_THRESHOLD || first < NAME_THRESHOLD) {
+            return 0;
+        }
+        return (last + first) / 2;
+    }
+
+    @Override
+    public void update(String key, Patient patient) {
+        Entry entry = new Entry(key, patient);
+        Entry old = entries.put(key, entry);
+        if (old != null) {
+            //most updates are to other fields, and leave the patient in the same blocks
+            if (Arrays.equals(old.blocks, entry.blocks)) {
+                return;
+            }
+            removeFromBlocks(old);
+        }
+        for (String block : entry.blocks) {
+            blocks.computeIfAbsent(block, b -> ConcurrentHashMap.newKeySet()).add(key);
+        }
+    }
+
+    @Override
+    public void remove(String key) {
+        Entry old = entries.remove(key);
+        if (old != null) {
+            removeFromBlocks(old);
+        }
+    }
+
+    private void removeFromBlocks(Entry entry) {
+        for (String block : entry.blocks) {
+            blocks.computeIfPresent(block, (b, keys) -> {
+                keys.remove(entry.key);
+                return keys.isEmpty() ? null : keys;
+            });
+        }
+    }
+
+    /**
+     * Finds patients that are likely to be the same person as the given one. Only the patients
+     * sharing one of its two blocks are compared, so this takes microseconds even with a large census.
+     *
+     * @param key     The key of the patient, which is left out of the results.
+     * @param patient The patient.
+     * @return The likely duplicates, best match first.
+     */
+    public List<MergeCandidate> findLikelyDuplicates(String key, Patient patient) {
+        Entry entry = new Entry(key, patient);
+        List<MergeCandidate> found = new ArrayList<>();
+        for (String block : entry.blocks) {
+            Set<String> keys = blocks.get(block);
+            if (keys == null) {
+                continue;
+            }
+            for (String otherKey : keys) {
+                Entry other = entries.get(otherKey);
+                if (other == null || other.key.equals(key) || containsKey(found, other.key)) {
+                    continue;
+                }
+                double score = score(entry, other);
+                if (score >= THRESHOLD) {
+                    found.add(new MergeCandidate(entry, other, score));
+                }
+            }
+        }
+        found.sort(Comparator.comparingDouble(MergeCandidate::getScore).reversed());
+        return found;
+    }
+
+    private static boolean containsKey(List<MergeCandidate> found, String key) {
+        for (MergeCandidate candidate : found) {
+            if (candidate.second.key.equals(key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Compares the patients within every block in parallel and reports each likely duplicate pair once.
+     *
+     * @param pool The pool to run the comparison in.
+     * @return The likely duplicate pairs, best match first.
+     */
+    public List<MergeCandidate> findAllDuplicates(ForkJoinPool pool) {
+        List<String> names = new ArrayList<>();
+        List<String[]> members = new ArrayList<>();
+        for (Map.Entry<String, Set<String>> block : blocks.entrySet()) {
+            String[] keys = block.getValue().toArray(new String[0]);
+            if (keys.length > 1) {
+                names.add(block.getKey());
+                members.add(keys);
+            }
+        }
+
+        List<MergeCandidate> found = pool.invoke(new CompareBlocks(names, members, 0, names.size()));
+        found.sort(Comparator.comparingDouble(MergeCandidate::getScore).reversed());
+        return found;
+    }
+
+    /**
+     * Compares the patients in a range of blocks, splitting the range while it is large.
+     */
+    private class CompareBlocks extends RecursiveTask<List<MergeCandidate>> {
+        private static final long serialVersionUID = 1L;
+
+        private final List<String> names;
+        private final List<String[]> members;
+        private final int from;
+        private final int to;
+
+        CompareBlocks(List<String> names, List<String[]> members, int from, int to) {
+            this.names = names;
+            this.members = members;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected List<MergeCandidate> compute() {
+            if (to - from > BLOCKS_PER_TASK) {
+                int middle = (from + to) >>> 1;
+                CompareBlocks left = new CompareBlocks(names, members, from, middle);
+                left.fork();
+                List<MergeCandidate> found = new CompareBlocks(names, members, middle, to).compute();
+                found.addAll(left.join());
+                return found;
+            }
+
+            List<MergeCandidate> found = new ArrayList<>();
+            for (int b = from; b < to; b++) {
+                boolean firstNameBlock = names.get(b).startsWith("F");
+                String[] keys = members.get(b);
+                for (int i = 0; i < keys.length; i++) {
+                    Entry a = entries.get(keys[i]);
+                    for (int j = i + 1; j < keys.length && a != null; j++) {
+                        Entry other = entries.get(keys[j]);
+                        //a pair that also shares a last name block is reported from there
+                        if (other == null || (firstNameBlock && a.blocks[0].equals(other.blocks[0]))) {
+                            continue;
+                        }
+                        double score = score(a, other);
+                        if (score >= THRESHOLD) {
+                            found.add(new MergeCandidate(a, other, score));
+                        }
+                    }
+                }
+            }
+            return found;
+        }
+    }
+
+    /**
+     * Gets the number of patients in the index.
+     *
+     * @return The patient count.
+     */
+    public int size() {
+        return entries.size();
+    }
+}
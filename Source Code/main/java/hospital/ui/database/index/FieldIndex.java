@@ -0,0 +1,169 @@
+package hospital.ui.database.index;
+
+import hospital.ui.users.patients.Patient;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * A secondary index on one patient field, defined by the getter that reads the field. The index
+ * remembers the value it last saw for each patient, so when a patient changes only the entries
+ * for the old and new value are touched. Patients whose field is {@code null} are left out.
+ *
+ * <p>Subclasses decide how values are organised: {@link HashFieldIndex} for exact lookups and
+ * {@link SortedFieldIndex} for ranges. Indexes that are kept together can share one table of
+ * last seen values by joining a {@link FieldIndexGroup}, which is then updated in their place.</p>
+ *
+ * @param <V> The type of the indexed field.
+ */
+public abstract class FieldIndex<V> implements PatientIndex {
+
+    private final String name;
+    private final Function<Patient, V> getter;
+    private final Map<String, V> valueByKey = new ConcurrentHashMap<>();
+    private final AtomicInteger size = new AtomicInteger();
+
+    //set once the index joins a group, which then remembers the values in its own table
+    private FieldIndexGroup group;
+    private int slot;
+
+    /**
+     * Creates an index on a patient field.
+     *
+     * @param name   A name for the index, used in messages.
+     * @param getter Reads the indexed value from a patient.
+     */
+    protected FieldIndex(String name, Function<Patient, V> getter) {
+        this.name = name;
+        this.getter = getter;
+    }
+
+    /**
+     * Gets the values of the index and the keys of the patients that have each value.
+     *
+     * @return The map from value to patient keys.
+     */
+    protected abstract Map<V, Set<String>> buckets();
+
+    // makes the index part of a group, before anything has been indexed
+    void join(FieldIndexGroup group, int slot) {
+        if (this.group != null || size.get() > 0) {
+            throw new IllegalStateException("Index " + name + " is already in use");
+        }
+        this.group = group;
+        this.slot = slot;
+    }
+
+    // reads the indexed value from a patient
+    V valueOf(Patient patient) {
+        return getter.apply(patient);
+    }
+
+    // moves a patient from the bucket of its old value to that of its new one
+    @SuppressWarnings("unchecked")
+    void move(String key, Object old, Object value) {
+        if (old != null) {
+            removeFromBucket((V) old, key);
+        }
+        if (value != null) {
+            buckets().computeIfAbsent((V) value, v -> ConcurrentHashMap.newKeySet()).add(key);
+        }
+        size.addAndGet((value != null ? 1 : 0) - (old != null ? 1 : 0));
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws IllegalStateException If the index is in a group, which must be updated instead.
+     */
+    @Override
+    public void update(String key, Patient patient) {
+        checkNotGrouped();
+        V value = getter.apply(patient);
+        V old = value == null ? valueByKey.remove(key) : valueByKey.put(key, value);
+        if (!Objects.equals(old, value)) {
+            move(key, old, value);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws IllegalStateException If the index is in a group, which must be updated instead.
+     */
+    @Override
+    public void remove(String key) {
+        checkNotGrouped();
+        V old = valueByKey.remove(key);
+        if (old != null) {
+            move(key, old, null);
+        }
+    }
+
+    private void checkNotGrouped() {
+        if (group != null) {
+            throw new IllegalStateException("Index " + name + " is updated through its group");
+        }
+    }
+
+    private void removeFromBucket(V value, String key) {
+        buckets().computeIfPresent(value, (v, keys) -> {
+            keys.remove(key);
+            return keys.isEmpty() ? null : keys;
+        });
+    }
+
+    /**
+     * Finds the patients whose field has exactly the given value.
+     *
+     * @param value The value to look for.
+     * @return The keys of the matching patients; a live view, copy it to keep it.
+     */
+    public Set<String> find(V value) {
+        Set<String> keys = value == null ? null : buckets().get(value);
+        return keys == null ? Collections.emptySet() : Collections.unmodifiableSet(keys);
+    }
+
+    /**
+     * Gets the value indexed for a patient, without reading the patient.
+     *
+     * @param key The patient's key.
+     * @return The value, or {@code null} if the patient is not in the index.
+     */
+    @SuppressWarnings("unchecked")
+    public V get(String key) {
+        return group == null ? valueByKey.get(key) : (V) group.get(key, slot);
+    }
+
+    /**
+     * Gets the distinct values in the index.
+     *
+     * @return The values; a live view, copy it to keep it.
+     */
+    public Set<V> values() {
+        return Collections.unmodifiableSet(buckets().keySet());
+    }
+
+    /**
+     * Gets the name of the index.
+     *
+     * @return The name.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Gets the number of patients in the index.
+     *
+     * @return The number of patients whose field is not {@code null}.
+     */
+    public int size() {
+        return size.get();
+    }
+}
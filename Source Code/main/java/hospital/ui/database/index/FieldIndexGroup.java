@@ -0,0 +1,91 @@
+package hospital.ui.database.index;
+
+import hospital.ui.users.patients.Patient;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps several {@link FieldIndex field indexes} up to date together. Each index needs the value
+ * it last saw for a patient to find the bucket to take the patient out of; the group remembers
+ * those values for all of its indexes in one entry per patient, instead of one entry per patient
+ * in every index, and looks the patient up once per change rather than once per index.
+ *
+ * <p>The group is registered with the database in place of its indexes, which are still queried
+ * directly. An index can only join one group, and only before anything has been indexed.</p>
+ */
+public class FieldIndexGroup implements PatientIndex {
+
+    private final FieldIndex<?>[] indexes;
+    //the last seen values of each patient, by index; an array is never changed once it is in the map
+    private final Map<String, Object[]> valuesByKey = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a group of field indexes.
+     *
+     * @param indexes The indexes, which must not have been used yet.
+     */
+    public FieldIndexGroup(FieldIndex<?>... indexes) {
+        this.indexes = indexes.clone();
+        for (int i = 0; i < indexes.length; i++) {
+            indexes[i].join(this, i);
+        }
+    }
+
+    @Override
+    public void update(String key, Patient patient) {
+        Object[] old = valuesByKey.get(key);
+        Object[] values = new Object[indexes.length];
+        boolean changed = false;
+        boolean empty = true;
+        for (int i = 0; i < indexes.length; i++) {
+            values[i] = indexes[i].valueOf(patient);
+            changed |= !Objects.equals(values[i], old == null ? null : old[i]);
+            empty &= values[i] == null;
+        }
+        if (!changed) {
+            return;
+        }
+
+        if (empty) {
+            valuesByKey.remove(key);
+        } else {
+            valuesByKey.put(key, values);
+        }
+        for (int i = 0; i < indexes.length; i++) {
+            Object was = old == null ? null : old[i];
+            if (!Objects.equals(was, values[i])) {
+                indexes[i].move(key, was, values[i]);
+            }
+        }
+    }
+
+    @Override
+    public void remove(String key) {
+        Object[] old = valuesByKey.remove(key);
+        if (old == null) {
+            return;
+        }
+        for (int i = 0; i < indexes.length; i++) {
+            if (old[i] != null) {
+                indexes[i].move(key, old[i], null);
+            }
+        }
+    }
+
+    // the value an index last saw for a patient
+    Object get(String key, int slot) {
+        Object[] values = valuesByKey.get(key);
+        return values == null ? null : values[slot];
+    }
+
+    /**
+     * Gets the number of patients with a value in at least one of the indexes.
+     *
+     * @return The number of patients.
+     */
+    public int size() {
+        return valuesByKey.size();
+    }
+}
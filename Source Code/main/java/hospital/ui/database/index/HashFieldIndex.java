@@ -0,0 +1,33 @@
+package hospital.ui.database.index;
+
+import hospital.ui.users.patients.Patient;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * An index for exact lookups on a patient field, such as the phone number or insurance plan.
+ *
+ * @param <V> The type of the indexed field.
+ */
+public class HashFieldIndex<V> extends FieldIndex<V> {
+
+    private final Map<V, Set<String>> buckets = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a hash index on a patient field.
+     *
+     * @param name   A name for the index, used in messages.
+     * @param getter Reads the indexed value from a patient.
+     */
+    public HashFieldIndex(String name, Function<Patient, V> getter) {
+        super(name, getter);
+    }
+
+    @Override
+    protected Map<V, Set<String>> buckets() {
+        return buckets;
+    }
+}
@@ -0,0 +1,238 @@
+package hospital.ui.database.index;
+
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * A hash index from {@code long} keys to values, stored in two parallel arrays with open
+ * addressing and linear probing. Keys are kept as primitives, so a lookup does not box the key
+ * or allocate anything, and each entry costs one {@code long} and one reference instead of a map
+ * entry object and a boxed {@code Long}.
+ *
+ * <p>The key 0 marks an empty slot and cannot be stored. Writers take an exclusive lock; readers
+ * use an optimistic read and only take the read lock if a write happened during the lookup.</p>
+ *
+ * @param <V> The type of the values.
+ */
+public class LongIndex<V> {
+
+    private static final long PHI = 0x9E3779B97F4A7C15L;
+    private static final int MIN_CAPACITY = 16;
+
+    private final StampedLock lock = new StampedLock();
+    private long[] keys;
+    private Object[] values;
+    private int size;
+
+    /**
+     * Creates an empty index.
+     */
+    public LongIndex() {
+        this(MIN_CAPACITY);
+    }
+
+    /**
+     * Creates an empty index sized for the given number of entries.
+     *
+     * @param expected The number of entries expected.
+     */
+    public LongIndex(int expected) {
+        int capacity = MIN_CAPACITY;
+        while (capacity * 3 / 4 < expected) {
+            capacity <<= 1;
+        }
+        keys = new long[capacity];
+        values = new Object[capacity];
+    }
+
+    // spreads sequential keys over the table
+    private static int slot(long key, int mask) {
+        return (int) ((key * PHI) >>> 32) & mask;
+    }
+
+    /**
+     * Looks up a value.
+     *
+     * @param key The key, not 0.
+     * @return The value, or {@code null} if the key is not in the index.
+     */
+    public V get(long key) {
+        long stamp = lock.tryOptimisticRead();
+        V value = find(key);
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                value = find(key);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return value;
+    }
+
+    @SuppressWarnings("unchecked")
+    private V find(long key) {
+        long[] keys = this.keys;
+        Object[] values = this.values;
+        if (key == 0 || keys.length != values.length) {
+            return null;
+        }
+
+        int mask = keys.length - 1;
+        int i = slot(key, mask);
+        for (int probes = 0; probes < keys.length; probes++) {
+            long k = keys[i];
+            if (k == key) {
+                return (V) values[i];
+            }
+            if (k == 0) {
+                return null;
+            }
+            i = (i + 1) & mask;
+        }
+        return null;
+    }
+
+    /**
+     * Adds or replaces an entry.
+     *
+     * @param key   The key, not 0.
+     * @param value The value.
+     * @return The value previously stored under the key, or {@code null}.
+     */
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value) {
+        if (key == 0) {
+            throw new IllegalArgumentException("0 cannot be used as a key");
+        }
+
+        long stamp = lock.writeLock();
+        try {
+            if ((size + 1) * 4 > keys.length * 3) {
+                resize(keys.length * 2);
+            }
+
+            int mask = keys.length - 1;
+            int i = slot(key, mask);
+            while (keys[i] != 0) {
+                if (keys[i] == key) {
+                    Object old = values[i];
+                    values[i] = value;
+                    return (V) old;
+                }
+                i = (i + 1) & mask;
+            }
+            keys[i] = key;
+            values[i] = value;
+            size++;
+            return null;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Removes an entry.
+     *
+     * @param key The key.
+     * @return The removed value, or {@code null} if the key was not in the index.
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        if (key == 0) {
+            return null;
+        }
+
+        long stamp = lock.writeLock();
+        try {
+            int mask = keys.length - 1;
+            int i = slot(key, mask);
+            while (keys[i] != key) {
+                if (keys[i] == 0) {
+                    return null;
+                }
+                i = (i + 1) & mask;
+            }
+            Object old = values[i];
+
+            //shift later entries of the probe run back, so lookups never stop early at the hole
+            int hole = i;
+            int j = (i + 1) & mask;
+            while (keys[j] != 0) {
+                int home = slot(keys[j], mask);
+                if (((j - home) & mask) >= ((j - hole) & mask)) {
+                    keys[hole] = keys[j];
+                    values[hole] = values[j];
+                    hole = j;
+                }
+                j = (j + 1) & mask;
+            }
+            keys[hole] = 0;
+            values[hole] = null;
+            size--;
+            return (V) old;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    // rehashes into new arrays, which are only published once filled
+    private void resize(int capacity) {
+        long[] newKeys = new long[capacity];
+        Object[] newValues = new Object[capacity];
+        int mask = capacity - 1;
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != 0) {
+                int j = slot(keys[i], mask);
+                while (newKeys[j] != 0) {
+                    j = (j + 1) & mask;
+                }
+                newKeys[j] = keys[i];
+                newValues[j] = values[i];
+            }
+        }
+        keys = newKeys;
+        values = newValues;
+    }
+
+    /**
+     * Removes every entry.
+     */
+    public void clear() {
+        long stamp = lock.writeLock();
+        try {
+            keys = new long[MIN_CAPACITY];
+            values = new Object[MIN_CAPACITY];
+            size = 0;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Gets the number of entries.
+     *
+     * @return The entry count.
+     */
+    public int size() {
+        long stamp = lock.readLock();
+        try {
+            return size;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Gets the number of slots in the table.
+     *
+     * @return The capacity, always a power of two.
+     */
+    public int capacity() {
+        long stamp = lock.readLock();
+        try {
+            return keys.length;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package hospital.ui.database.index;
+
+/**
+ * Phonetic codes and similarity scores for comparing patient names that may be spelled
+ * differently, such as "Jon" and "John" or "Smyth" and "Smith".
+ */
+public final class NameMatcher {
+
+    //soundex digit for each letter a-z, '0' for letters that are not coded
+    private static final String SOUNDEX_CODES = "01230120022455012623010202";
+
+    private NameMatcher() {}
+
+    /**
+     * Computes the American Soundex code of a name: its first letter followed by three digits for
+     * the consonant sounds that follow, so names that sound alike share a code.
+     *
+     * @param name The name, in any letter case; characters other than letters are ignored.
+     * @return The four-character code, or an empty string if the name has no letters.
+     */
+    public static String soundex(String name) {
+        char[] code = new char[4];
+        int length = 0;
+        char last = 0;
+        for (int i = 0; i < name.length() && length < 4; i++) {
+            char c = Character.toLowerCase(name.charAt(i));
+            if (c < 'a' || c > 'z') {
+                continue;
+            }
+
+            char digit = SOUNDEX_CODES.charAt(c - 'a');
+            if (length == 0) {
+                code[length++] = Character.toUpperCase(c);
+                last = digit;
+            } else if (digit != '0' && digit != last) {
+                code[length++] = digit;
+                last = digit;
+            } else if (c != 'h' && c != 'w') {
+                //a vowel separates two letters with the same code, h and w do not
+                last = digit;
+            }
+        }
+
+        if (length == 0) {
+            return "";
+        }
+        while (length < 4) {
+            code[length++] = '0';
+        }
+        return new String(code);
+    }
+
+    /**
+     * Computes the Jaro-Winkler similarity of two names, ignoring letter case. Names that share a
+     * prefix score higher, which suits typing mistakes in names.
+     *
+     * @param a The first name.
+     * @param b The second name.
+     * @return A score from 0 (nothing in common) to 1 (the same name).
+     */
+    public static double similarity(String a, String b) {
+        a = a.toLowerCase();
+        b = b.toLowerCase();
+        if (a.equals(b)) {
+            return 1;
+        }
+        if (a.isEmpty() || b.isEmpty()) {
+            return 0;
+        }
+
+        int window = Math.max(0, Math.max(a.length(), b.length()) / 2 - 1);
+        boolean[] matchedA = new boolean[a.length()];
+        boolean[] matchedB = new boolean[b.length()];
+        int matches = 0;
+        for (int i = 0; i < a.length(); i++) {
+            int from = Math.max(0, i - window);
+            int to = Math.min(b.length() - 1, i + window);
+            for (int j = from; j <= to; j++) {
+                if (!matchedB[j] && a.charAt(i) == b.charAt(j)) {
+                    matchedA[i] = true;
+                    matchedB[j] = true;
+                    matches++;
+                    break;
+                }
+            }
+        }
+        if (matches == 0) {
+            return 0;
+        }
+
+        int transpositions = 0;
+        for (int i = 0, j = 0; i < a.length(); i++) {
+            if (matchedA[i]) {
+                while (!matchedB[j]) {
+                    j++;
+                }
+                if (a.charAt(i) != b.charAt(j)) {
+                    transpositions++;
+                }
+                j++;
+            }
+        }
+
+        double m = matches;
+        double jaro = (m / a.length() + m / b.length() + (m - transpositions / 2.0) / m) / 3;
+
+        int prefix = 0;
+        while (prefix < 4 && prefix < a.length() && prefix < b.length() && a.charAt(prefix) == b.charAt(prefix)) {
+            prefix++;
+        }
+        return jaro + prefix * 0.1 * (1 - jaro);
+    }
+}
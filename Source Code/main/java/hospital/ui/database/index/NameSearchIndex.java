@@ -0,0 +1,205 @@
+package hospital.ui.database.index;
+
+import hospital.ui.users.patients.Patient;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * An index of patient names for as-you-type search. Each patient is entered twice, as
+ * "last first" and as "first last", in a sorted map, so any prefix of either order finds the
+ * patient with one binary-search-like descent followed by a walk over the matches in name order.
+ *
+ * <p>Names are normalized before they are indexed or searched: letters are lowercased,
+ * apostrophes and hyphens are dropped, and commas and runs of spaces become a single space. So
+ * "O'Brien, Mary-Ann", "obrien mary" and "mary ob" all find the same patient.</p>
+ *
+ * <p>The sorted map is a concurrent skip list, so searches never wait for updates and can run
+ * while the index is still being built.</p>
+ */
+public class NameSearchIndex implements PatientIndex {
+
+    /**
+     * A patient found by a name search, with what is needed to show it in a list of suggestions.
+     */
+    public static final class Match {
+        private final String key;
+        private final String lastName;
+        private final String firstName;
+        private final String dob;
+        private final long medicalRecordNumber;
+
+        Match(String key, Patient patient) {
+            this.key = key;
+            this.lastName = patient.getLastName();
+            this.firstName = patient.getFirstName();
+            this.dob = patient.getDob();
+            this.medicalRecordNumber = patient.getMedicalRecordNumber();
+        }
+
+        /**
+         * Gets the key of the patient.
+         *
+         * @return The patient's key in the database.
+         */
+        public String getKey() {
+            return key;
+        }
+
+        /**
+         * Gets the patient's last name.
+         *
+         * @return The last name.
+         */
+        public String getLastName() {
+            return lastName;
+        }
+
+        /**
+         * Gets the patient's first name.
+         *
+         * @return The first name.
+         */
+        public String getFirstName() {
+            return firstName;
+        }
+
+        /**
+         * Gets the patient's date of birth.
+         *
+         * @return The date of birth.
+         */
+        public String getDob() {
+            return dob;
+        }
+
+        /**
+         * Gets the patient's medical record number.
+         *
+         * @return The medical record number.
+         */
+        public long getMedicalRecordNumber() {
+            return medicalRecordNumber;
+        }
+
+        @Override
+        public String toString() {
+            return lastName + ", " + firstName + "  " + dob + "  MRN " + medicalRecordNumber;
+        }
+    }
+
+    //separates the name from the patient key in an entry, and sorts before every name character
+    private static final char SEPARATOR = '\u0000';
+
+    private final ConcurrentSkipListMap<String, Match> entries = new ConcurrentSkipListMap<>();
+    private final Map<String, String[]> entriesByKey = new ConcurrentHashMap<>();
+
+    /**
+     * Normalizes a name or a search for matching.
+     *
+     * @param text The text to normalize.
+     * @return The lowercased words of the text separated by single spaces.
+     */
+    public static String normalize(String text) {
+        StringBuilder sb = new StringBuilder(text.length());
+        boolean space = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                if (space && sb.length() > 0) {
+                    sb.append(' ');
+                }
+                sb.append(Character.toLowerCase(c));
+                space = false;
+            } else if (c == ' ' || c == ',' || c == '\t') {
+                space = true;
+            }
+        }
+        //keep a trailing space so "smith " only finds the last name smith, not smithson
+        if (space && sb.length() > 0) {
+            sb.append(' ');
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public void update(String key, Patient patient) {
+        String last = normalize(patient.getLastName()).trim();
+        String first = normalize(patient.getFirstName()).trim();
+        String[] names = { last + " " + first + " " + SEPARATOR + key, first + " " + last + " " + SEPARATOR + key };
+
+        String[] old = entriesByKey.put(key, names);
+        //most updates are to other fields, and leave the entries where they are
+        if (old != null && !Arrays.equals(old, names)) {
+            for (String name : old) {
+                entries.remove(name);
+            }
+        }
+        Match match = new Match(key, patient);
+        for (String name : names) {
+            entries.put(name, match);
+        }
+    }
+
+    @Override
+    public void remove(String key) {
+        String[] old = entriesByKey.remove(key);
+        if (old != null) {
+            for (String name : old) {
+                entries.remove(name);
+            }
+        }
+    }
+
+    /**
+     * Finds patients whose "last first" or "first last" name starts with the given text, in name order.
+     *
+     * @param text  What has been typed so far, in any letter case, with or without a comma.
+     * @param limit The most matches to return.
+     * @return Up to {@code limit} matches, each patient at most once.
+     */
+    public List<Match> search(String text, int limit) {
+        String prefix = normalize(text);
+        List<Match> matches = new ArrayList<>(Math.min(limit, 16));
+        if (prefix.isEmpty() || limit <= 0) {
+            return matches;
+        }
+
+        for (Map.Entry<String, Match> entry : entries.tailMap(prefix).entrySet()) {
+            if (!entry.getKey().startsWith(prefix)) {
+                break;
+            }
+            Match match = entry.getValue();
+            //a patient whose first and last names both start with the prefix is entered twice
+            if (!containsKey(matches, match.key)) {
+                matches.add(match);
+                if (matches.size() >= limit) {
+                    break;
+                }
+            }
+        }
+        return matches;
+    }
+
+    private static boolean containsKey(List<Match> matches, String key) {
+        for (Match match : matches) {
+            if (match.key.equals(key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Gets the number of patients in the index.
+     *
+     * @return The patient count.
+     */
+    public int size() {
+        return entriesByKey.size();
+    }
+}
@@ -0,0 +1,28 @@
+package hospital.ui.database.index;
+
+import hospital.ui.users.patients.Patient;
+
+/**
+ * A secondary index over patients that the {@link hospital.ui.database.Database} keeps up to
+ * date. The database calls {@link #update(String, Patient)} whenever a patient is added or
+ * changed and {@link #remove(String)} when a key stops being used, always while holding its lock,
+ * so calls arrive one at a time and in the same order as the changes. Lookups may come from any
+ * thread at any time and must not need that lock.
+ */
+public interface PatientIndex {
+
+    /**
+     * Adds a patient to the index, or brings its entry up to date.
+     *
+     * @param key     The key of the patient.
+     * @param patient The patient's current state.
+     */
+    void update(String key, Patient patient);
+
+    /**
+     * Removes a patient from the index.
+     *
+     * @param key The key the patient was stored under.
+     */
+    void remove(String key);
+}
@@ -0,0 +1,78 @@
+package hospital.ui.database.index;
+
+import hospital.ui.users.patients.Patient;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Function;
+
+/**
+ * An index on a patient field that keeps the values in order, so ranges (such as everyone
+ * admitted in a given week) can be found without looking at every patient.
+ *
+ * @param <V> The type of the indexed field.
+ */
+public class SortedFieldIndex<V extends Comparable<? super V>> extends FieldIndex<V> {
+
+    private final ConcurrentSkipListMap<V, Set<String>> buckets = new ConcurrentSkipListMap<>();
+
+    /**
+     * Creates a sorted index on a patient field.
+     *
+     * @param name   A name for the index, used in messages.
+     * @param getter Reads the indexed value from a patient.
+     */
+    public SortedFieldIndex(String name, Function<Patient, V> getter) {
+        super(name, getter);
+    }
+
+    @Override
+    protected Map<V, Set<String>> buckets() {
+        return buckets;
+    }
+
+    /**
+     * Finds the patients whose field lies in a range, in order of the field.
+     *
+     * @param from The lowest value, included, or {@code null} for no lower bound.
+     * @param to   The highest value, included, or {@code null} for no upper bound.
+     * @return The keys of the matching patients.
+     */
+    public List<String> findRange(V from, V to) {
+        List<String> keys = new ArrayList<>();
+        for (Set<String> bucket : range(from, to).values()) {
+            keys.addAll(bucket);
+        }
+        return keys;
+    }
+
+    /**
+     * Counts the patients whose field lies in a range, without listing them.
+     *
+     * @param from The lowest value, included, or {@code null} for no lower bound.
+     * @param to   The highest value, included, or {@code null} for no upper bound.
+     * @return The number of matching patients.
+     */
+    public int countRange(V from, V to) {
+        int count = 0;
+        for (Set<String> bucket : range(from, to).values()) {
+            count += bucket.size();
+        }
+        return count;
+    }
+
+    private NavigableMap<V, Set<String>> range(V from, V to) {
+        NavigableMap<V, Set<String>> range = buckets;
+        if (from != null) {
+            range = range.tailMap(from, true);
+        }
+        if (to != null) {
+            range = range.headMap(to, true);
+        }
+        return range;
+    }
+}
@@ -2,30 +2,24 @@ package hospital.ui.diagnose;
 
 import java.io.Serializable;
 
+/**
+ * The form a condition and its prescriptions were stored in before diagnoses were packed into a
+ * bitset. The conditions themselves are now in the shared {@link DiagnosisCatalog}; instances of
+ * this class are only created when an older record is read.
+ */
 public class Condition implements Serializable {
-    private final Prescription[] validPrescriptions = new Prescription[3];
+    private static final long serialVersionUID = -3103218937129764668L;
 
-    /**
-     * Constructs a new Condition object with the specified name and valid prescriptions.
-     *
-     * @param p1   The first valid prescription.
-     * @param p2   The second valid prescription.
-     * @param p3   The third valid prescription.
-     */
-    public Condition(Prescription p1, Prescription p2, Prescription p3) {
+    private Prescription[] validPrescriptions;
 
-        validPrescriptions[0] = p1;
-        validPrescriptions[1] = p2;
-        validPrescriptions[2] = p3;
-    }
+    private Condition() {}
 
     /**
-     * Gets the valid prescriptions for this medical condition.
+     * Gets the prescriptions stored with this medical condition.
      *
-     * @return An array containing the valid prescriptions.
+     * @return An array containing the stored prescriptions.
      */
-    public Prescription[] getValidPrescriptions() {
+    Prescription[] getValidPrescriptions() {
         return validPrescriptions;
     }
-
-}
\ No newline at end of file
+}
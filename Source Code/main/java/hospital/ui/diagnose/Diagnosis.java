@@ -1,83 +1,170 @@
 package hospital.ui.diagnose;
 
+import hospital.ui.database.RecordInput;
+import hospital.ui.database.RecordOutput;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
 import java.io.Serializable;
 
 /**
  * Represents a diagnosis with associated medical conditions.
+ *
+ * <p>Which conditions are diagnosed and which medications are prescribed is kept in a single
+ * bitset laid out by the {@link DiagnosisCatalog}, so a diagnosis is one object holding one
+ * {@code long}, and every query is a bit test. Conditions and medications are named by their
+ * position, the bit the catalog gives them.</p>
  */
 public class Diagnosis implements Serializable {
+    private static final long serialVersionUID = 782459654013141179L;
 
-    private final boolean[] isDiagnosed = {false, false, false, false, false};
+    //positions of the conditions in the bundled catalog, as used by isDiagnosed and setIsDiagnosed
+    public static final int HIGH_BLOOD_PRESSURE = 0;
+    public static final int HIGH_CHOLESTEROL = 1;
+    public static final int KIDNEY_DISEASE = 2;
+    public static final int LIVER_DISEASE = 3;
+    public static final int BROKEN_HUMERUS = 4;
 
-    private Condition highBloodPressure = new Condition(
-            new Prescription(Prescription.Medication.HYDRALAZINE),
-            new Prescription(Prescription.Medication.LABETALOL),
-            new Prescription(Prescription.Medication.FENOLDOPAM));
+    //names of the Condition fields diagnoses were stored with before they were packed, in condition order
+    private static final String[] STORED_CONDITION_FIELDS = {"highBloodPressure", "highCholesterol", "kidneyDisease",
+            "liverDisease", "brokenHumerus"};
 
-    private Condition highCholesterol = new Condition(
-            new Prescription(Prescription.Medication.ATORVASTATIN),
-            new Prescription(Prescription.Medication.EZETIMIBE),
-            new Prescription(Prescription.Medication.ALIROCUMAB));
+    //the bit of the first stored Medication; the rest follow in enum order, as in the bundled catalog
+    private static final int STORED_MEDICATION_BIT = 5;
 
-    private Condition kidneyDisease = new Condition(
-            new Prescription(Prescription.Medication.ROCALTROL),
-            new Prescription(Prescription.Medication.XPHOZAH),
-            new Prescription(Prescription.Medication.RENVELA));
+    private long bits;
 
-    private Condition liverDisease = new Condition(
-            new Prescription(Prescription.Medication.EPCLUSA),
-            new Prescription(Prescription.Medication.MAVYRET),
-            new Prescription(Prescription.Medication.ZEPATIER));
+    /**
+     * Checks whether a condition is diagnosed.
+     *
+     * @param condition The position of the condition, such as {@link #KIDNEY_DISEASE}.
+     * @return True if the condition is diagnosed.
+     */
+    public boolean isDiagnosed(int condition) {
+        return (bits & 1L << condition) != 0;
+    }
 
-    private Condition brokenHumerus = new Condition(
-            new Prescription(Prescription.Medication.IBUPROFEN),
-            new Prescription(Prescription.Medication.OXYCODONE),
-            new Prescription(Prescription.Medication.PHYSICAL_THERAPY));
+    /**
+     * Sets the diagnosis status for a specific condition.
+     *
+     * This method updates the diagnosis status of a specific condition
+     * based on the provided index and status. The index corresponds to
+     * the condition being diagnosed, and the status indicates whether the
+     * condition is diagnosed (true) or not (false).
+     *
+     * @param bool The diagnosis status to set for the specified condition.
+     *             True for diagnosed, false for not diagnosed.
+     * @param diagnosis The position of the condition whose diagnosis status
+     *                  is to be updated, as given by the {@link DiagnosisCatalog}.
+     */
+    public void setIsDiagnosed(boolean bool, int diagnosis) {
+        bits = set(bits, 1L << diagnosis, bool);
+    }
 
-    private final Condition[] conditions = {highBloodPressure, highCholesterol, kidneyDisease, liverDisease, brokenHumerus};
+    /**
+     * Checks whether a medication is prescribed.
+     *
+     * @param medication The position of the medication.
+     * @return True if the medication is prescribed.
+     */
+    public boolean isPrescribed(int medication) {
+        return (bits & 1L << medication) != 0;
+    }
 
     /**
-     * Retrieves an array of {@link Condition} objects associated with this diagnosis.
-     * This method provides direct access to the internal array storing the conditions.
-     * Each {@link Condition} in the array represents a specific medical condition, such as
-     * high blood pressure, high cholesterol, kidney disease, liver disease, or a broken humerus.
+     * Sets whether a medication is prescribed.
      *
-     * @return A direct reference to the internal array of {@code Condition} objects. Modifications
-     *         to this array will affect the object's internal state.
+     * @param medication The position of the medication.
+     * @param prescribed True to prescribe the medication, false to stop it.
      */
-    public Condition[] getConditions() {
-        return conditions;
+    public void setPrescribed(int medication, boolean prescribed) {
+        bits = set(bits, 1L << medication, prescribed);
     }
 
     /**
-     * Retrieves the diagnosis status for all conditions.
+     * Stops every medication the current catalog offers for a condition.
      *
-     * This method returns an array of boolean values where each element
-     * represents the diagnosis status of a specific condition. True indicates
-     * that the diagnosis for that condition is positive (diagnosed), and false
-     * indicates it is negative (not diagnosed).
+     * @param condition The position of the condition.
+     */
+    public void clearPrescriptions(int condition) {
+        bits &= ~DiagnosisCatalog.current().getTreatmentMask(condition);
+    }
+
+    /**
+     * Checks whether any medication the current catalog offers for a condition is prescribed.
      *
-     * @return An array of boolean values indicating the diagnosis status for each condition.
+     * @param condition The position of the condition.
+     * @return True if at least one of the condition's medications is prescribed.
      */
-    public boolean[] getIsDiagnosed() {
-        return isDiagnosed;
+    public boolean hasPrescriptions(int condition) {
+        return (bits & DiagnosisCatalog.current().getTreatmentMask(condition)) != 0;
     }
 
     /**
-     * Sets the diagnosis status for a specific condition.
+     * Gets the whole diagnosis as a bitset laid out by the {@link DiagnosisCatalog}.
      *
-     * This method updates the diagnosis status of a specific condition
-     * based on the provided index and status. The index corresponds to
-     * the condition being diagnosed, and the status indicates whether the
-     * condition is diagnosed (true) or not (false).
+     * @return The diagnosis bits.
+     */
+    public long getBits() {
+        return bits;
+    }
+
+    private static long set(long bits, long bit, boolean value) {
+        return value ? bits | bit : bits & ~bit;
+    }
+
+    /**
+     * Writes the diagnosis as a single packed value, one bit per condition and medication at the
+     * positions the catalog gives them.
      *
-     * @param bool The diagnosis status to set for the specified condition.
-     *             True for diagnosed, false for not diagnosed.
-     * @param diagnosis The index of the condition whose diagnosis status
-     *                  is to be updated. This should be within the bounds
-     *                  of the array holding the diagnosis statuses.
+     * @param out The record being written.
      */
-    public void setIsDiagnosed(boolean bool, int diagnosis) {
-        isDiagnosed[diagnosis] = bool;
+    public void writeTo(RecordOutput out) {
+        out.writeVarLong(bits);
+    }
+
+    /**
+     * Restores the diagnosis from a record written by {@link #writeTo(RecordOutput)}.
+     *
+     * @param in      The record being read.
+     * @param version The version of the record.
+     * @throws IOException If the record is malformed.
+     */
+    public void readFrom(RecordInput in, int version) throws IOException {
+        bits = in.readVarLong();
+    }
+
+    /**
+     * Reads a diagnosis stored with Java serialization. Diagnoses stored before they were packed
+     * hold an array of flags and a {@link Condition} per condition, which are copied into the bits.
+     *
+     * @param in The stream being read.
+     * @throws IOException            If the stream cannot be read.
+     * @throws ClassNotFoundException If a class in the stream cannot be found.
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        ObjectStreamClass stored = fields.getObjectStreamClass();
+        if (stored.getField("bits") != null) {
+            bits = fields.get("bits", 0L);
+            return;
+        }
+
+        boolean[] isDiagnosed = stored.getField("isDiagnosed") != null ? (boolean[]) fields.get("isDiagnosed", null) : null;
+        for (int c = 0; isDiagnosed != null && c < isDiagnosed.length && c < STORED_CONDITION_FIELDS.length; c++) {
+            setIsDiagnosed(isDiagnosed[c], c);
+        }
+        for (String name : STORED_CONDITION_FIELDS) {
+            Condition condition = stored.getField(name) != null ? (Condition) fields.get(name, null) : null;
+            if (condition == null || condition.getValidPrescriptions() == null) {
+                continue;
+            }
+            for (Prescription prescription : condition.getValidPrescriptions()) {
+                if (prescription != null && prescription.getMedication() != null) {
+                    setPrescribed(STORED_MEDICATION_BIT + prescription.getMedication().ordinal(), prescription.isPrescribed());
+                }
+            }
+        }
     }
 }
@@ -0,0 +1,462 @@
+package hospital.ui.diagnose;
+
+import hospital.ui.diagnose.Prescription.Administration;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * The conditions the emergency room diagnoses and the medications offered for each of them,
+ * loaded from a data file. A catalog is shared by every patient and never changes once loaded;
+ * a {@link Diagnosis} only records which conditions and medications are set for its patient.
+ *
+ * <p>The file has one entry per line; blank lines and text after {@code #} are ignored. Each
+ * entry gives its kind, its bit, the key rule files know it by, and its name. Medications also
+ * give the condition they are offered for, which must come before them, and how they are given:</p>
+ *
+ * <pre>
+ * condition   &lt;bit&gt; &lt;key&gt; &lt;name&gt;
+ * medication  &lt;bit&gt; &lt;key&gt; &lt;condition&gt; &lt;route&gt; &lt;name&gt;   route as in {@link Administration}
+ * </pre>
+ *
+ * <p>A diagnosis is one bitset, and an entry's bit (0 to 63) is where diagnoses store it, so
+ * the bit of an entry is its identity: the position every method here takes. Conditions and
+ * medications are offered in the order the file lists them, and the catalog precomputes each
+ * condition's medication mask and each medication's condition, so every question a diagnosis
+ * answers is still a bit test.</p>
+ *
+ * <p>The catalog is read from {@code DiagnosisCatalog.txt} (or {@code -Dcares.diagnosis.file})
+ * the first time it is needed, and from the copy bundled with the application when there is no
+ * such file. A background thread then checks the file every few seconds
+ * ({@code -Dcares.diagnosis.reloadSeconds}, 5 by default) and swaps in a new catalog with a
+ * single write when it has changed, telling the {@link #addListener(Consumer) listeners}. Patients
+ * are not touched: their bits mean the same in the new catalog, and the bits of entries that are
+ * taken out are kept, so they come back if the entry does. A file that is malformed, or that
+ * moves an entry to a different bit, is reported and the previous catalog is kept.</p>
+ */
+public final class DiagnosisCatalog {
+
+    /**
+     * The number of bits a diagnosis has for conditions and medications together.
+     */
+    public static final int MAX_ENTRIES = 64;
+
+    private static final String BUNDLED = "DiagnosisCatalog.txt";
+
+    private static String catalogFile = System.getProperty("cares.diagnosis.file", "DiagnosisCatalog.txt");
+    private static long reloadMillis = Long.getLong("cares.diagnosis.reloadSeconds", 5L) * 1000;
+
+    private static volatile DiagnosisCatalog current;
+    private static long loadedModified;
+    private static long loadedLength;
+    private static final List<Consumer<DiagnosisCatalog>> listeners = new CopyOnWriteArrayList<>();
+
+    //each entry by bit; a bit with no entry has a null key
+    private final String[] keys = new String[MAX_ENTRIES];
+    private final String[] names = new String[MAX_ENTRIES];
+    private final Administration[] routes = new Administration[MAX_ENTRIES];
+    private final int[] conditionOf = new int[MAX_ENTRIES];
+    private final long[] treatmentMasks = new long[MAX_ENTRIES];
+    private final int[][] treatments = new int[MAX_ENTRIES][];
+    private final Map<String, Integer> bitsByKey = new HashMap<>();
+    private int[] conditions = new int[0];
+    private long conditionBits;
+    private long medicationBits;
+    private final String source;
+
+    private DiagnosisCatalog(String source) {
+        this.source = source;
+        Arrays.fill(conditionOf, -1);
+    }
+
+    /**
+     * Gets the catalog in use, loading it on first use.
+     *
+     * @return The current catalog.
+     */
+    public static DiagnosisCatalog current() {
+        DiagnosisCatalog catalog = current;
+        if (catalog == null) {
+            synchronized (DiagnosisCatalog.class) {
+                if (current == null) {
+                    reload();
+                    if (current == null) {
+                        current = bundled();
+                    }
+                    startWatching();
+                }
+                catalog = current;
+            }
+        }
+        return catalog;
+    }
+
+    /**
+     * Loads the catalog file now if it has changed since it was last loaded.
+     *
+     * @return {@code true} if a new catalog is in use.
+     */
+    public static boolean reload() {
+        DiagnosisCatalog loaded;
+        synchronized (DiagnosisCatalog.class) {
+            File file = new File(catalogFile);
+            long modified = file.lastModified();
+            long length = file.length();
+            if (modified == loadedModified && length == loadedLength) {
+                return false;
+            }
+            loadedModified = modified;
+            loadedLength = length;
+
+            try {
+                loaded = file.exists() ? load(file) : bundled();
+                if (current != null) {
+                    loaded.checkCompatible(current);
+                }
+            } catch (IOException e) {
+                System.out.println("Error loading diagnosis catalog, keeping the "
+                        + (current == null ? "bundled" : "previous") + " one: " + e.getMessage());
+                return false;
+            }
+            boolean first = current == null;
+            current = loaded;
+            System.out.println("Loaded " + loaded.getConditionCount() + " conditions and "
+                    + Long.bitCount(loaded.medicationBits) + " medications from " + loaded.source + ".");
+            if (first) {
+                return true;
+            }
+        }
+        for (Consumer<DiagnosisCatalog> listener : listeners) {
+            try {
+                listener.accept(loaded);
+            } catch (RuntimeException e) {
+                System.out.println("Error updating to the new diagnosis catalog: " + e.getMessage());
+            }
+        }
+        return true;
+    }
+
+    private static void startWatching() {
+        if (reloadMillis <= 0) {
+            return;
+        }
+        ScheduledExecutorService watcher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "diagnosis-catalog-watcher");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+        watcher.scheduleWithFixedDelay(DiagnosisCatalog::reload, reloadMillis, reloadMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Registers a listener told about each new catalog once it is in use. Listeners are called on
+     * the thread that loaded the catalog; listeners that touch the screen should hand the work to
+     * the JavaFX thread.
+     *
+     * @param listener The listener.
+     */
+    public static void addListener(Consumer<DiagnosisCatalog> listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Gets the catalog bundled with the application.
+     *
+     * @return The bundled catalog.
+     */
+    public static DiagnosisCatalog bundled() {
+        try (InputStream in = DiagnosisCatalog.class.getResourceAsStream(BUNDLED)) {
+            if (in == null) {
+                throw new IllegalStateException("The bundled diagnosis catalog is missing");
+            }
+            return parse(new InputStreamReader(in, StandardCharsets.UTF_8), "the bundled " + BUNDLED);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Loads a catalog file.
+     *
+     * @param file The catalog file.
+     * @return The catalog.
+     * @throws IOException If the file cannot be read or has a malformed entry.
+     */
+    public static DiagnosisCatalog load(File file) throws IOException {
+        try (Reader in = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+            return parse(in, file.getName());
+        }
+    }
+
+    /**
+     * Reads a catalog from a reader.
+     *
+     * @param in     The catalog.
+     * @param source A name for the catalog, used in error messages.
+     * @return The catalog.
+     * @throws IOException If the catalog cannot be read or an entry is malformed.
+     */
+    public static DiagnosisCatalog parse(Reader in, String source) throws IOException {
+        DiagnosisCatalog catalog = new DiagnosisCatalog(source);
+        int[] order = new int[MAX_ENTRIES];
+        int conditionCount = 0;
+        int[] treatmentCounts = new int[MAX_ENTRIES];
+
+        BufferedReader reader = new BufferedReader(in);
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            int comment = line.indexOf('#');
+            if (comment >= 0) {
+                line = line.substring(0, comment);
+            }
+            line = line.trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+            boolean medication = line.startsWith("medication");
+            String[] fields = line.split("\\s+", medication ? 6 : 4);
+            if (fields.length < (medication ? 6 : 4)) {
+                throw new IOException(source + " line " + lineNumber + ": expected a kind, a bit, a key"
+                        + (medication ? ", a condition, a route" : "") + " and a name");
+            }
+            try {
+                int bit = Integer.parseInt(fields[1]);
+                String key = fields[2];
+                if (bit < 0 || bit >= MAX_ENTRIES) {
+                    throw new IllegalArgumentException("bit " + bit + " is not between 0 and " + (MAX_ENTRIES - 1));
+                }
+                if (catalog.keys[bit] != null) {
+                    throw new IllegalArgumentException("bit " + bit + " is already " + catalog.keys[bit]);
+                }
+                if (catalog.bitsByKey.containsKey(key)) {
+                    throw new IllegalArgumentException("duplicate key " + key);
+                }
+                switch (fields[0]) {
+                    case "condition":
+                        catalog.conditionBits |= 1L << bit;
+                        catalog.treatments[bit] = new int[3];
+                        order[conditionCount++] = bit;
+                        catalog.names[bit] = fields[3];
+                        break;
+                    case "medication": {
+                        Integer condition = catalog.bitsByKey.get(fields[3]);
+                        if (condition == null || !catalog.isCondition(condition)) {
+                            throw new IllegalArgumentException("unknown condition " + fields[3]);
+                        }
+                        int[] offered = catalog.treatments[condition];
+                        if (treatmentCounts[condition] == offered.length) {
+                            catalog.treatments[condition] = offered = Arrays.copyOf(offered, offered.length * 2);
+                        }
+                        offered[treatmentCounts[condition]++] = bit;
+                        catalog.medicationBits |= 1L << bit;
+                        catalog.treatmentMasks[condition] |= 1L << bit;
+                        catalog.conditionOf[bit] = condition;
+                        catalog.routes[bit] = route(fields[4]);
+                        catalog.names[bit] = fields[5];
+                        break;
+                    }
+                    default:
+                        throw new IllegalArgumentException("unknown kind " + fields[0]);
+                }
+                catalog.keys[bit] = key;
+                catalog.bitsByKey.put(key, bit);
+            } catch (NumberFormatException e) {
+                throw new IOException(source + " line " + lineNumber + ": bad bit " + fields[1]);
+            } catch (IllegalArgumentException e) {
+                throw new IOException(source + " line " + lineNumber + ": " + e.getMessage());
+            }
+        }
+
+        catalog.conditions = Arrays.copyOf(order, conditionCount);
+        for (int c : catalog.conditions) {
+            catalog.treatments[c] = Arrays.copyOf(catalog.treatments[c], treatmentCounts[c]);
+        }
+        return catalog;
+    }
+
+    private static Administration route(String name) {
+        try {
+            return Administration.valueOf(name);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("unknown route " + name);
+        }
+    }
+
+    // a stored diagnosis must mean the same in this catalog as in the one it replaces
+    private void checkCompatible(DiagnosisCatalog previous) throws IOException {
+        for (int bit = 0; bit < MAX_ENTRIES; bit++) {
+            String before = previous.keys[bit];
+            if (before == null) {
+                continue;
+            }
+            Integer now = bitsByKey.get(before);
+            if (now != null && now != bit) {
+                throw new IOException(source + ": " + before + " has moved from bit " + bit + " to bit " + now);
+            }
+            if (keys[bit] != null && !keys[bit].equals(before)) {
+                throw new IOException(source + ": bit " + bit + " was " + before + " and is now " + keys[bit]);
+            }
+            if (keys[bit] != null && previous.isCondition(bit) != isCondition(bit)) {
+                throw new IOException(source + ": " + before + " has changed kind");
+            }
+        }
+    }
+
+    /**
+     * Gets the number of conditions in the catalog.
+     *
+     * @return The condition count.
+     */
+    public int getConditionCount() {
+        return conditions.length;
+    }
+
+    /**
+     * Gets a condition in the order the catalog offers them.
+     *
+     * @param index The condition's place in the catalog, from 0 to {@link #getConditionCount()}.
+     * @return The position of the condition, such as {@code Diagnosis.KIDNEY_DISEASE}.
+     */
+    public int getCondition(int index) {
+        return conditions[index];
+    }
+
+    /**
+     * Checks whether a position holds a condition.
+     *
+     * @param position A diagnosis bit.
+     * @return True if the catalog has a condition at that bit.
+     */
+    public boolean isCondition(int position) {
+        return (conditionBits & 1L << position) != 0;
+    }
+
+    /**
+     * Checks whether a position holds a medication.
+     *
+     * @param position A diagnosis bit.
+     * @return True if the catalog has a medication at that bit.
+     */
+    public boolean isMedication(int position) {
+        return (medicationBits & 1L << position) != 0;
+    }
+
+    /**
+     * Gets the name of a condition or medication, as shown to the doctor.
+     *
+     * @param position The position of the condition or medication.
+     * @return The name, or {@code null} if the catalog has nothing at that position.
+     */
+    public String getName(int position) {
+        return names[position];
+    }
+
+    /**
+     * Gets the key a condition or medication is known by in rule files, such as
+     * {@code KIDNEY_DISEASE}.
+     *
+     * @param position The position of the condition or medication.
+     * @return The key, or {@code null} if the catalog has nothing at that position.
+     */
+    public String getKey(int position) {
+        return keys[position];
+    }
+
+    /**
+     * Finds a condition or medication by the key it is known by in rule files.
+     *
+     * @param key The key, such as {@code KIDNEY_DISEASE} or {@code RENVELA}.
+     * @return The position, or -1 if the catalog has nothing with that key.
+     */
+    public int find(String key) {
+        Integer position = bitsByKey.get(key);
+        return position == null ? -1 : position;
+    }
+
+    /**
+     * Gets how a medication is given.
+     *
+     * @param medication The position of the medication.
+     * @return The route, or {@code null} if the position is not a medication.
+     */
+    public Administration getAdministration(int medication) {
+        return routes[medication];
+    }
+
+    /**
+     * Gets the number of medications offered for a condition.
+     *
+     * @param condition The position of the condition.
+     * @return The number of medications, 0 if the position is not a condition.
+     */
+    public int getTreatmentCount(int condition) {
+        return treatments[condition] == null ? 0 : treatments[condition].length;
+    }
+
+    /**
+     * Gets one of the medications offered for a condition.
+     *
+     * @param condition The position of the condition.
+     * @param slot      The place of the medication among those offered for the condition.
+     * @return The position of the medication.
+     */
+    public int getTreatment(int condition, int slot) {
+        return treatments[condition][slot];
+    }
+
+    /**
+     * Gets the condition a medication is offered for.
+     *
+     * @param medication The position of the medication.
+     * @return The position of the condition, or -1 if the position is not a medication.
+     */
+    public int getConditionOf(int medication) {
+        return conditionOf[medication];
+    }
+
+    /**
+     * Gets the bits of every medication offered for a condition.
+     *
+     * @param condition The position of the condition.
+     * @return The condition's medication bits.
+     */
+    public long getTreatmentMask(int condition) {
+        return treatmentMasks[condition];
+    }
+
+    /**
+     * Gets the bits of every condition in the catalog.
+     *
+     * @return The condition bits.
+     */
+    public long getConditionBits() {
+        return conditionBits;
+    }
+
+    /**
+     * Gets the bits of every medication in the catalog.
+     *
+     * @return The medication bits.
+     */
+    public long getMedicationBits() {
+        return medicationBits;
+    }
+}
@@ -0,0 +1,350 @@
+package hospital.ui.diagnose;
+
+import hospital.ui.labs.LabCatalog;
+import hospital.ui.labs.LabPanel;
+import hospital.ui.labs.LabType;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Medications that must not be given together, or to a patient with a condition or an abnormal
+ * lab result, compiled from a rule file into bit masks.
+ *
+ * <p>The file has one rule per line; blank lines and text after {@code #} are ignored. Each rule
+ * names a medication, what it conflicts with, and the reason shown to the doctor:</p>
+ *
+ * <pre>
+ * drug       &lt;medication&gt; &lt;medication&gt; &lt;reason&gt;   the two must not be prescribed together
+ * condition  &lt;medication&gt; &lt;condition&gt;  &lt;reason&gt;   not for patients diagnosed with the condition
+ * lab        &lt;medication&gt; &lt;lab&gt;        &lt;reason&gt;   not while the lab's latest result is abnormal
+ * </pre>
+ *
+ * <p>Medications and conditions are named by their {@link DiagnosisCatalog} keys and labs by
+ * their {@link LabCatalog} keys. The rules come from {@code -Dcares.interactions.file} when it is
+ * set, and otherwise from the {@code InteractionRules.txt} bundled with the application. Rules
+ * naming a medication or condition the catalog does not have are reported and left out, so
+ * taking an entry out of the catalog does not stop every other rule from being checked.</p>
+ *
+ * <p>Each medication is compiled into two masks: the {@link Diagnosis} bits it conflicts with
+ * (other medications and conditions), and the labs it conflicts with. Checking a patient is an
+ * AND of each prescribed medication's masks against the diagnosis bits and the abnormal labs, so
+ * it costs a few operations per prescribed medication whatever the number of rules. Rules are
+ * compiled against one catalog, and compiled again when a new catalog is swapped in.</p>
+ */
+public final class InteractionRules {
+
+    private static String rulesFile = System.getProperty("cares.interactions.file");
+
+    private static volatile InteractionRules current;
+
+    private final DiagnosisCatalog catalog;
+    //for each medication position, the diagnosis bits and the labs (one bit per lab) it conflicts with
+    private final long[] diagnosisConflicts;
+    private final int[] labConflicts;
+    //the reason for each conflict, keyed by message(medication, bit) and labMessage(medication, lab)
+    private final Map<Integer, String> reasons;
+    private final int rules;
+    //keys of the medications and conditions that rules name but the catalog does not have
+    private final Set<String> unknownKeys;
+
+    private InteractionRules(DiagnosisCatalog catalog, long[] diagnosisConflicts, int[] labConflicts,
+                             Map<Integer, String> reasons, int rules, Set<String> unknownKeys) {
+        this.catalog = catalog;
+        this.diagnosisConflicts = diagnosisConflicts;
+        this.labConflicts = labConflicts;
+        this.reasons = reasons;
+        this.rules = rules;
+        this.unknownKeys = unknownKeys;
+    }
+
+    /**
+     * Gets the rules in use, loading them on first use and again whenever the
+     * {@link DiagnosisCatalog} changes. If the rules cannot be read, the problem is reported and
+     * no conflicts are found.
+     *
+     * @return The current rules.
+     */
+    public static InteractionRules current() {
+        DiagnosisCatalog catalog = DiagnosisCatalog.current();
+        InteractionRules rules = current;
+        if (rules == null || rules.catalog != catalog) {
+            synchronized (InteractionRules.class) {
+                if (current == null || current.catalog != catalog) {
+                    current = loadDefault(catalog);
+                }
+                rules = current;
+            }
+        }
+        return rules;
+    }
+
+    private static InteractionRules loadDefault(DiagnosisCatalog catalog) {
+        InteractionRules rules = null;
+        try {
+            if (rulesFile != null) {
+                try (Reader in = new InputStreamReader(new FileInputStream(rulesFile), StandardCharsets.UTF_8)) {
+                    rules = parse(in, new File(rulesFile).getName(), catalog);
+                }
+            } else {
+                try (InputStream in = InteractionRules.class.getResourceAsStream("InteractionRules.txt")) {
+                    if (in != null) {
+                        rules = parse(new InputStreamReader(in, StandardCharsets.UTF_8), "InteractionRules.txt", catalog);
+                    }
+                }
+            }
+            if (rules == null) {
+                System.out.println("No interaction rules found, prescriptions will not be checked.");
+            } else if (!rules.unknownKeys.isEmpty()) {
+                System.out.println("Leaving out interaction rules for entries not in the diagnosis catalog: "
+                        + String.join(", ", rules.unknownKeys));
+            }
+        } catch (IOException e) {
+            System.out.println("Error loading interaction rules, prescriptions will not be checked: " + e.getMessage());
+        }
+        return rules != null ? rules : none(catalog);
+    }
+
+    /**
+     * Gets rules that find no conflicts.
+     *
+     * @return The empty rules.
+     */
+    public static InteractionRules none() {
+        return none(DiagnosisCatalog.current());
+    }
+
+    private static InteractionRules none(DiagnosisCatalog catalog) {
+        try {
+            return parse(new StringReader(""), "none", catalog);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Loads and compiles a rule file against the current catalog.
+     *
+     * @param file The rule file.
+     * @return The compiled rules.
+     * @throws IOException If the file cannot be read or has a malformed rule.
+     */
+    public static InteractionRules load(File file) throws IOException {
+        try (Reader in = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+            return parse(in, file.getName());
+        }
+    }
+
+    /**
+     * Compiles rules read from a reader against the current catalog.
+     *
+     * @param in     The rules.
+     * @param source A name for the rules, used in error messages.
+     * @return The compiled rules.
+     * @throws IOException If the rules cannot be read or one is malformed.
+     */
+    public static InteractionRules parse(Reader in, String source) throws IOException {
+        return parse(in, source, DiagnosisCatalog.current());
+    }
+
+    /**
+     * Compiles rules read from a reader.
+     *
+     * @param in      The rules.
+     * @param source  A name for the rules, used in error messages.
+     * @param catalog The catalog the rules' medications and conditions are looked up in.
+     * @return The compiled rules.
+     * @throws IOException If the rules cannot be read or one is malformed.
+     */
+    public static InteractionRules parse(Reader in, String source, DiagnosisCatalog catalog) throws IOException {
+        long[] diagnosisConflicts = new long[DiagnosisCatalog.MAX_ENTRIES];
+        int[] labConflicts = new int[DiagnosisCatalog.MAX_ENTRIES];
+        Map<Integer, String> reasons = new HashMap<>();
+        Set<String> unknownKeys = new TreeSet<>();
+        int rules = 0;
+
+        BufferedReader reader = new BufferedReader(in);
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            int comment = line.indexOf('#');
+            if (comment >= 0) {
+                line = line.substring(0, comment);
+            }
+            line = line.trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+            String[] fields = line.split("\\s+", 4);
+            if (fields.length < 4) {
+                throw new IOException(source + " line " + lineNumber + ": expected a rule, a medication, what it conflicts with and a reason");
+            }
+            try {
+                int m = catalog.find(fields[1]);
+                String reason = fields[3];
+                if (!"drug".equals(fields[0]) && !"condition".equals(fields[0]) && !"lab".equals(fields[0])) {
+                    throw new IllegalArgumentException("unknown rule " + fields[0]);
+                }
+                if (m < 0 || !catalog.isMedication(m)) {
+                    unknownKeys.add(fields[1]);
+                    continue;
+                }
+                switch (fields[0]) {
+                    case "drug": {
+                        int other = catalog.find(fields[2]);
+                        if (other < 0 || !catalog.isMedication(other)) {
+                            unknownKeys.add(fields[2]);
+                            continue;
+                        }
+                        if (other == m) {
+                            throw new IllegalArgumentException("a medication cannot conflict with itself");
+                        }
+                        //drug rules go both ways, so either medication finds the other
+                        String text = catalog.getName(m) + " with " + catalog.getName(other) + ": " + reason;
+                        diagnosisConflicts[m] |= 1L << other;
+                        diagnosisConflicts[other] |= 1L << m;
+                        reasons.put(message(m, other), text);
+                        reasons.put(message(other, m), text);
+                        break;
+                    }
+                    case "condition": {
+                        int condition = catalog.find(fields[2]);
+                        if (condition < 0 || !catalog.isCondition(condition)) {
+                            unknownKeys.add(fields[2]);
+                            continue;
+                        }
+                        diagnosisConflicts[m] |= 1L << condition;
+                        reasons.put(message(m, condition),
+                                catalog.getName(m) + " with " + catalog.getName(condition) + ": " + reason);
+                        break;
+                    }
+                    case "lab": {
+                        LabType lab = LabCatalog.find(fields[2]);
+                        if (lab == null) {
+                            throw new IllegalArgumentException("unknown lab " + fields[2]);
+                        }
+                        labConflicts[m] |= 1 << lab.getPosition();
+                        reasons.put(labMessage(m, lab.getPosition()),
+                                catalog.getName(m) + " with an abnormal " + lab.getName() + " result: " + reason);
+                        break;
+                    }
+                    default:
+                        throw new IllegalArgumentException("unknown rule " + fields[0]);
+                }
+            } catch (IllegalArgumentException e) {
+                throw new IOException(source + " line " + lineNumber + ": " + e.getMessage());
+            }
+            rules++;
+        }
+        return new InteractionRules(catalog, diagnosisConflicts, labConflicts, reasons, rules, unknownKeys);
+    }
+
+    private static int message(int medication, int position) {
+        return medication << 7 | position;
+    }
+
+    private static int labMessage(int medication, int lab) {
+        return medication << 7 | 64 | lab;
+    }
+
+    /**
+     * Checks whether any prescribed medication conflicts with another, with a diagnosed
+     * condition or with an abnormal lab.
+     *
+     * @param bits         The patient's {@link Diagnosis#getBits() diagnosis bits}.
+     * @param abnormalLabs The labs whose latest result is abnormal, one bit per lab.
+     * @return True if there is at least one conflict.
+     */
+    public boolean hasConflicts(long bits, int abnormalLabs) {
+        long prescribed = bits & catalog.getMedicationBits();
+        while (prescribed != 0) {
+            int m = Long.numberOfTrailingZeros(prescribed);
+            prescribed &= prescribed - 1;
+            if ((bits & diagnosisConflicts[m]) != 0 || (abnormalLabs & labConflicts[m]) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Finds every conflict in a patient's prescriptions.
+     *
+     * @param diagnosis The patient's diagnosis.
+     * @param labs      The patient's labs.
+     * @return The reason for each conflict; empty if there are none.
+     */
+    public List<String> findConflicts(Diagnosis diagnosis, LabPanel labs) {
+        return findConflicts(diagnosis.getBits(), labs.getAbnormalLabs(), -1L, -1);
+    }
+
+    /**
+     * Finds the conflicts that involve something that has just changed, so a doctor is warned
+     * about a conflict once, when it is introduced.
+     *
+     * @param bits         The patient's diagnosis bits.
+     * @param abnormalLabs The labs whose latest result is abnormal, one bit per lab.
+     * @param changedBits  The diagnosis bits that have just changed.
+     * @param changedLabs  The labs whose result has just changed, one bit per lab.
+     * @return The reason for each conflict that involves a change; empty if there are none.
+     */
+    public List<String> findConflicts(long bits, int abnormalLabs, long changedBits, int changedLabs) {
+        if (!hasConflicts(bits, abnormalLabs)) {
+            return Collections.emptyList();
+        }
+
+        List<String> conflicts = new ArrayList<>();
+        long conditions = catalog.getConditionBits();
+        long prescribed = bits & catalog.getMedicationBits();
+        while (prescribed != 0) {
+            int m = Long.numberOfTrailingZeros(prescribed);
+            prescribed &= prescribed - 1;
+            boolean changed = (changedBits & 1L << m) != 0;
+
+            long hits = bits & diagnosisConflicts[m];
+            while (hits != 0) {
+                int hit = Long.numberOfTrailingZeros(hits);
+                hits &= hits - 1;
+                //each pair of medications is reported once, from its lower medication
+                boolean condition = (conditions & 1L << hit) != 0;
+                if ((condition || hit > m) && (changed || (changedBits & 1L << hit) != 0)) {
+                    conflicts.add(reasons.get(message(m, hit)));
+                }
+            }
+
+            int labHits = abnormalLabs & labConflicts[m];
+            while (labHits != 0) {
+                int lab = Integer.numberOfTrailingZeros(labHits);
+                labHits &= labHits - 1;
+                if (changed || (changedLabs & 1 << lab) != 0) {
+                    conflicts.add(reasons.get(labMessage(m, lab)));
+                }
+            }
+        }
+        return conflicts;
+    }
+
+    /**
+     * Gets the number of rules the checker was compiled from.
+     *
+     * @return The rule count.
+     */
+    public int getRuleCount() {
+        return rules;
+    }
+}
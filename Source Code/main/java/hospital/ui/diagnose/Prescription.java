@@ -3,16 +3,21 @@ package hospital.ui.diagnose;
 import java.io.Serializable;
 
 /**
- * Represents a medical prescription within a hospital's diagnosis system.
- * This class encapsulates information about a prescribed medication, including
- * its type and whether it has been officially prescribed.
+ * The ways medications are given, and the form a single prescription was stored in before
+ * diagnoses were packed into a bitset.
+ *
+ * <p>The medications themselves and which condition each treats are now in the
+ * {@link DiagnosisCatalog}, and what is prescribed for a patient is in their {@link Diagnosis}.
+ * Instances of this class are only created when an older record is read, and are converted by
+ * the diagnosis as it is read.</p>
  */
 public class Prescription implements Serializable {
+    private static final long serialVersionUID = 3688476530464570057L;
 
     /**
-     * Enumerates various medications along with their respective administration methods.
-     * This enumeration facilitates tracking of how medications should be administered
-     * to patients.
+     * The medications older records were stored with. The bundled {@link DiagnosisCatalog} keeps
+     * each of them at bit 5 plus its ordinal, so stored prescriptions convert to the same bits;
+     * new medications are added to the catalog, not here.
      */
     public enum Medication implements Serializable {
         HYDRALAZINE(Administration.INTRAMUSCULAR),
@@ -65,43 +70,25 @@ public class Prescription implements Serializable {
     }
 
     private boolean isPrescribed;
-    private final Medication medication;
+    private Medication medication;
 
-    /**
-     * Constructs a new Prescription object for the specified medication.
-     * The prescription status is initialized to false, indicating it has not been prescribed yet.
-     *
-     * @param medication The medication to be associated with this prescription.
-     */
-    public Prescription(Medication medication) {
-        this.medication = medication;
-        isPrescribed = false;
-    }
+    private Prescription() {}
 
     /**
-     * Determines whether the medication has been prescribed.
+     * Determines whether the stored medication was prescribed.
      *
-     * @return True if the medication is prescribed, otherwise false.
+     * @return True if the medication was prescribed, otherwise false.
      */
-    public boolean isPrescribed() {
+    boolean isPrescribed() {
         return isPrescribed;
     }
 
     /**
-     * Sets the prescribed status of this prescription.
-     *
-     * @param prescribed True to indicate the medication is prescribed, false otherwise.
-     */
-    public void setPrescribed(boolean prescribed) {
-        isPrescribed = prescribed;
-    }
-
-    /**
-     * Retrieves the medication associated with this prescription.
+     * Retrieves the medication of the stored prescription.
      *
      * @return The medication of this prescription.
      */
-    public Medication getMedication() {
+    Medication getMedication() {
         return medication;
     }
-}
\ No newline at end of file
+}
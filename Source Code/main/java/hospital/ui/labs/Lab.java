@@ -1,15 +1,20 @@
 package hospital.ui.labs;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
-import java.util.Random;
 
 
 /**
- * Represents a laboratory test within a medical application. This class encapsulates
- * details about the lab test, including its name, cost, the number of times it has been
- * run, and the result of the test.
+ * The possible results of a laboratory test, and the form a single lab test was stored in before
+ * lab panels kept their state in a few primitive fields.
+ *
+ * <p>What each kind of test is called and costs is now in the shared {@link LabCatalog}, and what
+ * has happened to a patient's tests is in their {@link LabPanel}. Instances of this class are only
+ * created when an older record is read, and are converted by the panel as it is read.</p>
  */
 public class Lab implements Serializable {
+    private static final long serialVersionUID = 6368372727398836707L;
 
     /**
      * Enumerates possible results of a laboratory test. A test can either not have been
@@ -21,92 +26,52 @@ public class Lab implements Serializable {
         Abnormal
     }
 
-    private final Random random = new Random();
+    //the stored name and cost are not read, they come from the catalog
     private LabResult result;
-    private final String name;
     private int timesRun;
-    private final double cost;
+    private LabHistory history;
 
-    /**
-     * Constructs a new Lab instance with the specified name and base cost.
-     * The test is initialized in the NotRun state.
-     *
-     * @param name The name of the laboratory test.
-     * @param cost The base cost of performing the laboratory test once.
-     */
-    public Lab(String name, double cost) {
-        this.name = name;
-        this.cost = cost;
-        this.result = LabResult.NotRun;
-        this.timesRun = 0;
-    }
-
-    /**
-     * Gets the base cost of the lab test.
-     *
-     * @return The base cost of performing the test once.
-     */
-    public double getBaseCost() {
-        return cost;
-    }
-
-    /**
-     * Calculates the total cost of the lab test based on the number of times it has been run.
-     *
-     * @return The total cost incurred for all runs of the test.
-     */
-    public double getTotalCost() {
-        return cost * timesRun;
-    }
+    private Lab() {}
 
     /**
-     * Gets the name of the lab test.
+     * Gets the result the stored test had.
      *
-     * @return The name of the laboratory test.
+     * @return The result of the lab test, which can be NotRun, Normal, or Abnormal.
      */
-    public String getName() {
-        return name;
+    LabResult getResult() {
+        return result;
     }
 
     /**
-     * Gets the number of times the lab test has been run.
+     * Gets the number of times the stored test had been run.
      *
-     * @return The number of times the test has been performed.
+     * @return The number of times the test had been performed.
      */
-    public int getTimesRun() {
+    int getTimesRun() {
         return timesRun;
     }
 
     /**
-     * Gets the current result of the laboratory test.
+     * Gets the run history the stored test had.
      *
-     * @return The result of the lab test, which can be NotRun, Normal, or Abnormal.
-     */
-    public LabResult getResult() {
-        return result;
-    }
-
-    /**
-     * Resets the laboratory test to its initial state, setting the result to NotRun.
+     * @return The history, or {@code null} if it had none.
      */
-    public void reset() {
-        result = LabResult.NotRun;
+    LabHistory getHistory() {
+        return history;
     }
 
     /**
-     * Simulates running the laboratory test, updating its state and result.
-     * There is a 1/6 chance that the test result will be set to Abnormal; otherwise,
-     * it will be set to Normal. Increments the counter for the number of times the test
-     * has been run.
+     * Reads a lab stored with Java serialization. Only the result, run count and history are
+     * read; the stored name and cost, in cents or in dollars in older records, are skipped.
+     *
+     * @param in The stream being read.
+     * @throws IOException            If the stream cannot be read.
+     * @throws ClassNotFoundException If a class in the stream cannot be found.
      */
-    public void run() {
-        int num = random.nextInt(6);
-        timesRun++;
-
-        if (num == 0) {
-            result = LabResult.Abnormal;
-        } else {
-            result = LabResult.Normal;
-        }
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        result = (LabResult) fields.get("result", LabResult.NotRun);
+        timesRun = fields.get("timesRun", 0);
+        history = (LabHistory) fields.get("history", null);
     }
 }
@@ -0,0 +1,59 @@
+package hospital.ui.labs;
+
+import hospital.ui.billing.Money;
+
+/**
+ * The labs the emergency room can order, in panel order. The catalog is shared by every patient
+ * and never changes; a {@link LabPanel} only records what has happened to each lab.
+ */
+public final class LabCatalog {
+
+    private static final LabType[] LABS = {
+            new LabType(LabPanel.RED_BLOOD_CELL, "RED_BLOOD_CELL", "Red Blood Cell", "85041", Money.dollars(11), 30),
+            new LabType(LabPanel.WHITE_BLOOD_CELL, "WHITE_BLOOD_CELL", "White Blood Cell", "85048", Money.dollars(14), 30),
+            new LabType(LabPanel.LIVER_FUNCTION, "LIVER_FUNCTION", "Liver Function", "80076", Money.dollars(50), 60),
+            new LabType(LabPanel.RENAL_FUNCTION, "RENAL_FUNCTION", "Renal Function", "80069", Money.dollars(50), 60),
+            new LabType(LabPanel.ELECTROLYTE_LEVELS, "ELECTROLYTE_LEVELS", "Electrolyte Levels", "80051", Money.dollars(50), 45),
+            new LabType(LabPanel.XRAY, "XRAY", "X-Ray", "71045", Money.dollars(50), 60),
+            new LabType(LabPanel.CT_SCAN, "CT_SCAN", "C.T. Scan", "74150", Money.dollars(450), 120),
+            new LabType(LabPanel.MRI, "MRI", "MRI", "70551", Money.dollars(1100), 240),
+            new LabType(LabPanel.URINE_TEST, "URINE_TEST", "Urine Test", "81001", Money.dollars(10), 45),
+            new LabType(LabPanel.STOOL_TEST, "STOOL_TEST", "Stool Test", "82270", Money.dollars(11), 90)
+    };
+
+    private LabCatalog() {}
+
+    /**
+     * Gets a lab by its position in the panel.
+     *
+     * @param position The position, such as {@code LabPanel.MRI}.
+     * @return The lab.
+     */
+    public static LabType get(int position) {
+        return LABS[position];
+    }
+
+    /**
+     * Finds a lab by the name it is known by in rule files.
+     *
+     * @param key The lab's key, such as {@code RENAL_FUNCTION}.
+     * @return The lab, or {@code null} if there is no lab with that key.
+     */
+    public static LabType find(String key) {
+        for (LabType lab : LABS) {
+            if (lab.getKey().equals(key)) {
+                return lab;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets the number of labs in the catalog.
+     *
+     * @return The lab count, the same as {@code LabPanel.LAB_COUNT}.
+     */
+    public static int size() {
+        return LABS.length;
+    }
+}
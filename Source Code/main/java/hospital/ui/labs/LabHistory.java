@@ -0,0 +1,251 @@
+package hospital.ui.labs;
+
+import hospital.ui.database.RecordInput;
+import hospital.ui.database.RecordOutput;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.time.Instant;
+
+/**
+ * The results of the recent runs of one lab, newest first, for spotting trends such as the last
+ * five renal panels.
+ *
+ * <p>Each run is packed into one {@code long}: the time it ran in epoch seconds, shifted left two
+ * bits, with the result's ordinal in the low bits. The runs are kept in a ring buffer that grows
+ * as needed up to {@code -Dcares.labs.historySize} runs (256 by default), after which the oldest
+ * run is overwritten. A lab that has never been run holds no array at all.</p>
+ *
+ * <p>Stored, the history is a count followed by each run's change in time from the run before
+ * it, with the result in the low bits, so a run usually takes three or four bytes.</p>
+ */
+public final class LabHistory implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private static final long[] NONE = new long[0];
+    private static final int FIRST_CAPACITY = 4;
+
+    private static int maxSize = Math.max(1, Integer.getInteger("cares.labs.historySize", 256));
+
+    //entries[head] is the oldest run; count runs follow it around the ring
+    private transient long[] entries = NONE;
+    private transient int head;
+    private transient int count;
+
+    /**
+     * Packs the time and result of a run into one history entry.
+     *
+     * @param epochSecond The time the lab ran, in seconds since the epoch.
+     * @param result      The result of the run.
+     * @return The packed entry.
+     */
+    public static long pack(long epochSecond, Lab.LabResult result) {
+        return epochSecond << 2 | result.ordinal();
+    }
+
+    /**
+     * Gets the time a packed entry was recorded.
+     *
+     * @param entry The packed entry.
+     * @return The time in seconds since the epoch.
+     */
+    public static long timeOf(long entry) {
+        return entry >> 2;
+    }
+
+    /**
+     * Gets the result held in a packed entry.
+     *
+     * @param entry The packed entry.
+     * @return The result of the run.
+     */
+    public static Lab.LabResult resultOf(long entry) {
+        return Lab.LabResult.values()[(int) (entry & 0x3)];
+    }
+
+    /**
+     * Records a run of the lab, overwriting the oldest run once the history is full.
+     *
+     * @param epochSecond The time the lab ran, in seconds since the epoch.
+     * @param result      The result of the run.
+     */
+    public synchronized void record(long epochSecond, Lab.LabResult result) {
+        add(pack(epochSecond, result));
+    }
+
+    private void add(long entry) {
+        if (count == entries.length && count < maxSize) {
+            long[] grown = new long[Math.min(Math.max(FIRST_CAPACITY, count * 2), maxSize)];
+            for (int i = 0; i < count; i++) {
+                grown[i] = entries[(head + i) % entries.length];
+            }
+            entries = grown;
+            head = 0;
+        }
+        if (count == entries.length) {
+            entries[head] = entry;
+            head = (head + 1) % entries.length;
+        } else {
+            entries[(head + count) % entries.length] = entry;
+            count++;
+        }
+    }
+
+    /**
+     * Gets the number of runs held.
+     *
+     * @return The number of runs, at most the history size.
+     */
+    public synchronized int size() {
+        return count;
+    }
+
+    /**
+     * Gets a run as a packed entry.
+     *
+     * @param back How many runs back: 0 is the latest run.
+     * @return The packed entry, read with {@link #timeOf(long)} and {@link #resultOf(long)}.
+     * @throws IndexOutOfBoundsException If fewer runs are held.
+     */
+    public synchronized long get(int back) {
+        if (back < 0 || back >= count) {
+            throw new IndexOutOfBoundsException("Run " + back + " of " + count);
+        }
+        return entries[(head + count - 1 - back) % entries.length];
+    }
+
+    /**
+     * Gets the time of a run.
+     *
+     * @param back How many runs back: 0 is the latest run.
+     * @return The time the lab ran.
+     */
+    public Instant getTime(int back) {
+        return Instant.ofEpochSecond(timeOf(get(back)));
+    }
+
+    /**
+     * Gets the result of a run.
+     *
+     * @param back How many runs back: 0 is the latest run.
+     * @return The result of the run.
+     */
+    public Lab.LabResult getResult(int back) {
+        return resultOf(get(back));
+    }
+
+    /**
+     * Gets the latest runs as packed entries.
+     *
+     * @param limit The most runs to return.
+     * @return Up to {@code limit} entries, newest first.
+     */
+    public synchronized long[] getLast(int limit) {
+        long[] last = new long[Math.max(0, Math.min(limit, count))];
+        for (int i = 0; i < last.length; i++) {
+            last[i] = entries[(head + count - 1 - i) % entries.length];
+        }
+        return last;
+    }
+
+    /**
+     * Counts the abnormal results among the latest runs.
+     *
+     * @param limit The number of runs to look at.
+     * @return The number of those runs with an abnormal result.
+     */
+    public synchronized int countAbnormal(int limit) {
+        int abnormal = 0;
+        int code = Lab.LabResult.Abnormal.ordinal();
+        for (int i = 0; i < limit && i < count; i++) {
+            if ((entries[(head + count - 1 - i) % entries.length] & 0x3) == code) {
+                abnormal++;
+            }
+        }
+        return abnormal;
+    }
+
+    /**
+     * Counts the runs at or after a time.
+     *
+     * @param epochSecond The earliest time to count, in seconds since the epoch.
+     * @return The number of runs since then.
+     */
+    public synchronized int countSince(long epochSecond) {
+        int since = 0;
+        while (since < count && timeOf(entries[(head + count - 1 - since) % entries.length]) >= epochSecond) {
+            since++;
+        }
+        return since;
+    }
+
+    /**
+     * Writes the history: the number of runs, then each run oldest first as its change in time
+     * from the run before, with the result in the low two bits.
+     *
+     * @param out The record being written.
+     */
+    public synchronized void writeTo(RecordOutput out) {
+        out.writeVarInt(count);
+        long previous = 0;
+        for (int i = 0; i < count; i++) {
+            long entry = entries[(head + i) % entries.length];
+            long time = timeOf(entry);
+            out.writeSignedVarLong((time - previous) << 2 | (entry & 0x3));
+            previous = time;
+        }
+    }
+
+    /**
+     * Replaces the history with one written by {@link #writeTo(RecordOutput)}. If it holds more
+     * runs than the history size, the oldest are dropped.
+     *
+     * @param in The record being read.
+     * @throws IOException If the record is malformed.
+     */
+    public synchronized void readFrom(RecordInput in) throws IOException {
+        int runs = in.readVarInt();
+        entries = NONE;
+        head = 0;
+        count = 0;
+        long time = 0;
+        for (int i = 0; i < runs; i++) {
+            long delta = in.readSignedVarLong();
+            int code = (int) (delta & 0x3);
+            if (code >= Lab.LabResult.values().length) {
+                throw new IOException("Bad lab result code " + code);
+            }
+            time += delta >> 2;
+            add(time << 2 | code);
+        }
+    }
+
+    private synchronized void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeInt(count);
+        for (int i = 0; i < count; i++) {
+            out.writeLong(entries[(head + i) % entries.length]);
+        }
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        entries = NONE;
+        int runs = in.readInt();
+        for (int i = 0; i < runs; i++) {
+            add(in.readLong());
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            long entry = get(i);
+            sb.append(i == 0 ? "" : ", ").append(Instant.ofEpochSecond(timeOf(entry))).append(' ').append(resultOf(entry));
+        }
+        return sb.toString();
+    }
+}
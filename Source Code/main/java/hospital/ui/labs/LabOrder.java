@@ -0,0 +1,96 @@
+package hospital.ui.labs;
+
+import hospital.ui.users.patients.Patient;
+
+/**
+ * An order for one lab on one patient, submitted to the {@link LabOrderQueue}. Once the lab has
+ * been run the order holds its result and how long it took.
+ */
+public final class LabOrder {
+    private final String patientKey;
+    private volatile Patient patient;
+    private final int lab;
+    private final long submittedNanos;
+    private final long turnaroundMillis;
+
+    private volatile Lab.LabResult result;
+    private volatile long completedNanos;
+
+    LabOrder(String patientKey, Patient patient, int lab, long turnaroundMillis) {
+        this.patientKey = patientKey;
+        this.patient = patient;
+        this.lab = lab;
+        this.turnaroundMillis = turnaroundMillis;
+        this.submittedNanos = System.nanoTime();
+    }
+
+    /**
+     * Gets the key of the patient the lab was ordered for.
+     *
+     * @return The patient's key.
+     */
+    public String getPatientKey() {
+        return patientKey;
+    }
+
+    /**
+     * Gets the patient the lab was ordered for.
+     *
+     * @return The patient: once the lab has run, the object it was run on and saved.
+     */
+    public Patient getPatient() {
+        return patient;
+    }
+
+    /**
+     * Gets the position of the lab in the panel, such as {@code LabPanel.MRI}.
+     *
+     * @return The lab's position.
+     */
+    public int getLab() {
+        return lab;
+    }
+
+    /**
+     * Gets the result of the lab.
+     *
+     * @return The result, or {@code null} while the order is pending.
+     */
+    public Lab.LabResult getResult() {
+        return result;
+    }
+
+    /**
+     * Checks whether the lab has been run.
+     *
+     * @return {@code true} once the result is available.
+     */
+    public boolean isDone() {
+        return result != null;
+    }
+
+    /**
+     * Gets the simulated turnaround the order was given, in real time.
+     *
+     * @return The planned delay before the result, in milliseconds.
+     */
+    public long getTurnaroundMillis() {
+        return turnaroundMillis;
+    }
+
+    /**
+     * Gets how long the order actually took from submission to result.
+     *
+     * @return The latency in milliseconds, or how long it has been waiting while pending.
+     */
+    public long getLatencyMillis() {
+        long end = isDone() ? completedNanos : System.nanoTime();
+        return (end - submittedNanos) / 1000000;
+    }
+
+    void complete(Patient patient, Lab.LabResult result) {
+        this.completedNanos = System.nanoTime();
+        this.patient = patient;
+        this.result = result;
+    }
+}
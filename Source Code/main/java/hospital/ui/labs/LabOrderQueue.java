@@ -0,0 +1,263 @@
+package hospital.ui.labs;
+
+import hospital.ui.Main;
+import hospital.ui.database.Database;
+import hospital.ui.users.patients.Patient;
+import javafx.application.Platform;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Runs lab orders in the background, so ordering labs never holds up the screen.
+ *
+ * <p>Each order waits out the simulated turnaround of its test before the lab is run on a worker
+ * thread ({@code -Dcares.labs.workers}, 4 by default). Turnarounds are in minutes of hospital time,
+ * from the {@link LabCatalog}: half an hour for blood counts, a few hours for imaging. They
+ * can be replaced with {@code -Dcares.labs.turnaroundMinutes}, a comma separated list in panel
+ * order, and are played back {@code -Dcares.labs.timeScale} times faster than real time (600 by
+ * default, so a 30 minute test takes 3 seconds). Each order varies by up to a fifth either way.</p>
+ *
+ * <p>Orders are scheduled rather than slept on, so a few workers keep up with any number of
+ * pending orders. Once an order's turnaround has passed, the lab is run on the thread that makes
+ * every other change to patients (the JavaFX thread in the application), so it never races an
+ * edit being made on screen. The patient is looked up by medical record number at that point, so
+ * the lab is run on and saved from the object the database holds now, even if the patient was
+ * renamed or read back from disk since the order. The order's callback is called on that thread
+ * too.</p>
+ */
+public class LabOrderQueue {
+    private static int workers = Integer.getInteger("cares.labs.workers", 4);
+    private static double timeScale = Double.parseDouble(System.getProperty("cares.labs.timeScale", "600"));
+    private static String turnaroundMinutes = System.getProperty("cares.labs.turnaroundMinutes");
+
+    private static LabOrderQueue instance;
+
+    private final Database database;
+    private final Executor owner;
+    private final ScheduledThreadPoolExecutor executor;
+    private final long[] turnaroundMillis;
+
+    private final AtomicInteger pending = new AtomicInteger();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder totalLatencyMillis = new LongAdder();
+    private final LongAccumulator maxLatencyMillis = new LongAccumulator(Math::max, 0);
+    private final AtomicLongArray completedByLab = new AtomicLongArray(LabPanel.LAB_COUNT);
+
+    /**
+     * Creates a queue that saves patients to a database once their labs have run.
+     *
+     * @param database The database holding the patients.
+     * @param owner    Runs tasks on the thread that changes patients; labs are run through it.
+     * @param workers  The number of worker threads.
+     * @param timeScale How many times faster than real time turnarounds are played back.
+     */
+    public LabOrderQueue(Database database, Executor owner, int workers, double timeScale) {
+        this.database = database;
+        this.owner = owner;
+        this.turnaroundMillis = new long[LabPanel.LAB_COUNT];
+        long[] minutes = parseTurnarounds(turnaroundMinutes);
+        for (int l = 0; l < turnaroundMillis.length; l++) {
+            turnaroundMillis[l] = Math.round(minutes[l] * 60000 / timeScale);
+        }
+
+        AtomicInteger threads = new AtomicInteger();
+        executor = new ScheduledThreadPoolExecutor(Math.max(1, workers), r -> {
+            Thread thread = new Thread(r, "lab-worker-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * Gets the queue used by the application, creating it on first use.
+     *
+     * @return The shared lab order queue.
+     */
+    public static synchronized LabOrderQueue getInstance() {
+        if (instance == null) {
+            instance = new LabOrderQueue(Main.database, Platform::runLater, workers, timeScale);
+        }
+        return instance;
+    }
+
+    // reads the turnaround list, falling back to the defaults for anything missing or malformed
+    private static long[] parseTurnarounds(String list) {
+        long[] minutes = new long[LabPanel.LAB_COUNT];
+        for (int l = 0; l < minutes.length; l++) {
+            minutes[l] = LabCatalog.get(l).getTurnaroundMinutes();
+        }
+        if (list == null) {
+            return minutes;
+        }
+        String[] values = list.split(",");
+        for (int l = 0; l < values.length && l < minutes.length; l++) {
+            try {
+                minutes[l] = Math.max(0, Long.parseLong(values[l].trim()));
+            } catch (NumberFormatException e) {
+                System.out.println("Ignoring bad lab turnaround: " + values[l]);
+            }
+        }
+        return minutes;
+    }
+
+    /**
+     * Orders a lab for a patient.
+     *
+     * @param key      The patient's key in the database.
+     * @param patient  The patient.
+     * @param lab      The position of the lab in the panel, such as {@code LabPanel.MRI}.
+     * @param callback Called on the thread that changes patients once the result is in, or {@code null}.
+     * @return The order, which holds the result once the lab has run.
+     */
+    public LabOrder submit(String key, Patient patient, int lab, Consumer<LabOrder> callback) {
+        long base = turnaroundMillis[lab];
+        long delay = base == 0 ? 0 : Math.round(base * (0.8 + 0.4 * ThreadLocalRandom.current().nextDouble()));
+        LabOrder order = new LabOrder(key, patient, lab, delay);
+        pending.incrementAndGet();
+        executor.schedule(() -> hand(order, callback), delay, TimeUnit.MILLISECONDS);
+        return order;
+    }
+
+    // hands an order whose turnaround has passed to the thread that changes patients
+    private void hand(LabOrder order, Consumer<LabOrder> callback) {
+        try {
+            owner.execute(() -> run(order, callback));
+        } catch (RuntimeException e) {
+            failed.increment();
+            pending.decrementAndGet();
+            System.out.println("Error running lab order: " + e.getMessage());
+        }
+    }
+
+    private void run(LabOrder order, Consumer<LabOrder> callback) {
+        try {
+            long mrn = order.getPatient().getMedicalRecordNumber();
+            Patient patient = database.getPatientByMrn(mrn);
+            String key = database.getPatientKey(mrn);
+            if (patient == null) {
+                //a patient never given a number is found under the key it was ordered with
+                key = order.getPatientKey();
+                patient = database.getPatient(key);
+            }
+            if (patient == null) {
+                throw new IllegalStateException("the patient is no longer in the database");
+            }
+            order.complete(patient, patient.getLabPanel().runLab(order.getLab()));
+            database.recordChange(key, patient);
+
+            long latency = order.getLatencyMillis();
+            totalLatencyMillis.add(latency);
+            maxLatencyMillis.accumulate(latency);
+            completedByLab.incrementAndGet(order.getLab());
+            completed.increment();
+        } catch (RuntimeException e) {
+            failed.increment();
+            System.out.println("Error running lab order: " + e.getMessage());
+            return;
+        } finally {
+            pending.decrementAndGet();
+        }
+
+        if (callback != null) {
+            try {
+                callback.accept(order);
+            } catch (RuntimeException e) {
+                System.out.println("Error reporting lab result: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Gets the number of orders waiting for their result.
+     *
+     * @return The queue depth.
+     */
+    public int getPending() {
+        return pending.get();
+    }
+
+    /**
+     * Gets the number of orders whose result is in.
+     *
+     * @return The completed order count.
+     */
+    public long getCompleted() {
+        return completed.sum();
+    }
+
+    /**
+     * Gets the number of orders that could not be run.
+     *
+     * @return The failed order count.
+     */
+    public long getFailed() {
+        return failed.sum();
+    }
+
+    /**
+     * Gets the number of completed orders for one lab.
+     *
+     * @param lab The position of the lab in the panel.
+     * @return The completed order count for the lab.
+     */
+    public long getCompleted(int lab) {
+        return completedByLab.get(lab);
+    }
+
+    /**
+     * Gets the average time from submitting an order to its result.
+     *
+     * @return The average latency in milliseconds, or 0 before any order has completed.
+     */
+    public long getAverageLatencyMillis() {
+        long count = completed.sum();
+        return count == 0 ? 0 : totalLatencyMillis.sum() / count;
+    }
+
+    /**
+     * Gets the longest time from submitting an order to its result.
+     *
+     * @return The largest latency in milliseconds.
+     */
+    public long getMaxLatencyMillis() {
+        return maxLatencyMillis.get();
+    }
+
+    /**
+     * Gets the planned turnaround of a lab, in real time, before any variation.
+     *
+     * @param lab The position of the lab in the panel.
+     * @return The turnaround in milliseconds.
+     */
+    public long getTurnaroundMillis(int lab) {
+        return turnaroundMillis[lab];
+    }
+
+    /**
+     * Stops taking orders and waits for the pending ones to finish.
+     *
+     * @param timeoutMillis How long to wait.
+     * @return {@code true} if every pending order finished in time.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    public boolean shutdown(long timeoutMillis) throws InterruptedException {
+        executor.shutdown();
+        return executor.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Lab orders: %d pending, %d completed, %d failed, %d ms average and %d ms longest turnaround.",
+                getPending(), getCompleted(), getFailed(), getAverageLatencyMillis(), getMaxLatencyMillis());
+    }
+}
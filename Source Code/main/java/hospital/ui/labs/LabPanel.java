@@ -1,5 +1,11 @@
 package hospital.ui.labs;
 
+import hospital.ui.database.RecordInput;
+import hospital.ui.database.RecordOutput;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
 import java.io.Serializable;
 
 
@@ -8,20 +14,57 @@ import java.io.Serializable;
  * within a medical diagnostic application. This class encapsulates various types of
  * lab tests, including blood tests, imaging tests (X-Ray, C.T. Scan, MRI), and others
  * like urine and stool tests, each with a fixed cost.
+ *
+ * <p>The tests themselves are described once in the shared {@link LabCatalog}. A panel only
+ * keeps what has happened to each test for its patient: the latest results packed two bits per
+ * lab into one {@code int}, how many times each lab has been run, and the run histories of the
+ * labs that have been run.</p>
  */
 public class LabPanel implements Serializable {
+    private static final long serialVersionUID = 801265980965096901L;
+
+    //positions of the labs in the panel, as used by runLab, resetLab and the LabCatalog
+    public static final int RED_BLOOD_CELL = 0;
+    public static final int WHITE_BLOOD_CELL = 1;
+    public static final int LIVER_FUNCTION = 2;
+    public static final int RENAL_FUNCTION = 3;
+    public static final int ELECTROLYTE_LEVELS = 4;
+    public static final int XRAY = 5;
+    public static final int CT_SCAN = 6;
+    public static final int MRI = 7;
+    public static final int URINE_TEST = 8;
+    public static final int STOOL_TEST = 9;
+
+    /**
+     * The number of labs in the panel.
+     */
+    public static final int LAB_COUNT = 10;
+
+    //names of the Lab fields panels were stored with before they kept primitive state, in panel order
+    private static final String[] STORED_LAB_FIELDS = {"redBloodLab", "whiteBloodLab", "liverLab", "renalLab",
+            "electrolyteLab", "xrayLab", "ctLab", "mriLab", "urineLab", "stoolLab"};
+
+    private static final Lab.LabResult[] RESULTS = Lab.LabResult.values();
+
+    private static volatile LabResultGenerator resultGenerator = LabResultGenerator.standard();
+
+    //the latest result of each lab, two bits per lab; 0 is NotRun
+    private int results;
+    private int[] timesRun = new int[LAB_COUNT];
+    //created on the first run of any lab, and each history on the first run of its lab
+    private LabHistory[] histories;
 
-    private final Lab redBloodLab = new Lab("Red Blood Cell", 11);
-    private final Lab whiteBloodLab = new Lab("White Blood Cell", 14);
-    private final Lab liverLab = new Lab("Liver Function", 50);
-    private final Lab renalLab = new Lab("Renal Function", 50);
-    private final Lab electrolyteLab = new Lab("Electrolyte Levels", 50);
-    private final Lab xrayLab = new Lab("X-Ray", 50);
-    private final Lab ctLab = new Lab("C.T. Scan", 450);
-    private final Lab mriLab = new Lab("MRI", 1100);
-    private final Lab urineLab = new Lab("Urine Test", 10);
-    private final Lab stoolLab = new Lab("Stool Test", 11);
-    private final Lab[] labPanel = {redBloodLab, whiteBloodLab, liverLab, renalLab, electrolyteLab, xrayLab, ctLab, mriLab, urineLab, stoolLab};
+    //counts changes to what the labs cost, so a rendered bill can tell whether it is still current
+    private transient volatile int costChanges;
+
+    /**
+     * Replaces the generator that decides the results of labs as they are run, for every panel.
+     *
+     * @param generator The new result generator.
+     */
+    public static void setResultGenerator(LabResultGenerator generator) {
+        resultGenerator = generator;
+    }
 
     /**
      * Resets a specific lab test in the lab panel to its initial state, indicating
@@ -32,22 +75,71 @@ public class LabPanel implements Serializable {
      *                  position in the array of labs.
      * @return The LabResult indicating the reset state of the lab, typically LabResult.NotRun.
      */
-    public Lab.LabResult resetLab(int labNumber) {
-        labPanel[labNumber].reset();
-        return labPanel[labNumber].getResult();
+    public synchronized Lab.LabResult resetLab(int labNumber) {
+        results &= ~(0x3 << (labNumber * 2));
+        return getResult(labNumber);
     }
 
     /**
      * Runs a specific lab test in the lab panel, updating its state to either Normal
-     * or Abnormal based on a random chance defined in the Lab class. This method
-     * simulates performing the lab test and automatically updates its result.
+     * or Abnormal as decided by the current {@link LabResultGenerator}, and recording
+     * the run in the lab's history. Safe to call from several threads at once.
      *
      * @param labNumber The index of the lab in the lab panel to run.
      * @return The result of the lab test after running it, either LabResult.Normal or LabResult.Abnormal.
      */
-    public Lab.LabResult runLab(int labNumber) {
-        labPanel[labNumber].run();
-        return labPanel[labNumber].getResult();
+    public synchronized Lab.LabResult runLab(int labNumber) {
+        LabType lab = LabCatalog.get(labNumber);
+        Lab.LabResult result = resultGenerator.next(lab);
+        results = results & ~(0x3 << (labNumber * 2)) | result.ordinal() << (labNumber * 2);
+        timesRun[labNumber]++;
+        historyFor(labNumber).record(System.currentTimeMillis() / 1000, result);
+        costChanges++;
+        return result;
+    }
+
+    /**
+     * Gets the latest result of one lab.
+     *
+     * @param labNumber The index of the lab in the lab panel.
+     * @return The result, which can be NotRun, Normal, or Abnormal.
+     */
+    public synchronized Lab.LabResult getResult(int labNumber) {
+        return RESULTS[(results >>> (labNumber * 2)) & 0x3];
+    }
+
+    /**
+     * Gets the labs whose latest result is abnormal.
+     *
+     * @return One bit per lab, set when the lab's latest result is Abnormal.
+     */
+    public synchronized int getAbnormalLabs() {
+        int abnormal = 0;
+        for (int i = 0; i < LAB_COUNT; i++) {
+            if (((results >>> (i * 2)) & 0x3) == Lab.LabResult.Abnormal.ordinal()) {
+                abnormal |= 1 << i;
+            }
+        }
+        return abnormal;
+    }
+
+    /**
+     * Gets the number of times one lab has been run.
+     *
+     * @param labNumber The index of the lab in the lab panel.
+     * @return The number of times the lab has been performed.
+     */
+    public synchronized int getTimesRun(int labNumber) {
+        return timesRun[labNumber];
+    }
+
+    /**
+     * Gets a counter that changes whenever the cost of the labs changes.
+     *
+     * @return The change counter.
+     */
+    public int getCostChanges() {
+        return costChanges;
     }
 
     /**
@@ -56,23 +148,142 @@ public class LabPanel implements Serializable {
      *
      * @return An array of strings representing the results of each lab test in the panel.
      */
-    public String[] getCurrentResults() {
-        String[] results = new String[labPanel.length];
-        for (int i = 0; i < labPanel.length; i++) {
-            results[i] = labPanel[i].getResult().name();
+    public synchronized String[] getCurrentResults() {
+        String[] current = new String[LAB_COUNT];
+        for (int i = 0; i < LAB_COUNT; i++) {
+            current[i] = getResult(i).name();
+        }
+
+        return current;
+    }
+
+    /**
+     * Gets the results of the recent runs of one lab, newest first. Looking at a lab that has
+     * never been run allocates nothing.
+     *
+     * @param labNumber The index of the lab in the lab panel, such as {@link #RENAL_FUNCTION}.
+     * @return The lab's run history, or {@code null} if the lab has no recorded runs.
+     */
+    public synchronized LabHistory getHistory(int labNumber) {
+        return histories == null ? null : histories[labNumber];
+    }
+
+    // the history that runs of a lab are recorded in, created when the first run is recorded or read
+    private LabHistory historyFor(int labNumber) {
+        if (histories == null) {
+            histories = new LabHistory[LAB_COUNT];
+        }
+        if (histories[labNumber] == null) {
+            histories[labNumber] = new LabHistory();
+        }
+        return histories[labNumber];
+    }
+
+    /**
+     * Writes the state of every lab in the panel. The results are packed two bits per lab
+     * into a single value, followed by how many times each lab has been run.
+     *
+     * @param out The record being written.
+     */
+    public synchronized void writeTo(RecordOutput out) {
+        out.writeVarInt(results);
+        for (int count : timesRun) {
+            out.writeVarInt(count);
+        }
+    }
+
+    /**
+     * Restores the state of every lab in the panel from a record written by {@link #writeTo(RecordOutput)}.
+     * The state has been written the same way in every version of the patient record.
+     *
+     * @param in The record being read.
+     * @throws IOException If the record is malformed.
+     */
+    public synchronized void readFrom(RecordInput in) throws IOException {
+        int packedResults = in.readVarInt();
+        for (int i = 0; i < LAB_COUNT; i++) {
+            if (((packedResults >>> (i * 2)) & 0x3) >= RESULTS.length) {
+                throw new IOException("Bad lab result in record");
+            }
+            timesRun[i] = in.readVarInt();
+        }
+        results = packedResults;
+        costChanges++;
+    }
+
+    /**
+     * Writes the run history of every lab in the panel: a bit for each lab that has one,
+     * followed by those histories in panel order.
+     *
+     * @param out The record being written.
+     */
+    public synchronized void writeHistoryTo(RecordOutput out) {
+        int present = 0;
+        for (int i = 0; histories != null && i < LAB_COUNT; i++) {
+            if (histories[i] != null && histories[i].size() > 0) {
+                present |= 1 << i;
+            }
         }
+        out.writeVarInt(present);
+        for (int i = 0; i < LAB_COUNT; i++) {
+            if ((present & 1 << i) != 0) {
+                histories[i].writeTo(out);
+            }
+        }
+    }
 
-        return results;
+    /**
+     * Restores the run history of every lab in the panel from a record written by
+     * {@link #writeHistoryTo(RecordOutput)}.
+     *
+     * @param in The record being read.
+     * @throws IOException If the record is malformed.
+     */
+    public synchronized void readHistoryFrom(RecordInput in) throws IOException {
+        int present = in.readVarInt();
+        for (int i = 0; i < LAB_COUNT; i++) {
+            if ((present & 1 << i) != 0) {
+                historyFor(i).readFrom(in);
+            }
+        }
     }
 
     /**
-     * Provides access to the array of lab tests within the panel. This method can
-     * be used to perform more detailed operations on individual lab tests or to
-     * examine their properties.
+     * Reads a panel stored with Java serialization. Panels stored before they kept primitive
+     * state hold one {@link Lab} per test, whose result, run count and history are copied over.
      *
-     * @return An array of Lab objects representing all the lab tests in the panel.
+     * @param in The stream being read.
+     * @throws IOException            If the stream cannot be read.
+     * @throws ClassNotFoundException If a class in the stream cannot be found.
      */
-    public Lab[] getLabs() {
-        return labPanel;
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        ObjectStreamClass stored = fields.getObjectStreamClass();
+        if (stored.getField("timesRun") != null) {
+            results = fields.get("results", 0);
+            timesRun = (int[]) fields.get("timesRun", null);
+            histories = (LabHistory[]) fields.get("histories", null);
+            if (timesRun == null || timesRun.length != LAB_COUNT) {
+                throw new IOException("Lab panel has the wrong number of labs");
+            }
+            return;
+        }
+
+        timesRun = new int[LAB_COUNT];
+        for (int i = 0; i < LAB_COUNT; i++) {
+            Lab lab = stored.getField(STORED_LAB_FIELDS[i]) != null ? (Lab) fields.get(STORED_LAB_FIELDS[i], null) : null;
+            if (lab == null) {
+                continue;
+            }
+            Lab.LabResult result = lab.getResult() != null ? lab.getResult() : Lab.LabResult.NotRun;
+            results |= result.ordinal() << (i * 2);
+            timesRun[i] = lab.getTimesRun();
+            if (lab.getHistory() != null) {
+                if (histories == null) {
+                    histories = new LabHistory[LAB_COUNT];
+                }
+                histories[i] = lab.getHistory();
+            }
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,42 @@
+package hospital.ui.labs;
+
+import java.util.Random;
+
+/**
+ * Decides the result of each lab that is run. The emergency room has no real lab equipment, so
+ * results are simulated; a generator can be swapped in with
+ * {@link LabPanel#setResultGenerator(LabResultGenerator)}, for example to replay a scenario.
+ */
+public interface LabResultGenerator {
+
+    /**
+     * Decides the result of one run of a lab.
+     *
+     * @param lab The lab being run.
+     * @return The result, either Normal or Abnormal.
+     */
+    Lab.LabResult next(LabType lab);
+
+    /**
+     * Gets a generator that makes one run in six abnormal. Two generators with the same seed give
+     * the same results in the same order, as long as labs are run from one thread.
+     *
+     * @param seed The seed for the random numbers.
+     * @return The generator.
+     */
+    static LabResultGenerator seeded(long seed) {
+        Random random = new Random(seed);
+        return lab -> random.nextInt(6) == 0 ? Lab.LabResult.Abnormal : Lab.LabResult.Normal;
+    }
+
+    /**
+     * Gets a generator that makes one run in six abnormal, seeded from {@code -Dcares.labs.seed}
+     * when it is set, or differently every time otherwise.
+     *
+     * @return The generator.
+     */
+    static LabResultGenerator standard() {
+        Long seed = Long.getLong("cares.labs.seed");
+        return seeded(seed != null ? seed : new Random().nextLong());
+    }
+}
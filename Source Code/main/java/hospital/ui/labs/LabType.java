@@ -0,0 +1,85 @@
+package hospital.ui.labs;
+
+import hospital.ui.billing.Money;
+
+/**
+ * One kind of lab test in the {@link LabCatalog}: its name, billing code, list price and how long
+ * it takes. There is one shared instance of each kind; the state of a patient's labs is kept in
+ * their {@link LabPanel}.
+ */
+public final class LabType {
+    private final int position;
+    private final String key;
+    private final String name;
+    private final String code;
+    private final long costCents;
+    private final long turnaroundMinutes;
+
+    LabType(int position, String key, String name, String code, long costCents, long turnaroundMinutes) {
+        this.position = position;
+        this.key = key;
+        this.name = name;
+        this.code = code;
+        this.costCents = costCents;
+        this.turnaroundMinutes = turnaroundMinutes;
+    }
+
+    /**
+     * Gets the position of the lab in the panel, such as {@code LabPanel.MRI}.
+     *
+     * @return The lab's position.
+     */
+    public int getPosition() {
+        return position;
+    }
+
+    /**
+     * Gets the name the lab is known by in rule files, such as {@code RENAL_FUNCTION}.
+     *
+     * @return The lab's key.
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * Gets the name of the lab as shown on bills.
+     *
+     * @return The name of the lab.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Gets the procedure code the lab is billed under.
+     *
+     * @return The procedure code.
+     */
+    public String getCode() {
+        return code;
+    }
+
+    /**
+     * Gets the list price of one run of the lab.
+     *
+     * @return The cost of running the lab once, in cents (see {@link Money}).
+     */
+    public long getCost() {
+        return costCents;
+    }
+
+    /**
+     * Gets how long the lab usually takes to come back.
+     *
+     * @return The turnaround in minutes.
+     */
+    public long getTurnaroundMinutes() {
+        return turnaroundMinutes;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
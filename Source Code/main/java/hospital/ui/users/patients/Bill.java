@@ -1,56 +1,76 @@
 package hospital.ui.users.patients;
 
-import hospital.ui.labs.Lab;
-import java.io.Serializable;
+import hospital.ui.billing.Money;
+import hospital.ui.billing.PriceTable;
+import hospital.ui.billing.Pricing;
+import hospital.ui.labs.LabCatalog;
+import hospital.ui.labs.LabPanel;
 
 import java.io.Serializable;
+import java.time.LocalDate;
 
 /**
  * Generates a bill for medical services rendered to a patient, including costs
  * associated with their stay and any laboratory tests conducted. This class
  * provides a method to create a formatted bill as a string.
+ *
+ * <p>Prices come from the current {@link PriceTable} (see {@link Pricing}), by the patient's
+ * insurance plan. The rendered text is kept until something that appears on the bill changes (a
+ * lab is run, the stay, the patient's name or insurance, or the price table changes), so showing
+ * the same bill again costs nothing. All amounts are in cents (see {@link Money}).</p>
  */
 public class Bill implements Serializable {
+    private static final long serialVersionUID = 9201373700595522355L;
+
+    //padding copied into a line between its description and its cost
+    private static final char[] SPACES = "                                        ".toCharArray();
+
     private final int formatSpaces = 40;
 
+    //the last rendered bill and what it was rendered from
+    private transient String rendered;
+    private transient LabPanel renderedLabs;
+    private transient int renderedLabChanges;
+    private transient LocalDate renderedAdmittedDate;
+    private transient LocalDate renderedDischargeDate;
+    private transient String renderedLastName;
+    private transient String renderedFirstName;
+    private transient String renderedInsurancePlan;
+    private transient PriceTable renderedPrices;
+
     /**
-     * Constructs the cost summary of all laboratory tests.
+     * Appends the cost summary of all laboratory tests.
      * This includes the name of each lab, how many times it was run, and the total cost.
      *
-     * @param labs An array of Lab objects representing the laboratory tests to be billed.
-     * @return A formatted string detailing each lab's costs.
+     * @param bill   The bill being written.
+     * @param prices The prices to use.
+     * @param plan   The patient's insurance plan.
+     * @param labs   The patient's lab panel, holding the laboratory tests to be billed.
      */
-    private String labCosts(Lab[] labs) {
-        StringBuilder result = new StringBuilder();
-
-        for (Lab lab : labs) {
-            String s1 = lab.getName() + "(" + lab.getTimesRun() + "x)";
-            String s2 = lab.getTotalCost() + "$\n";
-            result.append(formatBill(s1, s2, formatSpaces));
+    private void labCosts(StringBuilder bill, PriceTable prices, String plan, LabPanel labs) {
+        for (int l = 0; l < LabPanel.LAB_COUNT; l++) {
+            int timesRun = labs.getTimesRun(l);
+            int line = bill.length();
+            bill.append(LabCatalog.get(l).getName()).append('(').append(timesRun).append("x)");
+            int cost = bill.length();
+            Money.append(bill, prices.getLabCost(plan, l, timesRun)).append("$\n");
+            formatBill(bill, line, cost);
         }
-
-        return result.toString();
     }
 
     /**
-     * Formats a single line of the bill with a specified total number of spaces between the
-     * description and the cost. Ensures the bill is neatly aligned.
+     * Pads the last line of the bill between the description and the cost so the line is
+     * {@code formatSpaces} long. Ensures the bill is neatly aligned.
      *
-     * @param s1 The description or name of the cost item.
-     * @param s2 The cost associated with the item, as a string.
-     * @param totalSpaces The total length of the line, ensuring alignment in the bill.
-     * @return A single line of the bill, properly formatted.
+     * @param bill The bill being written, ending with the line to pad.
+     * @param line The position in the bill where the line starts.
+     * @param cost The position in the bill where the cost starts.
      */
-    private String formatBill(String s1, String s2, int totalSpaces) {
-        StringBuilder result = new StringBuilder(s1);
-        int usedSpaces = s1.length() + s2.length();
-
-        for (int i = 0; i < totalSpaces - usedSpaces; i++) {
-            result.append(" ");
+    private void formatBill(StringBuilder bill, int line, int cost) {
+        int padding = formatSpaces - (bill.length() - line);
+        if (padding > 0) {
+            bill.insert(cost, SPACES, 0, padding);
         }
-
-        result.append(s2);
-        return result.toString();
     }
 
     /**
@@ -61,34 +81,127 @@ public class Bill implements Serializable {
      * @return The complete, formatted bill as a string.
      */
     public String toBill(Patient patient) {
-        String bill = "";
-        double flatRate = 850; // It seems flatRate is intended but not used in calculations. Consider integrating or removing.
-        double dayRate = 10900;
-        double stayCost = patient.getStay().getDays() * dayRate;
-        double labsCost = 0;
-
-        for (Lab lab : patient.getLabPanel().getLabs()) {
-            labsCost += lab.getTotalCost();
+        LabPanel labs = patient.getLabPanel();
+        PriceTable prices = Pricing.current();
+        //fields are compared by reference: each setter replaces the value
+        if (rendered != null && renderedPrices == prices && renderedLabs == labs && renderedLabChanges == labs.getCostChanges()
+                && renderedAdmittedDate == patient.getAdmittedDate() && renderedDischargeDate == patient.getDischargeDate()
+                && renderedLastName == patient.getLastName() && renderedFirstName == patient.getFirstName()
+                && renderedInsurancePlan == patient.getInsurancePlan()) {
+            return rendered;
         }
 
-        bill += "Patient: " + patient.getLastName() + ", " + patient.getFirstName() + "\n";
-        bill += "#################COSTS:#################\n";
-        bill += "\n-----------------Stay:------------------\n";
-        bill += formatBill("-Base ", dayRate + "$\n", formatSpaces);
-        bill += formatBill("-Days: " + patient.getStay().getDays(), stayCost + "$\n", formatSpaces);
-        bill += "\n-----------------LABS:------------------\n";
-        bill += labCosts(patient.getLabPanel().getLabs());
-        bill += "\n########################################\n\n";
-        bill += formatBill("Insurance:", patient.getInsurancePlan(), formatSpaces);
-        bill += "\n\n########################################";
-        bill += "\n\n\n";
-        bill += formatBill("Total:", Double.toString(labsCost + stayCost + dayRate) + "$\n", formatSpaces);
-
-        return bill;
+        renderedPrices = prices;
+        renderedLabs = labs;
+        renderedLabChanges = labs.getCostChanges();
+        renderedAdmittedDate = patient.getAdmittedDate();
+        renderedDischargeDate = patient.getDischargeDate();
+        renderedLastName = patient.getLastName();
+        renderedFirstName = patient.getFirstName();
+        renderedInsurancePlan = patient.getInsurancePlan();
+        StringBuilder bill = new StringBuilder(1024);
+        appendBill(bill, prices, patient);
+        rendered = bill.toString();
+        return rendered;
+    }
+
+    /**
+     * Gets the base rate charged once on the patient's bill.
+     *
+     * @param patient The patient being billed.
+     * @return The base rate, in cents.
+     */
+    public long getBaseRate(Patient patient) {
+        return Pricing.current().getBaseRate(patient.getInsurancePlan());
+    }
+
+    /**
+     * Gets the cost of the patient's stay.
+     *
+     * @param patient The patient being billed.
+     * @return The daily rate for the length of the stay times its days, in cents.
+     */
+    public long getStayCost(Patient patient) {
+        return Pricing.current().getStayCost(patient.getInsurancePlan(), patient.getStayDays());
     }
-}
 
+    /**
+     * Gets the cost of every run of one of the patient's labs.
+     *
+     * @param patient The patient being billed.
+     * @param lab     The position of the lab in the panel.
+     * @return The cost of the lab, in cents.
+     */
+    public long getLabCost(Patient patient, int lab) {
+        return Pricing.current().getLabCost(patient.getInsurancePlan(), lab, patient.getLabPanel().getTimesRun(lab));
+    }
 
+    /**
+     * Gets the total the patient owes: the base rate, the stay and every lab run.
+     *
+     * @param patient The patient being billed.
+     * @return The total cost, in cents.
+     */
+    public long getTotal(Patient patient) {
+        PriceTable prices = Pricing.current();
+        String plan = patient.getInsurancePlan();
+        return prices.getBaseRate(plan) + prices.getStayCost(plan, patient.getStayDays()) + labsCost(prices, plan, patient);
+    }
 
+    private static long labsCost(PriceTable prices, String plan, Patient patient) {
+        LabPanel labs = patient.getLabPanel();
+        long total = 0;
+        for (int l = 0; l < LabPanel.LAB_COUNT; l++) {
+            total += prices.getLabCost(plan, l, labs.getTimesRun(l));
+        }
+        return total;
+    }
 
+    /**
+     * Appends a complete bill for a patient to a builder, so many bills can be written one after
+     * another into the same reused builder.
+     *
+     * @param bill    The builder to append the bill to.
+     * @param patient The patient for whom the bill is being generated.
+     */
+    public void appendBill(StringBuilder bill, Patient patient) {
+        appendBill(bill, Pricing.current(), patient);
+    }
 
+    private void appendBill(StringBuilder bill, PriceTable prices, Patient patient) {
+        String plan = patient.getInsurancePlan();
+        int days = patient.getStayDays();
+        long baseRate = prices.getBaseRate(plan);
+        long stayCost = prices.getStayCost(plan, days);
+        long labsCost = labsCost(prices, plan, patient);
+
+        bill.append("Patient: ").append(patient.getLastName()).append(", ").append(patient.getFirstName()).append('\n');
+        bill.append("#################COSTS:#################\n");
+        bill.append("\n-----------------Stay:------------------\n");
+        int line = bill.length();
+        bill.append("-Base ");
+        int cost = bill.length();
+        Money.append(bill, baseRate).append("$\n");
+        formatBill(bill, line, cost);
+        line = bill.length();
+        bill.append("-Days: ").append(days);
+        cost = bill.length();
+        Money.append(bill, stayCost).append("$\n");
+        formatBill(bill, line, cost);
+        bill.append("\n-----------------LABS:------------------\n");
+        labCosts(bill, prices, plan, patient.getLabPanel());
+        bill.append("\n########################################\n\n");
+        line = bill.length();
+        bill.append("Insurance:");
+        cost = bill.length();
+        bill.append(plan);
+        formatBill(bill, line, cost);
+        bill.append("\n\n########################################");
+        bill.append("\n\n\n");
+        line = bill.length();
+        bill.append("Total:");
+        cost = bill.length();
+        Money.append(bill, baseRate + stayCost + labsCost).append("$\n");
+        formatBill(bill, line, cost);
+    }
+}
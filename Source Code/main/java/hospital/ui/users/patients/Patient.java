@@ -1,21 +1,32 @@
 package hospital.ui.users.patients;
 
+import hospital.ui.database.RecordInput;
+import hospital.ui.database.RecordOutput;
 import hospital.ui.diagnose.Diagnosis;
 import hospital.ui.labs.LabPanel;
 import hospital.ui.users.Person;
+import hospital.ui.vitals.EarlyWarningScore;
+import hospital.ui.vitals.VitalsBuffer;
 import hospital.ui.warnings.WarningManager;
 
+import java.io.IOException;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.Period;
+import java.time.temporal.ChronoUnit;
 
 /**
  * Represents a patient in the hospital system, extending the {@link Person} class
  * with additional attributes relevant to a patient's care and management.
  */
 public class Patient extends Person implements Serializable {
+    private static final long serialVersionUID = 7752657690974048342L;
+
     private String patientID;
+    //medical record number, assigned by the database at check-in, 0 if none has been assigned
+    private long medicalRecordNumber;
     private String insurancePlan;
     private String emergencyContact;
 
@@ -23,6 +34,7 @@ public class Patient extends Person implements Serializable {
     private boolean isAdmitted;
     private boolean isStartedDischarged;
     private boolean isDischarged;
+    private boolean isBilled;
     private double height;
     private double weight;
     private String bloodPressure;
@@ -37,6 +49,14 @@ public class Patient extends Person implements Serializable {
     private LocalDate  dischargeDate;
     private String dischargeInstruction;
 
+    //slot of the patient in the memory-mapped vitals file, 0 if none has been assigned
+    private int vitalsSlot;
+
+    //readings of the bedside monitor while the patient has a bed, null if never monitored
+    private transient volatile VitalsBuffer monitor;
+    //early warning score while the patient is admitted, null otherwise
+    private transient volatile EarlyWarningScore warningScore;
+
     /**
      * Constructs a new {@code Patient} object by copying basic information from an existing {@code Person} object
      * and initializing patient-specific details such as insurance plan and emergency contact information.
@@ -184,6 +204,24 @@ public class Patient extends Person implements Serializable {
         this.isDischarged = isDischarged;
     }
 
+    /**
+     * Checks if the patient's bill has been produced by a billing run.
+     *
+     * @return True if billed, false otherwise.
+     */
+    public boolean isBilled() {
+        return isBilled;
+    }
+
+    /**
+     * Sets the patient's billed status.
+     *
+     * @param isBilled The billed status to set.
+     */
+    public void setBilled(boolean isBilled) {
+        this.isBilled = isBilled;
+    }
+
     public boolean isStartedDischarged() {
         return isStartedDischarged;
     }
@@ -247,11 +285,20 @@ public class Patient extends Person implements Serializable {
     }
 
     /**
-     * Gets the blood pressure of the patient.
+     * Gets the blood pressure of the patient: the latest monitor reading while the patient is
+     * monitored, and otherwise the charted value.
      *
      * @return The blood pressure as a String.
      */
     public String getBloodPressure() {
+        VitalsBuffer readings = monitor;
+        if (readings != null) {
+            int systolic = readings.getLatest(VitalsBuffer.SYSTOLIC);
+            int diastolic = readings.getLatest(VitalsBuffer.DIASTOLIC);
+            if (systolic != VitalsBuffer.NONE && diastolic != VitalsBuffer.NONE) {
+                return Math.round(systolic / 10.0) + "/" + Math.round(diastolic / 10.0);
+            }
+        }
         return bloodPressure;
     }
 
@@ -269,23 +316,26 @@ public class Patient extends Person implements Serializable {
             // Validate the ranges for systolic (0-200) and diastolic (0-150)
             if (systolic >= 0 && systolic <= 200 && diastolic >= 0 && diastolic <= 150) {
                 this.bloodPressure = bloodPressure;
+                vitalChanged(VitalsBuffer.SYSTOLIC);
             } else {
                 WarningManager.getInstance().showWarningToAll("Blood pressure values out of range. Systolic should be 0-200 and diastolic should be 0-150.");
             }
         }else if(bloodPressure.equals("")) {
             this.bloodPressure = "";
+            vitalChanged(VitalsBuffer.SYSTOLIC);
         } else {
             WarningManager.getInstance().showWarningToAll("Invalid blood pressure format. Correct format: 'systolic/diastolic'.");
         }
     }
 
     /**
-     * Gets the heart rate of the patient.
+     * Gets the heart rate of the patient: the latest monitor reading while the patient is
+     * monitored, and otherwise the charted value.
      *
      * @return The heart rate in beats per minute.
      */
     public String getHeartRate() {
-        return doubleToStringOrEmpty(heartRate);
+        return doubleToStringOrEmpty(monitored(VitalsBuffer.HEART_RATE, heartRate));
     }
 
     /**
@@ -297,20 +347,23 @@ public class Patient extends Person implements Serializable {
         double parseRate = parseDoubleOrDefault(heartRate);
         if(parseRate <= 200 && parseRate >= 0){
             this.heartRate = parseRate;
+            vitalChanged(VitalsBuffer.HEART_RATE);
         }else if(heartRate.equals("")) {
             this.heartRate = -1;
+            vitalChanged(VitalsBuffer.HEART_RATE);
         }else {
             WarningManager.getInstance().showWarningToAll("Invalid Input, Range of 0-200 BPM");
         }
     }
 
     /**
-     * Gets the oxygen level of the patient.
+     * Gets the oxygen level of the patient: the latest monitor reading while the patient is
+     * monitored, and otherwise the charted value.
      *
      * @return The oxygen level as a percentage.
      */
     public String getOxyLevel() {
-        return doubleToStringOrEmpty(oxyLevel);
+        return doubleToStringOrEmpty(monitored(VitalsBuffer.OXYGEN_LEVEL, oxyLevel));
     }
 
     /**
@@ -322,33 +375,132 @@ public class Patient extends Person implements Serializable {
         double parseLvl = parseDoubleOrDefault(oxyLevel);
         if(parseLvl <= 100 && parseLvl >= 0){
             this.oxyLevel = parseLvl;
+            vitalChanged(VitalsBuffer.OXYGEN_LEVEL);
         }else if(oxyLevel.equals("")) {
             this.oxyLevel = -1;
+            vitalChanged(VitalsBuffer.OXYGEN_LEVEL);
         }else {
             WarningManager.getInstance().showWarningToAll("Invalid Input, Range of 0-100%");
         }
     }
 
     /**
-     * Gets the body temperature of the patient.
+     * Gets the body temperature of the patient: the latest monitor reading while the patient is
+     * monitored, and otherwise the charted value.
      *
-     * @return The body temperature in Celsius.
+     * @return The body temperature in Fahrenheit.
      */
     public String getBodyTemp() {
-        return doubleToStringOrEmpty(bodyTemp);
+        return doubleToStringOrEmpty(monitored(VitalsBuffer.BODY_TEMP, bodyTemp));
+    }
+
+    // the latest monitor reading of a vital sign, or the charted value if there is none
+    private double monitored(int vital, double charted) {
+        VitalsBuffer readings = monitor;
+        int tenths = readings == null ? VitalsBuffer.NONE : readings.getLatest(vital);
+        return tenths == VitalsBuffer.NONE ? charted : tenths / 10.0;
+    }
+
+    /**
+     * Gets the readings of the patient's bedside monitor.
+     *
+     * @return The monitor's buffer, or {@code null} if the patient has not been monitored.
+     */
+    public VitalsBuffer getMonitor() {
+        return monitor;
+    }
+
+    /**
+     * Sets the buffer the patient's bedside monitor readings are stored in.
+     *
+     * @param monitor The monitor's buffer, or {@code null} to show only charted vitals.
+     */
+    public void setMonitor(VitalsBuffer monitor) {
+        this.monitor = monitor;
+        EarlyWarningScore score = warningScore;
+        if (score != null) {
+            score.refresh();
+        }
+    }
+
+    /**
+     * Gets the current value of a vital sign: the latest monitor reading while the patient is
+     * monitored, and otherwise the charted value.
+     *
+     * @param vital The vital sign, such as {@link VitalsBuffer#HEART_RATE}.
+     * @return The value in tenths of a unit, or {@link VitalsBuffer#NONE} if there is none.
+     */
+    public int getVitalTenths(int vital) {
+        VitalsBuffer readings = monitor;
+        int tenths = readings == null ? VitalsBuffer.NONE : readings.getLatest(vital);
+        if (tenths != VitalsBuffer.NONE) {
+            return tenths;
+        }
+        double charted;
+        switch (vital) {
+            case VitalsBuffer.HEART_RATE:
+                charted = heartRate;
+                break;
+            case VitalsBuffer.OXYGEN_LEVEL:
+                charted = oxyLevel;
+                break;
+            case VitalsBuffer.BODY_TEMP:
+                charted = bodyTemp;
+                break;
+            case VitalsBuffer.SYSTOLIC:
+            case VitalsBuffer.DIASTOLIC:
+                String pressure = bloodPressure;
+                int slash = pressure == null ? -1 : pressure.indexOf('/');
+                if (slash < 0) {
+                    return VitalsBuffer.NONE;
+                }
+                charted = Integer.parseInt(vital == VitalsBuffer.SYSTOLIC ? pressure.substring(0, slash) : pressure.substring(slash + 1));
+                break;
+            default:
+                return VitalsBuffer.NONE;
+        }
+        return charted < 0 ? VitalsBuffer.NONE : (int) Math.round(charted * 10);
+    }
+
+    /**
+     * Gets the patient's early warning score.
+     *
+     * @return The score, or {@code null} if the patient is not being scored.
+     */
+    public EarlyWarningScore getWarningScore() {
+        return warningScore;
+    }
+
+    /**
+     * Sets the patient's early warning score. Called by the index that scores the patient.
+     *
+     * @param warningScore The score, or {@code null} when the patient stops being scored.
+     */
+    public void setWarningScore(EarlyWarningScore warningScore) {
+        this.warningScore = warningScore;
+    }
+
+    // brings the early warning score up to date after a charted vital sign has changed
+    private void vitalChanged(int vital) {
+        EarlyWarningScore score = warningScore;
+        if (score != null) {
+            score.update(vital, getVitalTenths(vital));
+        }
     }
 
     /**
      * Sets the body temperature of the patient.
      *
-     * @param bodyTemp The body temperature in Celsius as a string to set.
+     * @param bodyTemp The body temperature in Fahrenheit as a string to set.
      */
     public void setBodyTemp(String bodyTemp) {
         double parseTemp = parseDoubleOrDefault(bodyTemp);
         if(parseTemp <= 150 && parseTemp >= 0){
             this.bodyTemp = parseTemp;
+            vitalChanged(VitalsBuffer.BODY_TEMP);
         }else if(bodyTemp.equals("")) {
             this.bodyTemp = -1;
+            vitalChanged(VitalsBuffer.BODY_TEMP);
         }else {
             WarningManager.getInstance().showWarningToAll("Invalid Input, Range of 0-150 F");
         }
@@ -489,10 +641,272 @@ public class Patient extends Person implements Serializable {
         this.dischargeInstruction = "";
     }
 
+    /**
+     * Gets the patient's medical record number (MRN), the number printed on their wristband.
+     *
+     * @return The medical record number, or 0 if none has been assigned.
+     */
+    public long getMedicalRecordNumber() {
+        return medicalRecordNumber;
+    }
+
+    /**
+     * Sets the patient's medical record number.
+     *
+     * @param medicalRecordNumber The medical record number.
+     */
+    public void setMedicalRecordNumber(long medicalRecordNumber) {
+        this.medicalRecordNumber = medicalRecordNumber;
+    }
+
+    /**
+     * Gets the patient's slot in the vitals file.
+     *
+     * @return The slot number, or 0 if none has been assigned.
+     */
+    public int getVitalsSlot() {
+        return vitalsSlot;
+    }
+
+    /**
+     * Sets the patient's slot in the vitals file.
+     *
+     * @param vitalsSlot The slot number.
+     */
+    public void setVitalsSlot(int vitalsSlot) {
+        this.vitalsSlot = vitalsSlot;
+    }
+
+    /**
+     * Writes the patient's vitals and status into a fixed 64-byte block:
+     * flags (int), systolic and diastolic pressure (short each, -1 if not set), height, weight,
+     * heart rate, oxygen level, body temperature and BMI (double each), then the admitted and
+     * discharge dates as epoch days (int each).
+     *
+     * @param buffer The buffer to write to.
+     * @param base   The position of the block in the buffer.
+     */
+    public void writeVitals(ByteBuffer buffer, int base) {
+        int flags = 1 | (isAdmitted ? 2 : 0) | (isStartedDischarged ? 4 : 0) | (isDischarged ? 8 : 0) | (isBilled ? 16 : 0);
+        short systolic = -1;
+        short diastolic = -1;
+        if (!bloodPressure.isEmpty()) {
+            int slash = bloodPressure.indexOf('/');
+            systolic = Short.parseShort(bloodPressure.substring(0, slash));
+            diastolic = Short.parseShort(bloodPressure.substring(slash + 1));
+        }
+
+        buffer.putInt(base, flags);
+        buffer.putShort(base + 4, systolic);
+        buffer.putShort(base + 6, diastolic);
+        buffer.putDouble(base + 8, height);
+        buffer.putDouble(base + 16, weight);
+        buffer.putDouble(base + 24, heartRate);
+        buffer.putDouble(base + 32, oxyLevel);
+        buffer.putDouble(base + 40, bodyTemp);
+        buffer.putDouble(base + 48, bodyMassIndex);
+        buffer.putInt(base + 56, admittedDate == null ? Integer.MIN_VALUE : (int) admittedDate.toEpochDay());
+        buffer.putInt(base + 60, dischargeDate == null ? Integer.MIN_VALUE : (int) dischargeDate.toEpochDay());
+    }
+
+    /**
+     * Reads the patient's vitals and status from a block written by {@link #writeVitals(ByteBuffer, int)}.
+     *
+     * @param buffer The buffer to read from.
+     * @param base   The position of the block in the buffer.
+     * @return {@code true} if the block held data, {@code false} if it was never written.
+     */
+    public boolean readVitals(ByteBuffer buffer, int base) {
+        int flags = buffer.getInt(base);
+        if ((flags & 1) == 0) {
+            return false;
+        }
+
+        isAdmitted = (flags & 2) != 0;
+        isStartedDischarged = (flags & 4) != 0;
+        isDischarged = (flags & 8) != 0;
+        isBilled = (flags & 16) != 0;
+        short systolic = buffer.getShort(base + 4);
+        short diastolic = buffer.getShort(base + 6);
+        bloodPressure = systolic < 0 ? "" : systolic + "/" + diastolic;
+        height = buffer.getDouble(base + 8);
+        weight = buffer.getDouble(base + 16);
+        heartRate = buffer.getDouble(base + 24);
+        oxyLevel = buffer.getDouble(base + 32);
+        bodyTemp = buffer.getDouble(base + 40);
+        bodyMassIndex = buffer.getDouble(base + 48);
+        int admittedDay = buffer.getInt(base + 56);
+        int dischargeDay = buffer.getInt(base + 60);
+        admittedDate = admittedDay == Integer.MIN_VALUE ? null : LocalDate.ofEpochDay(admittedDay);
+        dischargeDate = dischargeDay == Integer.MIN_VALUE ? null : LocalDate.ofEpochDay(dischargeDay);
+        EarlyWarningScore score = warningScore;
+        if (score != null) {
+            score.refresh();
+        }
+        return true;
+    }
+
     public Period getStay(){
         return (Period.between(getAdmittedDate(), getDischargeDate()));
     }
 
+    /**
+     * Gets the length of the patient's stay in days, from admission to discharge. Unlike the
+     * days of {@link #getStay()}, which leave out whole months and years, this counts every day.
+     *
+     * @return The number of days in the stay.
+     */
+    public int getStayDays() {
+        return (int) ChronoUnit.DAYS.between(getAdmittedDate(), getDischargeDate());
+    }
+
+    /**
+     * Writes the patient in the compact binary record format. Vitals are written as raw
+     * primitives, the admitted, discharge and billed flags share one byte, and the lab panel and
+     * diagnosis are packed into a few small integers. Lab run histories come last.
+     *
+     * @param out The record being written.
+     */
+    public void writeTo(RecordOutput out) {
+        out.writeString(getLastName());
+        out.writeString(getFirstName());
+        out.writeString(getDob());
+        out.writeString(getPermAdd());
+        out.writeString(getPhoneNum());
+        out.writeString(patientID);
+        out.writeString(insurancePlan);
+        out.writeString(emergencyContact);
+
+        int flags = (isAdmitted ? 1 : 0) | (isStartedDischarged ? 2 : 0) | (isDischarged ? 4 : 0) | (isBilled ? 8 : 0);
+        out.writeByte(flags);
+        out.writeDate(admittedDate);
+        out.writeDate(dischargeDate);
+
+        out.writeDouble(height);
+        out.writeDouble(weight);
+        out.writeDouble(heartRate);
+        out.writeDouble(oxyLevel);
+        out.writeDouble(bodyTemp);
+        out.writeDouble(bodyMassIndex);
+        out.writeString(bloodPressure);
+        out.writeString(dischargeInstruction);
+
+        labPanel.writeTo(out);
+        diagnosis.writeTo(out);
+
+        //version 2
+        out.writeVarInt(vitalsSlot);
+
+        //version 3
+        out.writeVarLong(medicalRecordNumber);
+
+        //version 4
+        labPanel.writeHistoryTo(out);
+    }
+
+    /**
+     * Reads a patient from a record written by {@link #writeTo(RecordOutput)}. Fields added in
+     * later versions of the format are read only when {@code version} says they are present.
+     *
+     * @param in      The record being read.
+     * @param version The version of the record.
+     * @return The decoded patient.
+     * @throws IOException If the record is malformed.
+     */
+    public static Patient readFrom(RecordInput in, int version) throws IOException {
+        Person person = new Person(in.readString(), in.readString(), in.readString(), in.readString(), in.readString());
+        String patientID = in.readString();
+        Patient patient = new Patient(person, in.readString(), in.readString());
+        patient.patientID = patientID;
+
+        int flags = in.readByte();
+        patient.isAdmitted = (flags & 1) != 0;
+        patient.isStartedDischarged = (flags & 2) != 0;
+        patient.isDischarged = (flags & 4) != 0;
+        patient.isBilled = (flags & 8) != 0;
+        patient.admittedDate = in.readDate();
+        patient.dischargeDate = in.readDate();
+
+        patient.height = in.readDouble();
+        patient.weight = in.readDouble();
+        patient.heartRate = in.readDouble();
+        patient.oxyLevel = in.readDouble();
+        patient.bodyTemp = in.readDouble();
+        patient.bodyMassIndex = in.readDouble();
+        patient.bloodPressure = in.readString();
+        patient.dischargeInstruction = in.readString();
+
+        patient.labPanel.readFrom(in);
+        patient.diagnosis.readFrom(in, version);
+
+        if (version >= 2) {
+            patient.vitalsSlot = in.readVarInt();
+        }
+        if (version >= 3) {
+            patient.medicalRecordNumber = in.readVarLong();
+        }
+        if (version >= 4) {
+            patient.labPanel.readHistoryFrom(in);
+        }
+        return patient;
+    }
+
+    /**
+     * Writes only the fields the database's secondary indexes read: the names, date of birth,
+     * phone number, insurance plan and emergency contact, the status flags and dates, the lab
+     * results, the diagnosis, the vitals slot and the medical record number. Snapshots keep these
+     * beside their index, so the indexes can be filled without decoding whole patients.
+     *
+     * @param out The record being written.
+     */
+    public void writeIndexFieldsTo(RecordOutput out) {
+        out.writeString(getLastName());
+        out.writeString(getFirstName());
+        out.writeString(getDob());
+        out.writeString(getPhoneNum());
+        out.writeString(insurancePlan);
+        out.writeString(emergencyContact);
+
+        int flags = (isAdmitted ? 1 : 0) | (isStartedDischarged ? 2 : 0) | (isDischarged ? 4 : 0) | (isBilled ? 8 : 0);
+        out.writeByte(flags);
+        out.writeDate(admittedDate);
+        out.writeDate(dischargeDate);
+
+        labPanel.writeTo(out);
+        diagnosis.writeTo(out);
+        out.writeVarInt(vitalsSlot);
+        out.writeVarLong(medicalRecordNumber);
+    }
+
+    /**
+     * Reads a partial patient from a record written by {@link #writeIndexFieldsTo(RecordOutput)}.
+     * Fields that are not indexed, such as the address, vitals and lab histories, are left at
+     * their defaults, so the patient is only fit for filling an index.
+     *
+     * @param in      The record being read.
+     * @param version The version of the record.
+     * @return The partial patient.
+     * @throws IOException If the record is malformed.
+     */
+    public static Patient readIndexFieldsFrom(RecordInput in, int version) throws IOException {
+        Person person = new Person(in.readString(), in.readString(), in.readString(), "", in.readString());
+        Patient patient = new Patient(person, in.readString(), in.readString());
+
+        int flags = in.readByte();
+        patient.isAdmitted = (flags & 1) != 0;
+        patient.isStartedDischarged = (flags & 2) != 0;
+        patient.isDischarged = (flags & 4) != 0;
+        patient.isBilled = (flags & 8) != 0;
+        patient.admittedDate = in.readDate();
+        patient.dischargeDate = in.readDate();
+
+        patient.labPanel.readFrom(in);
+        patient.diagnosis.readFrom(in, version);
+        patient.vitalsSlot = in.readVarInt();
+        patient.medicalRecordNumber = in.readVarLong();
+        return patient;
+    }
+
     // Utility methods for conversion and default values...
 
     private double parseDoubleOrDefault(String str) {
@@ -1,6 +1,14 @@
 package hospital.ui.users.staff;
 
+import hospital.ui.Main;
+import hospital.ui.billing.BillingRun;
+import hospital.ui.billing.ClaimExporter;
+
+import java.io.File;
+import java.io.IOException;
 import java.io.Serializable;
+import java.time.LocalDate;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Represents a billing staff member, specializing the {@link Staff} class for billing operations.
@@ -8,6 +16,7 @@ import java.io.Serializable;
  * functionalities provided by the {@code Staff} class.
  */
 public class BillingStaff extends Staff implements Serializable {
+    private static final long serialVersionUID = 538084050980422592L;
 
     /**
      * Constructs a new {@code BillingStaff} instance with specified personal details and login credentials.
@@ -24,5 +33,29 @@ public class BillingStaff extends Staff implements Serializable {
                         String username, String password) {
         super(firstName, lastName, dob, permAdd, phoneNum, username, password);
     }
-}
 
+    /**
+     * Bills every discharged patient who has not been billed yet, writing the bills to a file.
+     *
+     * @param output The file to write the bills to.
+     * @return How many bills were written and how fast.
+     * @throws IOException If the file cannot be written.
+     */
+    public BillingRun.Result billDischargedPatients(File output) throws IOException {
+        return new BillingRun(Main.database, ForkJoinPool.commonPool()).run(output);
+    }
+
+    /**
+     * Writes the insurance claims of every patient discharged in a range of days to a batch
+     * claim file, grouped by insurance plan.
+     *
+     * @param output The file to write the claims to.
+     * @param from   The first discharge day, or {@code null} for no lower bound.
+     * @param to     The last discharge day, or {@code null} for no upper bound.
+     * @return How many claims were written.
+     * @throws IOException If the file cannot be written.
+     */
+    public ClaimExporter.Result exportClaims(File output, LocalDate from, LocalDate to) throws IOException {
+        return new ClaimExporter(Main.database).export(output, from, to, (int) (System.currentTimeMillis() / 1000 % 1000000000));
+    }
+}
@@ -1,11 +1,13 @@
 package hospital.ui.users.staff;
 
 import hospital.ui.Main;
+import hospital.ui.database.index.DuplicateIndex;
 import hospital.ui.users.Person;
 import hospital.ui.users.patients.Patient;
 import hospital.ui.warnings.WarningManager;
 
 import java.io.Serializable;
+import java.util.List;
 
 /**
  * Represents an emergency room staff member, specializing the {@link Staff} class for emergency room operations.
@@ -13,6 +15,7 @@ import java.io.Serializable;
  * encountered by staff members
  */
 public class EmergencyRoomStaff extends Staff implements Serializable {
+    private static final long serialVersionUID = -8275976597668134275L;
 
     /**
      * Constructs a new {@code EmergencyRoomStaff} instance with the specified details.
@@ -51,11 +54,16 @@ public class EmergencyRoomStaff extends Staff implements Serializable {
         String key = newPatient.getPatientID();
 
         System.out.println(key);
-        System.out.println(Main.database.getPatientTable().containsKey(key));
-        // Check if the patient already exists in the database
-        if (!Main.database.getPatientTable().containsKey(key)) {
-            Main.database.getPatientTable().put(key, newPatient);
-            WarningManager.getInstance().showWarningToAll("Patient Checked-In!");
+        // Check the patient in, unless they already exist in the database
+        if (Main.database.checkInPatient(key, k -> newPatient) == newPatient) {
+            List<DuplicateIndex.MergeCandidate> duplicates = Main.database.findLikelyDuplicates(key, newPatient);
+            if (duplicates.isEmpty()) {
+                WarningManager.getInstance().showWarningToAll("Patient Checked-In! MRN " + newPatient.getMedicalRecordNumber());
+            } else {
+                //the chart is still created, staff decide whether it has to be merged
+                WarningManager.getInstance().showWarningToAll("Patient Checked-In! MRN " + newPatient.getMedicalRecordNumber()
+                        + "\nPossible duplicate of " + duplicates.get(0).describeOther());
+            }
         } else {
             WarningManager.getInstance().showWarningToAll("This patient already exists");
         }
@@ -11,6 +11,7 @@ import java.io.Serializable;
  * This class forms the basis for representing all staff members within the system,
  */
 public class Staff extends Person implements Serializable {
+    private static final long serialVersionUID = 8058634894112001486L;
 
     private String username;
     private String password;
@@ -45,7 +46,17 @@ public class Staff extends Person implements Serializable {
     public Patient searchPatient(String lastName, String firstName, String birthday) {
         String key = lastName + firstName + birthday;
         System.out.println(key);
-        return Main.database.getPatientTable().getOrDefault(key, null);
+        return Main.database.getPatient(key);
+    }
+
+    /**
+     * Searches for a patient by medical record number, such as one scanned from a wristband.
+     *
+     * @param medicalRecordNumber The medical record number.
+     * @return The patient, or {@code null} if no patient has this number.
+     */
+    public Patient searchPatient(long medicalRecordNumber) {
+        return Main.database.getPatientByMrn(medicalRecordNumber);
     }
 
     /**
@@ -0,0 +1,356 @@
+package hospital.ui.vitals;
+
+import hospital.ui.Main;
+import hospital.ui.database.index.LongIndex;
+import hospital.ui.users.patients.Patient;
+import hospital.ui.warnings.WarningManager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps the admitted patients in order of their {@link EarlyWarningScore}, sickest first, so the
+ * charge nurse can see who needs attention without rescoring the whole ward.
+ *
+ * <p>The patients are held in a binary heap ordered by clinical risk, then by aggregate score,
+ * then by who reached that score first. A patient whose score changes is moved up or down the
+ * heap in O(log n); the sickest patient is at the top, and the sickest n are read in
+ * O(n log n) whatever the size of the ward.</p>
+ *
+ * <p>When a patient's risk rises to low-medium or above, a deterioration alert goes to every
+ * {@link WarningManager} listener. An alert is not repeated for a patient who falls back and
+ * rises to the same risk again within {@code -Dcares.vitals.alertQuietSeconds} (300 by
+ * default), so a reading wavering on a band edge does not raise one every second; a rise to a
+ * higher risk always does.</p>
+ *
+ * <p>Scores are kept by medical record number. With lazy storage a patient evicted from the cache
+ * is read back as a new object, which the shared index hands the patient's score as it is read,
+ * so charted vitals entered on it are scored and discharging it ends the score.</p>
+ */
+public class EarlyWarningIndex {
+    private static long alertQuietMillis = Long.getLong("cares.vitals.alertQuietSeconds", 300) * 1000;
+
+    //ranks are the risk and the total above this many bits of arrival order
+    private static final int ORDER_BITS = 40;
+    private static final long ORDER_MASK = (1L << ORDER_BITS) - 1;
+
+    private static EarlyWarningIndex instance;
+
+    //guarded by this
+    private EarlyWarningScore[] heap = new EarlyWarningScore[64];
+    private int size;
+    private long changes;
+    //the score of each patient in the heap, by medical record number
+    private final LongIndex<EarlyWarningScore> scoresByMrn = new LongIndex<>();
+
+    private final LongAdder rescores = new LongAdder();
+    private final LongAdder alerts = new LongAdder();
+
+    /**
+     * Gets the index used by the application, creating it on first use. Every patient currently
+     * admitted is scored once the database has indexed its patients, as the census is incomplete
+     * until then, and patients the database reads back from disk are given their score again.
+     *
+     * @return The shared early warning index.
+     */
+    public static synchronized EarlyWarningIndex getInstance() {
+        if (instance == null) {
+            EarlyWarningIndex index = new EarlyWarningIndex();
+            Main.database.addReadListener(index::restore);
+            Main.database.whenIndexed(() -> {
+                for (Patient patient : Main.database.findCurrentlyAdmitted()) {
+                    index.admit(patient);
+                }
+            });
+            instance = index;
+        }
+        return instance;
+    }
+
+    /**
+     * Starts scoring a patient, from their current vitals.
+     *
+     * @param patient The patient.
+     * @return The patient's score, which is the one they already had if they are in the index.
+     */
+    public EarlyWarningScore admit(Patient patient) {
+        EarlyWarningScore score;
+        String alert;
+        synchronized (this) {
+            score = find(patient);
+            if (score != null) {
+                restore(score, patient);
+                return score;
+            }
+            score = new EarlyWarningScore(this, patient);
+            for (int vital = 0; vital < VitalsBuffer.VITAL_COUNT; vital++) {
+                score.setVitalScore(vital, EarlyWarningScore.score(vital, patient.getVitalTenths(vital)));
+            }
+            score.rank = rank(score);
+            if (size == heap.length) {
+                heap = Arrays.copyOf(heap, size * 2);
+            }
+            heap[size] = score;
+            score.position = size++;
+            siftUp(score.position);
+            if (patient.getMedicalRecordNumber() != 0) {
+                scoresByMrn.put(patient.getMedicalRecordNumber(), score);
+            }
+            patient.setWarningScore(score);
+            //a patient admitted already deteriorating raises one alert for their whole score
+            alert = alert(score, EarlyWarningScore.RISK_LOW);
+        }
+        send(alert);
+        return score;
+    }
+
+    /**
+     * Gives a patient their score, if they are being scored, after they were read again as a new
+     * object.
+     *
+     * @param patient The patient.
+     */
+    public synchronized void restore(Patient patient) {
+        EarlyWarningScore score = find(patient);
+        if (score != null) {
+            restore(score, patient);
+        }
+    }
+
+    private void restore(EarlyWarningScore score, Patient patient) {
+        score.setPatient(patient);
+        patient.setWarningScore(score);
+    }
+
+    // the score of a patient in the heap, found by medical record number, or null; patients never
+    // stored have no number and are found by their own object's score
+    private EarlyWarningScore find(Patient patient) {
+        long mrn = patient.getMedicalRecordNumber();
+        EarlyWarningScore score = mrn == 0 ? patient.getWarningScore() : scoresByMrn.get(mrn);
+        return score != null && score.getIndex() == this && score.position >= 0 ? score : null;
+    }
+
+    /**
+     * Stops scoring a patient.
+     *
+     * @param patient The patient, which may be another object of the patient that was scored.
+     */
+    public synchronized void discharge(Patient patient) {
+        EarlyWarningScore score = find(patient);
+        if (score == null) {
+            return;
+        }
+        int position = score.position;
+        EarlyWarningScore last = heap[--size];
+        heap[size] = null;
+        score.position = -1;
+        if (position < size) {
+            heap[position] = last;
+            last.position = position;
+            siftDown(position);
+            siftUp(last.position);
+        }
+        if (patient.getMedicalRecordNumber() != 0) {
+            scoresByMrn.remove(patient.getMedicalRecordNumber());
+        }
+        score.getPatient().setWarningScore(null);
+        patient.setWarningScore(null);
+    }
+
+    // stores a new score for one vital of a patient, moves them in the heap and raises any alert
+    void rescore(EarlyWarningScore score, int vital, int vitalScore) {
+        String alert = null;
+        synchronized (this) {
+            if (score.setVitalScore(vital, vitalScore) == 0) {
+                return;
+            }
+            rescores.increment();
+            if (score.position < 0) {
+                return;
+            }
+            long oldRank = score.rank;
+            score.rank = rank(score);
+            if (score.rank > oldRank) {
+                siftUp(score.position);
+            } else {
+                siftDown(score.position);
+            }
+
+            alert = alert(score, (int) (oldRank >>> (ORDER_BITS + 8)));
+        }
+        send(alert);
+    }
+
+    // the alert for a patient whose risk was oldRisk, or null if none is due; called holding this
+    private String alert(EarlyWarningScore score, int oldRisk) {
+        int risk = (int) (score.rank >>> (ORDER_BITS + 8));
+        if (risk <= oldRisk || risk == EarlyWarningScore.RISK_LOW) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        if (risk <= score.alertedRisk && now - score.alertedAt < alertQuietMillis) {
+            return null;
+        }
+        score.alertedRisk = risk;
+        score.alertedAt = now;
+        Patient patient = score.getPatient();
+        return "Early warning: " + patient.getLastName() + ", " + patient.getFirstName()
+                + " now scores " + score.total + ", " + EarlyWarningScore.getRiskName(risk) + " risk";
+    }
+
+    private void send(String alert) {
+        if (alert != null) {
+            alerts.increment();
+            WarningManager.getInstance().showWarningToAll(alert);
+        }
+    }
+
+    // the heap priority of a score; later arrivals at the same risk and total rank lower
+    private long rank(EarlyWarningScore score) {
+        int risk = EarlyWarningScore.risk(score.total, score.reds > 0);
+        return (long) (risk << 8 | score.total) << ORDER_BITS | ORDER_MASK - (changes++ & ORDER_MASK);
+    }
+
+    private void siftUp(int position) {
+        EarlyWarningScore score = heap[position];
+        while (position > 0) {
+            int parent = (position - 1) >>> 1;
+            if (heap[parent].rank >= score.rank) {
+                break;
+            }
+            heap[position] = heap[parent];
+            heap[position].position = position;
+            position = parent;
+        }
+        heap[position] = score;
+        score.position = position;
+    }
+
+    private void siftDown(int position) {
+        EarlyWarningScore score = heap[position];
+        while (true) {
+            int child = position * 2 + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && heap[child + 1].rank > heap[child].rank) {
+                child++;
+            }
+            if (score.rank >= heap[child].rank) {
+                break;
+            }
+            heap[position] = heap[child];
+            heap[position].position = position;
+            position = child;
+        }
+        heap[position] = score;
+        score.position = position;
+    }
+
+    /**
+     * Gets the sickest patient.
+     *
+     * @return The patient, or {@code null} if no patient is being scored.
+     */
+    public synchronized Patient getSickest() {
+        return size == 0 ? null : heap[0].getPatient();
+    }
+
+    /**
+     * Gets the sickest patients, sickest first, without ordering the rest of the ward.
+     *
+     * @param limit The most patients to return.
+     * @return The patients.
+     */
+    public synchronized List<Patient> getSickest(int limit) {
+        List<Patient> sickest = new ArrayList<>();
+        //heap positions that may hold the next sickest; as each entry outranks its children,
+        //the next sickest is always a child of one already taken
+        int[] candidates = new int[Math.max(0, Math.min(limit, size)) + 2];
+        int count = 0;
+        if (size > 0) {
+            candidates[count++] = 0;
+        }
+        while (count > 0 && sickest.size() < limit) {
+            int best = candidates[0];
+            candidates[0] = candidates[--count];
+            siftCandidate(candidates, count);
+            sickest.add(heap[best].getPatient());
+            for (int child = best * 2 + 1; child <= best * 2 + 2 && child < size; child++) {
+                candidates[count] = child;
+                raiseCandidate(candidates, count++);
+            }
+        }
+        return sickest;
+    }
+
+    // restores the candidate heap after its top was replaced
+    private void siftCandidate(int[] candidates, int count) {
+        int position = 0;
+        while (true) {
+            int child = position * 2 + 1;
+            if (child >= count) {
+                return;
+            }
+            if (child + 1 < count && heap[candidates[child + 1]].rank > heap[candidates[child]].rank) {
+                child++;
+            }
+            if (heap[candidates[position]].rank >= heap[candidates[child]].rank) {
+                return;
+            }
+            int swap = candidates[position];
+            candidates[position] = candidates[child];
+            candidates[child] = swap;
+            position = child;
+        }
+    }
+
+    // restores the candidate heap after a candidate was added at the end
+    private void raiseCandidate(int[] candidates, int position) {
+        while (position > 0) {
+            int parent = (position - 1) >>> 1;
+            if (heap[candidates[parent]].rank >= heap[candidates[position]].rank) {
+                return;
+            }
+            int swap = candidates[position];
+            candidates[position] = candidates[parent];
+            candidates[parent] = swap;
+            position = parent;
+        }
+    }
+
+    /**
+     * Gets the number of patients being scored.
+     *
+     * @return The patient count.
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Gets the number of times a vital's score has changed.
+     *
+     * @return The rescore count.
+     */
+    public long getRescores() {
+        return rescores.sum();
+    }
+
+    /**
+     * Gets the number of deterioration alerts raised.
+     *
+     * @return The alert count.
+     */
+    public long getAlerts() {
+        return alerts.sum();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Early warning: %d patients scored, %d rescores, %d alerts.",
+                size(), getRescores(), getAlerts());
+    }
+}
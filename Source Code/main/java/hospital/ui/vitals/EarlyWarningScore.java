@@ -0,0 +1,197 @@
+package hospital.ui.vitals;
+
+import hospital.ui.users.patients.Patient;
+
+/**
+ * A patient's early warning score, kept up to date one vital sign at a time.
+ *
+ * <p>Vital signs are scored with the NEWS2 bands for heart rate, oxygen saturation (scale 1),
+ * temperature and systolic pressure, from 0 to 3 points each; a vital with no reading scores
+ * nothing. When a vital changes only its own band is looked up, and only when that changes is the
+ * total adjusted and the patient moved in its {@link EarlyWarningIndex}, so most readings cost a
+ * few comparisons.</p>
+ *
+ * <p>The clinical risk follows NEWS2: medium from an aggregate of 5, high from 7, and low-medium
+ * below that when any single vital scores 3.</p>
+ */
+public final class EarlyWarningScore {
+
+    //clinical risks, lowest first
+    public static final int RISK_LOW = 0;
+    public static final int RISK_LOW_MEDIUM = 1;
+    public static final int RISK_MEDIUM = 2;
+    public static final int RISK_HIGH = 3;
+
+    private static final String[] RISK_NAMES = {"low", "low-medium", "medium", "high"};
+
+    //aggregate scores from which the risk is medium and high, and the single score that is a red score
+    private static final int MEDIUM_SCORE = 5;
+    private static final int HIGH_SCORE = 7;
+    private static final int RED_SCORE = 3;
+
+    private final EarlyWarningIndex index;
+    //the latest object of the patient, which changes when the patient is read back from disk
+    private volatile Patient patient;
+
+    //the score of each vital, four bits each; only written while holding the index
+    private volatile int scores;
+
+    //the rest is guarded by the index
+    int total;
+    int reds;
+    //priority in the index: the risk, then the total, then who got there first
+    long rank;
+    //position in the index's heap, -1 once the patient has left it
+    int position = -1;
+    int alertedRisk;
+    long alertedAt;
+
+    EarlyWarningScore(EarlyWarningIndex index, Patient patient) {
+        this.index = index;
+        this.patient = patient;
+    }
+
+    /**
+     * Scores one reading of a vital sign with the NEWS2 bands.
+     *
+     * @param vital  The vital sign, such as {@link VitalsBuffer#HEART_RATE}.
+     * @param tenths The value in tenths of a unit, or {@link VitalsBuffer#NONE} if there is none;
+     *               temperatures are in Fahrenheit.
+     * @return The score, from 0 to 3.
+     */
+    public static int score(int vital, int tenths) {
+        if (tenths == VitalsBuffer.NONE) {
+            return 0;
+        }
+        //NEWS2 bands are in whole units, and in Celsius for temperature
+        int units = (tenths + 5) / 10;
+        switch (vital) {
+            case VitalsBuffer.HEART_RATE:
+                return units <= 40 ? 3 : units <= 50 ? 1 : units <= 90 ? 0 : units <= 110 ? 1 : units <= 130 ? 2 : 3;
+            case VitalsBuffer.OXYGEN_LEVEL:
+                return units <= 91 ? 3 : units <= 93 ? 2 : units <= 95 ? 1 : 0;
+            case VitalsBuffer.BODY_TEMP:
+                int celsius = (int) Math.round((tenths - 320) / 1.8);
+                return celsius <= 350 ? 3 : celsius <= 360 ? 1 : celsius <= 380 ? 0 : celsius <= 390 ? 1 : 2;
+            case VitalsBuffer.SYSTOLIC:
+                return units <= 90 ? 3 : units <= 100 ? 2 : units <= 110 ? 1 : units <= 219 ? 0 : 3;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Gets the clinical risk of a score.
+     *
+     * @param total The aggregate score.
+     * @param red   Whether any single vital scores 3.
+     * @return The risk, such as {@link #RISK_MEDIUM}.
+     */
+    public static int risk(int total, boolean red) {
+        return total >= HIGH_SCORE ? RISK_HIGH : total >= MEDIUM_SCORE ? RISK_MEDIUM : red ? RISK_LOW_MEDIUM : RISK_LOW;
+    }
+
+    /**
+     * Gets the name of a clinical risk, as shown in alerts.
+     *
+     * @param risk The risk.
+     * @return The name, such as "medium".
+     */
+    public static String getRiskName(int risk) {
+        return RISK_NAMES[risk];
+    }
+
+    /**
+     * Takes a new value of a vital sign into the score.
+     *
+     * @param vital  The vital sign, such as {@link VitalsBuffer#HEART_RATE}.
+     * @param tenths The value in tenths of a unit, or {@link VitalsBuffer#NONE} if there is none.
+     */
+    public void update(int vital, int tenths) {
+        int score = score(vital, tenths);
+        if (getVitalScore(vital) != score) {
+            index.rescore(this, vital, score);
+        }
+    }
+
+    /**
+     * Takes the patient's current value of every vital sign into the score, after their charted
+     * vitals or their monitor have changed.
+     */
+    public void refresh() {
+        for (int vital = 0; vital < VitalsBuffer.VITAL_COUNT; vital++) {
+            update(vital, patient.getVitalTenths(vital));
+        }
+    }
+
+    // stores the score of one vital and gives the change in the total; called holding the index
+    int setVitalScore(int vital, int score) {
+        int old = getVitalScore(vital);
+        scores = scores & ~(0xF << (vital * 4)) | score << (vital * 4);
+        total += score - old;
+        reds += (score >= RED_SCORE ? 1 : 0) - (old >= RED_SCORE ? 1 : 0);
+        return score - old;
+    }
+
+    /**
+     * Gets the score of one vital sign.
+     *
+     * @param vital The vital sign.
+     * @return The score, from 0 to 3.
+     */
+    public int getVitalScore(int vital) {
+        return scores >>> (vital * 4) & 0xF;
+    }
+
+    /**
+     * Gets the aggregate score.
+     *
+     * @return The sum of the vital signs' scores.
+     */
+    public int getTotal() {
+        synchronized (index) {
+            return total;
+        }
+    }
+
+    /**
+     * Gets the clinical risk.
+     *
+     * @return The risk, such as {@link #RISK_MEDIUM}.
+     */
+    public int getRisk() {
+        synchronized (index) {
+            return risk(total, reds > 0);
+        }
+    }
+
+    /**
+     * Gets the patient being scored.
+     *
+     * @return The latest object of the patient.
+     */
+    public Patient getPatient() {
+        return patient;
+    }
+
+    // moves the score to a new object of the same patient; called holding the index
+    void setPatient(Patient patient) {
+        this.patient = patient;
+    }
+
+    /**
+     * Gets the index the score is kept in.
+     *
+     * @return The index.
+     */
+    public EarlyWarningIndex getIndex() {
+        return index;
+    }
+
+    @Override
+    public String toString() {
+        synchronized (index) {
+            return "NEWS " + total + " (" + getRiskName(risk(total, reds > 0)) + " risk)";
+        }
+    }
+}
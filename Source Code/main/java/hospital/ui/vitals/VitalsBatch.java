@@ -0,0 +1,112 @@
+package hospital.ui.vitals;
+
+/**
+ * A reusable batch of monitor readings, held in parallel primitive arrays. A feed fills the same
+ * batch again and again, so moving readings from a monitor to a {@link VitalsBuffer} allocates
+ * nothing.
+ */
+public final class VitalsBatch {
+    private final int[] beds;
+    private final byte[] vitals;
+    private final char[] values;
+    private final long[] times;
+    private int size;
+
+    /**
+     * Creates an empty batch.
+     *
+     * @param capacity The most readings the batch holds.
+     */
+    public VitalsBatch(int capacity) {
+        beds = new int[capacity];
+        vitals = new byte[capacity];
+        values = new char[capacity];
+        times = new long[capacity];
+    }
+
+    /**
+     * Adds a reading to the batch.
+     *
+     * @param bed        The bed the reading comes from.
+     * @param vital      The vital sign, such as {@link VitalsBuffer#HEART_RATE}.
+     * @param timeMillis The time the reading was taken, in milliseconds since the epoch.
+     * @param tenths     The value in tenths of a unit, from 0 to 65535.
+     * @return {@code false} if the batch is full and the reading was not added.
+     */
+    public boolean add(int bed, int vital, long timeMillis, int tenths) {
+        if (size == beds.length) {
+            return false;
+        }
+        beds[size] = bed;
+        vitals[size] = (byte) vital;
+        values[size] = (char) tenths;
+        times[size] = timeMillis;
+        size++;
+        return true;
+    }
+
+    /**
+     * Empties the batch.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Gets the number of readings in the batch.
+     *
+     * @return The reading count.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Checks whether the batch has room for no more readings.
+     *
+     * @return True if the batch is full.
+     */
+    public boolean isFull() {
+        return size == beds.length;
+    }
+
+    /**
+     * Gets the bed of a reading.
+     *
+     * @param i The position of the reading in the batch.
+     * @return The bed number.
+     */
+    public int getBed(int i) {
+        return beds[i];
+    }
+
+    /**
+     * Gets the vital sign of a reading.
+     *
+     * @param i The position of the reading in the batch.
+     * @return The vital sign.
+     */
+    public int getVital(int i) {
+        return vitals[i];
+    }
+
+    /**
+     * Gets the value of a reading.
+     *
+     * @param i The position of the reading in the batch.
+     * @return The value in tenths of a unit.
+     */
+    public int getValue(int i) {
+        return values[i];
+    }
+
+    /**
+     * Gets the time of a reading.
+     *
+     * @param i The position of the reading in the batch.
+     * @return The time in milliseconds since the epoch.
+     */
+    public long getTime(int i) {
+        return times[i];
+    }
+}
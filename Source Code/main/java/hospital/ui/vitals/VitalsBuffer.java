@@ -0,0 +1,193 @@
+package hospital.ui.vitals;
+
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The recent readings of one bedside monitor, kept as primitive ring buffers: one per vital sign,
+ * each holding the last {@code -Dcares.vitals.historySize} readings (512 by default, rounded down
+ * to a power of two, so eight and a half minutes at one reading a second).
+ *
+ * <p>Each reading is packed into one {@code long}: the time it was taken in epoch milliseconds,
+ * shifted left 16 bits, with the value in tenths of a unit in the low bits. Every array is made
+ * when the buffer is, so recording a reading allocates nothing.</p>
+ *
+ * <p>A buffer has a single writer: the first thread that {@link #claim(Thread) claims} it. The
+ * writer stores a reading and then publishes it by advancing the vital's count with a release
+ * write, without taking a lock. Readers on any thread see only published readings; a read that
+ * the writer has lapped meanwhile is retried, so readers never block the writer.</p>
+ */
+public final class VitalsBuffer {
+
+    //positions of the vital signs, as used by record, getLatest and the monitor feeds
+    public static final int HEART_RATE = 0;
+    public static final int OXYGEN_LEVEL = 1;
+    public static final int BODY_TEMP = 2;
+    public static final int SYSTOLIC = 3;
+    public static final int DIASTOLIC = 4;
+
+    /**
+     * The number of vital signs a monitor reports.
+     */
+    public static final int VITAL_COUNT = 5;
+
+    /**
+     * Returned for a vital that has no reading yet.
+     */
+    public static final int NONE = -1;
+
+    //readings are never negative, so this is never a reading
+    private static final long EMPTY = -1;
+
+    private static int historySize = Integer.highestOneBit(Math.max(2, Integer.getInteger("cares.vitals.historySize", 512)));
+
+    //the rings of every vital back to back, each historySize long
+    private final long[] entries;
+    private final int mask;
+    //readings recorded for each vital; entries below a count are published
+    private final AtomicLongArray counts = new AtomicLongArray(VITAL_COUNT);
+    private final AtomicReference<Thread> writer = new AtomicReference<>();
+
+    /**
+     * Creates an empty buffer.
+     */
+    public VitalsBuffer() {
+        entries = new long[VITAL_COUNT * historySize];
+        mask = historySize - 1;
+    }
+
+    /**
+     * Packs the time and value of a reading into one entry.
+     *
+     * @param timeMillis The time the reading was taken, in milliseconds since the epoch.
+     * @param tenths     The value in tenths of a unit, from 0 to 65535.
+     * @return The packed entry.
+     */
+    public static long pack(long timeMillis, int tenths) {
+        return timeMillis << 16 | (tenths & 0xFFFF);
+    }
+
+    /**
+     * Gets the time a packed entry was taken.
+     *
+     * @param entry The packed entry.
+     * @return The time in milliseconds since the epoch.
+     */
+    public static long timeOf(long entry) {
+        return entry >>> 16;
+    }
+
+    /**
+     * Gets the value held in a packed entry.
+     *
+     * @param entry The packed entry.
+     * @return The value in tenths of a unit.
+     */
+    public static int valueOf(long entry) {
+        return (int) (entry & 0xFFFF);
+    }
+
+    /**
+     * Makes a thread the writer of this buffer, if it has no writer yet.
+     *
+     * @param thread The thread that will record readings.
+     * @return {@code true} if the thread is the buffer's writer.
+     */
+    public boolean claim(Thread thread) {
+        Thread owner = writer.get();
+        return owner == thread || owner == null && writer.compareAndSet(null, thread);
+    }
+
+    /**
+     * Records a reading. Only the buffer's writer may call this.
+     *
+     * @param vital      The vital sign, such as {@link #HEART_RATE}.
+     * @param timeMillis The time the reading was taken, in milliseconds since the epoch.
+     * @param tenths     The value in tenths of a unit, from 0 to 65535.
+     */
+    public void record(int vital, long timeMillis, int tenths) {
+        long count = counts.get(vital);
+        entries[vital * (mask + 1) + (int) (count & mask)] = pack(timeMillis, tenths);
+        //the entry is stored before the count that publishes it
+        VarHandle.releaseFence();
+        counts.lazySet(vital, count + 1);
+    }
+
+    /**
+     * Gets the number of readings recorded for a vital sign, including those since overwritten.
+     *
+     * @param vital The vital sign.
+     * @return The reading count.
+     */
+    public long getCount(int vital) {
+        return counts.get(vital);
+    }
+
+    /**
+     * Gets the latest reading of a vital sign as a packed entry.
+     *
+     * @param vital The vital sign.
+     * @return The packed entry, or -1 if there is no reading yet.
+     */
+    public long getLatestEntry(int vital) {
+        while (true) {
+            long count = counts.get(vital);
+            if (count == 0) {
+                return EMPTY;
+            }
+            long entry = entries[vital * (mask + 1) + (int) ((count - 1) & mask)];
+            VarHandle.loadLoadFence();
+            //the entry is only overwritten once the writer has gone all the way round the ring
+            if (counts.get(vital) - count < mask) {
+                return entry;
+            }
+        }
+    }
+
+    /**
+     * Gets the latest value of a vital sign.
+     *
+     * @param vital The vital sign.
+     * @return The value in tenths of a unit, or {@link #NONE} if there is no reading yet.
+     */
+    public int getLatest(int vital) {
+        long entry = getLatestEntry(vital);
+        return entry == EMPTY ? NONE : valueOf(entry);
+    }
+
+    /**
+     * Copies the latest readings of a vital sign, newest first, into an array the caller keeps,
+     * so trends can be read without allocating.
+     *
+     * @param vital The vital sign.
+     * @param into  The array to fill with packed entries.
+     * @return The number of entries copied, at most one less than the history size and at most
+     *         the array's length.
+     */
+    public int copyLatest(int vital, long[] into) {
+        int base = vital * (mask + 1);
+        while (true) {
+            long count = counts.get(vital);
+            //the oldest slot may be being overwritten, so at most all but one slot is copied
+            int copied = (int) Math.min(Math.min(count, mask), into.length);
+            for (int i = 0; i < copied; i++) {
+                into[i] = entries[base + (int) ((count - 1 - i) & mask)];
+            }
+            VarHandle.loadLoadFence();
+            //the oldest entry copied is overwritten once the writer has passed it
+            if (counts.get(vital) - count < mask + 1 - copied) {
+                return copied;
+            }
+        }
+    }
+
+    /**
+     * Gets the number of readings each vital sign keeps.
+     *
+     * @return The history size.
+     */
+    public int getHistorySize() {
+        return mask + 1;
+    }
+}
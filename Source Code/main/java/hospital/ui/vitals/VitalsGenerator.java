@@ -0,0 +1,123 @@
+package hospital.ui.vitals;
+
+import java.util.SplittableRandom;
+
+/**
+ * Simulated bedside monitors for a range of beds, standing in for real monitor feeds. Each tick
+ * every bed reports every vital sign once; ticks come {@code rateHz} times a second. Each bed
+ * wanders around a resting level of its own, so some beds run high or low, and each reading
+ * takes a small random step pulled back toward that level.
+ *
+ * <p>In real time the generator sleeps until each tick is due. Otherwise ticks follow each other
+ * straight away with timestamps spaced as if they had not, which is how the ingest is
+ * benchmarked. Readings are made from primitive state and written into the caller's batch, so
+ * the generator allocates nothing once created.</p>
+ */
+public class VitalsGenerator implements VitalsSource {
+
+    //in tenths, by vital: the usual resting level, how far a bed's own level strays from it,
+    //the limits a reading stays within, and the largest random step between readings
+    private static final int[] NORMAL = {750, 975, 986, 1200, 800};
+    private static final int[] SPREAD = {250, 40, 15, 250, 120};
+    private static final int[] LOWEST = {300, 700, 930, 600, 300};
+    private static final int[] HIGHEST = {2000, 1000, 1060, 2200, 1300};
+    private static final int[] STEP = {20, 5, 2, 30, 20};
+
+    private static final int VITALS = VitalsBuffer.VITAL_COUNT;
+
+    private final int firstBed;
+    private final int bedCount;
+    private final long periodMillis;
+    private final boolean realTime;
+    private final SplittableRandom random;
+    //the resting level and latest reading of each bed's vitals, bed by bed
+    private final int[] levels;
+    private final int[] current;
+
+    private long tickTime;
+    //the next reading of the tick: bed * VITALS + vital
+    private int position;
+    private volatile boolean closed;
+
+    /**
+     * Creates monitors for a range of beds.
+     *
+     * @param firstBed The first bed.
+     * @param bedCount The number of beds.
+     * @param rateHz   The number of readings of each vital sign per bed per second.
+     * @param realTime {@code true} to deliver readings as they are due, {@code false} to deliver
+     *                 them as fast as they are read.
+     * @param seed     The seed of the random readings.
+     */
+    public VitalsGenerator(int firstBed, int bedCount, double rateHz, boolean realTime, long seed) {
+        this.firstBed = firstBed;
+        this.bedCount = bedCount;
+        this.periodMillis = Math.max(1, Math.round(1000 / rateHz));
+        this.realTime = realTime;
+        this.random = new SplittableRandom(seed);
+        this.levels = new int[bedCount * VITALS];
+        this.current = new int[bedCount * VITALS];
+        for (int i = 0; i < levels.length; i++) {
+            int vital = i % VITALS;
+            levels[i] = clamp(vital, NORMAL[vital] + random.nextInt(2 * SPREAD[vital] + 1) - SPREAD[vital]);
+            current[i] = levels[i];
+        }
+        position = bedCount * VITALS;
+        tickTime = System.currentTimeMillis() - periodMillis;
+    }
+
+    @Override
+    public boolean read(VitalsBatch batch) {
+        while (!closed) {
+            if (position == bedCount * VITALS) {
+                //hand over the end of one tick before waiting for the next
+                if (realTime && batch.size() > 0) {
+                    return true;
+                }
+                position = 0;
+                tickTime += periodMillis;
+                if (realTime && !sleepUntil(tickTime)) {
+                    break;
+                }
+            }
+            batch.add(firstBed + position / VITALS, position % VITALS, tickTime, next(position));
+            position++;
+            if (batch.isFull()) {
+                return true;
+            }
+        }
+        return batch.size() > 0;
+    }
+
+    // takes the next random step of one bed's vital
+    private int next(int i) {
+        int vital = i % VITALS;
+        int value = current[i] + random.nextInt(2 * STEP[vital] + 1) - STEP[vital] + (levels[i] - current[i]) / 16;
+        current[i] = clamp(vital, value);
+        return current[i];
+    }
+
+    private static int clamp(int vital, int value) {
+        return Math.max(LOWEST[vital], Math.min(HIGHEST[vital], value));
+    }
+
+    private boolean sleepUntil(long time) {
+        long wait = time - System.currentTimeMillis();
+        if (wait <= 0) {
+            return true;
+        }
+        try {
+            Thread.sleep(wait);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            closed = true;
+            return false;
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+    }
+}
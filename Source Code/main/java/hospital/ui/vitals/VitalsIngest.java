@@ -0,0 +1,353 @@
+package hospital.ui.vitals;
+
+import hospital.ui.Main;
+import hospital.ui.users.patients.Patient;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Takes readings from bedside monitor feeds and stores them in each bed's {@link VitalsBuffer}.
+ *
+ * <p>The ward has {@code -Dcares.vitals.beds} beds (500 by default). A patient is given a bed on
+ * admission, and a new buffer is attached to the bed and to the patient, whose vitals then show
+ * the latest readings. Each feed is read by a thread of its own, which becomes the only writer of
+ * the beds it reports: readings are stored without locks, and the thread reuses one batch, so it
+ * allocates nothing while it runs. Readings for an empty bed, an unknown vital sign or a bed that
+ * another feed already writes are dropped and counted.</p>
+ *
+ * <p>Beds are matched to patients by medical record number. With lazy storage a patient evicted
+ * from the cache is read back as a new object, which the shared ingest hands the buffer of the
+ * patient's bed as it is read, so the readings follow the patient rather than one object.</p>
+ *
+ * <p>A patient given a bed is also scored in an {@link EarlyWarningIndex}, and each reading is
+ * taken into their early warning score as it is stored.</p>
+ *
+ * <p>Beds are not stored, so when the application starts the shared ingest gives every patient
+ * still admitted a bed again, longest stay first, once the database has indexed its census.
+ * With {@code -Dcares.vitals.simulate=true} it is then fed by a {@link VitalsGenerator} covering
+ * every bed at {@code -Dcares.vitals.rateHz} readings of each vital a second (1 by default).</p>
+ */
+public class VitalsIngest {
+    private static int beds = Integer.getInteger("cares.vitals.beds", 500);
+    private static boolean simulate = Boolean.getBoolean("cares.vitals.simulate");
+    private static double rateHz = Double.parseDouble(System.getProperty("cares.vitals.rateHz", "1"));
+
+    private static final int BATCH_SIZE = 1024;
+
+    private static VitalsIngest instance;
+
+    private final AtomicReferenceArray<VitalsBuffer> buffers;
+    //the early warning score of the patient in each bed
+    private final AtomicReferenceArray<EarlyWarningScore> scores;
+    private final EarlyWarningIndex warnings;
+    //the latest object of the patient in each bed; guarded by this
+    private final Patient[] patients;
+    private final List<VitalsSource> sources = new ArrayList<>();
+    private final List<Thread> threads = new ArrayList<>();
+    private final AtomicInteger feedNumbers = new AtomicInteger();
+
+    private final AtomicInteger runningFeeds = new AtomicInteger();
+    private final LongAdder readings = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+    /**
+     * Creates an ingest for a ward, scoring patients in the shared {@link EarlyWarningIndex}.
+     *
+     * @param beds The number of beds.
+     */
+    public VitalsIngest(int beds) {
+        this(beds, EarlyWarningIndex.getInstance());
+    }
+
+    /**
+     * Creates an ingest for a ward.
+     *
+     * @param beds     The number of beds.
+     * @param warnings The index to score patients in, or {@code null} to not score them.
+     */
+    public VitalsIngest(int beds, EarlyWarningIndex warnings) {
+        this.buffers = new AtomicReferenceArray<>(beds);
+        this.scores = new AtomicReferenceArray<>(beds);
+        this.patients = new Patient[beds];
+        this.warnings = warnings;
+    }
+
+    /**
+     * Gets the ingest used by the application, creating it on first use. Patients the database
+     * reads back from disk are given their bed's buffer again.
+     *
+     * @return The shared vitals ingest.
+     */
+    public static synchronized VitalsIngest getInstance() {
+        if (instance == null) {
+            VitalsIngest ingest = new VitalsIngest(beds);
+            Main.database.addReadListener(ingest::restore);
+            instance = ingest;
+        }
+        return instance;
+    }
+
+    /**
+     * Sets up the shared ingest as the application starts: once the database has indexed its
+     * patients, every patient currently admitted is given a bed, and the simulated feed is
+     * started if {@code -Dcares.vitals.simulate} asks for one.
+     */
+    public static void startup() {
+        VitalsIngest ingest = getInstance();
+        Main.database.whenIndexed(() -> {
+            int unplaced = 0;
+            for (Patient patient : Main.database.findCurrentlyAdmitted()) {
+                if (ingest.admit(patient) < 0) {
+                    unplaced++;
+                }
+            }
+            if (unplaced > 0) {
+                System.out.println(unplaced + " admitted patients have no monitored bed.");
+            }
+            if (simulate) {
+                ingest.start(new VitalsGenerator(0, beds, rateHz, true, System.nanoTime()));
+            }
+        });
+    }
+
+    /**
+     * Gives a patient the first free bed and attaches a monitor buffer to it. A patient who
+     * already has a bed keeps it.
+     *
+     * @param patient The patient.
+     * @return The bed, or -1 if every bed is taken.
+     */
+    public synchronized int admit(Patient patient) {
+        int bed = findBed(patient);
+        if (bed >= 0) {
+            restore(bed, patient);
+            return bed;
+        }
+        for (bed = 0; bed < patients.length; bed++) {
+            if (patients[bed] == null) {
+                attach(bed, patient);
+                return bed;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Gives a patient the buffer of their bed, if they have one, after they were read again as a
+     * new object.
+     *
+     * @param patient The patient.
+     */
+    public synchronized void restore(Patient patient) {
+        int bed = findBed(patient);
+        if (bed >= 0) {
+            restore(bed, patient);
+        }
+    }
+
+    // makes a patient object the bed's occupant and gives it the bed's buffer
+    private void restore(int bed, Patient patient) {
+        patients[bed] = patient;
+        if (patient.getMonitor() != buffers.get(bed)) {
+            patient.setMonitor(buffers.get(bed));
+        }
+    }
+
+    // the bed of a patient, matched by medical record number, or -1 if they have none; patients
+    // never stored have no number and are matched by object
+    private int findBed(Patient patient) {
+        long mrn = patient.getMedicalRecordNumber();
+        for (int bed = 0; bed < patients.length; bed++) {
+            Patient occupant = patients[bed];
+            if (occupant == patient || occupant != null && mrn != 0 && occupant.getMedicalRecordNumber() == mrn) {
+                return bed;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Attaches a new monitor buffer to a bed and to the patient in it, replacing any earlier one,
+     * and starts scoring the patient.
+     *
+     * @param bed     The bed.
+     * @param patient The patient.
+     * @return The new buffer.
+     */
+    public synchronized VitalsBuffer attach(int bed, Patient patient) {
+        VitalsBuffer buffer = new VitalsBuffer();
+        patients[bed] = patient;
+        scores.set(bed, warnings == null ? null : warnings.admit(patient));
+        patient.setMonitor(buffer);
+        buffers.set(bed, buffer);
+        return buffer;
+    }
+
+    /**
+     * Frees a patient's bed. The patient keeps the buffer, so their last readings still show,
+     * but no more readings are stored for them.
+     *
+     * @param patient The patient, which may be another object of the patient given the bed.
+     */
+    public synchronized void discharge(Patient patient) {
+        int bed = findBed(patient);
+        if (bed >= 0) {
+            buffers.set(bed, null);
+            scores.set(bed, null);
+            patients[bed] = null;
+        }
+    }
+
+    /**
+     * Gets the buffer attached to a bed.
+     *
+     * @param bed The bed.
+     * @return The buffer, or {@code null} if the bed is empty.
+     */
+    public VitalsBuffer getBuffer(int bed) {
+        return buffers.get(bed);
+    }
+
+    /**
+     * Starts reading a feed on a thread of its own.
+     *
+     * @param source The feed.
+     */
+    public synchronized void start(VitalsSource source) {
+        Thread thread = new Thread(() -> run(source), "vitals-feed-" + feedNumbers.incrementAndGet());
+        thread.setDaemon(true);
+        sources.add(source);
+        threads.add(thread);
+        runningFeeds.incrementAndGet();
+        thread.start();
+    }
+
+    private void run(VitalsSource source) {
+        VitalsBatch batch = new VitalsBatch(BATCH_SIZE);
+        Thread self = Thread.currentThread();
+        try {
+            while (!self.isInterrupted()) {
+                batch.clear();
+                if (!source.read(batch)) {
+                    break;
+                }
+                store(batch, self);
+            }
+        } catch (IOException | RuntimeException e) {
+            System.out.println("Error reading vitals feed: " + e.getMessage());
+        } finally {
+            runningFeeds.decrementAndGet();
+            try {
+                source.close();
+            } catch (IOException e) {
+                System.out.println("Error closing vitals feed: " + e.getMessage());
+            }
+        }
+    }
+
+    // stores a batch into the beds' buffers; called only by the feed's own thread
+    private void store(VitalsBatch batch, Thread self) {
+        int size = batch.size();
+        int stored = 0;
+        for (int i = 0; i < size; i++) {
+            int bed = batch.getBed(i);
+            int vital = batch.getVital(i);
+            if (bed < 0 || bed >= buffers.length() || vital < 0 || vital >= VitalsBuffer.VITAL_COUNT) {
+                continue;
+            }
+            VitalsBuffer buffer = buffers.get(bed);
+            if (buffer != null && buffer.claim(self)) {
+                int value = batch.getValue(i);
+                buffer.record(vital, batch.getTime(i), value);
+                EarlyWarningScore score = scores.get(bed);
+                if (score != null) {
+                    score.update(vital, value);
+                }
+                stored++;
+            }
+        }
+        readings.add(stored);
+        if (stored < size) {
+            dropped.add(size - stored);
+        }
+    }
+
+    /**
+     * Stops every feed and waits for their threads to finish.
+     *
+     * @param timeoutMillis How long to wait for each thread.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    public void shutdown(long timeoutMillis) throws InterruptedException {
+        List<Thread> stopping;
+        synchronized (this) {
+            for (VitalsSource source : sources) {
+                try {
+                    source.close();
+                } catch (IOException e) {
+                    System.out.println("Error closing vitals feed: " + e.getMessage());
+                }
+            }
+            stopping = new ArrayList<>(threads);
+            sources.clear();
+            threads.clear();
+        }
+        for (Thread thread : stopping) {
+            thread.interrupt();
+            thread.join(timeoutMillis);
+        }
+    }
+
+    /**
+     * Gets the number of readings stored.
+     *
+     * @return The stored reading count.
+     */
+    public long getReadings() {
+        return readings.sum();
+    }
+
+    /**
+     * Gets the number of readings dropped.
+     *
+     * @return The dropped reading count.
+     */
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * Gets the number of feeds still being read.
+     *
+     * @return The running feed count.
+     */
+    public int getRunningFeeds() {
+        return runningFeeds.get();
+    }
+
+    /**
+     * Gets the number of beds with a patient in them.
+     *
+     * @return The occupied bed count.
+     */
+    public synchronized int getOccupiedBeds() {
+        int occupied = 0;
+        for (Patient patient : patients) {
+            if (patient != null) {
+                occupied++;
+            }
+        }
+        return occupied;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Vitals: %d of %d beds occupied, %d feeds, %d readings stored, %d dropped.",
+                getOccupiedBeds(), patients.length, getRunningFeeds(), getReadings(), getDropped());
+    }
+}
@@ -0,0 +1,21 @@
+package hospital.ui.vitals;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * A feed of bedside monitor readings, such as a {@link VitalsGenerator} or a
+ * {@link VitalsStreamSource}. A feed is read by one thread of the {@link VitalsIngest}, which
+ * becomes the only writer of the beds it reports, so no two feeds should report the same bed.
+ */
+public interface VitalsSource extends Closeable {
+
+    /**
+     * Reads the next readings into a batch, waiting until there is at least one.
+     *
+     * @param batch The batch to fill; it is empty when passed in.
+     * @return {@code false} once the feed has ended.
+     * @throws IOException If the feed cannot be read.
+     */
+    boolean read(VitalsBatch batch) throws IOException;
+}
@@ -0,0 +1,72 @@
+package hospital.ui.vitals;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Monitor readings read from a byte stream, such as a socket from a monitor gateway. Each reading
+ * is a fixed frame of {@value #FRAME_SIZE} bytes: the bed (int), the vital sign (byte), the value
+ * in tenths (unsigned short) and the time in epoch milliseconds (long, or 0 for the time it is
+ * read). Frames are read through one buffer made up front, so reading allocates nothing.
+ */
+public class VitalsStreamSource implements VitalsSource {
+
+    /**
+     * The size of one reading in bytes.
+     */
+    public static final int FRAME_SIZE = 15;
+
+    private final DataInputStream in;
+
+    /**
+     * Creates a source reading from a stream.
+     *
+     * @param in The stream of frames.
+     */
+    public VitalsStreamSource(InputStream in) {
+        this.in = new DataInputStream(new BufferedInputStream(in, 64 * 1024));
+    }
+
+    /**
+     * Writes one reading as a frame.
+     *
+     * @param out        The stream to write to.
+     * @param bed        The bed the reading comes from.
+     * @param vital      The vital sign.
+     * @param timeMillis The time the reading was taken, or 0 for the time it is read.
+     * @param tenths     The value in tenths of a unit.
+     * @throws IOException If the frame cannot be written.
+     */
+    public static void writeFrame(DataOutputStream out, int bed, int vital, long timeMillis, int tenths) throws IOException {
+        out.writeInt(bed);
+        out.writeByte(vital);
+        out.writeShort(tenths);
+        out.writeLong(timeMillis);
+    }
+
+    @Override
+    public boolean read(VitalsBatch batch) throws IOException {
+        //wait for one frame, then take whatever further frames have already arrived
+        do {
+            try {
+                int bed = in.readInt();
+                int vital = in.readUnsignedByte();
+                int tenths = in.readUnsignedShort();
+                long time = in.readLong();
+                batch.add(bed, vital, time == 0 ? System.currentTimeMillis() : time, tenths);
+            } catch (EOFException e) {
+                return batch.size() > 0;
+            }
+        } while (!batch.isFull() && in.available() >= FRAME_SIZE);
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -1,6 +1,7 @@
 package hospital.ui.warnings;
 
-import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Manages warning messages within the application,
@@ -9,7 +10,8 @@ import java.util.ArrayList;
  */
 public class WarningManager {
     private static final WarningManager instance = new WarningManager();
-    private final ArrayList<WarningListener> listeners = new ArrayList<>();
+    //warnings can be broadcast from background threads, such as the vitals feeds
+    private final List<WarningListener> listeners = new CopyOnWriteArrayList<>();
 
     /**
      * Private constructor to prevent instantiation from outside the class.
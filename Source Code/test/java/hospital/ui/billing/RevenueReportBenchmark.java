@@ -0,0 +1,85 @@
+package hospital.ui.billing;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.SortedMap;
+
+/**
+ * Compares the {@link RevenueReport} totals, kept in primitive arrays of cents, with the same
+ * totals added up the way the bills used to be: charge objects holding dollars as doubles,
+ * merged into hash maps of boxed sums. Run it with
+ * {@code java hospital.ui.billing.RevenueReportBenchmark [charges]}; five million charges need
+ * about {@code -Xmx2g}.
+ */
+public class RevenueReportBenchmark {
+    private static final String[] PLANS = {"Aetna", "Cigna", "Humana", "Kaiser", "Medicare", "Medicaid", "UnitedHealth"};
+
+    // a charge as the bills used to hold it
+    private static class Charge {
+        final LocalDate day;
+        final Integer kind;
+        final String plan;
+        final double dollars;
+
+        Charge(LocalDate day, Integer kind, String plan, double dollars) {
+            this.day = day;
+            this.kind = kind;
+            this.plan = plan;
+            this.dollars = dollars;
+        }
+    }
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 5000000;
+
+        RevenueReport report = new RevenueReport();
+        List<Charge> charges = new ArrayList<>(count);
+        Random random = new Random(15);
+        LocalDate first = LocalDate.of(2024, 1, 1);
+        for (int i = 0; i < count; i++) {
+            LocalDate day = first.plusDays(random.nextInt(730));
+            int kind = random.nextInt(RevenueReport.KINDS);
+            String plan = PLANS[random.nextInt(PLANS.length)];
+            long cents = 500 + random.nextInt(500000);
+            report.addCharge(day, kind, plan, cents);
+            charges.add(new Charge(day, kind, plan, cents / 100.0));
+        }
+
+        for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            long total = report.getTotal();
+            long[] byKind = report.getTotalsByKind();
+            SortedMap<LocalDate, Long> byDay = report.getTotalsByDay();
+            Map<String, Long> byPlan = report.getTotalsByPlan();
+            long primitiveMillis = (System.nanoTime() - start) / 1000000;
+
+            start = System.nanoTime();
+            double boxedTotal = 0;
+            Map<Integer, Double> boxedByKind = new HashMap<>();
+            Map<LocalDate, Double> boxedByDay = new HashMap<>();
+            Map<String, Double> boxedByPlan = new HashMap<>();
+            for (Charge charge : charges) {
+                boxedTotal += charge.dollars;
+                boxedByKind.merge(charge.kind, charge.dollars, Double::sum);
+                boxedByDay.merge(charge.day, charge.dollars, Double::sum);
+                boxedByPlan.merge(charge.plan, charge.dollars, Double::sum);
+            }
+            long boxedMillis = (System.nanoTime() - start) / 1000000;
+
+            //the double sums drift by fractions of a cent; rounded, they must agree with the cents
+            boolean match = Math.round(boxedTotal * 100) == total && byDay.size() == boxedByDay.size();
+            for (int kind = 0; kind < RevenueReport.KINDS; kind++) {
+                match &= Math.round(boxedByKind.getOrDefault(kind, 0.0) * 100) == byKind[kind];
+            }
+            for (Map.Entry<String, Long> plan : byPlan.entrySet()) {
+                match &= Math.round(boxedByPlan.get(plan.getKey()) * 100) == plan.getValue();
+            }
+            System.out.printf("round %d, %d charges, all four totals: primitive arrays %d ms, boxed doubles in maps %d ms, totals match: %b%n",
+                    round + 1, count, primitiveMillis, boxedMillis, match);
+        }
+    }
+}
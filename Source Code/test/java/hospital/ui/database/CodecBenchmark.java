@@ -0,0 +1,95 @@
+package hospital.ui.database;
+
+import hospital.ui.users.patients.Patient;
+import hospital.ui.users.patients.SyntheticPatients;
+
+import java.io.*;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Compares saving and loading a patient table with Java object serialization, as the database
+ * did before, and with the {@link PatientCodec} snapshot. Run it with
+ * {@code java hospital.ui.database.CodecBenchmark [patients...]}; each size is timed three times
+ * and the best run is reported, after checking that both read back the same patients.
+ */
+public class CodecBenchmark {
+
+    @SuppressWarnings("unchecked")
+    public static void main(String[] args) throws Exception {
+        int[] sizes = args.length == 0 ? new int[] {10000, 100000} : new int[args.length];
+        for (int i = 0; i < args.length; i++) {
+            sizes[i] = Integer.parseInt(args[i]);
+        }
+
+        for (int size : sizes) {
+            Map<String, Patient> patients = new HashMap<>();
+            Random random = new Random(size);
+            long recordBytes = 0;
+            for (int i = 0; i < size; i++) {
+                Patient patient = SyntheticPatients.create(random, i);
+                patients.put(patient.getPatientID(), patient);
+                recordBytes += PatientCodec.encode(patient).length;
+            }
+
+            File javaFile = File.createTempFile("patients", ".ser");
+            File codecFile = File.createTempFile("patients", ".snapshot");
+            javaFile.deleteOnExit();
+            codecFile.deleteOnExit();
+            long javaSave = Long.MAX_VALUE, javaLoad = Long.MAX_VALUE, codecSave = Long.MAX_VALUE, codecLoad = Long.MAX_VALUE;
+            for (int run = 0; run < 3; run++) {
+                long start = System.nanoTime();
+                try (ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(javaFile), 1 << 16))) {
+                    out.writeObject(patients);
+                }
+                javaSave = Math.min(javaSave, System.nanoTime() - start);
+
+                start = System.nanoTime();
+                try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(javaFile), 1 << 16))) {
+                    Map<String, Patient> read = (Map<String, Patient>) in.readObject();
+                    check(patients, read);
+                }
+                javaLoad = Math.min(javaLoad, System.nanoTime() - start);
+
+                start = System.nanoTime();
+                try (FileOutputStream out = new FileOutputStream(codecFile)) {
+                    SnapshotFile.write(out, patients, null, Collections.emptyList());
+                }
+                codecSave = Math.min(codecSave, System.nanoTime() - start);
+
+                start = System.nanoTime();
+                Map<String, Patient> read = new HashMap<>();
+                SnapshotFile.readAll(codecFile, read);
+                check(patients, read);
+                codecLoad = Math.min(codecLoad, System.nanoTime() - start);
+            }
+
+            System.out.printf("%d patients:%n", size);
+            System.out.printf("  Java serialization: %.1f MB, save %d ms, load %d ms%n",
+                    javaFile.length() / 1e6, javaSave / 1000000, javaLoad / 1000000);
+            System.out.printf("  codec snapshot:     %.1f MB, save %d ms, load %d ms%n",
+                    codecFile.length() / 1e6, codecSave / 1000000, codecLoad / 1000000);
+            //the rest of the snapshot is the key index and the fields the secondary indexes are filled from
+            System.out.printf("  codec records alone: %.1f MB, %d bytes per patient%n", recordBytes / 1e6, recordBytes / size);
+            javaFile.delete();
+            codecFile.delete();
+        }
+    }
+
+    // a cheap check that the table read back holds the same patients
+    private static void check(Map<String, Patient> expected, Map<String, Patient> read) {
+        if (read.size() != expected.size()) {
+            throw new IllegalStateException("read " + read.size() + " patients, wrote " + expected.size());
+        }
+        for (Map.Entry<String, Patient> entry : expected.entrySet()) {
+            Patient patient = read.get(entry.getKey());
+            if (patient == null || !patient.getBloodPressure().equals(entry.getValue().getBloodPressure())
+                    || patient.getLabPanel().getAbnormalLabs() != entry.getValue().getLabPanel().getAbnormalLabs()
+                    || patient.getDiagnosis().getBits() != entry.getValue().getDiagnosis().getBits()) {
+                throw new IllegalStateException("patient " + entry.getKey() + " did not read back");
+            }
+        }
+    }
+}
@@ -0,0 +1,330 @@
+package hospital.ui.database;
+
+import hospital.ui.users.Person;
+import hospital.ui.users.patients.Patient;
+
+import java.io.File;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hammers a {@link Database} from many threads at once and checks that nothing was lost or
+ * duplicated. Run it with {@code java hospital.ui.database.DatabaseStress [threads] [patients] [operations]}
+ * from an empty directory, as the database keeps its files in the working directory; it will not
+ * start where there is already patient data.
+ *
+ * <p>First every writer thread checks in the same patients, in its own order, and exactly one
+ * record must be created for each key. Then each writer rekeys, updates and checks in patients
+ * while reader threads look patients up by key and by medical record number, which must find the
+ * patient even while it is being rekeyed. Each writer owns a share of the patients, so it knows
+ * where each of them should end up. At the end the tables, the medical record number index and
+ * the census are compared with a scan of every patient, and again after the database is saved
+ * and loaded back.</p>
+ */
+public class DatabaseStress {
+    private static final String[] DATA_FILES = {"PatientData", "LoginData", "PatientData.wal", "PatientData.wal.old", "PatientVitals.dat"};
+
+    private final int threads;
+    private final int patients;
+    private final int operations;
+
+    //the key and medical record number of patient i; key i is only changed by writer i % threads
+    private final String[] keys;
+    private final long[] mrns;
+    //patients checked in during the mixed run, by key
+    private final Map<String, Long> checkedIn = new ConcurrentHashMap<>();
+
+    private final AtomicInteger created = new AtomicInteger();
+    private final AtomicLong lookups = new AtomicLong();
+    private final List<String> failures = new ArrayList<>();
+
+    private Database database;
+
+    private DatabaseStress(int threads, int patients, int operations) {
+        this.threads = threads;
+        this.patients = patients;
+        this.operations = operations;
+        keys = new String[patients];
+        mrns = new long[patients];
+    }
+
+    public static void main(String[] args) throws Exception {
+        for (String name : DATA_FILES) {
+            if (new File(name).exists()) {
+                System.out.println("Found " + name + ", run the stress test from an empty directory.");
+                System.exit(2);
+            }
+        }
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int patients = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+        int operations = args.length > 2 ? Integer.parseInt(args[2]) : 20000;
+
+        DatabaseStress stress = new DatabaseStress(threads, patients, operations);
+        try {
+            stress.run();
+        } finally {
+            for (String name : DATA_FILES) {
+                new File(name).delete();
+            }
+        }
+        if (!stress.failures.isEmpty()) {
+            System.exit(1);
+        }
+    }
+
+    private void run() throws Exception {
+        database = new Database();
+        database.loadDataBase();
+        awaitIndexes();
+
+        long start = System.nanoTime();
+        checkInRace();
+        System.out.printf("Check-in race: %d threads, %d keys, %d created in %d ms.%n",
+                threads, patients, created.get(), (System.nanoTime() - start) / 1000000);
+
+        start = System.nanoTime();
+        mixedRun();
+        System.out.printf("Mixed run: %d writers x %d operations, %d readers made %d lookups in %d ms.%n",
+                threads, operations, threads, lookups.get(), (System.nanoTime() - start) / 1000000);
+
+        verify("after the run");
+        database.saveDatabase();
+        database.close();
+
+        database = new Database();
+        database.loadDataBase();
+        awaitIndexes();
+        verify("after reloading");
+        database.close();
+
+        if (failures.isEmpty()) {
+            System.out.println("All invariants hold.");
+        } else {
+            System.out.println(failures.size() + " invariants broken:");
+            for (String failure : failures.subList(0, Math.min(failures.size(), 20))) {
+                System.out.println("  " + failure);
+            }
+        }
+    }
+
+    private void awaitIndexes() throws InterruptedException {
+        CountDownLatch indexed = new CountDownLatch(1);
+        database.whenIndexed(indexed::countDown);
+        indexed.await();
+    }
+
+    // every writer checks in every key; the factory must run once per key
+    private void checkInRace() throws InterruptedException {
+        Map<String, Patient> firstSeen = new ConcurrentHashMap<>();
+        runAll(threads, thread -> {
+            Random random = new Random(thread);
+            int[] order = new int[patients];
+            for (int i = 0; i < patients; i++) {
+                order[i] = i;
+            }
+            for (int i = patients - 1; i > 0; i--) {
+                int swap = random.nextInt(i + 1);
+                int value = order[i];
+                order[i] = order[swap];
+                order[swap] = value;
+            }
+            for (int i : order) {
+                Patient patient = database.checkInPatient(key(i), k -> {
+                    created.incrementAndGet();
+                    return newPatient(i);
+                });
+                Patient first = firstSeen.putIfAbsent(key(i), patient);
+                if (first != null && first != patient) {
+                    fail("check-in of " + key(i) + " returned two different patients");
+                }
+            }
+        });
+        if (created.get() != patients) {
+            fail(created.get() + " patients created for " + patients + " keys");
+        }
+        for (int i = 0; i < patients; i++) {
+            keys[i] = key(i);
+            mrns[i] = database.getPatient(keys[i]).getMedicalRecordNumber();
+        }
+    }
+
+    // writers rekey, update and check in their own patients while readers look patients up
+    private void mixedRun() throws InterruptedException {
+        AtomicBoolean writing = new AtomicBoolean(true);
+        AtomicInteger writersLeft = new AtomicInteger(threads);
+        runAll(threads * 2, thread -> {
+            if (thread >= threads) {
+                read(thread, writing);
+                return;
+            }
+            try {
+                write(thread);
+            } finally {
+                if (writersLeft.decrementAndGet() == 0) {
+                    writing.set(false);
+                }
+            }
+        });
+    }
+
+    private void write(int thread) {
+        Random random = new Random(thread);
+        int owned = (patients - thread + threads - 1) / threads;
+        for (int op = 0; op < operations && owned > 0; op++) {
+            int i = thread + random.nextInt(owned) * threads;
+            int choice = random.nextInt(10);
+            if (choice < 3) {
+                //move the patient to its other key and expect the move to happen
+                String newKey = keys[i].equals(key(i)) ? key(i) + "#" : key(i);
+                if (!database.updateKey(keys[i], newKey)) {
+                    fail("rekey of " + keys[i] + " to free key " + newKey + " failed");
+                } else {
+                    keys[i] = newKey;
+                }
+            } else if (choice < 4 && owned > 1) {
+                //move the patient onto the key of another patient of this writer, which must fail
+                int other = thread + random.nextInt(owned) * threads;
+                if (other != i && database.updateKey(keys[i], keys[other])) {
+                    fail("rekey of " + keys[i] + " onto taken key " + keys[other] + " succeeded");
+                    keys[i] = keys[other];
+                }
+            } else if (choice < 7) {
+                Patient patient = database.getPatient(keys[i]);
+                patient.setAdmitted(!patient.isAdmitted());
+                patient.setAdmittedDate(LocalDate.of(2026, 1, 1).plusDays(random.nextInt(300)));
+                patient.setDischarged(random.nextInt(4) == 0);
+                database.updateVitals(keys[i], patient);
+            } else if (choice < 8) {
+                Patient patient = database.getPatient(keys[i]);
+                patient.setHeartRate(String.valueOf(40 + random.nextInt(120)));
+                database.recordChange(keys[i], patient);
+            } else if (choice < 9) {
+                //checking in a patient already here must return them without creating another
+                Patient patient = database.checkInPatient(keys[i], k -> {
+                    fail("check-in of existing key " + k + " created a patient");
+                    return newPatient(-1);
+                });
+                if (patient.getMedicalRecordNumber() != mrns[i]) {
+                    fail("check-in of " + keys[i] + " returned MRN " + patient.getMedicalRecordNumber());
+                }
+            } else {
+                String key = "n" + thread + "_" + op;
+                Patient patient = database.checkInPatient(key, k -> newPatient(-1));
+                checkedIn.put(key, patient.getMedicalRecordNumber());
+            }
+        }
+    }
+
+    private void read(int thread, AtomicBoolean writing) {
+        Random random = new Random(thread);
+        while (writing.get()) {
+            int i = random.nextInt(patients);
+            lookups.incrementAndGet();
+            Patient patient = database.getPatientByMrn(mrns[i]);
+            if (patient == null) {
+                fail("MRN " + mrns[i] + " found no patient");
+            } else if (patient.getMedicalRecordNumber() != mrns[i]) {
+                fail("MRN " + mrns[i] + " found patient with MRN " + patient.getMedicalRecordNumber());
+            }
+            String key = random.nextBoolean() ? key(i) : key(i) + "#";
+            patient = database.getPatient(key);
+            if (patient != null && patient.getMedicalRecordNumber() != mrns[i]) {
+                fail("key " + key + " found patient with MRN " + patient.getMedicalRecordNumber());
+            }
+            if (random.nextInt(100) == 0) {
+                database.getCensus();
+                database.findCurrentlyAdmitted();
+            }
+        }
+    }
+
+    // compares the tables and indexes with a scan of every patient
+    private void verify(String when) {
+        Map<String, Long> expected = new HashMap<>(checkedIn);
+        for (int i = 0; i < patients; i++) {
+            expected.put(keys[i], mrns[i]);
+        }
+
+        List<String> found = database.getPatientKeys();
+        if (found.size() != expected.size()) {
+            fail(when + ": " + found.size() + " keys, expected " + expected.size());
+        }
+        Set<Long> seen = new HashSet<>();
+        int census = 0;
+        for (String key : found) {
+            Patient patient = database.getPatient(key);
+            if (patient == null) {
+                fail(when + ": key " + key + " has no patient");
+                continue;
+            }
+            long mrn = patient.getMedicalRecordNumber();
+            if (!seen.add(mrn)) {
+                fail(when + ": MRN " + mrn + " is used twice");
+            }
+            Long expectedMrn = expected.get(key);
+            if (expectedMrn == null || expectedMrn != mrn) {
+                fail(when + ": key " + key + " has MRN " + mrn + ", expected " + expectedMrn);
+            }
+            if (!key.equals(database.getPatientKey(mrn))) {
+                fail(when + ": MRN " + mrn + " indexed under " + database.getPatientKey(mrn) + ", stored under " + key);
+            }
+            if (patient.isAdmitted() && !patient.isDischarged() && patient.getAdmittedDate() != null) {
+                census++;
+            }
+        }
+        if (database.getCensus() != census) {
+            fail(when + ": census " + database.getCensus() + ", scan found " + census);
+        }
+        System.out.printf("Verified %s: %d patients, census %d.%n", when, found.size(), census);
+    }
+
+    private static String key(int i) {
+        return "k" + i;
+    }
+
+    private static Patient newPatient(int i) {
+        return new Patient(new Person("Stress", "Patient" + i, "01/01/1980", "1 Main St", "5550000000"), "Aetna", "2");
+    }
+
+    private synchronized void fail(String failure) {
+        failures.add(failure);
+    }
+
+    private interface Task {
+        void run(int thread) throws Exception;
+    }
+
+    // runs a task on a number of threads, started together, and waits for all of them
+    private void runAll(int count, Task task) throws InterruptedException {
+        CountDownLatch ready = new CountDownLatch(count);
+        List<Thread> started = new ArrayList<>();
+        for (int t = 0; t < count; t++) {
+            int thread = t;
+            Thread worker = new Thread(() -> {
+                ready.countDown();
+                try {
+                    ready.await();
+                    task.run(thread);
+                } catch (Exception e) {
+                    fail("thread " + thread + " threw " + e);
+                }
+            }, "stress-" + t);
+            started.add(worker);
+            worker.start();
+        }
+        for (Thread worker : started) {
+            worker.join();
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package hospital.ui.database.index;
+
+import hospital.ui.users.patients.Patient;
+import hospital.ui.users.patients.SyntheticPatients;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Compares answering a query from a field index with scanning every patient, for an exact
+ * match on a {@link HashFieldIndex} (phone number) and a range on a {@link SortedFieldIndex}
+ * (a week of admissions). Run it with {@code java hospital.ui.database.index.FieldIndexBenchmark [patients]}.
+ */
+public class FieldIndexBenchmark {
+
+    public static void main(String[] args) {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+
+        Map<String, Patient> table = new HashMap<>();
+        HashFieldIndex<String> phoneIndex = new HashFieldIndex<>("phone", Patient::getPhoneNum);
+        SortedFieldIndex<LocalDate> admittedIndex = new SortedFieldIndex<>("admittedDate",
+                patient -> patient.isAdmitted() ? patient.getAdmittedDate() : null);
+        Random random = new Random(5);
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            Patient patient = SyntheticPatients.create(random, i);
+            table.put(patient.getPatientID(), patient);
+            phoneIndex.update(patient.getPatientID(), patient);
+            admittedIndex.update(patient.getPatientID(), patient);
+            keys.add(patient.getPatientID());
+        }
+        String phone = table.get(keys.get(77)).getPhoneNum();
+        LocalDate from = LocalDate.of(2024, 3, 1);
+        LocalDate to = from.plusDays(6);
+
+        for (int round = 0; round < 3; round++) {
+            int indexed = 0;
+            long start = System.nanoTime();
+            for (int i = 0; i < 1000; i++) {
+                indexed = resolve(table, phoneIndex.find(phone)).size();
+            }
+            double phoneIndexMicros = (System.nanoTime() - start) / 1000.0 / 1000;
+
+            int scanned = 0;
+            start = System.nanoTime();
+            for (int i = 0; i < 20; i++) {
+                scanned = 0;
+                for (Patient patient : table.values()) {
+                    if (patient.getPhoneNum().equals(phone)) {
+                        scanned++;
+                    }
+                }
+            }
+            double phoneScanMicros = (System.nanoTime() - start) / 1000.0 / 20;
+            check("phone", indexed, scanned);
+
+            start = System.nanoTime();
+            for (int i = 0; i < 100; i++) {
+                indexed = resolve(table, admittedIndex.findRange(from, to)).size();
+            }
+            double weekIndexMicros = (System.nanoTime() - start) / 1000.0 / 100;
+
+            start = System.nanoTime();
+            for (int i = 0; i < 20; i++) {
+                scanned = 0;
+                for (Patient patient : table.values()) {
+                    if (patient.isAdmitted() && !patient.getAdmittedDate().isBefore(from) && !patient.getAdmittedDate().isAfter(to)) {
+                        scanned++;
+                    }
+                }
+            }
+            double weekScanMicros = (System.nanoTime() - start) / 1000.0 / 20;
+            check("admitted week", indexed, scanned);
+
+            System.out.printf("round %d: phone index %.1f us, scan %.0f us | week of admissions (%d): index %.0f us, scan %.0f us%n",
+                    round + 1, phoneIndexMicros, phoneScanMicros, indexed, weekIndexMicros, weekScanMicros);
+        }
+    }
+
+    private static List<Patient> resolve(Map<String, Patient> table, Iterable<String> keys) {
+        List<Patient> patients = new ArrayList<>();
+        for (String key : keys) {
+            patients.add(table.get(key));
+        }
+        return patients;
+    }
+
+    private static void check(String query, int indexed, int scanned) {
+        if (indexed != scanned) {
+            throw new IllegalStateException(query + ": index found " + indexed + ", scan found " + scanned);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package hospital.ui.database.index;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Compares looking patients up by medical record number in a {@link LongIndex} with a
+ * {@code HashMap<Long, String>}, and with building and hashing the name and birth date key the
+ * patient table uses. Run it with {@code java hospital.ui.database.index.LongIndexBenchmark [entries] [lookups]};
+ * give the JVM room for all three tables, such as {@code -Xmx2g} for a million entries.
+ */
+public class LongIndexBenchmark {
+    private static final long FIRST_MRN = 1000000;
+
+    public static void main(String[] args) {
+        int entries = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        int lookups = args.length > 1 ? Integer.parseInt(args[1]) : 5000000;
+
+        String[] lastNames = new String[entries];
+        String[] keys = new String[entries];
+        for (int i = 0; i < entries; i++) {
+            lastNames[i] = "Lastname" + i;
+            keys[i] = lastNames[i] + "Firstname" + "01/01/1980";
+        }
+
+        long before = usedMemory();
+        LongIndex<String> index = new LongIndex<>();
+        for (int i = 0; i < entries; i++) {
+            index.put(FIRST_MRN + i, keys[i]);
+        }
+        long afterIndex = usedMemory();
+        Map<Long, String> boxed = new HashMap<>();
+        for (int i = 0; i < entries; i++) {
+            boxed.put(FIRST_MRN + i, keys[i]);
+        }
+        long afterBoxed = usedMemory();
+        Map<String, String> byName = new HashMap<>();
+        for (int i = 0; i < entries; i++) {
+            byName.put(keys[i], keys[i]);
+        }
+        long afterByName = usedMemory();
+        System.out.printf("bytes/entry: LongIndex %.1f, HashMap<Long,String> %.1f, HashMap<String,_> by name key %.1f%n",
+                (afterIndex - before) / (double) entries, (afterBoxed - afterIndex) / (double) entries,
+                (afterByName - afterBoxed) / (double) entries);
+
+        Random random = new Random(1);
+        int[] queries = new int[lookups];
+        for (int i = 0; i < lookups; i++) {
+            queries[i] = random.nextInt(entries);
+        }
+        //the first rounds warm up the compiler; the last one is the one to read
+        for (int round = 0; round < 3; round++) {
+            long found = 0;
+            long start = System.nanoTime();
+            for (int query : queries) {
+                if (index.get(FIRST_MRN + query) != null) {
+                    found++;
+                }
+            }
+            double indexNanos = (System.nanoTime() - start) / (double) lookups;
+
+            start = System.nanoTime();
+            for (int query : queries) {
+                if (boxed.get(FIRST_MRN + query) != null) {
+                    found++;
+                }
+            }
+            double boxedNanos = (System.nanoTime() - start) / (double) lookups;
+
+            start = System.nanoTime();
+            for (int query : queries) {
+                if (byName.get(lastNames[query] + "Firstname" + "01/01/1980") != null) {
+                    found++;
+                }
+            }
+            double nameNanos = (System.nanoTime() - start) / (double) lookups;
+
+            if (found != 3L * lookups) {
+                throw new IllegalStateException("found " + found + " of " + 3L * lookups);
+            }
+            System.out.printf("ns/lookup (round %d): LongIndex %.0f, HashMap<Long> %.0f, name key concat+hash %.0f%n",
+                    round + 1, indexNanos, boxedNanos, nameNanos);
+        }
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
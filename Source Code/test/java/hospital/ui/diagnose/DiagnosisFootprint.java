@@ -0,0 +1,152 @@
+package hospital.ui.diagnose;
+
+import java.lang.ref.Reference;
+import java.util.Random;
+import java.util.function.Predicate;
+
+/**
+ * Measures what a {@link Diagnosis} costs: heap per diagnosis, scaled to a million patients, and
+ * the time to ask whether one medication is prescribed. Run it with
+ * {@code java hospital.ui.diagnose.DiagnosisFootprint [diagnoses]}.
+ *
+ * <p>The same is measured for a copy of the layout diagnoses had before they were packed, a
+ * {@code boolean[5]} with five condition objects holding fifteen prescription objects, kept here
+ * as the baseline. There, finding a medication walks every condition's prescriptions.</p>
+ */
+public class DiagnosisFootprint {
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        DiagnosisCatalog catalog = DiagnosisCatalog.current();
+        int renvela = catalog.find("RENVELA");
+        int kidneyDisease = catalog.find("KIDNEY_DISEASE");
+
+        long before = usedMemory();
+        OldDiagnosis[] oldDiagnoses = new OldDiagnosis[count];
+        for (int i = 0; i < count; i++) {
+            oldDiagnoses[i] = new OldDiagnosis();
+        }
+        long oldHeap = usedMemory() - before;
+
+        before = usedMemory();
+        Diagnosis[] diagnoses = new Diagnosis[count];
+        for (int i = 0; i < count; i++) {
+            diagnoses[i] = new Diagnosis();
+        }
+        long heap = usedMemory() - before;
+        Reference.reachabilityFence(oldDiagnoses);
+        Reference.reachabilityFence(diagnoses);
+        System.out.printf("heap per diagnosis: old layout %.1f bytes, now %.1f bytes (%d diagnoses measured)%n",
+                oldHeap / (double) count, heap / (double) count, count);
+        System.out.printf("heap per 1M patients: old layout %.0f MB, now %.0f MB%n",
+                oldHeap * (1000000.0 / count) / 1e6, heap * (1000000.0 / count) / 1e6);
+
+        //one patient in four has kidney disease, and half of those are on Renvela
+        Random random = new Random(21);
+        int expected = 0;
+        for (int i = 0; i < count; i++) {
+            if (random.nextInt(4) == 0) {
+                diagnoses[i].setIsDiagnosed(true, kidneyDisease);
+                oldDiagnoses[i].isDiagnosed[Diagnosis.KIDNEY_DISEASE] = true;
+                if (random.nextBoolean()) {
+                    diagnoses[i].setPrescribed(renvela, true);
+                    oldDiagnoses[i].prescribe(Prescription.Medication.RENVELA);
+                    expected++;
+                }
+            }
+        }
+
+        //the first rounds warm up the compiler; the last one is the one to read
+        for (int round = 0; round < 5; round++) {
+            double oldNanos = time(oldDiagnoses, d -> d.isPrescribed(Prescription.Medication.RENVELA), expected);
+            double nanos = time(diagnoses, d -> d.isPrescribed(renvela), expected);
+            System.out.printf("round %d: \"is RENVELA prescribed\" old layout %.1f ns, now %.1f ns per patient%n",
+                    round + 1, oldNanos, nanos);
+        }
+    }
+
+    // the time per patient to count those on the medication, checking the count
+    private static <D> double time(D[] diagnoses, Predicate<D> prescribed, int expected) {
+        int found = 0;
+        long start = System.nanoTime();
+        for (int repeat = 0; repeat < 20; repeat++) {
+            found = 0;
+            for (D diagnosis : diagnoses) {
+                if (prescribed.test(diagnosis)) {
+                    found++;
+                }
+            }
+        }
+        double nanos = (System.nanoTime() - start) / (20.0 * diagnoses.length);
+        if (found != expected) {
+            throw new IllegalStateException("found " + found + " on Renvela, expected " + expected);
+        }
+        return nanos;
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    // a diagnosis laid out as before it was packed, with the same fields
+    private static final class OldDiagnosis {
+        private final boolean[] isDiagnosed = {false, false, false, false, false};
+
+        private final OldCondition highBloodPressure = new OldCondition(Prescription.Medication.HYDRALAZINE,
+                Prescription.Medication.LABETALOL, Prescription.Medication.FENOLDOPAM);
+        private final OldCondition highCholesterol = new OldCondition(Prescription.Medication.ATORVASTATIN,
+                Prescription.Medication.EZETIMIBE, Prescription.Medication.ALIROCUMAB);
+        private final OldCondition kidneyDisease = new OldCondition(Prescription.Medication.ROCALTROL,
+                Prescription.Medication.XPHOZAH, Prescription.Medication.RENVELA);
+        private final OldCondition liverDisease = new OldCondition(Prescription.Medication.EPCLUSA,
+                Prescription.Medication.MAVYRET, Prescription.Medication.ZEPATIER);
+        private final OldCondition brokenHumerus = new OldCondition(Prescription.Medication.IBUPROFEN,
+                Prescription.Medication.OXYCODONE, Prescription.Medication.PHYSICAL_THERAPY);
+
+        private final OldCondition[] conditions = {highBloodPressure, highCholesterol, kidneyDisease, liverDisease, brokenHumerus};
+
+        boolean isPrescribed(Prescription.Medication medication) {
+            for (OldCondition condition : conditions) {
+                for (OldPrescription prescription : condition.validPrescriptions) {
+                    if (prescription.medication == medication) {
+                        return prescription.isPrescribed;
+                    }
+                }
+            }
+            return false;
+        }
+
+        void prescribe(Prescription.Medication medication) {
+            for (OldCondition condition : conditions) {
+                for (OldPrescription prescription : condition.validPrescriptions) {
+                    if (prescription.medication == medication) {
+                        prescription.isPrescribed = true;
+                    }
+                }
+            }
+        }
+    }
+
+    private static final class OldCondition {
+        private final OldPrescription[] validPrescriptions = new OldPrescription[3];
+
+        OldCondition(Prescription.Medication m1, Prescription.Medication m2, Prescription.Medication m3) {
+            validPrescriptions[0] = new OldPrescription(m1);
+            validPrescriptions[1] = new OldPrescription(m2);
+            validPrescriptions[2] = new OldPrescription(m3);
+        }
+    }
+
+    private static final class OldPrescription {
+        private boolean isPrescribed;
+        private final Prescription.Medication medication;
+
+        OldPrescription(Prescription.Medication medication) {
+            this.medication = medication;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package hospital.ui.labs;
+
+import hospital.ui.database.RecordOutput;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.lang.ref.Reference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.ObjIntConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Measures what a {@link LabPanel} costs: heap per panel before and after a lab is run, scaled to
+ * a million patients, and the size of one panel Java-serialized and as a codec record. Run it
+ * with {@code java hospital.ui.labs.LabPanelFootprint [panels]}.
+ *
+ * <p>The same is measured for a copy of the layout panels had before the shared catalog, ten lab
+ * objects each holding its own name, cost and {@link Random}, kept here as the baseline. Its codec
+ * record is not measured, as the record format did not change.</p>
+ */
+public class LabPanelFootprint {
+
+    public static void main(String[] args) throws IOException {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+
+        long[] old = heap(count, OldPanel::new, OldPanel::runLab);
+        long[] now = heap(count, LabPanel::new, LabPanel::runLab);
+        System.out.printf("heap per 1M panels, no labs run: old layout %.0f MB, now %.0f MB (%d panels measured)%n",
+                perMillion(old[0], count), perMillion(now[0], count), count);
+        System.out.printf("heap per 1M panels, one lab run: old layout %.0f MB, now %.0f MB%n",
+                perMillion(old[1], count), perMillion(now[1], count));
+
+        OldPanel oldPanel = new OldPanel();
+        LabPanel panel = new LabPanel();
+        int oldEmpty = javaSize(oldPanel);
+        int javaEmpty = javaSize(panel);
+        int codecEmpty = codecSize(panel);
+        oldPanel.runLab(LabPanel.XRAY);
+        panel.runLab(LabPanel.XRAY);
+        System.out.printf("one panel, no labs run: Java-serialized %d bytes (old layout %d), codec %d bytes%n",
+                javaEmpty, oldEmpty, codecEmpty);
+        System.out.printf("one panel, one lab run: Java-serialized %d bytes (old layout %d), codec %d bytes%n",
+                javaSize(panel), javaSize(oldPanel), codecSize(panel));
+    }
+
+    // the heap taken by count panels with no labs run and after running one lab on each
+    private static <P> long[] heap(int count, Supplier<P> create, ObjIntConsumer<P> runLab) {
+        long before = usedMemory();
+        List<P> panels = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            panels.add(create.get());
+        }
+        long noLabs = usedMemory() - before;
+        for (P panel : panels) {
+            runLab.accept(panel, LabPanel.XRAY);
+        }
+        long oneLab = usedMemory() - before;
+        Reference.reachabilityFence(panels);
+        return new long[] {noLabs, oneLab};
+    }
+
+    private static double perMillion(long bytes, int count) {
+        return bytes * (1000000.0 / count) / 1e6;
+    }
+
+    private static int javaSize(Object panel) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(panel);
+        }
+        return bytes.size();
+    }
+
+    // the panel's part of a patient record, including its run histories
+    private static int codecSize(LabPanel panel) {
+        RecordOutput out = new RecordOutput();
+        panel.writeTo(out);
+        panel.writeHistoryTo(out);
+        return out.toByteArray().length;
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    // a panel laid out as before the shared catalog, with the same fields
+    private static final class OldPanel implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final OldLab redBloodLab = new OldLab("Red Blood Cell", 1100);
+        private final OldLab whiteBloodLab = new OldLab("White Blood Cell", 1400);
+        private final OldLab liverLab = new OldLab("Liver Function", 5000);
+        private final OldLab renalLab = new OldLab("Renal Function", 5000);
+        private final OldLab electrolyteLab = new OldLab("Electrolyte Levels", 5000);
+        private final OldLab xrayLab = new OldLab("X-Ray", 5000);
+        private final OldLab ctLab = new OldLab("C.T. Scan", 45000);
+        private final OldLab mriLab = new OldLab("MRI", 110000);
+        private final OldLab urineLab = new OldLab("Urine Test", 1000);
+        private final OldLab stoolLab = new OldLab("Stool Test", 1100);
+        private final OldLab[] labPanel = {redBloodLab, whiteBloodLab, liverLab, renalLab, electrolyteLab, xrayLab, ctLab, mriLab, urineLab, stoolLab};
+
+        private transient long totalCost;
+        private transient boolean totalCostValid;
+        private transient volatile int costChanges;
+
+        synchronized void runLab(int lab) {
+            labPanel[lab].run();
+            if (totalCostValid) {
+                totalCost += labPanel[lab].costCents;
+            }
+            costChanges++;
+        }
+    }
+
+    // a lab as it was stored in every panel before the shared catalog
+    private static final class OldLab implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private transient Random random = new Random();
+        private volatile Lab.LabResult result = Lab.LabResult.NotRun;
+        private final String name;
+        private volatile int timesRun;
+        private final long costCents;
+        private LabHistory history;
+
+        OldLab(String name, long costCents) {
+            this.name = name;
+            this.costCents = costCents;
+        }
+
+        synchronized void run() {
+            timesRun++;
+            result = random.nextInt(6) == 0 ? Lab.LabResult.Abnormal : Lab.LabResult.Normal;
+            if (history == null) {
+                history = new LabHistory();
+            }
+            history.record(System.currentTimeMillis() / 1000, result);
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package hospital.ui.users.patients;
+
+import hospital.ui.diagnose.DiagnosisCatalog;
+import hospital.ui.labs.LabPanel;
+import hospital.ui.users.Person;
+
+import java.time.LocalDate;
+import java.util.Random;
+
+/**
+ * Makes made-up patients for the benchmark and stress harnesses. About a third of them are
+ * admitted and a third of those discharged; most have charted vitals, some have labs run and
+ * some have a diagnosis with a prescription.
+ */
+public final class SyntheticPatients {
+    private static final String[] LAST_NAMES = {"Smith", "Johnson", "Williams", "Brown", "Jones", "Garcia", "Miller",
+            "Davis", "Rodriguez", "Martinez", "Hernandez", "Lopez", "Wilson", "Anderson", "Thomas", "Taylor"};
+    private static final String[] FIRST_NAMES = {"James", "Mary", "Robert", "Patricia", "John", "Jennifer", "Michael",
+            "Linda", "David", "Elizabeth", "William", "Barbara", "Richard", "Susan", "Joseph", "Jessica"};
+    private static final String[] PLANS = {"Aetna", "Cigna", "Humana", "Kaiser", "Medicare", "Medicaid", "UnitedHealth"};
+
+    private SyntheticPatients() {}
+
+    /**
+     * Makes a patient. The same random sequence and number always make the same patient, apart
+     * from lab results, which come from the shared {@link hospital.ui.labs.LabResultGenerator}.
+     *
+     * @param random The source of the patient's details.
+     * @param number A number that makes the patient's key unique.
+     * @return The patient.
+     */
+    public static Patient create(Random random, int number) {
+        String dob = String.format("%02d/%02d/%04d", 1 + random.nextInt(12), 1 + random.nextInt(28), 1930 + random.nextInt(90));
+        String phone = String.format("%03d-%03d-%04d", 200 + random.nextInt(800), random.nextInt(1000), random.nextInt(10000));
+        String contact = String.format("%03d-%03d-%04d", 200 + random.nextInt(800), random.nextInt(1000), random.nextInt(10000));
+        Person person = new Person(LAST_NAMES[random.nextInt(LAST_NAMES.length)] + suffix(number),
+                FIRST_NAMES[random.nextInt(FIRST_NAMES.length)], dob, (100 + random.nextInt(9900)) + " Main Street", phone);
+        Patient patient = new Patient(person, PLANS[random.nextInt(PLANS.length)], contact);
+
+        if (random.nextInt(5) > 0) {
+            patient.setHeight(String.valueOf(55 + random.nextInt(25)));
+            patient.setWeight(String.valueOf(100 + random.nextInt(150)));
+            patient.setBloodPressure((95 + random.nextInt(60)) + "/" + (60 + random.nextInt(35)));
+            patient.setHeartRate(String.valueOf(50 + random.nextInt(70)));
+            patient.setOxyLevel(String.valueOf(88 + random.nextInt(13)));
+            patient.setBodyTemp(String.valueOf((965 + random.nextInt(50)) / 10.0));
+            patient.setBodyMassIndex();
+        }
+
+        if (random.nextInt(3) == 0) {
+            LocalDate admitted = LocalDate.of(2024, 1, 1).plusDays(random.nextInt(730));
+            patient.setAdmitted(true);
+            patient.setAdmittedDate(admitted);
+            if (random.nextInt(3) == 0) {
+                patient.setDischarged(true);
+                patient.setDischargeDate(admitted.plusDays(random.nextInt(20)));
+            }
+        }
+
+        for (int lab = 0; lab < LabPanel.LAB_COUNT; lab++) {
+            if (random.nextInt(8) == 0) {
+                patient.getLabPanel().runLab(lab);
+            }
+        }
+
+        if (random.nextInt(4) == 0) {
+            DiagnosisCatalog catalog = DiagnosisCatalog.current();
+            int condition = catalog.getCondition(random.nextInt(catalog.getConditionCount()));
+            patient.getDiagnosis().setIsDiagnosed(true, condition);
+            if (catalog.getTreatmentCount(condition) > 0) {
+                patient.getDiagnosis().setPrescribed(catalog.getTreatment(condition, random.nextInt(catalog.getTreatmentCount(condition))), true);
+            }
+        }
+        return patient;
+    }
+
+    // letters only, as names may not hold digits
+    private static String suffix(int number) {
+        StringBuilder suffix = new StringBuilder();
+        do {
+            suffix.append((char) ('a' + number % 26));
+            number /= 26;
+        } while (number > 0);
+        return suffix.toString();
+    }
+}
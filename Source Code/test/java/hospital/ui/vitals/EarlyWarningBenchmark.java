@@ -0,0 +1,194 @@
+package hospital.ui.vitals;
+
+import hospital.ui.users.Person;
+import hospital.ui.users.patients.Patient;
+import hospital.ui.users.patients.SyntheticPatients;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Measures early warning scoring. Run it with
+ * {@code java hospital.ui.vitals.EarlyWarningBenchmark [beds] [feeds] [seconds]}.
+ *
+ * <p>First the same monitored ward is fed as fast as the feeds go, once without scoring and once
+ * scored in an {@link EarlyWarningIndex}, counting readings per second and the bytes the feed
+ * threads allocate. After the scored run every patient's total is checked against scoring their
+ * latest vitals from scratch, and the sickest 25 against a full sort.</p>
+ *
+ * <p>Then indexes of 500 and 100,000 patients are timed directly: a reading that moves a patient
+ * to another band, reading the sickest 10, and finding the sickest 10 by rescoring everyone.</p>
+ */
+public class EarlyWarningBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int beds = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        int feeds = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+
+        ingest(beds, feeds, seconds, null);
+        EarlyWarningIndex index = new EarlyWarningIndex();
+        long readings = ingest(beds, feeds, seconds, index);
+        System.out.printf("  %.1f%% of readings changed a band, %d alerts%n",
+                100.0 * index.getRescores() / Math.max(1, readings), index.getAlerts());
+        verify(index);
+
+        for (int size : new int[] {500, 100000}) {
+            time(size);
+        }
+    }
+
+    // feeds a ward for a while and gives the number of readings counted
+    private static long ingest(int beds, int feeds, int seconds, EarlyWarningIndex index) throws InterruptedException {
+        VitalsIngest ingest = new VitalsIngest(beds, index);
+        for (int bed = 0; bed < beds; bed++) {
+            ingest.attach(bed, new Patient(new Person("Bed", "Patient", "01/01/1980", "1 Main St", "555-555-5555"), "Aetna", "555-555-5555"));
+        }
+        for (int feed = 0; feed < feeds; feed++) {
+            ingest.start(new VitalsGenerator(feed * beds / feeds, (feed + 1) * beds / feeds - feed * beds / feeds, 1, false, feed));
+        }
+        //the first second and a half warms up the feeds; allocation is counted after it
+        Thread.sleep(1500);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        List<Long> feedThreads = new ArrayList<>();
+        long allocated = 0;
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().startsWith("vitals-feed")) {
+                feedThreads.add(thread.getId());
+                allocated -= threads.getThreadAllocatedBytes(thread.getId());
+            }
+        }
+        long before = ingest.getReadings();
+        long start = System.nanoTime();
+        Thread.sleep(seconds * 1000L);
+        for (long thread : feedThreads) {
+            allocated += threads.getThreadAllocatedBytes(thread);
+        }
+        long readings = ingest.getReadings() - before;
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        ingest.shutdown(2000);
+        System.out.printf("%s, %d beds, %d feeds: %.1f M readings/s, %.3f bytes allocated per reading%n",
+                index == null ? "unscored" : "scored", beds, feeds, readings / elapsed / 1e6, allocated / (double) readings);
+        return readings;
+    }
+
+    // checks every total against scoring from scratch, and the sickest 25 against a full sort
+    private static void verify(EarlyWarningIndex index) {
+        List<Patient> sickest = index.getSickest(index.size());
+        int mismatched = 0;
+        long[] ranks = new long[sickest.size()];
+        for (int i = 0; i < sickest.size(); i++) {
+            Patient patient = sickest.get(i);
+            int total = 0;
+            boolean red = false;
+            for (int vital = 0; vital < VitalsBuffer.VITAL_COUNT; vital++) {
+                int score = EarlyWarningScore.score(vital, patient.getVitalTenths(vital));
+                total += score;
+                red |= score == 3;
+            }
+            EarlyWarningScore score = patient.getWarningScore();
+            if (score.getTotal() != total || score.getRisk() != EarlyWarningScore.risk(total, red)) {
+                mismatched++;
+            }
+            ranks[i] = (long) EarlyWarningScore.risk(total, red) << 8 | total;
+        }
+        long[] sorted = ranks.clone();
+        Arrays.sort(sorted);
+        boolean topMatches = true;
+        for (int i = 0; i < Math.min(25, ranks.length); i++) {
+            topMatches &= ranks[i] == sorted[sorted.length - 1 - i];
+        }
+        System.out.printf("  after the run: %d of %d totals differ from a full rescore, sickest 25 match a full sort: %b%n",
+                mismatched, sickest.size(), topMatches);
+    }
+
+    private static void time(int size) {
+        EarlyWarningIndex index = new EarlyWarningIndex();
+        Random random = new Random(size);
+        EarlyWarningScore[] scores = new EarlyWarningScore[size];
+        Patient[] patients = new Patient[size];
+        for (int i = 0; i < size; i++) {
+            patients[i] = SyntheticPatients.create(random, i);
+            scores[i] = index.admit(patients[i]);
+        }
+
+        //each patient's heart rate goes back and forth between 120 and 70, which score 2 and 0,
+        //so every update moves the patient
+        int updates = 2000000;
+        int[] order = new int[updates];
+        for (int i = 0; i < updates; i++) {
+            order[i] = random.nextInt(size);
+        }
+        boolean[] fast = new boolean[size];
+        for (int i = 0; i < size; i++) {
+            scores[i].update(VitalsBuffer.HEART_RATE, 700);
+        }
+        double updateNanos = 0;
+        for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < updates; i++) {
+                int p = order[i];
+                fast[p] = !fast[p];
+                scores[p].update(VitalsBuffer.HEART_RATE, fast[p] ? 1200 : 700);
+            }
+            updateNanos = (System.nanoTime() - start) / (double) updates;
+        }
+
+        int reads = 200000;
+        double topNanos = 0;
+        for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < reads; i++) {
+                if (index.getSickest(10).size() != 10) {
+                    throw new IllegalStateException("fewer than 10 patients");
+                }
+            }
+            topNanos = (System.nanoTime() - start) / (double) reads;
+        }
+
+        int scans = Math.max(5, 2000000 / size);
+        double scanMicros = 0;
+        for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < scans; i++) {
+                if (rescanSickest(patients, 10)[0] < 0) {
+                    throw new IllegalStateException("no sickest patient");
+                }
+            }
+            scanMicros = (System.nanoTime() - start) / 1000.0 / scans;
+        }
+        System.out.printf("%d patients: band-changing update %.0f ns, sickest 10 from the index %.0f ns, by full rescore %.0f us%n",
+                size, updateNanos, topNanos, scanMicros);
+    }
+
+    // scores every patient from scratch and keeps the positions of the sickest, sickest first
+    private static int[] rescanSickest(Patient[] patients, int limit) {
+        int[] best = new int[limit];
+        long[] bestRanks = new long[limit];
+        Arrays.fill(bestRanks, -1);
+        for (int p = 0; p < patients.length; p++) {
+            int total = 0;
+            boolean red = false;
+            for (int vital = 0; vital < VitalsBuffer.VITAL_COUNT; vital++) {
+                int score = EarlyWarningScore.score(vital, patients[p].getVitalTenths(vital));
+                total += score;
+                red |= score == 3;
+            }
+            long rank = (long) EarlyWarningScore.risk(total, red) << 8 | total;
+            if (rank > bestRanks[limit - 1]) {
+                int i = limit - 1;
+                while (i > 0 && bestRanks[i - 1] < rank) {
+                    bestRanks[i] = bestRanks[i - 1];
+                    best[i] = best[i - 1];
+                    i--;
+                }
+                bestRanks[i] = rank;
+                best[i] = p;
+            }
+        }
+        return best;
+    }
+}
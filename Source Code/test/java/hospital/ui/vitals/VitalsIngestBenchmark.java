@@ -0,0 +1,169 @@
+package hospital.ui.vitals;
+
+import hospital.ui.users.Person;
+import hospital.ui.users.patients.Patient;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Drives a {@link VitalsIngest} with simulated bedside monitors, without early warning scoring.
+ * Run it with {@code java hospital.ui.vitals.VitalsIngestBenchmark [beds] [feeds] [seconds]}.
+ *
+ * <p>It runs four checks:</p>
+ * <ul>
+ *     <li>a ward paced at one reading per vital per second, where every reading must be stored;</li>
+ *     <li>unpaced feeds as fast as they go, with a reader copying trends alongside that checks
+ *     every copy is in time order, while the bytes the feed threads allocate and the
+ *     collections are counted;</li>
+ *     <li>a second feed writing beds another feed already owns, whose readings must be dropped;</li>
+ *     <li>a frame stream that names beds which do not exist, whose frames must be dropped.</li>
+ * </ul>
+ */
+public class VitalsIngestBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int beds = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        int feeds = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+        Patient[] patients = new Patient[beds];
+        for (int bed = 0; bed < beds; bed++) {
+            patients[bed] = new Patient(new Person("Bed", "Patient", "01/01/1980", "1 Main St", "555-555-5555"), "Aetna", "555-555-5555");
+        }
+
+        paced(beds, patients);
+        unpaced(beds, feeds, seconds, patients);
+        secondFeed(patients);
+        stream(patients);
+    }
+
+    private static void paced(int beds, Patient[] patients) throws InterruptedException {
+        VitalsIngest ingest = new VitalsIngest(beds, null);
+        for (int bed = 0; bed < beds; bed++) {
+            ingest.attach(bed, patients[bed]);
+        }
+        ingest.start(new VitalsGenerator(0, beds, 1, true, 1));
+        Thread.sleep(3200);
+        ingest.shutdown(2000);
+        System.out.printf("paced at 1 Hz, %d beds x %d vitals for 3.2 s: %d stored, %d dropped%n",
+                beds, VitalsBuffer.VITAL_COUNT, ingest.getReadings(), ingest.getDropped());
+    }
+
+    private static void unpaced(int beds, int feeds, int seconds, Patient[] patients) throws InterruptedException {
+        VitalsIngest ingest = new VitalsIngest(beds, null);
+        for (int bed = 0; bed < beds; bed++) {
+            ingest.attach(bed, patients[bed]);
+        }
+
+        AtomicBoolean reading = new AtomicBoolean(true);
+        AtomicReference<String> error = new AtomicReference<>();
+        long[] trendReads = new long[1];
+        Thread reader = new Thread(() -> {
+            long[] into = new long[600];
+            Random random = new Random(1);
+            while (reading.get()) {
+                int bed = random.nextInt(beds);
+                int vital = random.nextInt(VitalsBuffer.VITAL_COUNT);
+                VitalsBuffer buffer = ingest.getBuffer(bed);
+                int copied = buffer.copyLatest(vital, into);
+                for (int i = 1; i < copied; i++) {
+                    if (VitalsBuffer.timeOf(into[i]) > VitalsBuffer.timeOf(into[i - 1])) {
+                        error.set("bed " + bed + " trend out of order");
+                    }
+                }
+                trendReads[0]++;
+            }
+        });
+        reader.start();
+
+        long collections = collections();
+        long collectionMillis = collectionMillis();
+        for (int feed = 0; feed < feeds; feed++) {
+            ingest.start(new VitalsGenerator(feed * beds / feeds, (feed + 1) * beds / feeds - feed * beds / feeds, 1, false, feed));
+        }
+        //the first second and a half warms up the feeds; allocation is counted after it
+        Thread.sleep(1500);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Map<Long, Long> allocated = new HashMap<>();
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().startsWith("vitals-feed")) {
+                allocated.put(thread.getId(), threads.getThreadAllocatedBytes(thread.getId()));
+            }
+        }
+        long readings = ingest.getReadings();
+        long start = System.nanoTime();
+        Thread.sleep(seconds * 1000L);
+        long bytes = 0;
+        for (Map.Entry<Long, Long> thread : allocated.entrySet()) {
+            bytes += threads.getThreadAllocatedBytes(thread.getKey()) - thread.getValue();
+        }
+        readings = ingest.getReadings() - readings;
+        double elapsed = (System.nanoTime() - start) / 1e9;
+
+        reading.set(false);
+        reader.join();
+        ingest.shutdown(2000);
+        System.out.printf("unpaced, %d feeds: %.1f M readings/s over %.1f s (%.0fx the paced ward), feed threads allocated %d bytes%n",
+                feeds, readings / elapsed / 1e6, elapsed, readings / elapsed / (beds * VitalsBuffer.VITAL_COUNT), bytes);
+        System.out.printf("  %d collections (%d ms) during the run; %d trend reads alongside, errors: %s%n",
+                collections() - collections, collectionMillis() - collectionMillis, trendReads[0], error.get());
+    }
+
+    private static void secondFeed(Patient[] patients) throws InterruptedException {
+        VitalsIngest ingest = new VitalsIngest(10, null);
+        for (int bed = 0; bed < 10; bed++) {
+            ingest.attach(bed, patients[bed]);
+        }
+        ingest.start(new VitalsGenerator(0, 10, 1, false, 5));
+        Thread.sleep(200);
+        long firstOnly = ingest.getReadings();
+        ingest.start(new VitalsGenerator(0, 10, 1, false, 6));
+        Thread.sleep(300);
+        ingest.shutdown(1000);
+        System.out.printf("second feed on beds already claimed: %d stored (%d before it started), %d dropped%n",
+                ingest.getReadings(), firstOnly, ingest.getDropped());
+    }
+
+    private static void stream(Patient[] patients) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        for (int i = 0; i < 120000; i++) {
+            //beds 10 and 11 do not exist
+            VitalsStreamSource.writeFrame(out, i % 12, i % VitalsBuffer.VITAL_COUNT, 1700000000000L + i, 700 + i % 100);
+        }
+        VitalsIngest ingest = new VitalsIngest(10, null);
+        for (int bed = 0; bed < 10; bed++) {
+            ingest.attach(bed, patients[bed]);
+        }
+        ingest.start(new VitalsStreamSource(new ByteArrayInputStream(bytes.toByteArray())));
+        while (ingest.getRunningFeeds() > 0) {
+            Thread.sleep(10);
+        }
+        System.out.printf("frame stream, 120000 frames for 12 beds on a 10-bed ward: %d stored, %d dropped%n",
+                ingest.getReadings(), ingest.getDropped());
+    }
+
+    private static long collections() {
+        long count = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += collector.getCollectionCount();
+        }
+        return count;
+    }
+
+    private static long collectionMillis() {
+        long millis = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            millis += collector.getCollectionTime();
+        }
+        return millis;
+    }
+}